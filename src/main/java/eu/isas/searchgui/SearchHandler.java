@@ -22,7 +22,6 @@ import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingDialog;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
 import com.compomics.util.io.ConfigurationFile;
-import com.compomics.util.io.compression.ZipUtils;
 import com.compomics.util.preferences.GenePreferences;
 import com.compomics.util.experiment.identification.filtering.PeptideAssumptionFilter;
 import com.compomics.util.preferences.IdMatchValidationPreferences;
@@ -30,20 +29,56 @@ import com.compomics.util.preferences.PTMScoringPreferences;
 import com.compomics.util.preferences.PSProcessingPreferences;
 import com.compomics.util.preferences.UtilitiesUserPreferences;
 import com.compomics.util.waiting.Duration;
+import eu.isas.searchgui.preferences.CalibrationSettings;
+import eu.isas.searchgui.preferences.CascadeSearchSettings;
+import eu.isas.searchgui.preferences.OutputCompression;
+import eu.isas.searchgui.preferences.EngineResourceSettings;
+import eu.isas.searchgui.preferences.EngineScalingHistory;
 import eu.isas.searchgui.preferences.OutputOption;
+import eu.isas.searchgui.preferences.ProcessWatchdogSettings;
+import eu.isas.searchgui.preferences.SpectrumPreprocessingSettings;
+import eu.isas.searchgui.preferences.TwoPassSearchSettings;
 import eu.isas.searchgui.processbuilders.*;
+import eu.isas.searchgui.spectra.CascadeFilter;
+import eu.isas.searchgui.spectra.ChargeInference;
+import eu.isas.searchgui.spectra.MassCalibration;
+import eu.isas.searchgui.spectra.MgfFileProcessor;
+import eu.isas.searchgui.spectra.PeakListPreprocessor;
+import eu.isas.searchgui.spectra.SpectrumClusterer;
+import eu.isas.searchgui.spectra.SpectrumIndexMapping;
+import eu.isas.searchgui.spectra.SpectrumProcessorChain;
+import eu.isas.searchgui.spectra.SpectrumQualityFilter;
+import eu.isas.searchgui.spectra.SpectrumRecalibrator;
+import eu.isas.searchgui.spectra.SpectrumSampler;
+import eu.isas.searchgui.spectra.SpectrumSorter;
+import eu.isas.searchgui.utilities.FileTransfer;
+import eu.isas.searchgui.utilities.GzipUtils;
+import eu.isas.searchgui.utilities.MemoryAdmissionController;
+import eu.isas.searchgui.utilities.ReducedFastaWriter;
+import eu.isas.searchgui.utilities.ScratchStager;
+import eu.isas.searchgui.utilities.SearchPlanner;
+import eu.isas.searchgui.utilities.SearchProgress;
+import eu.isas.searchgui.utilities.ZipPackager;
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipOutputStream;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -75,6 +110,11 @@ public class SearchHandler {
      * Output parameters file.
      */
     private final static String PARAMETERS_OUTPUT_FILE = "SearchGUI.par";
+    /**
+     * The beginning of the name of the folder where the complete output of
+     * the processes is logged.
+     */
+    public final static String PROCESS_LOG_FOLDER_PREFIX = "SearchGUI Logs ";
     /**
      * Folder where the output is stored before packaging.
      */
@@ -83,6 +123,80 @@ public class SearchHandler {
      * The sub folder to use to store peak lists.
      */
     private final static String peakListsSubFolder = "peak_lists";
+    /**
+     * The name of the sub folder of the peak list folder where to store the
+     * pre-processed peak lists.
+     */
+    private final static String preprocessedPeakListsSubFolder = "preprocessed";
+    /**
+     * The name of the sub folder of the peak list folder where to store the
+     * peak lists reduced to the spectra left to the slow engines in a cascade
+     * search.
+     */
+    private final static String cascadePeakListsSubFolder = "cascade";
+    /**
+     * The name of the sub folder of the peak list folder where to run the
+     * first pass of a two-pass search.
+     */
+    private final static String firstPassPeakListsSubFolder = "first_pass";
+    /**
+     * The name of the sub folder of the peak list folder where to search the
+     * subsets of spectra used for the mass calibration.
+     */
+    private final static String calibrationPeakListsSubFolder = "calibration";
+    /**
+     * The name of the sub folder of the peak list folder where to store the
+     * recalibrated peak lists.
+     */
+    private final static String recalibratedPeakListsSubFolder = "recalibrated";
+    /**
+     * The name of the sub folder of the temporary folder where to store the
+     * reduced databases of two-pass searches.
+     */
+    private final static String reducedDatabaseSubFolder = "reduced_database";
+    /**
+     * The suffix added to the name of the database reduced to the proteins
+     * found in the first pass of a two-pass search.
+     */
+    public final static String REDUCED_DATABASE_SUFFIX = "_reduced";
+    /**
+     * The suffix of the files listing the spectra excluded by the quality
+     * filter.
+     */
+    public final static String EXCLUDED_SPECTRA_FILE_SUFFIX = "_excluded_spectra.txt";
+    /**
+     * The suffix of the files mapping the spectra to their cluster
+     * representative.
+     */
+    public final static String SPECTRUM_CLUSTERS_FILE_SUFFIX = "_spectrum_clusters.txt";
+    /**
+     * The suffix of the files mapping the sorted spectra to their original
+     * index.
+     */
+    public final static String SPECTRUM_ORDER_FILE_SUFFIX = "_spectrum_order.txt";
+    /**
+     * The suffix of the files listing the spectra identified by the fast
+     * engines and not searched by the other engines in a cascade search.
+     */
+    public final static String CASCADE_IDENTIFIED_FILE_SUFFIX = "_cascade_identified_spectra.txt";
+    /**
+     * The suffix of the files reporting the mass errors estimated by the
+     * calibration.
+     */
+    public final static String CALIBRATION_FILE_SUFFIX = "_calibration.txt";
+    /**
+     * The suffix of the files listing the resources used by the search
+     * engine processes.
+     */
+    public final static String PROCESS_METRICS_FILE_SUFFIX = "_process_metrics.txt";
+    /**
+     * The extension used for the clustered peak lists being written.
+     */
+    private final static String CLUSTERED_FILE_EXTENSION = ".clustered";
+    /**
+     * The extension used for the sorted peak lists being written.
+     */
+    private final static String SORTED_FILE_EXTENSION = ".sorted";
     /**
      * The factory used to read the modifications.
      */
@@ -104,6 +218,11 @@ public class SearchHandler {
      * Worker which builds the protein tree.
      */
     private ProteinTreeWorker proteinTreeWorker;
+    /**
+     * Admits the engine processes and the protein tree within the memory
+     * budget of the search, null if not limited.
+     */
+    private MemoryAdmissionController memoryAdmissionController = null;
     /**
      * If true the X!Tandem file will be renamed.
      */
@@ -300,15 +419,75 @@ public class SearchHandler {
      * The way output files should be exported.
      */
     private OutputOption outputOption = OutputOption.grouped;
+    /**
+     * The compression policy of the zipped output.
+     */
+    private OutputCompression outputCompression = OutputCompression.standard;
     /**
      * Indicates whether data files (mgf and FASTA) should be copied in the
      * output.
      */
     private boolean outputData = false;
+    /**
+     * Indicates whether MS-GF+ should be run inside the SearchGUI virtual
+     * machine instead of a new Java process.
+     */
+    private boolean msgfInProcess = false;
     /**
      * Indicates whether the date should be included in the output.
      */
     private boolean includeDateInOutputName = false;
+    /**
+     * The settings for the pre-processing of the spectra, disabled by default.
+     */
+    private SpectrumPreprocessingSettings spectrumPreprocessingSettings = new SpectrumPreprocessingSettings();
+    /**
+     * The settings of the watchdog of the search engine processes, disabled
+     * by default.
+     */
+    private ProcessWatchdogSettings processWatchdogSettings = new ProcessWatchdogSettings();
+    /**
+     * The settings of the cascade search, disabled by default.
+     */
+    private CascadeSearchSettings cascadeSearchSettings = new CascadeSearchSettings();
+    /**
+     * The settings of the mass calibration, disabled by default.
+     */
+    private CalibrationSettings calibrationSettings = new CalibrationSettings();
+    /**
+     * The settings of the two-pass search, disabled by default.
+     */
+    private TwoPassSearchSettings twoPassSearchSettings = new TwoPassSearchSettings();
+    /**
+     * The database reduced to the proteins found in the first pass of a
+     * two-pass search, included in the output, null if none.
+     */
+    private File reducedFastaFile = null;
+    /**
+     * The database provided for the search, replaced in the search parameters
+     * by the decompressed or reduced database while searching, null when no
+     * search is running.
+     */
+    private File originalFastaFile = null;
+    /**
+     * The spectrum files provided for the search, replaced by the
+     * decompressed or recalibrated files while searching, null when no search
+     * is running.
+     */
+    private ArrayList<File> originalMgfFiles = null;
+    /**
+     * The settings of the resources given to the search engines.
+     */
+    private EngineResourceSettings engineResourceSettings = new EngineResourceSettings();
+    /**
+     * The throughput of the search engines in past runs, null until loaded.
+     */
+    private EngineScalingHistory engineScalingHistory = null;
+    /**
+     * Reports generated during the search to include in the output, e.g. the
+     * excluded spectra, indexed by spectrum file name.
+     */
+    private HashMap<String, ArrayList<File>> reportFiles = new HashMap<String, ArrayList<File>>();
     /**
      * Default name for a SearchGUI output.
      */
@@ -329,10 +508,25 @@ public class SearchHandler {
      * A folder to use to store temporary files.
      */
     private static String tempFolderPath = null;
+    /**
+     * A fast local folder where the search files are staged, null if not
+     * used.
+     */
+    private static String scratchFolderPath = null;
     /**
      * The duration of the search.
      */
     private Duration searchDuration;
+    /**
+     * The folder in the results folder where the complete output of the
+     * processes of the current search is saved.
+     */
+    private File processLogFolder = null;
+    /**
+     * The folder where the complete output of the processes of the current
+     * search is logged, on the scratch folder if any.
+     */
+    private ProcessLogFolder processLogs = null;
 
     /**
      * Constructor for the SearchGUI command line interface. Uses the
@@ -506,11 +700,15 @@ public class SearchHandler {
         this.waitingHandler = waitingHandler;
         searchDuration.start();
 
-        searchWorker = new SearchWorker(waitingHandler);
-        searchWorker.execute();
+        // the complete output of the processes is saved in the results folder
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH.mm.ss");
+        processLogFolder = new File(resultsFolder, PROCESS_LOG_FOLDER_PREFIX + df.format(new Date()));
 
+        // note: the indexing worker is started by the search worker once the input files are decompressed
         indexingWorker = new IndexingWorker(waitingHandler);
-        indexingWorker.execute();
+
+        searchWorker = new SearchWorker(waitingHandler);
+        searchWorker.execute();
 
         // display the waiting dialog
         if (waitingHandler != null && waitingHandler instanceof WaitingDialog) {
@@ -659,11 +857,33 @@ public class SearchHandler {
         }
     }
 
+    /**
+     * Moves the logs of the processes from the scratch folder to the results
+     * folder. Nothing is done if the processes were logged in the results
+     * folder.
+     */
+    private void saveProcessLogs() {
+        if (processLogs != null && !processLogs.getFolder().equals(processLogFolder)) {
+            File[] logFiles = processLogs.getFolder().listFiles();
+            if (logFiles != null && logFiles.length > 0) {
+                processLogFolder.mkdirs();
+                for (File logFile : logFiles) {
+                    try {
+                        FileTransfer.move(logFile, new File(processLogFolder, logFile.getName()));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        waitingHandler.appendReport("Could not save the log " + logFile.getName() + ": " + e.getMessage(), true, true);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Save the SearchGUI report to the results folder.
      */
     private void saveReport() {
-        DateFormat df = new SimpleDateFormat("yyyy-MM-dd hh.mm.ss");
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH.mm.ss");
         String fileName = "SearchGUI Report " + df.format(new Date()) + ".html";
         String report = "";
 
@@ -671,6 +891,20 @@ public class SearchHandler {
             report = "<pre>" + ((WaitingDialog) waitingHandler).getReport(new File(resultsFolder, fileName)) + "</pre>";
         }
 
+        // link the complete output of the processes
+        if (processLogFolder != null && processLogFolder.exists()) {
+            File[] logFiles = processLogFolder.listFiles();
+            if (logFiles != null && logFiles.length > 0) {
+                Arrays.sort(logFiles);
+                report += "<p>Complete output of the processes:<br>";
+                for (File logFile : logFiles) {
+                    String link = (processLogFolder.getName() + "/" + logFile.getName()).replaceAll(" ", "%20");
+                    report += "<a href=\"" + link + "\">" + logFile.getName() + "</a><br>";
+                }
+                report += "</p>";
+            }
+        }
+
         // append the search parameters
         report += searchParameters.toString(true);
         report = "<html>" + report + "</html>";
@@ -1573,6 +1807,24 @@ public class SearchHandler {
         return outputOption;
     }
 
+    /**
+     * Sets the compression policy of the zipped output.
+     *
+     * @param outputCompression the compression policy of the zipped output
+     */
+    public void setOutputCompression(OutputCompression outputCompression) {
+        this.outputCompression = outputCompression;
+    }
+
+    /**
+     * Returns the compression policy of the zipped output.
+     *
+     * @return the compression policy of the zipped output
+     */
+    public OutputCompression getOutputCompression() {
+        return outputCompression;
+    }
+
     /**
      * Indicates whether data should be copied along with the identification
      * files.
@@ -1594,6 +1846,30 @@ public class SearchHandler {
         this.outputData = outputData;
     }
 
+    /**
+     * Indicates whether MS-GF+ should be run inside the SearchGUI virtual
+     * machine instead of a new Java process.
+     *
+     * @return a boolean indicating whether MS-GF+ should be run inside the
+     * SearchGUI virtual machine
+     */
+    public boolean isMsgfInProcess() {
+        return msgfInProcess;
+    }
+
+    /**
+     * Sets whether MS-GF+ should be run inside the SearchGUI virtual machine
+     * instead of a new Java process. MS-GF+ cannot be stopped when run inside
+     * SearchGUI, the watchdog does not apply and canceling the search lets
+     * MS-GF+ complete in the background.
+     *
+     * @param msgfInProcess a boolean indicating whether MS-GF+ should be run
+     * inside the SearchGUI virtual machine
+     */
+    public void setMsgfInProcess(boolean msgfInProcess) {
+        this.msgfInProcess = msgfInProcess;
+    }
+
     /**
      * Indicates whether the date should be included in the file output name.
      *
@@ -1614,6 +1890,205 @@ public class SearchHandler {
         this.includeDateInOutputName = includeDateInOutputName;
     }
 
+    /**
+     * Returns the spectrum pre-processing settings.
+     *
+     * @return the spectrum pre-processing settings
+     */
+    public SpectrumPreprocessingSettings getSpectrumPreprocessingSettings() {
+        return spectrumPreprocessingSettings;
+    }
+
+    /**
+     * Sets the spectrum pre-processing settings.
+     *
+     * @param spectrumPreprocessingSettings the spectrum pre-processing settings
+     */
+    public void setSpectrumPreprocessingSettings(SpectrumPreprocessingSettings spectrumPreprocessingSettings) {
+        this.spectrumPreprocessingSettings = spectrumPreprocessingSettings;
+    }
+
+    /**
+     * Returns the settings of the watchdog of the search engine processes.
+     *
+     * @return the settings of the watchdog of the search engine processes
+     */
+    public ProcessWatchdogSettings getProcessWatchdogSettings() {
+        return processWatchdogSettings;
+    }
+
+    /**
+     * Sets the settings of the watchdog of the search engine processes.
+     *
+     * @param processWatchdogSettings the settings of the watchdog of the
+     * search engine processes
+     */
+    public void setProcessWatchdogSettings(ProcessWatchdogSettings processWatchdogSettings) {
+        this.processWatchdogSettings = processWatchdogSettings;
+    }
+
+    /**
+     * Returns the settings of the cascade search.
+     *
+     * @return the settings of the cascade search
+     */
+    public CascadeSearchSettings getCascadeSearchSettings() {
+        return cascadeSearchSettings;
+    }
+
+    /**
+     * Sets the settings of the cascade search.
+     *
+     * @param cascadeSearchSettings the settings of the cascade search
+     */
+    public void setCascadeSearchSettings(CascadeSearchSettings cascadeSearchSettings) {
+        this.cascadeSearchSettings = cascadeSearchSettings;
+    }
+
+    /**
+     * Returns the settings of the mass calibration.
+     *
+     * @return the settings of the mass calibration
+     */
+    public CalibrationSettings getCalibrationSettings() {
+        return calibrationSettings;
+    }
+
+    /**
+     * Sets the settings of the mass calibration.
+     *
+     * @param calibrationSettings the settings of the mass calibration
+     */
+    public void setCalibrationSettings(CalibrationSettings calibrationSettings) {
+        this.calibrationSettings = calibrationSettings;
+    }
+
+    /**
+     * Returns the settings of the two-pass search.
+     *
+     * @return the settings of the two-pass search
+     */
+    public TwoPassSearchSettings getTwoPassSearchSettings() {
+        return twoPassSearchSettings;
+    }
+
+    /**
+     * Sets the settings of the two-pass search.
+     *
+     * @param twoPassSearchSettings the settings of the two-pass search
+     */
+    public void setTwoPassSearchSettings(TwoPassSearchSettings twoPassSearchSettings) {
+        this.twoPassSearchSettings = twoPassSearchSettings;
+    }
+
+    /**
+     * Returns the settings of the resources given to the search engines.
+     *
+     * @return the settings of the resources given to the search engines
+     */
+    public EngineResourceSettings getEngineResourceSettings() {
+        return engineResourceSettings;
+    }
+
+    /**
+     * Sets the settings of the resources given to the search engines.
+     *
+     * @param engineResourceSettings the settings of the resources given to
+     * the search engines
+     */
+    public void setEngineResourceSettings(EngineResourceSettings engineResourceSettings) {
+        this.engineResourceSettings = engineResourceSettings;
+    }
+
+    /**
+     * Returns the throughput of the search engines in past runs, loaded from
+     * the configuration folder at the first call.
+     *
+     * @return the throughput of the search engines in past runs
+     */
+    public synchronized EngineScalingHistory getEngineScalingHistory() {
+        if (engineScalingHistory == null) {
+            engineScalingHistory = EngineScalingHistory.getHistory(getJarFilePath());
+        }
+        return engineScalingHistory;
+    }
+
+    /**
+     * Returns the search engines enabled as named in the engine resource
+     * settings, in the order they are run on every spectrum file.
+     *
+     * @return the search engines enabled
+     */
+    public ArrayList<String> getEnabledEngines() {
+        boolean[] enabled = {enableComet, enableTide, enableXtandem, enableMyriMatch, enableMsAmanda, enableMsgf, enableOmssa, enableAndromeda};
+        ArrayList<String> engines = new ArrayList<String>();
+        for (int i = 0; i < SearchPlanner.ENGINES.length; i++) {
+            if (enabled[i]) {
+                engines.add(SearchPlanner.ENGINES[i]);
+            }
+        }
+        return engines;
+    }
+
+    /**
+     * Returns the planner estimating the searches with the current settings.
+     *
+     * @return the planner estimating the searches
+     */
+    public SearchPlanner getSearchPlanner() {
+        return new SearchPlanner(searchParameters, engineResourceSettings, getEngineScalingHistory(), nThreads);
+    }
+
+    /**
+     * Returns the estimated time and memory of every search in the planned
+     * order without running them.
+     *
+     * @return the estimated time and memory of every search
+     */
+    public String getSearchPlan() {
+        String plan = getSearchPlanner().getReport(getMgfFiles(), getEnabledEngines());
+        if (!getRawFiles().isEmpty()) {
+            plan += getRawFiles().size() + " raw file(s) not included, the number of spectra is only known after conversion." + System.getProperty("line.separator");
+        }
+        return plan;
+    }
+
+    /**
+     * Adds a report file to include in the output.
+     *
+     * @param spectrumFileName the name of the spectrum file the report refers
+     * to
+     * @param reportFile the report file
+     */
+    public synchronized void addReportFile(String spectrumFileName, File reportFile) {
+        ArrayList<File> files = reportFiles.get(spectrumFileName);
+        if (files == null) {
+            files = new ArrayList<File>(1);
+            reportFiles.put(spectrumFileName, files);
+        }
+        files.add(reportFile);
+    }
+
+    /**
+     * Returns the report files to include in the output for the given
+     * spectrum file, all report files if null.
+     *
+     * @param spectrumFileName the name of the spectrum file, null for all
+     *
+     * @return the report files
+     */
+    public synchronized ArrayList<File> getReportFiles(String spectrumFileName) {
+        ArrayList<File> result = new ArrayList<File>();
+        if (spectrumFileName == null) {
+            for (ArrayList<File> files : reportFiles.values()) {
+                result.addAll(files);
+            }
+        } else if (reportFiles.containsKey(spectrumFileName)) {
+            result.addAll(reportFiles.get(spectrumFileName));
+        }
+        return result;
+    }
+
     /**
      * SearchWorker extends SwingWorker and is a helper class for performing the
      * searches.
@@ -1632,6 +2107,30 @@ public class SearchHandler {
          * True if the process has finished.
          */
         private boolean finished = false;
+        /**
+         * The packager zipping the identification files during the search,
+         * null if the output is not zipped.
+         */
+        private ZipPackager zipPackager = null;
+        /**
+         * The stager of the search files on the scratch folder, null if no
+         * scratch folder is used.
+         */
+        private ScratchStager scratchStager = null;
+        /**
+         * The progress of the searches in number of spectra searched.
+         */
+        private SearchProgress searchProgress = null;
+        /**
+         * The precursor tolerance of the search parameters before the search,
+         * null until the search starts.
+         */
+        private Double originalPrecursorAccuracy = null;
+        /**
+         * The fragment tolerance of the search parameters before the search,
+         * null until the search starts.
+         */
+        private Double originalFragmentIonAccuracy = null;
 
         /**
          * Creates a new SearchWorker object.
@@ -1702,11 +2201,33 @@ public class SearchHandler {
                 File outputFolder = getResultsFolder();
                 File outputTempFolder;
 
+                // stage the output on the scratch folder, if any, and move it to the output folder when completed
+                File stagedOutputFolder = outputFolder;
+                if (scratchFolderPath != null) {
+                    try {
+                        File scratchFolder = new File(scratchFolderPath, outputTempFolderName + "_" + System.currentTimeMillis());
+                        scratchStager = new ScratchStager(scratchFolder, waitingHandler);
+                        TempFilesManager.registerTempFolder(scratchFolder);
+                        stagedOutputFolder = scratchStager.getOutputFolder();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        waitingHandler.appendReport("Could not use the scratch folder " + scratchFolderPath + ", writing to the output folder.", true, true);
+                        scratchStager = null;
+                    }
+                }
+
+                // log the complete output of the processes, on the scratch folder if any
+                if (scratchStager != null) {
+                    processLogs = new ProcessLogFolder(new File(scratchStager.getOutputFolder().getParentFile(), processLogFolder.getName()));
+                } else {
+                    processLogs = new ProcessLogFolder(processLogFolder);
+                }
+
                 if (outputOption == OutputOption.no_zip) {
-                    outputTempFolder = outputFolder;
+                    outputTempFolder = stagedOutputFolder;
                 } else {
                     try {
-                        outputTempFolder = new File(outputFolder, outputTempFolderName);
+                        outputTempFolder = new File(stagedOutputFolder, outputTempFolderName);
                         if (outputTempFolder.exists()) {
                             Util.deleteDir(outputTempFolder);
                         }
@@ -1718,36 +2239,112 @@ public class SearchHandler {
                     }
                 }
 
-                File dbFile = searchParameters.getFastaFile();
-
-                if (enableOmssa) {
-                    // call Makeblastdb class, check if run before and then start process
-                    MakeblastdbProcessBuilder fpb = new MakeblastdbProcessBuilder(getJarFilePath(), dbFile, makeblastdbLocation, waitingHandler);
+                // zip the identification files as soon as they are created
+                if (outputOption != OutputOption.no_zip) {
+                    zipPackager = new ZipPackager(nThreads, waitingHandler);
+                    if (scratchStager != null) {
+                        final File finalOutputFolder = outputFolder;
+                        zipPackager.setArchiveListener(new ZipPackager.ArchiveListener() {
+                            @Override
+                            public void archiveCompleted(File zipFile) {
+                                scratchStager.writeBack(zipFile, new File(finalOutputFolder, zipFile.getName()));
+                            }
+                        });
+                    }
+                }
 
-                    if (fpb.needsFormatting()) {
+                synchronized (SearchHandler.this) {
+                    reportFiles.clear();
+                }
 
-                        // @TODO: should the MS-GF+ database formatting be done here as well..?
-                        if (waitingHandler != null) {
-                            if (!useCommandLine) {
-                                waitingHandler.setWaitingText("Formatting " + fpb.getCurrentlyProcessedFileName() + " for OMSSA.");
-                            }
-                            waitingHandler.appendReport("Formatting " + fpb.getCurrentlyProcessedFileName() + " for OMSSA.", true, true);
-                            waitingHandler.appendReportEndLine();
-                        }
+                // the database, tolerances and spectrum files derived for this search are restored at the end
+                originalFastaFile = searchParameters.getFastaFile();
+                originalPrecursorAccuracy = searchParameters.getPrecursorAccuracy();
+                originalFragmentIonAccuracy = searchParameters.getFragmentIonAccuracy();
+                originalMgfFiles = new ArrayList<File>(getMgfFiles());
 
-                        currentProcess = fpb;
-                        fpb.startProcess();
+                // decompress the gzipped input files, if any, and start the indexing of the FASTA file
+                decompressInputFiles();
+                indexingWorker.execute();
 
-                        if (waitingHandler != null) {
-                            waitingHandler.appendReport(fpb.getCurrentlyProcessedFileName() + " formatted for OMSSA.", true, true);
-                            waitingHandler.appendReportEndLine();
-                        }
-                    }
+                if (waitingHandler.isRunCanceled()) {
+                    restoreSearchInput();
+                    finished = true;
+                    searchCrashed();
+                    notifySearchFinished();
+                    return 1;
+                }
 
-                    // Write modification files to the OMSSA directory and save PTM indexes in the search parameters
-                    File modsXmlFile = new File(omssaLocation, "mods.xml");
-                    if (!modsXmlFile.exists()) {
-                        throw new IllegalArgumentException("OMSSA mods.xml file not found.");
+                // Convert raw files
+                for (int i = 0; i < getRawFiles().size() && !waitingHandler.isRunCanceled(); i++) { // @TODO: use parallel processing?
+                    File rawFile = getRawFiles().get(i);
+                    String rawFileName = rawFile.getName();
+                    File folder = rawFile.getParentFile();
+                    String mgfFileName = Util.removeExtension(rawFileName) + ".mgf";
+                    File mgfFile = new File(folder, mgfFileName);
+                    waitingHandler.appendReport("Converting " + rawFileName + ".", true, true);
+                    if (!mgfFile.exists()) {
+                        msConvertProcessBuilder = new MsConvertProcessBuilder(waitingHandler, rawFile, folder, getMsConvertParameters());
+                        currentProcess = msConvertProcessBuilder;
+                        waitingHandler.appendReportEndLine();
+                        msConvertProcessBuilder.setLogFolder(processLogs);
+                        msConvertProcessBuilder.startProcess();
+
+                        // @TODO: validate the mgf file!
+                    } else {
+                        waitingHandler.appendReport(mgfFileName + " already exists. Conversion canceled.", true, true);
+                        waitingHandler.appendReportEndLine();
+                    }
+                    mgfFiles.add(mgfFile);
+                    originalMgfFiles.add(mgfFile);
+                    SpectrumFactory.getInstance().addSpectra(mgfFile);
+                }
+
+                // estimate the mass errors on a subset of the spectra and tighten the tolerances
+                if (calibrationSettings != null && calibrationSettings.isEnabled() && !waitingHandler.isRunCanceled()) {
+                    calibrate(outputTempFolder);
+                }
+
+                // search the full database with Comet and continue with the proteins found only
+                reducedFastaFile = null;
+                if (twoPassSearchSettings != null && twoPassSearchSettings.isEnabled() && !waitingHandler.isRunCanceled()) {
+                    reducedFastaFile = writeReducedDatabase();
+                    if (reducedFastaFile != null) {
+                        searchParameters.setFastaFile(reducedFastaFile);
+                    }
+                }
+
+                File dbFile = searchParameters.getFastaFile();
+
+                if (enableOmssa) {
+                    // call Makeblastdb class, check if run before and then start process
+                    MakeblastdbProcessBuilder fpb = new MakeblastdbProcessBuilder(getJarFilePath(), dbFile, makeblastdbLocation, waitingHandler);
+
+                    if (fpb.needsFormatting()) {
+
+                        // @TODO: should the MS-GF+ database formatting be done here as well..?
+                        if (waitingHandler != null) {
+                            if (!useCommandLine) {
+                                waitingHandler.setWaitingText("Formatting " + fpb.getCurrentlyProcessedFileName() + " for OMSSA.");
+                            }
+                            waitingHandler.appendReport("Formatting " + fpb.getCurrentlyProcessedFileName() + " for OMSSA.", true, true);
+                            waitingHandler.appendReportEndLine();
+                        }
+
+                        currentProcess = fpb;
+                        fpb.setLogFolder(processLogs);
+                        fpb.startProcess();
+
+                        if (waitingHandler != null) {
+                            waitingHandler.appendReport(fpb.getCurrentlyProcessedFileName() + " formatted for OMSSA.", true, true);
+                            waitingHandler.appendReportEndLine();
+                        }
+                    }
+
+                    // Write modification files to the OMSSA directory and save PTM indexes in the search parameters
+                    File modsXmlFile = new File(omssaLocation, "mods.xml");
+                    if (!modsXmlFile.exists()) {
+                        throw new IllegalArgumentException("OMSSA mods.xml file not found.");
                     }
                     File userModsXmlFile = new File(omssaLocation, "usermods.xml");
                     omssaProcessBuilder.writeOmssaUserModificationsFile(userModsXmlFile, searchParameters);
@@ -1817,32 +2414,10 @@ public class SearchHandler {
                     currentProcess = tideIndexProcessBuilder;
                     waitingHandler.appendReport("Indexing " + searchParameters.getFastaFile().getName() + " for Tide.", true, true);
                     waitingHandler.appendReportEndLine();
+                    tideIndexProcessBuilder.setLogFolder(processLogs);
                     tideIndexProcessBuilder.startProcess();
                 }
 
-                // Convert raw files
-                for (int i = 0; i < getRawFiles().size() && !waitingHandler.isRunCanceled(); i++) { // @TODO: use parallel processing?
-                    File rawFile = getRawFiles().get(i);
-                    String rawFileName = rawFile.getName();
-                    File folder = rawFile.getParentFile();
-                    String mgfFileName = Util.removeExtension(rawFileName) + ".mgf";
-                    File mgfFile = new File(folder, mgfFileName);
-                    waitingHandler.appendReport("Converting " + rawFileName + ".", true, true);
-                    if (!mgfFile.exists()) {
-                        msConvertProcessBuilder = new MsConvertProcessBuilder(waitingHandler, rawFile, folder, getMsConvertParameters());
-                        currentProcess = msConvertProcessBuilder;
-                        waitingHandler.appendReportEndLine();
-                        msConvertProcessBuilder.startProcess();
-
-                        // @TODO: validate the mgf file!
-                    } else {
-                        waitingHandler.appendReport(mgfFileName + " already exists. Conversion canceled.", true, true);
-                        waitingHandler.appendReportEndLine();
-                    }
-                    mgfFiles.add(mgfFile);
-                    SpectrumFactory.getInstance().addSpectra(mgfFile);
-                }
-
                 File parametersOutputFile = null;
 
                 if (!waitingHandler.isRunCanceled()) {
@@ -1853,9 +2428,18 @@ public class SearchHandler {
                         String name = searchParameters.getParametersFile().getName();
                         parametersOutputFile = new File(outputTempFolder, name);
                     }
-                    SearchParameters.saveIdentificationParameters(searchParameters, parametersOutputFile);
+                    // the parameters saved refer to the database provided and not to the decompressed or reduced database
+                    File searchedFastaFile = searchParameters.getFastaFile();
+                    searchParameters.setFastaFile(getDataFastaFile());
+                    try {
+                        SearchParameters.saveIdentificationParameters(searchParameters, parametersOutputFile);
+                    } finally {
+                        searchParameters.setFastaFile(searchedFastaFile);
+                    }
                     saveInputFile(outputTempFolder);
 
+                    memoryAdmissionController = createMemoryAdmissionController();
+
                     // load database in parallel of the search (Note: apparently needs to be done after completion of makeblastdb)
                     if (generateProteinTree && UtilitiesUserPreferences.loadUserPreferences().getMemoryPreference() >= 4000) { // only build the tree if enough memory is available
                         proteinTreeWorker = new ProteinTreeWorker(waitingHandler);
@@ -1867,29 +2451,104 @@ public class SearchHandler {
 
                 // Keep track of the identification files created in a map: spectrum file name -> algorithm index -> identification file
                 HashMap<String, HashMap<Integer, File>> identificationFiles = new HashMap<String, HashMap<Integer, File>>(mgfFiles.size());
+                // search the files expected to take longest first
+                if (getMgfFiles().size() > 1 && !waitingHandler.isRunCanceled()) {
+                    mgfFiles = getSearchPlanner().getExecutionOrder(getMgfFiles(), getEnabledEngines());
+                }
+
+                // follow the progress of the searches in number of spectra searched
+                int nSearchEngines = 0;
+                for (boolean enabled : new boolean[]{enableOmssa, enableXtandem, enableMsgf, enableMsAmanda, enableMyriMatch, enableComet, enableTide, enableAndromeda}) {
+                    if (enabled) {
+                        nSearchEngines++;
+                    }
+                }
+                long nSpectraToSearch = 0;
+                for (File spectrumFile : getMgfFiles()) {
+                    nSpectraToSearch += SpectrumFactory.getInstance().getNSpectra(spectrumFile.getName());
+                }
+                searchProgress = new SearchProgress(waitingHandler, nSearchEngines * nSpectraToSearch, useCommandLine);
+
+                // copy the spectrum files to the scratch folder ahead of their search
+                if (scratchStager != null) {
+                    scratchStager.prefetch(getMgfFiles());
+                }
 
                 for (int i = 0; i < getMgfFiles().size(); i++) {
 
+                    if (waitingHandler.isRunCanceled()) {
+                        break;
+                    }
+
                     File spectrumFile = getMgfFiles().get(i);
 
                     String spectrumFileName = spectrumFile.getName();
+                    String processingText = "Processing: " + spectrumFileName + " (" + (i + 1) + "/" + getMgfFiles().size() + ")";
                     if (useCommandLine) {
-                        System.out.println(System.getProperty("line.separator") + System.getProperty("line.separator")
-                                + "Processing: " + spectrumFileName + " (" + (i + 1) + "/" + getMgfFiles().size() + ")");
+                        System.out.println(System.getProperty("line.separator") + System.getProperty("line.separator") + processingText);
                     } else {
-                        waitingHandler.setWaitingText("Processing: " + spectrumFileName + " (" + (i + 1) + "/" + getMgfFiles().size() + ")");
+                        waitingHandler.setWaitingText(processingText);
+                    }
+                    long nSpectra = SpectrumFactory.getInstance().getNSpectra(spectrumFileName);
+                    File metricsFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + PROCESS_METRICS_FILE_SUFFIX);
+                    searchProgress.setCurrentFile(processingText, nSpectra);
+
+                    if (scratchStager != null) {
+                        spectrumFile = scratchStager.getStagedInputFile(i);
+                    }
+
+                    // reduce the peak lists once for all search engines
+                    File preprocessedSpectrumFile = null;
+                    SpectrumIndexMapping spectrumIndexMapping = null;
+                    if (spectrumPreprocessingSettings != null && spectrumPreprocessingSettings.isEnabled() && !waitingHandler.isRunCanceled()) {
+                        preprocessedSpectrumFile = preprocessSpectrumFile(spectrumFile, outputTempFolder);
+
+                        // Comet and Tide report the spectra by index, keep the index of the original file
+                        if ((enableComet || enableTide) && !waitingHandler.isRunCanceled()) {
+                            spectrumIndexMapping = new SpectrumIndexMapping(spectrumFile, preprocessedSpectrumFile);
+                            if (spectrumIndexMapping.isIdentity()) {
+                                spectrumIndexMapping = null;
+                            }
+                        }
+                        spectrumFile = preprocessedSpectrumFile;
+                    }
+
+                    File ms2File = null;
+                    if ((enableComet || enableTide) && !waitingHandler.isRunCanceled()) {
+                        waitingHandler.appendReport("Converting spectrum file " + spectrumFileName + " for Comet/Tide.", true, true); // @TODO: from "Comet 2015.02 rev. 0" mgf is supported directly
+                        ms2File = new File(getPeakListFolder(getJarFilePath()), Util.removeExtension(spectrumFileName) + ".ms2");
+                        Ms2Exporter.mgfToMs2(spectrumFile, ms2File, true);
+                        if (spectrumIndexMapping != null) {
+                            spectrumIndexMapping.renumberMs2Scans(ms2File);
+                        }
+                    }
+
+                    // in a cascade search Comet and Tide run first and the other engines only search the spectra they did not identify
+                    boolean cascadeSearch = cascadeSearchSettings != null && cascadeSearchSettings.isEnabled() && (enableComet || enableTide)
+                            && (enableXtandem || enableMyriMatch || enableMsAmanda || enableMsgf || enableOmssa || enableAndromeda);
+                    File cascadeSpectrumFile = null;
+                    if (cascadeSearch) {
+                        searchWithCometAndTide(spectrumFileName, ms2File, nSpectra, metricsFile, outputTempFolder, stagedOutputFolder, identificationFiles);
+                    }
+                    if (cascadeSearch && !waitingHandler.isRunCanceled()) {
+                        cascadeSpectrumFile = writeCascadeSpectrumFile(spectrumFile, spectrumFileName, identificationFiles.get(spectrumFileName), spectrumIndexMapping, outputTempFolder);
+                        if (cascadeSpectrumFile != null) {
+                            spectrumFile = cascadeSpectrumFile;
+                            nSpectra = SpectrumFactory.getInstance().getNSpectra(spectrumFileName);
+                            searchProgress.reduceCurrentFile(nSpectra, getEnabledEngines().size() - (enableComet ? 1 : 0) - (enableTide ? 1 : 0));
+                        }
                     }
 
                     if (enableXtandem && !waitingHandler.isRunCanceled()) {
                         File xTandemOutputFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + ".t.xml");
+                        EngineResourceProfile xTandemProfile = getResourceProfile("xtandem", Advocate.xtandem, nSpectra);
                         xTandemProcessBuilder = new TandemProcessBuilder(xtandemLocation,
                                 spectrumFile.getAbsolutePath(), xTandemOutputFile.getAbsolutePath(),
-                                searchParameters, waitingHandler, nThreads);
+                                searchParameters, waitingHandler, xTandemProfile);
 
-                        currentProcess = xTandemProcessBuilder;
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.xtandem.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        xTandemProcessBuilder.startProcess();
+                        boolean xTandemCompleted = runSearchProcess(xTandemProcessBuilder, xTandemProfile, spectrumFileName, nSpectra, metricsFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             if (renameXTandemFile) {
@@ -1898,7 +2557,7 @@ public class SearchHandler {
                                     File xTandemFile = result.get(0);
                                     File destinationFile = new File(outputTempFolder, getXTandemFileName(spectrumFileName));
                                     try {
-                                        xTandemFile.renameTo(destinationFile);
+                                        FileTransfer.move(xTandemFile, destinationFile);
                                         xTandemFile = destinationFile;
                                     } catch (Exception e) {
                                         e.printStackTrace();
@@ -1913,8 +2572,11 @@ public class SearchHandler {
                                 runIdentificationFiles = new HashMap<Integer, File>();
                                 identificationFiles.put(spectrumFileName, runIdentificationFiles);
                             }
-                            if (xTandemOutputFile.exists()) {
+                            if (!xTandemCompleted) {
+                                xTandemOutputFile.delete();
+                            } else if (xTandemOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.xtandem.getIndex(), xTandemOutputFile);
+                                packageIdentificationFile(stagedOutputFolder, spectrumFileName, Advocate.xtandem.getIndex(), xTandemOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.xtandem.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -1924,12 +2586,14 @@ public class SearchHandler {
 
                     if (enableMyriMatch && !waitingHandler.isRunCanceled()) {
                         File myriMatchOutputFile = new File(outputTempFolder, getMyriMatchFileName(spectrumFileName));
+                        EngineResourceProfile myriMatchProfile = getResourceProfile("myrimatch", Advocate.myriMatch, nSpectra);
+                        boolean useChargeStateFromMS = spectrumPreprocessingSettings != null && spectrumPreprocessingSettings.isEnabled()
+                                && spectrumPreprocessingSettings.isInferCharges();
                         myriMatchProcessBuilder = new MyriMatchProcessBuilder(myriMatchLocation,
-                                spectrumFile.getAbsolutePath(), outputTempFolder, searchParameters, waitingHandler, nThreads);
-                        currentProcess = myriMatchProcessBuilder;
+                                spectrumFile.getAbsolutePath(), outputTempFolder, searchParameters, waitingHandler, myriMatchProfile, useChargeStateFromMS);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.myriMatch.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        myriMatchProcessBuilder.startProcess();
+                        boolean myriMatchCompleted = runSearchProcess(myriMatchProcessBuilder, myriMatchProfile, spectrumFileName, nSpectra, metricsFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -1938,8 +2602,11 @@ public class SearchHandler {
                                 identificationFiles.put(spectrumFileName, runIdentificationFiles);
                             }
 
-                            if (myriMatchOutputFile.exists()) {
+                            if (!myriMatchCompleted) {
+                                myriMatchOutputFile.delete();
+                            } else if (myriMatchOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.myriMatch.getIndex(), myriMatchOutputFile);
+                                packageIdentificationFile(stagedOutputFolder, spectrumFileName, Advocate.myriMatch.getIndex(), myriMatchOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.myriMatch.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -1950,12 +2617,12 @@ public class SearchHandler {
                     if (enableMsAmanda && !waitingHandler.isRunCanceled()) {
                         File msAmandaOutputFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + ".ms-amanda.csv");
                         String filePath = msAmandaOutputFile.getAbsolutePath();
+                        EngineResourceProfile msAmandaProfile = getResourceProfile("ms_amanda", Advocate.msAmanda, nSpectra);
                         msAmandaProcessBuilder = new MsAmandaProcessBuilder(msAmandaLocation,
-                                spectrumFile.getAbsolutePath(), filePath, searchParameters, waitingHandler, nThreads);
-                        currentProcess = msAmandaProcessBuilder;
+                                spectrumFile.getAbsolutePath(), filePath, searchParameters, waitingHandler, msAmandaProfile);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.msAmanda.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        msAmandaProcessBuilder.startProcess();
+                        boolean msAmandaCompleted = runSearchProcess(msAmandaProcessBuilder, msAmandaProfile, spectrumFileName, nSpectra, metricsFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -1963,8 +2630,11 @@ public class SearchHandler {
                                 runIdentificationFiles = new HashMap<Integer, File>();
                                 identificationFiles.put(spectrumFileName, runIdentificationFiles);
                             }
-                            if (msAmandaOutputFile.exists()) {
+                            if (!msAmandaCompleted) {
+                                msAmandaOutputFile.delete();
+                            } else if (msAmandaOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.msAmanda.getIndex(), msAmandaOutputFile);
+                                packageIdentificationFile(stagedOutputFolder, spectrumFileName, Advocate.msAmanda.getIndex(), msAmandaOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.msAmanda.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -1974,12 +2644,13 @@ public class SearchHandler {
 
                     if (enableMsgf && !waitingHandler.isRunCanceled()) {
                         File msgfOutputFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + ".msgf.mzid");
+                        EngineResourceProfile msgfProfile = getResourceProfile("msgf", Advocate.msgf, nSpectra);
                         msgfProcessBuilder = new MsgfProcessBuilder(msgfLocation,
-                                spectrumFile.getAbsolutePath(), msgfOutputFile, searchParameters, waitingHandler, nThreads, useCommandLine);
-                        currentProcess = msgfProcessBuilder;
+                                spectrumFile.getAbsolutePath(), msgfOutputFile, searchParameters, waitingHandler, msgfProfile.getnThreads(), useCommandLine);
+                        msgfProcessBuilder.setInProcess(msgfInProcess);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.msgf.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        msgfProcessBuilder.startProcess();
+                        boolean msgfCompleted = runSearchProcess(msgfProcessBuilder, msgfProfile, spectrumFileName, nSpectra, metricsFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -1987,8 +2658,11 @@ public class SearchHandler {
                                 runIdentificationFiles = new HashMap<Integer, File>();
                                 identificationFiles.put(spectrumFileName, runIdentificationFiles);
                             }
-                            if (msgfOutputFile.exists()) {
+                            if (!msgfCompleted) {
+                                msgfOutputFile.delete();
+                            } else if (msgfOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.msgf.getIndex(), msgfOutputFile);
+                                packageIdentificationFile(stagedOutputFolder, spectrumFileName, Advocate.msgf.getIndex(), msgfOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.msgf.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -1998,12 +2672,12 @@ public class SearchHandler {
 
                     if (enableOmssa && !waitingHandler.isRunCanceled()) {
                         File omssaOutputFile = new File(outputTempFolder, getOMSSAFileName(spectrumFileName));
+                        EngineResourceProfile omssaProfile = getResourceProfile("omssa", Advocate.omssa, nSpectra);
                         omssaProcessBuilder = new OmssaclProcessBuilder(omssaLocation,
-                                spectrumFile.getAbsolutePath(), omssaOutputFile, searchParameters, waitingHandler, nThreads);
-                        currentProcess = omssaProcessBuilder;
+                                spectrumFile.getAbsolutePath(), omssaOutputFile, searchParameters, waitingHandler, omssaProfile.getnThreads());
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.omssa.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        omssaProcessBuilder.startProcess();
+                        boolean omssaCompleted = runSearchProcess(omssaProcessBuilder, omssaProfile, spectrumFileName, nSpectra, metricsFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -2011,8 +2685,11 @@ public class SearchHandler {
                                 runIdentificationFiles = new HashMap<Integer, File>();
                                 identificationFiles.put(spectrumFileName, runIdentificationFiles);
                             }
-                            if (omssaOutputFile.exists()) {
+                            if (!omssaCompleted) {
+                                omssaOutputFile.delete();
+                            } else if (omssaOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.omssa.getIndex(), omssaOutputFile);
+                                packageIdentificationFile(stagedOutputFolder, spectrumFileName, Advocate.omssa.getIndex(), omssaOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.omssa.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2020,79 +2697,8 @@ public class SearchHandler {
                         }
                     }
 
-                    File ms2File = null;
-                    if ((enableComet || enableTide) && !waitingHandler.isRunCanceled()) {
-                        waitingHandler.appendReport("Converting spectrum file " + spectrumFileName + " for Comet/Tide.", true, true); // @TODO: from "Comet 2015.02 rev. 0" mgf is supported directly
-                        ms2File = new File(getPeakListFolder(getJarFilePath()), Util.removeExtension(spectrumFileName) + ".ms2");
-                        Ms2Exporter.mgfToMs2(spectrumFile, ms2File, true);
-                    }
-
-                    if (enableComet && !waitingHandler.isRunCanceled()) {
-
-                        File cometOutputFile = new File(outputTempFolder, getCometFileName(spectrumFileName));
-                        // Comet does not overwrite files but crashes
-                        if (cometOutputFile.exists()) {
-                            cometOutputFile.delete();
-                        }
-                        cometProcessBuilder = new CometProcessBuilder(cometLocation, searchParameters, ms2File, waitingHandler, nThreads);
-                        currentProcess = cometProcessBuilder;
-                        waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.comet.getName() + ".", true, true);
-                        waitingHandler.appendReportEndLine();
-                        cometProcessBuilder.startProcess();
-
-                        if (!waitingHandler.isRunCanceled()) {
-
-                            // move the comet result file to the results folder
-                            File tempCometOutputFile = new File(getPeakListFolder(getJarFilePath()), getCometFileName(spectrumFileName));
-                            FileUtils.moveFile(tempCometOutputFile, cometOutputFile);
-
-                            HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
-                            if (runIdentificationFiles == null) {
-                                runIdentificationFiles = new HashMap<Integer, File>();
-                                identificationFiles.put(spectrumFileName, runIdentificationFiles);
-                            }
-                            if (cometOutputFile.exists()) {
-                                runIdentificationFiles.put(Advocate.comet.getIndex(), cometOutputFile);
-                            } else {
-                                waitingHandler.appendReport("Could not find " + Advocate.comet.getName() + " result file for " + spectrumFileName + ".", true, true);
-                            }
-                            waitingHandler.increasePrimaryProgressCounter();
-                        }
-                    }
-
-                    if (enableTide && !waitingHandler.isRunCanceled()) {
-
-                        File tideOutputFile = new File(outputTempFolder, getTideFileName(spectrumFileName));
-
-                        // perform the tide search
-                        if (!waitingHandler.isRunCanceled()) {
-                            tideSearchProcessBuilder = new TideSearchProcessBuilder(tideLocation, searchParameters, ms2File, waitingHandler);
-                            currentProcess = tideSearchProcessBuilder;
-                            waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.tide.getName() + ".", true, true);
-                            waitingHandler.appendReportEndLine();
-                            tideSearchProcessBuilder.startProcess();
-                        }
-
-                        if (!waitingHandler.isRunCanceled()) {
-
-                            String tideResultsFolderName = ((TideParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.tide.getIndex())).getOutputFolderName();
-
-                            // move the tide result file to the results folder
-                            File tempTideOutputFile = new File(new File(tideLocation, tideResultsFolderName), getTideFileName(spectrumFileName));
-                            FileUtils.moveFile(tempTideOutputFile, tideOutputFile);
-
-                            HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
-                            if (runIdentificationFiles == null) {
-                                runIdentificationFiles = new HashMap<Integer, File>();
-                                identificationFiles.put(spectrumFileName, runIdentificationFiles);
-                            }
-                            if (tideOutputFile.exists()) {
-                                runIdentificationFiles.put(Advocate.tide.getIndex(), tideOutputFile);
-                            } else {
-                                waitingHandler.appendReport("Could not find " + Advocate.tide.getName() + " result file for " + spectrumFileName + ".", true, true);
-                            }
-                            waitingHandler.increasePrimaryProgressCounter();
-                        }
+                    if (!cascadeSearch) {
+                        searchWithCometAndTide(spectrumFileName, ms2File, nSpectra, metricsFile, outputTempFolder, stagedOutputFolder, identificationFiles);
                     }
 
                     File aplFile = null;
@@ -2106,29 +2712,27 @@ public class SearchHandler {
                     if (enableAndromeda && !waitingHandler.isRunCanceled()) {
 
                         File andromedaOutputFile = new File(outputTempFolder, getAndromedaFileName(spectrumFileName));
-                        andromedaProcessBuilder = new AndromedaProcessBuilder(andromedaLocation, searchParameters, aplFile, waitingHandler, nThreads);
-                        currentProcess = andromedaProcessBuilder;
+                        EngineResourceProfile andromedaProfile = getResourceProfile("andromeda", Advocate.andromeda, nSpectra);
+                        andromedaProcessBuilder = new AndromedaProcessBuilder(andromedaLocation, searchParameters, aplFile, waitingHandler, andromedaProfile.getnThreads());
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.andromeda.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        andromedaProcessBuilder.startProcess();
+                        boolean andromedaCompleted = runSearchProcess(andromedaProcessBuilder, andromedaProfile, spectrumFileName, nSpectra, metricsFile);
 
                         if (!waitingHandler.isRunCanceled()) {
 
                             File tempResultFile = new File(aplFile.getParent(), getAndromedaFileName(spectrumFileName));
                             if (tempResultFile.exists()) {
-                                Util.copyFile(tempResultFile, andromedaOutputFile);
-                                try {
-                                    tempResultFile.delete();
-                                } catch (Exception e) {
-                                    waitingHandler.appendReport("An error occurred when attempting to delete " + tempResultFile.getName() + ".", true, true);
-                                }
+                                FileTransfer.move(tempResultFile, andromedaOutputFile);
                                 HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
                                 if (runIdentificationFiles == null) {
                                     runIdentificationFiles = new HashMap<Integer, File>();
                                     identificationFiles.put(spectrumFileName, runIdentificationFiles);
                                 }
-                                if (andromedaOutputFile.exists()) {
+                                if (!andromedaCompleted) {
+                                    andromedaOutputFile.delete();
+                                } else if (andromedaOutputFile.exists()) {
                                     runIdentificationFiles.put(Advocate.andromeda.getIndex(), andromedaOutputFile);
+                                    packageIdentificationFile(stagedOutputFolder, spectrumFileName, Advocate.andromeda.getIndex(), andromedaOutputFile);
                                 } else {
                                     waitingHandler.appendReport("Could not find " + Advocate.andromeda.getName() + " result file for " + spectrumFileName + ".", true, true);
                                 }
@@ -2150,6 +2754,18 @@ public class SearchHandler {
                     if (ms2File != null) {
                         ms2File.delete();
                     }
+                    if (cascadeSpectrumFile != null) {
+                        cascadeSpectrumFile.delete();
+                    }
+                    if (preprocessedSpectrumFile != null) {
+                        preprocessedSpectrumFile.delete();
+                    }
+                    if (preprocessedSpectrumFile != null || cascadeSpectrumFile != null) {
+                        SpectrumFactory.getInstance().addSpectra(getMgfFiles().get(i));
+                    }
+                    if (scratchStager != null) {
+                        scratchStager.releaseInputFile(i);
+                    }
                 }
 
                 // delete the tide index and the crux-output folder?
@@ -2175,7 +2791,16 @@ public class SearchHandler {
                     // organize the output files
                     waitingHandler.appendReport("Zipping output files.", true, true);
                     waitingHandler.appendReportEndLine();
-                    organizeOutput(outputFolder, outputTempFolder, identificationFiles, parametersOutputFile, includeDateInOutputName);
+                    organizeOutput(stagedOutputFolder, outputTempFolder, identificationFiles, parametersOutputFile, includeDateInOutputName, zipPackager);
+                    if (scratchStager != null) {
+                        if (outputOption == OutputOption.no_zip) {
+                            scratchStager.writeBackFolder(stagedOutputFolder, outputFolder);
+                        }
+                        if (enablePeptideShaker) {
+                            waitingHandler.appendReport("Writing the output files to " + outputFolder.getAbsolutePath() + ".", true, true);
+                            scratchStager.waitForWriteBack();
+                        }
+                    }
                     waitingHandler.increasePrimaryProgressCounter();
                 }
 
@@ -2267,9 +2892,10 @@ public class SearchHandler {
                             }
                         }
                     } else {
+                        // the files staged on the scratch folder were moved to the output folder
                         for (HashMap<Integer, File> fileMap : identificationFiles.values()) {
                             for (File identificationFile : fileMap.values()) {
-                                identificationFilesList.add(identificationFile);
+                                identificationFilesList.add(ScratchStager.getDestinationFile(identificationFile, stagedOutputFolder, outputFolder));
                             }
                         }
                     }
@@ -2288,54 +2914,1010 @@ public class SearchHandler {
                             currentProcess = peptideShakerProcessBuilder;
                             waitingHandler.appendReport("Processing identification files with PeptideShaker.", true, true);
 
-                            // cancel the protein tree if not done
-                            if (proteinTreeWorker != null && !proteinTreeWorker.isFinished()) {
-                                proteinTreeWorker.cancelBuild();
-                                while (!proteinTreeWorker.isFinished()) {
-                                    // wait until the tree is closed
-                                    Thread.sleep(100);
-                                }
-                            }
+                            // cancel the protein tree if not done
+                            if (proteinTreeWorker != null && !proteinTreeWorker.isFinished()) {
+                                proteinTreeWorker.cancelBuild();
+                                while (!proteinTreeWorker.isFinished()) {
+                                    // wait until the tree is closed
+                                    Thread.sleep(100);
+                                }
+                            }
+
+                            peptideShakerProcessBuilder.setLogFolder(processLogs);
+                            peptideShakerProcessBuilder.startProcess();
+                        } else {
+                            enablePeptideShaker = false;
+                            waitingHandler.appendReportEndLine();
+                            waitingHandler.appendReport("No identification files to process with PeptideShaker!", true, true);
+                            waitingHandler.appendReportEndLine();
+                        }
+                    }
+                } else {
+                    // cancel the protein tree if not done
+                    if (proteinTreeWorker != null && !proteinTreeWorker.isFinished()) {
+                        proteinTreeWorker.cancelBuild();
+                        while (!proteinTreeWorker.isFinished()) {
+                            // wait until the tree is closed
+                            Thread.sleep(10);
+                        }
+                    }
+                }
+
+                if (zipPackager != null && waitingHandler.isRunCanceled()) {
+                    zipPackager.cancel();
+                }
+
+                // save the logs also when canceled
+                saveProcessLogs();
+
+                // complete the moves from the scratch folder before deleting any temporary file
+                if (scratchStager != null && !waitingHandler.isRunCanceled()) {
+                    scratchStager.waitForWriteBack();
+                }
+
+                // the staged output folder is deleted with the scratch folder
+                if (!outputFolder.getAbsolutePath().equals(outputTempFolder.getAbsolutePath())
+                        && !stagedOutputFolder.getAbsolutePath().equals(outputTempFolder.getAbsolutePath())) {
+                    if (waitingHandler.isRunCanceled()) {
+                        deleteInBackground(outputTempFolder);
+                    } else {
+                        Util.deleteDir(outputTempFolder);
+                    }
+                }
+
+                if (scratchStager != null) {
+                    if (waitingHandler.isRunCanceled()) {
+                        scratchStager.cancel();
+                    } else {
+                        scratchStager.close();
+                    }
+                }
+
+                restoreSearchInput();
+
+                finished = true;
+                if (!waitingHandler.isRunCanceled()) {
+                    searchCompleted();
+                } else {
+                    searchCrashed();
+                }
+
+                notifySearchFinished();
+
+                return 0;
+            } catch (Exception e) {
+                if (zipPackager != null) {
+                    zipPackager.cancel();
+                }
+                saveProcessLogs();
+                if (scratchStager != null) {
+                    try {
+                        scratchStager.close();
+                    } catch (InterruptedException ie) {
+                        // the scratch folder is cleaned when closing the tool
+                    }
+                }
+                restoreSearchInput();
+                waitingHandler.appendReport("Error: " + e.getMessage(), true, true);
+                waitingHandler.appendReport("An error occurred while running SearchGUI. Please contact the developers.", true, true);
+                e.printStackTrace();
+                searchCrashed();
+                return 1;
+            } finally {
+                restoreSearchInput();
+            }
+        }
+
+        /**
+         * Deletes a folder in the background so that a canceled search
+         * returns without waiting for the temporary files to be deleted.
+         *
+         * @param folder the folder to delete
+         */
+        private void deleteInBackground(final File folder) {
+            Thread cleaner = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Util.deleteDir(folder);
+                }
+            }, "SearchGUI temp cleanup");
+            cleaner.start();
+        }
+
+        /**
+         * Queues an identification file for compression in its output zip
+         * file, together with the data files if needed, so that the zipping
+         * overlaps with the remaining searches.
+         *
+         * @param outputFolder the output folder
+         * @param spectrumFileName the name of the spectrum file searched
+         * @param algorithm the index of the search engine
+         * @param identificationFile the identification file
+         *
+         * @throws IOException thrown if the zip file cannot be created
+         */
+        private void packageIdentificationFile(File outputFolder, String spectrumFileName, int algorithm, File identificationFile) throws IOException {
+            if (zipPackager != null) {
+                File zipFile = getOutputZipFile(outputFolder, spectrumFileName, algorithm, includeDateInOutputName);
+                zipPackager.addFile(zipFile, null, identificationFile, outputCompression.getCompressionLevel(identificationFile, false));
+                if (outputData) {
+                    addDataToZip(zipPackager, zipFile);
+                }
+            }
+        }
+
+        /**
+         * Returns the resources to give to a search engine for the current
+         * spectrum file and reports them.
+         *
+         * @param engine the engine as named in the engine resource settings
+         * @param advocate the advocate of the engine
+         * @param nSpectra the number of spectra in the file
+         *
+         * @return the resources to give to the search engine
+         */
+        private EngineResourceProfile getResourceProfile(String engine, Advocate advocate, long nSpectra) {
+            EngineResourceProfile resourceProfile = EngineResourceProfile.getProfile(engine, engineResourceSettings, getEngineScalingHistory(), nThreads, nSpectra, searchParameters.getFastaFile().length());
+            waitingHandler.appendReport(advocate.getName() + " resources: " + resourceProfile.getDescription() + ".", true, true);
+            return resourceProfile;
+        }
+
+        /**
+         * Runs a search engine process under the watchdog. A process stopped
+         * by the watchdog is started again on the same input until the number
+         * of retries is exhausted.
+         *
+         * @param processBuilder the process to run
+         * @param resourceProfile the resources given to the process
+         * @param spectrumFileName the name of the spectrum file searched
+         * @param nSpectra the number of spectra searched by the process
+         * @param metricsFile the file where to write the resources used by
+         * the process
+         *
+         * @return true if the process completed or was canceled, false if it
+         * was stopped by the watchdog and its results should be discarded
+         *
+         * @throws InterruptedException thrown if the thread is interrupted
+         * while waiting for memory
+         */
+        private boolean runSearchProcess(SearchGUIProcessBuilder processBuilder, EngineResourceProfile resourceProfile, String spectrumFileName, long nSpectra, File metricsFile) throws InterruptedException {
+
+            currentProcess = processBuilder;
+            processBuilder.setProgressListener(searchProgress);
+            if (processWatchdogSettings != null && processWatchdogSettings.isEnabled()) {
+                processBuilder.setWatchdog(processWatchdogSettings.getMaxIdleTimeMillis(), processWatchdogSettings.getMaxRunTime(nSpectra));
+            }
+
+            // wait until the process fits in the memory budget
+            MemoryAdmissionController.Reservation reservation = null;
+            if (memoryAdmissionController != null) {
+                reservation = memoryAdmissionController.acquire(processBuilder.getType(), resourceProfile.getEstimatedMemory(), waitingHandler);
+                if (reservation == null) {
+                    return true;
+                }
+                reservation.setProcess(processBuilder);
+            }
+
+            // pin the process to its own CPUs
+            CpuPlacement cpuPlacement = null;
+            if (engineResourceSettings.isCpuPinning() && CpuPlacement.isSupported()) {
+                cpuPlacement = CpuPlacement.allocate(resourceProfile.getnThreads());
+                if (cpuPlacement != null) {
+                    waitingHandler.appendReport(processBuilder.getType() + " pinned to " + cpuPlacement + ".", true, true);
+                }
+            }
+            processBuilder.setCpuPlacement(cpuPlacement);
+            processBuilder.setLogFolder(processLogs);
+
+            try {
+                for (int attempt = 0;; attempt++) {
+                    long startTime = System.currentTimeMillis();
+                    processBuilder.startProcess();
+                    long wallTime = System.currentTimeMillis() - startTime;
+                    writeProcessMetrics(processBuilder, spectrumFileName, metricsFile, resourceProfile.getnThreads());
+                    if (waitingHandler.isRunCanceled()) {
+                        return true;
+                    }
+                    if (!processBuilder.isStoppedByWatchdog()) {
+                        Integer exitValue = processBuilder.getExitValue();
+                        if (EngineResourceSettings.isThreaded(resourceProfile.getEngine()) && exitValue != null && exitValue == 0) {
+                            getEngineScalingHistory().addRun(resourceProfile.getEngine(), resourceProfile.getnThreads(), nSpectra, searchParameters.getFastaFile().length(), wallTime);
+                        }
+                        return true;
+                    }
+                    if (attempt >= processWatchdogSettings.getnRetries()) {
+                        waitingHandler.appendReport(processBuilder.getType() + " failed after " + (attempt + 1) + " attempt(s), continuing without its results.", true, true);
+                        return false;
+                    }
+                    waitingHandler.appendReport("Restarting " + processBuilder.getType() + " (attempt " + (attempt + 2) + ").", true, true);
+                }
+            } finally {
+                if (cpuPlacement != null) {
+                    cpuPlacement.release();
+                }
+                if (memoryAdmissionController != null) {
+                    memoryAdmissionController.release(reservation);
+                }
+            }
+        }
+
+        /**
+         * Creates the admission controller of the memory intensive jobs of the
+         * search. The budget is set in the engine resource settings, by
+         * default the memory available when the search starts.
+         *
+         * @return the admission controller, null if the memory is not limited
+         */
+        private MemoryAdmissionController createMemoryAdmissionController() {
+
+            Integer budget = engineResourceSettings.getOverride(EngineResourceSettings.MEMORY_BUDGET);
+            long budgetBytes;
+            if (budget != null) {
+                budgetBytes = budget * 1024L * 1024L;
+            } else {
+                budgetBytes = EngineResourceProfile.getAvailableMemory();
+            }
+
+            if (budgetBytes <= 0) {
+                return null;
+            }
+
+            waitingHandler.appendReport("Memory budget: " + budgetBytes / (1024 * 1024) + " MB.", true, true);
+            return new MemoryAdmissionController(budgetBytes);
+        }
+
+        /**
+         * Appends the resources used by the last run of a process to the
+         * metrics file of the spectrum file searched. The metrics file is
+         * included in the output together with the other reports.
+         *
+         * @param processBuilder the process
+         * @param spectrumFileName the name of the spectrum file searched
+         * @param metricsFile the metrics file
+         * @param processThreads the number of threads given to the process
+         */
+        private void writeProcessMetrics(SearchGUIProcessBuilder processBuilder, String spectrumFileName, File metricsFile, int processThreads) {
+
+            ProcessResourceMonitor resourceMonitor = processBuilder.getResourceMonitor();
+            if (resourceMonitor == null) {
+                return;
+            }
+
+            try {
+                boolean newFile = !metricsFile.exists();
+                BufferedWriter bw = new BufferedWriter(new FileWriter(metricsFile, true));
+                try {
+                    if (newFile) {
+                        bw.write(ProcessResourceMonitor.getHeader());
+                        bw.newLine();
+                    }
+                    bw.write(resourceMonitor.getMetricsLine(processBuilder.getType(), spectrumFileName, processThreads, processBuilder.getCpuPlacement()));
+                    bw.newLine();
+                } finally {
+                    bw.close();
+                }
+                if (newFile) {
+                    addReportFile(spectrumFileName, metricsFile);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                waitingHandler.appendReport("Failed to write the process metrics to " + metricsFile.getName() + ": " + e.getMessage(), true, true);
+            }
+        }
+
+        /**
+         * Writes a pre-processed version of the given spectrum file in the
+         * peak list folder. The file name and spectrum titles are unchanged so
+         * that the search engine results can be mapped back to the original
+         * file, the engines reporting spectra by index are given the index of
+         * the spectra in the original file, see SpectrumIndexMapping. When
+         * inferring charges, the charges of the spectra without charge are
+         * written to the pre-processed file and the spectra without evidence
+         * are left without charge. When clustering, only the cluster
+         * representatives are kept and the mapping to the other members is
+         * added to the reports. When sorting, the mapping to the original
+         * spectrum order is added to the reports.
+         *
+         * @param spectrumFile the spectrum file
+         * @param outputTempFolder the folder where to write the reports
+         *
+         * @return the pre-processed spectrum file
+         *
+         * @throws IOException thrown if an error occurred while reading or
+         * writing a file
+         * @throws InterruptedException thrown if a thread is interrupted
+         * @throws ClassNotFoundException thrown if the spectrum index cannot be
+         * deserialized
+         */
+        private File preprocessSpectrumFile(File spectrumFile, File outputTempFolder) throws IOException, InterruptedException, ClassNotFoundException {
+
+            waitingHandler.appendReport("Pre-processing " + spectrumFile.getName() + ": " + spectrumPreprocessingSettings.getDescription() + ".", true, true);
+
+            spectrumPreprocessingSettings.setFragmentTolerance(searchParameters.getFragmentIonAccuracy(), searchParameters.getFragmentAccuracyType() == SearchParameters.MassAccuracyType.PPM);
+
+            File folder = new File(getPeakListFolder(getJarFilePath()), preprocessedPeakListsSubFolder);
+            if (!folder.exists()) {
+                folder.mkdirs();
+            }
+            File preprocessedFile = new File(folder, spectrumFile.getName());
+
+            SpectrumProcessorChain processorChain = new SpectrumProcessorChain();
+            SpectrumQualityFilter qualityFilter = null;
+            if (spectrumPreprocessingSettings.getQualityThreshold() > 0) {
+                qualityFilter = new SpectrumQualityFilter(spectrumPreprocessingSettings.getQualityThreshold(), spectrumPreprocessingSettings.getFragmentToleranceDa(1000));
+                processorChain.addProcessor(qualityFilter);
+            }
+            ChargeInference chargeInference = null;
+            if (spectrumPreprocessingSettings.isInferCharges()) {
+                chargeInference = new ChargeInference(searchParameters.getMinChargeSearched().value, searchParameters.getMaxChargeSearched().value,
+                        spectrumPreprocessingSettings.getFragmentToleranceDa(1000));
+                processorChain.addProcessor(chargeInference);
+            }
+            if (spectrumPreprocessingSettings.isPeakFilteringEnabled()) {
+                processorChain.addProcessor(new PeakListPreprocessor(spectrumPreprocessingSettings));
+            }
+
+            if (!processorChain.isEmpty()) {
+
+                MgfFileProcessor mgfFileProcessor = new MgfFileProcessor(nThreads, waitingHandler);
+                mgfFileProcessor.process(spectrumFile, preprocessedFile, processorChain);
+
+                if (qualityFilter != null) {
+                    ArrayList<String> excludedSpectra = qualityFilter.getExcludedSpectra();
+                    File excludedSpectraFile = new File(outputTempFolder, Util.removeExtension(spectrumFile.getName()) + EXCLUDED_SPECTRA_FILE_SUFFIX);
+                    BufferedWriter bw = new BufferedWriter(new FileWriter(excludedSpectraFile));
+                    try {
+                        bw.write("Title\tQuality Score");
+                        bw.newLine();
+                        for (String excludedSpectrum : excludedSpectra) {
+                            bw.write(excludedSpectrum);
+                            bw.newLine();
+                        }
+                    } finally {
+                        bw.close();
+                    }
+                    addReportFile(spectrumFile.getName(), excludedSpectraFile);
+                    waitingHandler.appendReport(excludedSpectra.size() + " of " + mgfFileProcessor.getnSpectraRead() + " spectra excluded with a quality score below "
+                            + spectrumPreprocessingSettings.getQualityThreshold() + ".", true, true);
+                }
+
+                if (chargeInference != null) {
+                    int nInferred = chargeInference.getnInferred();
+                    String chargesPerSpectrum = nInferred > 0 ? " (" + Util.roundDouble(((double) chargeInference.getnChargesInferred()) / nInferred, 2) + " charges per spectrum)" : "";
+                    waitingHandler.appendReport("Charge inferred for " + nInferred + " of " + chargeInference.getnWithoutCharge() + " spectra without charge"
+                            + chargesPerSpectrum + ".", true, true);
+                }
+
+                waitingHandler.appendReport(mgfFileProcessor.getnSpectraWritten() + " spectra pre-processed, peak list size reduced from "
+                        + Util.roundDouble(spectrumFile.length() / 1048576.0, 1) + " MB to " + Util.roundDouble(preprocessedFile.length() / 1048576.0, 1) + " MB.", true, true);
+            } else {
+                FileTransfer.link(spectrumFile, preprocessedFile);
+            }
+
+            if (spectrumPreprocessingSettings.isClusteringEnabled() && !waitingHandler.isRunCanceled()) {
+
+                spectrumPreprocessingSettings.setPrecursorTolerance(searchParameters.getPrecursorAccuracy(), searchParameters.getPrecursorAccuracyType() == SearchParameters.MassAccuracyType.PPM);
+
+                SpectrumClusterer spectrumClusterer = new SpectrumClusterer(spectrumPreprocessingSettings.getClusteringSimilarity(),
+                        spectrumPreprocessingSettings.getPrecursorTolerance(), spectrumPreprocessingSettings.isPrecursorTolerancePpm(), nThreads, waitingHandler);
+                File clusteredFile = new File(folder, spectrumFile.getName() + CLUSTERED_FILE_EXTENSION);
+                int nClusters = spectrumClusterer.cluster(preprocessedFile, clusteredFile);
+
+                if (waitingHandler.isRunCanceled()) {
+                    clusteredFile.delete();
+                    return preprocessedFile;
+                }
+                if (!preprocessedFile.delete() || !clusteredFile.renameTo(preprocessedFile)) {
+                    throw new IOException("Impossible to replace " + preprocessedFile.getAbsolutePath() + " by the clustered spectra.");
+                }
+
+                File clustersFile = new File(outputTempFolder, Util.removeExtension(spectrumFile.getName()) + SPECTRUM_CLUSTERS_FILE_SUFFIX);
+                spectrumClusterer.writeMapping(clustersFile);
+                addReportFile(spectrumFile.getName(), clustersFile);
+
+                int nSpectra = 0;
+                for (ArrayList<String> members : spectrumClusterer.getClusters().values()) {
+                    nSpectra += members.size();
+                }
+                waitingHandler.appendReport(nSpectra + " spectra grouped in " + nClusters + " clusters, only the cluster representatives are searched.", true, true);
+            }
+
+            if (spectrumPreprocessingSettings.isSortByPrecursorMass() && !waitingHandler.isRunCanceled()) {
+
+                File sortedFile = new File(folder, spectrumFile.getName() + SORTED_FILE_EXTENSION);
+                File orderFile = new File(outputTempFolder, Util.removeExtension(spectrumFile.getName()) + SPECTRUM_ORDER_FILE_SUFFIX);
+                SpectrumSorter spectrumSorter = new SpectrumSorter(nThreads, SpectrumSorter.DEFAULT_CHUNK_SIZE, waitingHandler);
+                spectrumSorter.sort(preprocessedFile, sortedFile, orderFile);
+
+                if (!waitingHandler.isRunCanceled()) {
+                    if (!preprocessedFile.delete() || !sortedFile.renameTo(preprocessedFile)) {
+                        throw new IOException("Impossible to replace " + preprocessedFile.getAbsolutePath() + " by the sorted spectra.");
+                    }
+                    addReportFile(spectrumFile.getName(), orderFile);
+                    waitingHandler.appendReport("Spectra sorted by precursor mass.", true, true);
+                }
+            }
+
+            // the engine input converters use the spectrum factory, point it to the reduced file
+            SpectrumFactory.getInstance().addSpectra(preprocessedFile);
+            waitingHandler.appendReportEndLine();
+
+            return preprocessedFile;
+        }
+
+        /**
+         * Estimates the mass errors of every spectrum file by searching a
+         * random subset of its spectra with Comet and tightens the tolerances
+         * of the search parameters to cover the errors of the confident hits.
+         * If enabled, the spectrum files are replaced by recalibrated copies.
+         * The tolerances are only tightened when all files could be
+         * calibrated, and never widened. The errors estimated are added to the
+         * reports.
+         *
+         * @param outputTempFolder the folder where to write the reports
+         *
+         * @throws IOException thrown if an error occurred while reading or
+         * writing a file
+         * @throws InterruptedException thrown if a thread is interrupted
+         * @throws ClassNotFoundException thrown if a spectrum index cannot be
+         * deserialized
+         */
+        private void calibrate(File outputTempFolder) throws IOException, InterruptedException, ClassNotFoundException {
+
+            if (cometLocation == null) {
+                waitingHandler.appendReport("Calibration: Comet not found, the tolerances are not changed.", true, true);
+                return;
+            }
+
+            String decoyTag = null;
+            try {
+                decoyTag = SequenceFactory.getFastaIndex(searchParameters.getFastaFile(), false, null).getDecoyTag();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            File folder = new File(getPeakListFolder(getJarFilePath()), calibrationPeakListsSubFolder);
+            if (!folder.exists()) {
+                folder.mkdirs();
+            }
+            File recalibratedFolder = new File(getPeakListFolder(getJarFilePath()), recalibratedPeakListsSubFolder);
+            if (calibrationSettings.isRecalibrate() && !recalibratedFolder.exists()) {
+                recalibratedFolder.mkdirs();
+            }
+
+            boolean precursorPpm = searchParameters.getPrecursorAccuracyType() == SearchParameters.MassAccuracyType.PPM;
+            boolean fragmentPpm = searchParameters.getFragmentAccuracyType() == SearchParameters.MassAccuracyType.PPM;
+            boolean recalibrate = calibrationSettings.isRecalibrate();
+            boolean precursorCalibrated = true;
+            boolean fragmentCalibrated = true;
+            double precursorTolerance = 0;
+            double fragmentTolerance = 0;
+            MgfFileProcessor mgfFileProcessor = new MgfFileProcessor(nThreads, waitingHandler);
+
+            for (int i = 0; i < getMgfFiles().size(); i++) {
+
+                if (waitingHandler.isRunCanceled()) {
+                    return;
+                }
+
+                File spectrumFile = getMgfFiles().get(i);
+                String spectrumFileName = spectrumFile.getName();
+
+                // search a random subset of the spectra with the current tolerances
+                File sampleFile = new File(folder, Util.removeExtension(spectrumFileName) + "_sample.mgf");
+                mgfFileProcessor.process(spectrumFile, sampleFile, new SpectrumSampler(SpectrumFactory.getInstance().getNSpectra(spectrumFileName), calibrationSettings.getnSpectra()));
+                long nSample = mgfFileProcessor.getnSpectraWritten();
+                SpectrumFactory.getInstance().addSpectra(sampleFile);
+                File ms2File = new File(folder, Util.removeExtension(sampleFile.getName()) + ".ms2");
+                Ms2Exporter.mgfToMs2(sampleFile, ms2File, true);
+
+                EngineResourceProfile cometProfile = getResourceProfile("comet", Advocate.comet, nSample);
+                cometProcessBuilder = new CometProcessBuilder(cometLocation, searchParameters, ms2File, waitingHandler, cometProfile);
+                waitingHandler.appendReport("Calibration: processing " + nSample + " spectra of " + spectrumFileName + " with " + Advocate.comet.getName() + ".", true, true);
+                waitingHandler.appendReportEndLine();
+                File metricsFile = new File(folder, Util.removeExtension(sampleFile.getName()) + PROCESS_METRICS_FILE_SUFFIX);
+                boolean cometCompleted = runSearchProcess(cometProcessBuilder, cometProfile, sampleFile.getName(), nSample, metricsFile);
+                ms2File.delete();
+                metricsFile.delete();
+
+                File cometFile = new File(folder, getCometFileName(sampleFile.getName()));
+                MassCalibration massCalibration = new MassCalibration(searchParameters.getFragmentIonAccuracy(), fragmentPpm);
+                if (cometCompleted && cometFile.exists() && !waitingHandler.isRunCanceled()) {
+                    CascadeFilter cascadeFilter = new CascadeFilter(CalibrationSettings.FDR, decoyTag);
+                    cascadeFilter.addCometResults(cometFile);
+                    massCalibration.addCometResults(cometFile, cascadeFilter.getIdentifiedSpectra(), sampleFile);
+                }
+                cometFile.delete();
+                sampleFile.delete();
+
+                if (waitingHandler.isRunCanceled()) {
+                    return;
+                }
+                if (massCalibration.getnPrecursorErrors() < CalibrationSettings.MIN_PSMS) {
+                    waitingHandler.appendReport("Calibration: " + massCalibration.getnPrecursorErrors() + " confident hits found for " + spectrumFileName
+                            + ", at least " + CalibrationSettings.MIN_PSMS + " are needed.", true, true);
+                    precursorCalibrated = false;
+                    fragmentCalibrated = false;
+                    continue;
+                }
+
+                double precursorShift = massCalibration.getPrecursorShift();
+                double fragmentShift = massCalibration.getFragmentShift();
+                double filePrecursorTolerance = massCalibration.getPrecursorTolerance(precursorPpm, recalibrate);
+                double fileFragmentTolerance = massCalibration.getFragmentTolerance(fragmentPpm, recalibrate);
+                precursorTolerance = Math.max(precursorTolerance, filePrecursorTolerance);
+                if (massCalibration.getnFragmentErrors() < CalibrationSettings.MIN_PSMS) {
+                    fragmentCalibrated = false;
+                    fragmentShift = 0;
+                } else {
+                    fragmentTolerance = Math.max(fragmentTolerance, fileFragmentTolerance);
+                }
+
+                String precursorUnit = precursorPpm ? " ppm" : " Da";
+                String fragmentUnit = fragmentPpm ? " ppm" : " Da";
+                File calibrationFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + CALIBRATION_FILE_SUFFIX);
+                BufferedWriter bw = new BufferedWriter(new FileWriter(calibrationFile));
+                try {
+                    bw.write("Spectra searched\t" + nSample);
+                    bw.newLine();
+                    bw.write("Confident hits\t" + massCalibration.getnPrecursorErrors());
+                    bw.newLine();
+                    bw.write("Fragment ions matched\t" + massCalibration.getnFragmentErrors());
+                    bw.newLine();
+                    bw.write("Precursor systematic error (ppm)\t" + precursorShift);
+                    bw.newLine();
+                    bw.write("Fragment systematic error (ppm)\t" + fragmentShift);
+                    bw.newLine();
+                    bw.write("Precursor tolerance needed (" + precursorUnit.trim() + ")\t" + filePrecursorTolerance);
+                    bw.newLine();
+                    bw.write("Fragment tolerance needed (" + fragmentUnit.trim() + ")\t" + fileFragmentTolerance);
+                    bw.newLine();
+                    bw.write("Recalibrated\t" + recalibrate);
+                    bw.newLine();
+                } finally {
+                    bw.close();
+                }
+                addReportFile(spectrumFileName, calibrationFile);
+
+                waitingHandler.appendReport("Calibration of " + spectrumFileName + ": " + massCalibration.getnPrecursorErrors() + " confident hits, precursor error "
+                        + Util.roundDouble(precursorShift, 2) + " ppm, fragment error " + Util.roundDouble(fragmentShift, 2) + " ppm.", true, true);
+
+                if (recalibrate) {
+                    File recalibratedFile = new File(recalibratedFolder, spectrumFileName);
+                    mgfFileProcessor.process(spectrumFile, recalibratedFile, new SpectrumRecalibrator(precursorShift, fragmentShift));
+                    SpectrumFactory.getInstance().addSpectra(recalibratedFile);
+                    mgfFiles.set(i, recalibratedFile);
+                }
+            }
+
+            // never widen the tolerances, round them up to keep them readable
+            if (precursorCalibrated && precursorTolerance > 0 && precursorTolerance < searchParameters.getPrecursorAccuracy()) {
+                double tolerance = roundUp(precursorTolerance, precursorPpm ? 1 : 4);
+                waitingHandler.appendReport("Calibration: precursor tolerance set from " + searchParameters.getPrecursorAccuracy() + " to " + tolerance + (precursorPpm ? " ppm." : " Da."), true, true);
+                searchParameters.setPrecursorAccuracy(tolerance);
+            }
+            if (fragmentCalibrated && fragmentTolerance > 0 && fragmentTolerance < searchParameters.getFragmentIonAccuracy()) {
+                double tolerance = roundUp(fragmentTolerance, fragmentPpm ? 1 : 4);
+                waitingHandler.appendReport("Calibration: fragment tolerance set from " + searchParameters.getFragmentIonAccuracy() + " to " + tolerance + (fragmentPpm ? " ppm." : " Da."), true, true);
+                searchParameters.setFragmentIonAccuracy(tolerance);
+            }
+            waitingHandler.appendReportEndLine();
+        }
+
+        /**
+         * Rounds a value up to the given number of decimals.
+         *
+         * @param value the value
+         * @param decimals the number of decimals
+         *
+         * @return the rounded value
+         */
+        private double roundUp(double value, int decimals) {
+            double factor = Math.pow(10, decimals);
+            return Math.ceil(value * factor) / factor;
+        }
+
+        /**
+         * Restores the database, tolerances and spectrum files which were
+         * derived for the search by the decompression, the calibration, the
+         * two-pass and the cascade search. The spectrum factory is pointed back
+         * to the original spectrum files and the reduced peak lists of the
+         * cascade search are deleted.
+         */
+        private void restoreSearchInput() {
+            if (originalFastaFile != null) {
+                searchParameters.setFastaFile(originalFastaFile);
+                originalFastaFile = null;
+            }
+            if (originalPrecursorAccuracy != null) {
+                searchParameters.setPrecursorAccuracy(originalPrecursorAccuracy);
+                originalPrecursorAccuracy = null;
+            }
+            if (originalFragmentIonAccuracy != null) {
+                searchParameters.setFragmentIonAccuracy(originalFragmentIonAccuracy);
+                originalFragmentIonAccuracy = null;
+            }
+            if (originalMgfFiles != null) {
+                // the spectrum factory can still point to derived files of the same name, e.g. the cascade peak lists
+                mgfFiles = originalMgfFiles;
+                for (File spectrumFile : mgfFiles) {
+                    if (!GzipUtils.isGzipped(spectrumFile)) {
+                        try {
+                            SpectrumFactory.getInstance().addSpectra(spectrumFile);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                originalMgfFiles = null;
+            }
+            File cascadeFolder = new File(getPeakListFolder(getJarFilePath()), cascadePeakListsSubFolder);
+            if (cascadeFolder.exists()) {
+                Util.deleteDir(cascadeFolder);
+            }
+        }
+
+        /**
+         * Runs the first pass of a two-pass search: every spectrum file is
+         * searched with Comet against the full database and the database is
+         * reduced to the target proteins of the hits passing the false
+         * discovery rate of the two-pass search and to their decoys. The
+         * Comet results are scored on a pool of threads while Comet searches
+         * the next file.
+         *
+         * @return the reduced database, null if the full database is to be
+         * searched
+         *
+         * @throws IOException thrown if an error occurred while reading or
+         * writing a file
+         * @throws InterruptedException thrown if a thread is interrupted
+         * @throws ExecutionException thrown if an error occurred while scoring
+         * the results of the first pass
+         */
+        private File writeReducedDatabase() throws IOException, InterruptedException, ExecutionException {
+
+            if (cometLocation == null) {
+                waitingHandler.appendReport("Two-pass search: Comet not found, the full database is searched.", true, true);
+                return null;
+            }
+
+            File fastaFile = searchParameters.getFastaFile();
+            String decoyTag = null;
+            try {
+                decoyTag = SequenceFactory.getFastaIndex(fastaFile, false, null).getDecoyTag();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            final String finalDecoyTag = decoyTag;
+            final double fdr = twoPassSearchSettings.getFdr() / 100;
+
+            File folder = new File(getPeakListFolder(getJarFilePath()), firstPassPeakListsSubFolder);
+            if (!folder.exists()) {
+                folder.mkdirs();
+            }
+
+            HashSet<String> proteins = new HashSet<String>();
+            int nDecoys = 0;
+            ExecutorService scoringPool = Executors.newFixedThreadPool(nThreads);
+
+            try {
+                ArrayList<Future<CascadeFilter>> scorings = new ArrayList<Future<CascadeFilter>>(getMgfFiles().size());
+
+                for (File spectrumFile : getMgfFiles()) {
+
+                    if (waitingHandler.isRunCanceled()) {
+                        return null;
+                    }
+
+                    String spectrumFileName = spectrumFile.getName();
+                    long nSpectra = SpectrumFactory.getInstance().getNSpectra(spectrumFileName);
+                    File ms2File = new File(folder, Util.removeExtension(spectrumFileName) + ".ms2");
+                    Ms2Exporter.mgfToMs2(spectrumFile, ms2File, true);
+
+                    EngineResourceProfile cometProfile = getResourceProfile("comet", Advocate.comet, nSpectra);
+                    cometProcessBuilder = new CometProcessBuilder(cometLocation, searchParameters, ms2File, waitingHandler, cometProfile);
+                    waitingHandler.appendReport("Two-pass search: processing " + spectrumFileName + " with " + Advocate.comet.getName() + " against " + fastaFile.getName() + ".", true, true);
+                    waitingHandler.appendReportEndLine();
+                    File metricsFile = new File(folder, Util.removeExtension(spectrumFileName) + PROCESS_METRICS_FILE_SUFFIX);
+                    boolean cometCompleted = runSearchProcess(cometProcessBuilder, cometProfile, spectrumFileName, nSpectra, metricsFile);
+                    ms2File.delete();
+                    metricsFile.delete();
+
+                    final File cometFile = new File(folder, getCometFileName(spectrumFileName));
+                    if (waitingHandler.isRunCanceled()) {
+                        return null;
+                    }
+                    if (!cometCompleted || !cometFile.exists()) {
+                        waitingHandler.appendReport("Two-pass search: no " + Advocate.comet.getName() + " result for " + spectrumFileName + ", the full database is searched.", true, true);
+                        return null;
+                    }
+
+                    scorings.add(scoringPool.submit(new Callable<CascadeFilter>() {
+                        @Override
+                        public CascadeFilter call() throws Exception {
+                            CascadeFilter cascadeFilter = new CascadeFilter(fdr, finalDecoyTag);
+                            cascadeFilter.addCometResults(cometFile);
+                            cometFile.delete();
+                            return cascadeFilter;
+                        }
+                    }));
+                }
+
+                for (Future<CascadeFilter> scoring : scorings) {
+                    CascadeFilter cascadeFilter = scoring.get();
+                    proteins.addAll(cascadeFilter.getIdentifiedProteins());
+                    nDecoys += cascadeFilter.getnDecoys();
+                }
+            } finally {
+                scoringPool.shutdownNow();
+            }
+
+            if (nDecoys == 0) {
+                waitingHandler.appendReport("Two-pass search: no decoy hit found, the full database is searched.", true, true);
+                return null;
+            }
+
+            // previous reduced databases are deleted together with their indexes
+            File reducedFolder = new File(getTempFolderPath(getJarFilePath()), reducedDatabaseSubFolder);
+            if (reducedFolder.exists()) {
+                Util.deleteDir(reducedFolder);
+            }
+            reducedFolder.mkdirs();
+            File reducedFile = new File(reducedFolder, Util.removeExtension(fastaFile.getName()) + REDUCED_DATABASE_SUFFIX + ".fasta");
+
+            ReducedFastaWriter reducedFastaWriter = new ReducedFastaWriter();
+            reducedFastaWriter.write(fastaFile, reducedFile, proteins, decoyTag);
+
+            if (reducedFastaWriter.getnTargets() == 0) {
+                reducedFile.delete();
+                waitingHandler.appendReport("Two-pass search: no protein found at " + twoPassSearchSettings.getFdr() + "% FDR, the full database is searched.", true, true);
+                return null;
+            }
+
+            waitingHandler.appendReport("Two-pass search: " + reducedFastaWriter.getnTargets() + " proteins found at " + twoPassSearchSettings.getFdr() + "% FDR, "
+                    + reducedFile.getName() + " with " + reducedFastaWriter.getnDecoys() + " decoys searched by all engines.", true, true);
+            waitingHandler.appendReportEndLine();
+
+            return reducedFile;
+        }
+
+        /**
+         * Searches a spectrum file with Comet and Tide, if enabled.
+         *
+         * @param spectrumFileName the name of the spectrum file
+         * @param ms2File the spectrum file converted to ms2
+         * @param nSpectra the number of spectra in the file
+         * @param metricsFile the file where to write the metrics of the
+         * processes
+         * @param outputTempFolder the folder where to write the results
+         * @param stagedOutputFolder the output folder, on the scratch folder if
+         * any
+         * @param identificationFiles the identification files indexed by
+         * spectrum file name and algorithm
+         *
+         * @throws IOException thrown if an error occurred while reading or
+         * writing a file
+         * @throws InterruptedException thrown if a thread is interrupted
+         */
+        private void searchWithCometAndTide(String spectrumFileName, File ms2File, long nSpectra, File metricsFile, File outputTempFolder,
+                File stagedOutputFolder, HashMap<String, HashMap<Integer, File>> identificationFiles) throws IOException, InterruptedException {
+
+            if (enableComet && !waitingHandler.isRunCanceled()) {
+
+                File cometOutputFile = new File(outputTempFolder, getCometFileName(spectrumFileName));
+                // Comet does not overwrite files but crashes
+                if (cometOutputFile.exists()) {
+                    cometOutputFile.delete();
+                }
+                EngineResourceProfile cometProfile = getResourceProfile("comet", Advocate.comet, nSpectra);
+                cometProcessBuilder = new CometProcessBuilder(cometLocation, searchParameters, ms2File, waitingHandler, cometProfile);
+                waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.comet.getName() + ".", true, true);
+                waitingHandler.appendReportEndLine();
+                boolean cometCompleted = runSearchProcess(cometProcessBuilder, cometProfile, spectrumFileName, nSpectra, metricsFile);
+
+                if (!waitingHandler.isRunCanceled()) {
+
+                    // move the comet result file to the results folder, the partial results of a failed search are discarded
+                    File tempCometOutputFile = new File(getPeakListFolder(getJarFilePath()), getCometFileName(spectrumFileName));
+                    if (cometCompleted && tempCometOutputFile.exists()) {
+                        FileTransfer.move(tempCometOutputFile, cometOutputFile);
+                    } else {
+                        tempCometOutputFile.delete();
+                    }
+
+                    HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
+                    if (runIdentificationFiles == null) {
+                        runIdentificationFiles = new HashMap<Integer, File>();
+                        identificationFiles.put(spectrumFileName, runIdentificationFiles);
+                    }
+                    if (!cometCompleted) {
+                        cometOutputFile.delete();
+                    } else if (cometOutputFile.exists()) {
+                        runIdentificationFiles.put(Advocate.comet.getIndex(), cometOutputFile);
+                        packageIdentificationFile(stagedOutputFolder, spectrumFileName, Advocate.comet.getIndex(), cometOutputFile);
+                    } else {
+                        waitingHandler.appendReport("Could not find " + Advocate.comet.getName() + " result file for " + spectrumFileName + ".", true, true);
+                    }
+                    waitingHandler.increasePrimaryProgressCounter();
+                }
+            }
+
+            if (enableTide && !waitingHandler.isRunCanceled()) {
+
+                File tideOutputFile = new File(outputTempFolder, getTideFileName(spectrumFileName));
+
+                // perform the tide search
+                boolean tideSearchCompleted = false;
+                if (!waitingHandler.isRunCanceled()) {
+                    EngineResourceProfile tideProfile = getResourceProfile("tide", Advocate.tide, nSpectra);
+                    tideSearchProcessBuilder = new TideSearchProcessBuilder(tideLocation, searchParameters, ms2File, waitingHandler);
+                    waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.tide.getName() + ".", true, true);
+                    waitingHandler.appendReportEndLine();
+                    tideSearchCompleted = runSearchProcess(tideSearchProcessBuilder, tideProfile, spectrumFileName, nSpectra, metricsFile);
+                }
+
+                if (!waitingHandler.isRunCanceled()) {
+
+                    String tideResultsFolderName = ((TideParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.tide.getIndex())).getOutputFolderName();
+
+                    // move the tide result file to the results folder, the partial results of a failed search are discarded
+                    File tempTideOutputFile = new File(new File(tideLocation, tideResultsFolderName), getTideFileName(spectrumFileName));
+                    if (tideSearchCompleted && tempTideOutputFile.exists()) {
+                        FileTransfer.move(tempTideOutputFile, tideOutputFile);
+                    } else {
+                        tempTideOutputFile.delete();
+                    }
+
+                    HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
+                    if (runIdentificationFiles == null) {
+                        runIdentificationFiles = new HashMap<Integer, File>();
+                        identificationFiles.put(spectrumFileName, runIdentificationFiles);
+                    }
+                    if (!tideSearchCompleted) {
+                        tideOutputFile.delete();
+                    } else if (tideOutputFile.exists()) {
+                        runIdentificationFiles.put(Advocate.tide.getIndex(), tideOutputFile);
+                        packageIdentificationFile(stagedOutputFolder, spectrumFileName, Advocate.tide.getIndex(), tideOutputFile);
+                    } else {
+                        waitingHandler.appendReport("Could not find " + Advocate.tide.getName() + " result file for " + spectrumFileName + ".", true, true);
+                    }
+                    waitingHandler.increasePrimaryProgressCounter();
+                }
+            }
+        }
+
+        /**
+         * Writes the spectra of the given file not identified by Comet and
+         * Tide at the false discovery rate of the cascade search in the peak
+         * list folder. The file name and spectrum titles are unchanged so that
+         * the search engine results can be mapped back to the original file.
+         * The spectra identified are listed in the reports.
+         *
+         * @param spectrumFile the spectrum file searched by Comet and Tide
+         * @param spectrumFileName the name of the original spectrum file
+         * @param runIdentificationFiles the identification files of the
+         * spectrum file indexed by algorithm, can be null
+         * @param spectrumIndexMapping the mapping of the spectra to the scan
+         * numbers searched by Comet and Tide, null if the scan numbers are the
+         * index of the spectra in the spectrum file
+         * @param outputTempFolder the folder where to write the reports
+         *
+         * @return the reduced spectrum file, null if all spectra are to be
+         * searched
+         *
+         * @throws IOException thrown if an error occurred while reading or
+         * writing a file
+         * @throws ClassNotFoundException thrown if the spectrum index cannot be
+         * deserialized
+         */
+        private File writeCascadeSpectrumFile(File spectrumFile, String spectrumFileName, HashMap<Integer, File> runIdentificationFiles,
+                SpectrumIndexMapping spectrumIndexMapping, File outputTempFolder) throws IOException, ClassNotFoundException {
+
+            File cometFile = runIdentificationFiles == null ? null : runIdentificationFiles.get(Advocate.comet.getIndex());
+            File tideFile = runIdentificationFiles == null ? null : runIdentificationFiles.get(Advocate.tide.getIndex());
+            TideParameters tideParameters = (TideParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.tide.getIndex());
+            if (tideFile != null && !tideParameters.getTextOutput()) {
+                waitingHandler.appendReport("Cascade search: only the Tide text output can be scored.", true, true);
+                tideFile = null;
+            }
+            if (cometFile == null && tideFile == null) {
+                waitingHandler.appendReport("Cascade search: no result to score, all spectra are searched by the other engines.", true, true);
+                return null;
+            }
+
+            String decoyTag = null;
+            try {
+                decoyTag = SequenceFactory.getFastaIndex(searchParameters.getFastaFile(), false, null).getDecoyTag();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            CascadeFilter cascadeFilter = new CascadeFilter(cascadeSearchSettings.getFdr() / 100, decoyTag);
+            if (cometFile != null) {
+                cascadeFilter.addCometResults(cometFile);
+            }
+            if (tideFile != null) {
+                cascadeFilter.addTideResults(tideFile);
+            }
+
+            if (cascadeFilter.getnDecoys() == 0) {
+                waitingHandler.appendReport("Cascade search: no decoy hit found, all spectra are searched by the other engines.", true, true);
+                return null;
+            }
+
+            File folder = new File(getPeakListFolder(getJarFilePath()), cascadePeakListsSubFolder);
+            if (!folder.exists()) {
+                folder.mkdirs();
+            }
+            File cascadeFile = new File(folder, spectrumFileName);
+            TreeMap<Integer, String> identifiedSpectra = cascadeFilter.writeUnidentifiedSpectra(spectrumFile, cascadeFile, spectrumIndexMapping);
+
+            File identifiedSpectraFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + CASCADE_IDENTIFIED_FILE_SUFFIX);
+            BufferedWriter bw = new BufferedWriter(new FileWriter(identifiedSpectraFile));
+            try {
+                bw.write("Index\tTitle");
+                bw.newLine();
+                for (Integer index : identifiedSpectra.keySet()) {
+                    bw.write(index + "\t" + identifiedSpectra.get(index));
+                    bw.newLine();
+                }
+            } finally {
+                bw.close();
+            }
+            addReportFile(spectrumFileName, identifiedSpectraFile);
+
+            long nSpectra = SpectrumFactory.getInstance().getNSpectra(spectrumFileName);
+            waitingHandler.appendReport("Cascade search: " + identifiedSpectra.size() + " of " + nSpectra + " spectra identified at "
+                    + cascadeSearchSettings.getFdr() + "% FDR, " + (nSpectra - identifiedSpectra.size()) + " spectra searched by the other engines.", true, true);
 
-                            peptideShakerProcessBuilder.startProcess();
-                        } else {
-                            enablePeptideShaker = false;
-                            waitingHandler.appendReportEndLine();
-                            waitingHandler.appendReport("No identification files to process with PeptideShaker!", true, true);
-                            waitingHandler.appendReportEndLine();
-                        }
-                    }
-                } else {
-                    // cancel the protein tree if not done
-                    if (proteinTreeWorker != null && !proteinTreeWorker.isFinished()) {
-                        proteinTreeWorker.cancelBuild();
-                        while (!proteinTreeWorker.isFinished()) {
-                            // wait until the tree is closed
-                            Thread.sleep(10);
-                        }
-                    }
+            // the engine input converters use the spectrum factory, point it to the reduced file
+            SpectrumFactory.getInstance().addSpectra(cascadeFile);
+            waitingHandler.appendReportEndLine();
+
+            return cascadeFile;
+        }
+
+        /**
+         * Replaces the gzipped spectrum and FASTA files by decompressed copies
+         * in the temporary folder.
+         *
+         * @throws IOException thrown if an error occurred while decompressing
+         * the files
+         * @throws InterruptedException thrown if a thread is interrupted
+         */
+        private void decompressInputFiles() throws IOException, InterruptedException {
+
+            File fastaFile = searchParameters.getFastaFile();
+            boolean compressedInput = GzipUtils.isGzipped(fastaFile);
+            for (File spectrumFile : mgfFiles) {
+                if (GzipUtils.isGzipped(spectrumFile)) {
+                    compressedInput = true;
+                    break;
                 }
+            }
 
-                if (!outputFolder.getAbsolutePath().equals(outputTempFolder.getAbsolutePath())) {
-                    Util.deleteDir(outputTempFolder);
+            if (compressedInput) {
+
+                if (!useCommandLine) {
+                    waitingHandler.setWaitingText("Decompressing input files.");
                 }
 
-                finished = true;
-                if (!waitingHandler.isRunCanceled()) {
-                    searchCompleted();
-                } else {
-                    searchCrashed();
+                File decompressionFolder = GzipUtils.getDecompressionFolder(getTempFolderPath(getJarFilePath()));
+                ArrayList<File> uncompressedMgfFiles = GzipUtils.getUncompressedFiles(mgfFiles, decompressionFolder, nThreads, waitingHandler);
+                if (uncompressedMgfFiles == null) {
+                    return;
                 }
+                mgfFiles = uncompressedMgfFiles;
 
-                notifySearchFinished();
+                if (GzipUtils.isGzipped(fastaFile) && !waitingHandler.isRunCanceled()) {
+                    File uncompressedFastaFile = GzipUtils.getUncompressedFile(fastaFile, decompressionFolder, waitingHandler);
+                    if (uncompressedFastaFile == null) {
+                        return;
+                    }
+                    searchParameters.setFastaFile(uncompressedFastaFile);
+                }
 
-                return 0;
-            } catch (Exception e) {
-                waitingHandler.appendReport("Error: " + e.getMessage(), true, true);
-                waitingHandler.appendReport("An error occurred while running SearchGUI. Please contact the developers.", true, true);
-                e.printStackTrace();
-                searchCrashed();
-                return 1;
+                waitingHandler.appendReportEndLine();
             }
         }
 
@@ -2357,7 +3939,7 @@ public class SearchHandler {
     public void saveInputFile(File folder) {
 
         File outputFile = getInputFile(folder);
-        ArrayList<File> mgfFiles = new ArrayList<File>(this.mgfFiles);
+        ArrayList<File> mgfFiles = new ArrayList<File>(getDataMgfFiles());
         ArrayList<String> names = new ArrayList<String>();
         for (File file : mgfFiles) {
             names.add(file.getName());
@@ -2385,7 +3967,7 @@ public class SearchHandler {
             } catch (IOException ioe) {
                 ioe.printStackTrace();
                 // ignore error
-                mgfFiles = new ArrayList<File>(this.mgfFiles);
+                mgfFiles = new ArrayList<File>(getDataMgfFiles());
             }
         }
         try {
@@ -2501,55 +4083,71 @@ public class SearchHandler {
         @Override
         protected synchronized Object doInBackground() throws Exception {
 
-            SequenceFactory sequenceFactory = SequenceFactory.getInstance();
-
+            // wait until the tree fits in the memory budget
+            MemoryAdmissionController.Reservation reservation = null;
             try {
-                File fastaFile = sequenceFactory.getCurrentFastaFile();
-                Duration indexingTime = new Duration();
-                indexingTime.start();
-                proteinTreeWaitingHandler.appendReport("Importing " + fastaFile.getName(), true, true);
-                UtilitiesUserPreferences userPreferences = UtilitiesUserPreferences.loadUserPreferences();
-                int memoryPreference = userPreferences.getMemoryPreference();
-                long fileSize = fastaFile.length();
-                long nSequences = sequenceFactory.getNTargetSequences();
-                if (!sequenceFactory.isDefaultReversed()) {
-                    nSequences = sequenceFactory.getNSequences();
-                }
-                long sequencesPerMb = 1048576 * nSequences / fileSize;
-                long availableCachSize = 3 * memoryPreference * sequencesPerMb / 4;
-                if (availableCachSize > nSequences) {
-                    availableCachSize = nSequences;
-                } else {
-                    proteinTreeWaitingHandler.appendReport("Warning: SearchGUI cannot load your FASTA file entirely into memory. This will slow down the processing. "
-                            + "Note that using large large databases also induces random hits efficiency. "
-                            + "Try to either (i) use a smaller database, (ii) increase the memory provided to DeNovoGUI, or (iii) improve the reading speed by using an SSD disc. "
-                            + "(See also http://compomics.github.io/compomics-utilities/wiki/proteininference.html.)", true, true);
-                }
-                int cacheSize = (int) availableCachSize;
-                sequenceFactory.setnCache(cacheSize);
-                sequenceFactory.getDefaultProteinTree(nThreads, proteinTreeWaitingHandler, exceptionHandler, true);
-                if (!proteinTreeWaitingHandler.isRunCanceled()) {
-                    indexingTime.end();
-                    proteinTreeWaitingHandler.appendReport("Importing " + sequenceFactory.getFileName() + " finished (" + indexingTime.toString() + ").", true, true);
-                } else {
-                    proteinTreeWaitingHandler.appendReport("Importing " + sequenceFactory.getFileName() + " canceled.", true, true);
+                if (memoryAdmissionController != null) {
+                    reservation = memoryAdmissionController.acquire("Protein tree", getProteinTreeMemoryEstimate(), proteinTreeWaitingHandler);
+                    if (reservation == null) {
+                        finished = true;
+                        return 0;
+                    }
                 }
-                sequenceFactory.emptyCache();
-            } catch (Exception e) {
-                e.printStackTrace();
-                proteinTreeWaitingHandler.appendReport("Importing " + sequenceFactory.getFileName() + " failed: " + e.getMessage(), true, true);
-            } catch (OutOfMemoryError error) {
-                System.out.println("Ran out of memory building the protein tree!");
-                cancelBuild();
-            }
 
-            sequenceFactory.clearFactory();
+                SequenceFactory sequenceFactory = SequenceFactory.getInstance();
 
-            if (proteinTreeWaitingHandler.isRunCanceled()) {
-                sequenceFactory.deleteProteinTree(exceptionHandler);
-            }
+                try {
+                    File fastaFile = sequenceFactory.getCurrentFastaFile();
+                    Duration indexingTime = new Duration();
+                    indexingTime.start();
+                    proteinTreeWaitingHandler.appendReport("Importing " + fastaFile.getName(), true, true);
+                    UtilitiesUserPreferences userPreferences = UtilitiesUserPreferences.loadUserPreferences();
+                    int memoryPreference = userPreferences.getMemoryPreference();
+                    long fileSize = fastaFile.length();
+                    long nSequences = sequenceFactory.getNTargetSequences();
+                    if (!sequenceFactory.isDefaultReversed()) {
+                        nSequences = sequenceFactory.getNSequences();
+                    }
+                    long sequencesPerMb = 1048576 * nSequences / fileSize;
+                    long availableCachSize = 3 * memoryPreference * sequencesPerMb / 4;
+                    if (availableCachSize > nSequences) {
+                        availableCachSize = nSequences;
+                    } else {
+                        proteinTreeWaitingHandler.appendReport("Warning: SearchGUI cannot load your FASTA file entirely into memory. This will slow down the processing. "
+                                + "Note that using large large databases also induces random hits efficiency. "
+                                + "Try to either (i) use a smaller database, (ii) increase the memory provided to DeNovoGUI, or (iii) improve the reading speed by using an SSD disc. "
+                                + "(See also http://compomics.github.io/compomics-utilities/wiki/proteininference.html.)", true, true);
+                    }
+                    int cacheSize = (int) availableCachSize;
+                    sequenceFactory.setnCache(cacheSize);
+                    sequenceFactory.getDefaultProteinTree(nThreads, proteinTreeWaitingHandler, exceptionHandler, true);
+                    if (!proteinTreeWaitingHandler.isRunCanceled()) {
+                        indexingTime.end();
+                        proteinTreeWaitingHandler.appendReport("Importing " + sequenceFactory.getFileName() + " finished (" + indexingTime.toString() + ").", true, true);
+                    } else {
+                        proteinTreeWaitingHandler.appendReport("Importing " + sequenceFactory.getFileName() + " canceled.", true, true);
+                    }
+                    sequenceFactory.emptyCache();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    proteinTreeWaitingHandler.appendReport("Importing " + sequenceFactory.getFileName() + " failed: " + e.getMessage(), true, true);
+                } catch (OutOfMemoryError error) {
+                    System.out.println("Ran out of memory building the protein tree!");
+                    cancelBuild();
+                }
 
-            DerbyUtil.closeConnection();
+                sequenceFactory.clearFactory();
+
+                if (proteinTreeWaitingHandler.isRunCanceled()) {
+                    sequenceFactory.deleteProteinTree(exceptionHandler);
+                }
+
+                DerbyUtil.closeConnection();
+            } finally {
+                if (memoryAdmissionController != null) {
+                    memoryAdmissionController.release(reservation);
+                }
+            }
 
             if (guiWaitingDialog != null) {
                 // change the icon to the waiting icon
@@ -2560,6 +4158,31 @@ public class SearchHandler {
             return 0;
         }
 
+        /**
+         * Returns an estimate of the memory used to build the protein tree: the
+         * sequences kept in cache, stored as two bytes per residue, and the
+         * same again for the tree nodes and peptide indexes, capped at the
+         * maximal heap size.
+         *
+         * @return an estimate of the memory used to build the protein tree in
+         * bytes
+         */
+        private long getProteinTreeMemoryEstimate() {
+            long maxMemory = Runtime.getRuntime().maxMemory();
+            File fastaFile = SequenceFactory.getInstance().getCurrentFastaFile();
+            if (fastaFile == null) {
+                return 0;
+            }
+            long cacheSize = fastaFile.length();
+            try {
+                int memoryPreference = UtilitiesUserPreferences.loadUserPreferences().getMemoryPreference();
+                cacheSize = Math.min(cacheSize, 3L * memoryPreference * 1048576 / 4);
+            } catch (Exception e) {
+                // use the size of the file
+            }
+            return Math.min(4 * cacheSize, maxMemory);
+        }
+
         /**
          * Cancel the building of the tree.
          */
@@ -2827,78 +4450,45 @@ public class SearchHandler {
      * @throws IOException thrown if there is a problem with the files
      */
     public void organizeOutput(File outputFolder, File tempOutputFolder, HashMap<String, HashMap<Integer, File>> identificationFiles, File parametersFile, boolean includeDate) throws IOException {
+        organizeOutput(outputFolder, tempOutputFolder, identificationFiles, parametersFile, includeDate, null);
+    }
+
+    /**
+     * Organizes the identification files in zip files according to the output
+     * option of the search handler. The files already added to the zip files
+     * by the given packager during the search are not added again. Existing
+     * zip files will be overwritten and result files will be deleted.
+     *
+     * @param outputFolder the output folder
+     * @param tempOutputFolder the folder where the raw searchgui output is
+     * stored
+     * @param identificationFiles the identification files
+     * @param parametersFile the parameters file
+     * @param includeDate if true the date will be included in the output file
+     * name
+     * @param zipPackager the packager used to zip the identification files
+     * during the search, can be null
+     *
+     * @throws IOException thrown if there is a problem with the files
+     */
+    public void organizeOutput(File outputFolder, File tempOutputFolder, HashMap<String, HashMap<Integer, File>> identificationFiles, File parametersFile, boolean includeDate, ZipPackager zipPackager) throws IOException {
+
+        // the files to add to every zip file
+        LinkedHashMap<File, ArrayList<File>> archives = new LinkedHashMap<File, ArrayList<File>>();
 
         switch (outputOption) {
 
             case grouped:
 
-                // put everything in a single zip file and delete old zip files
-                File zipFile = getDefaultOutputFile(outputFolder, includeDate);
+                // put everything in a single zip file
+                ArrayList<File> files = getCommonOutputFiles(tempOutputFolder, parametersFile, enableOmssa, enableMsAmanda ? getMgfFiles() : new ArrayList<File>());
 
-                if (zipFile.exists()) {
-                    zipFile.delete();
+                for (HashMap<Integer, File> fileMap : identificationFiles.values()) {
+                    files.addAll(fileMap.values());
                 }
 
-                FileOutputStream fos = new FileOutputStream(zipFile);
-
-                try {
-                    BufferedOutputStream bos = new BufferedOutputStream(fos);
-
-                    try {
-                        ZipOutputStream out = new ZipOutputStream(bos);
-
-                        // find the uncompressed size of all the files to add to the zip
-                        long totalUncompressedSize = getTotalUncompressedSize(tempOutputFolder, parametersFile, identificationFiles);
-                        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-                        waitingHandler.setSecondaryProgressCounter(0);
-                        waitingHandler.setMaxSecondaryProgressCounter(100);
-
-                        try {
-                            // add input file
-                            File inputFile = getInputFile(tempOutputFolder);
-                            ZipUtils.addFileToZip(inputFile, out, waitingHandler, totalUncompressedSize);
-
-                            // add search parameters files
-                            ZipUtils.addFileToZip(parametersFile, out, waitingHandler, totalUncompressedSize);
-
-                            if (enableOmssa) {
-                                // add OMSSA modification files
-                                File modificationsFile = new File(tempOutputFolder, "omssa_mods.xml");
-                                ZipUtils.addFileToZip(modificationsFile, out, waitingHandler, totalUncompressedSize);
-
-                                File userModificationsFile = new File(tempOutputFolder, "omssa_usermods.xml");
-                                ZipUtils.addFileToZip(userModificationsFile, out, waitingHandler, totalUncompressedSize);
-                            }
-
-                            if (enableMsAmanda) {
-                                // add MS Amanda settings file
-                                for (File spectrumFile : mgfFiles) {
-                                    String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
-                                    File settingsFile = new File(tempOutputFolder, newName);
-                                    if (settingsFile.exists()) {
-                                        ZipUtils.addFileToZip(settingsFile, out, waitingHandler, totalUncompressedSize);
-                                    }
-                                }
-                            }
-
-                            for (HashMap<Integer, File> fileMap : identificationFiles.values()) {
-                                for (File identificationFile : fileMap.values()) {
-                                    ZipUtils.addFileToZip(identificationFile, out, waitingHandler, totalUncompressedSize);
-                                }
-                            }
-
-                            if (outputData) {
-                                addDataToZip(out, totalUncompressedSize);
-                            }
-                        } finally {
-                            out.close();
-                        }
-                    } finally {
-                        bos.close();
-                    }
-                } finally {
-                    fos.close();
-                }
+                files.addAll(getReportFiles(null));
+                archives.put(getDefaultOutputFile(outputFolder, includeDate), files);
 
                 break;
 
@@ -2908,81 +4498,23 @@ public class SearchHandler {
                 HashMap<Integer, ArrayList<File>> algorithmToFileMap = new HashMap<Integer, ArrayList<File>>();
                 for (HashMap<Integer, File> fileMap : identificationFiles.values()) {
                     for (Integer algorithm : fileMap.keySet()) {
-                        ArrayList<File> files = algorithmToFileMap.get(algorithm);
-                        if (files == null) {
-                            files = new ArrayList<File>();
-                            algorithmToFileMap.put(algorithm, files);
+                        ArrayList<File> algorithmFiles = algorithmToFileMap.get(algorithm);
+                        if (algorithmFiles == null) {
+                            algorithmFiles = new ArrayList<File>();
+                            algorithmToFileMap.put(algorithm, algorithmFiles);
                         }
-                        files.add(fileMap.get(algorithm));
+                        algorithmFiles.add(fileMap.get(algorithm));
                     }
                 }
 
-                File inputFile = getInputFile(tempOutputFolder);
-
-                // find the uncompressed size of all the files to add to the zip
-                long totalUncompressedSize = 0;
-                for (Integer algorithm : algorithmToFileMap.keySet()) {
-                    totalUncompressedSize += getTotalUncompressedSizeAlgorithm(inputFile, tempOutputFolder, algorithm, parametersFile, algorithmToFileMap.get(algorithm));
-                }
-                waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-                waitingHandler.setSecondaryProgressCounter(0);
-                waitingHandler.setMaxSecondaryProgressCounter(100);
-
                 for (Integer algorithm : algorithmToFileMap.keySet()) {
 
                     String advocateName = Advocate.getAdvocate(algorithm).getName();
-                    zipFile = getDefaultOutputFile(outputFolder, advocateName, includeDate);
-
-                    if (zipFile.exists()) {
-                        zipFile.delete();
-                    }
-                    fos = new FileOutputStream(zipFile);
-                    try {
-                        BufferedOutputStream bos = new BufferedOutputStream(fos);
-                        try {
-                            ZipOutputStream out = new ZipOutputStream(bos);
-                            try {
-                                // add input file
-                                ZipUtils.addFileToZip(inputFile, out, waitingHandler, totalUncompressedSize);
-
-                                // add search parameters files
-                                ZipUtils.addFileToZip(parametersFile, out, waitingHandler, totalUncompressedSize);
-
-                                if (algorithm == Advocate.omssa.getIndex()) {
-                                    File modificationsFile = new File(tempOutputFolder, "omssa_mods.xml");
-                                    ZipUtils.addFileToZip(modificationsFile, out, waitingHandler, totalUncompressedSize);
-
-                                    File userModificationsFile = new File(tempOutputFolder, "omssa_usermods.xml");
-                                    ZipUtils.addFileToZip(userModificationsFile, out, waitingHandler, totalUncompressedSize);
-                                }
-                                if (algorithm == Advocate.msAmanda.getIndex()) {
-                                    // add MS Amanda settings file
-                                    for (File spectrumFile : mgfFiles) {
-                                        String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
-                                        File settingsFile = new File(tempOutputFolder, newName);
-                                        if (settingsFile.exists()) {
-                                            ZipUtils.addFileToZip(settingsFile, out, waitingHandler, totalUncompressedSize);
-                                        }
-                                    }
-                                }
-
-                                for (File identificationFile : algorithmToFileMap.get(algorithm)) {
-                                    ZipUtils.addFileToZip(identificationFile, out, waitingHandler, totalUncompressedSize);
-                                }
-
-                                if (outputData) {
-                                    addDataToZip(out, totalUncompressedSize);
-                                }
-
-                            } finally {
-                                out.close();
-                            }
-                        } finally {
-                            bos.close();
-                        }
-                    } finally {
-                        fos.close();
-                    }
+                    files = getCommonOutputFiles(tempOutputFolder, parametersFile, algorithm == Advocate.omssa.getIndex(),
+                            algorithm == Advocate.msAmanda.getIndex() ? getMgfFiles() : new ArrayList<File>());
+                    files.addAll(algorithmToFileMap.get(algorithm));
+                    files.addAll(getReportFiles(null));
+                    archives.put(getDefaultOutputFile(outputFolder, advocateName, includeDate), files);
                 }
 
                 break;
@@ -2990,78 +4522,17 @@ public class SearchHandler {
             case run:
 
                 // group files according to the run name
-                inputFile = getInputFile(tempOutputFolder);
-
-                // find the uncompressed size of all the files to add to the zip
-                totalUncompressedSize = 0;
-                for (String run : identificationFiles.keySet()) {
-                    String runName = Util.removeExtension(run);
-                    totalUncompressedSize += getTotalUncompressedSizeRun(inputFile, tempOutputFolder, runName, run, parametersFile, identificationFiles);
-                }
-                waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-                waitingHandler.setSecondaryProgressCounter(0);
-                waitingHandler.setMaxSecondaryProgressCounter(100);
-
                 for (String run : identificationFiles.keySet()) {
 
                     String runName = Util.removeExtension(run);
-                    zipFile = getDefaultOutputFile(outputFolder, runName, includeDate);
-
-                    if (zipFile.exists()) {
-                        zipFile.delete();
-                    }
-
-                    fos = new FileOutputStream(zipFile);
-
-                    try {
-                        BufferedOutputStream bos = new BufferedOutputStream(fos);
-
-                        try {
-                            ZipOutputStream out = new ZipOutputStream(bos);
-
-                            try {
-                                // add input file
-                                ZipUtils.addFileToZip(inputFile, out, waitingHandler, totalUncompressedSize);
-
-                                // add search parameters files
-                                ZipUtils.addFileToZip(parametersFile, out, waitingHandler, totalUncompressedSize);
-
-                                if (enableOmssa) {
-                                    // add OMSSA modification files
-                                    File modificationsFile = new File(tempOutputFolder, "omssa_mods.xml");
-                                    ZipUtils.addFileToZip(modificationsFile, out, waitingHandler, totalUncompressedSize);
-
-                                    File userModificationsFile = new File(tempOutputFolder, "omssa_usermods.xml");
-                                    ZipUtils.addFileToZip(userModificationsFile, out, waitingHandler, totalUncompressedSize);
-                                }
-
-                                if (enableMsAmanda) {
-                                    // add MS Amanda settings file
-                                    String newName = runName + "_settings.xml";
-                                    File settingsFile = new File(tempOutputFolder, newName);
-                                    if (settingsFile.exists()) {
-                                        ZipUtils.addFileToZip(settingsFile, out, waitingHandler, totalUncompressedSize);
-                                    }
-                                }
-
-                                HashMap<Integer, File> fileMap = identificationFiles.get(run);
-                                for (File identificationFile : fileMap.values()) {
-                                    ZipUtils.addFileToZip(identificationFile, out, waitingHandler, totalUncompressedSize);
-                                }
-
-                                if (outputData) {
-                                    addDataToZip(out, totalUncompressedSize);
-                                }
-
-                            } finally {
-                                out.close();
-                            }
-                        } finally {
-                            bos.close();
-                        }
-                    } finally {
-                        fos.close();
+                    ArrayList<File> runFiles = new ArrayList<File>(1);
+                    if (enableMsAmanda) {
+                        runFiles.add(new File(run));
                     }
+                    files = getCommonOutputFiles(tempOutputFolder, parametersFile, enableOmssa, runFiles);
+                    files.addAll(identificationFiles.get(run).values());
+                    files.addAll(getReportFiles(run));
+                    archives.put(getDefaultOutputFile(outputFolder, runName, includeDate), files);
                 }
 
                 break;
@@ -3074,13 +4545,22 @@ public class SearchHandler {
                     File dataFolder = new File(outputFolder, defaultDataFolder);
                     dataFolder.mkdir();
 
-                    File dbFile = searchParameters.getFastaFile();
-                    Util.copyFile(dbFile, new File(dataFolder, dbFile.getName()));
+                    File dbFile = getDataFastaFile();
+                    FileTransfer.link(dbFile, new File(dataFolder, dbFile.getName()));
 
-                    for (File spectrumFile : getMgfFiles()) {
-                        Util.copyFile(spectrumFile, new File(dataFolder, spectrumFile.getName()));
+                    for (File spectrumFile : getDataMgfFiles()) {
+                        FileTransfer.link(spectrumFile, new File(dataFolder, spectrumFile.getName()));
                     }
                 }
+
+                // keep the reduced database with the results
+                if (reducedFastaFile != null) {
+                    FileTransfer.link(reducedFastaFile, new File(outputFolder, reducedFastaFile.getName()));
+                }
+        }
+
+        if (!archives.isEmpty()) {
+            writeZipFiles(archives, zipPackager == null ? new ZipPackager(nThreads, waitingHandler) : zipPackager);
         }
 
         if (!outputFolder.getAbsolutePath().equals(tempOutputFolder.getAbsolutePath())) {
@@ -3089,182 +4569,152 @@ public class SearchHandler {
     }
 
     /**
-     * Adds the mgf and FASTA files to the zip file.
+     * Returns the files common to all zip files: the input file, the search
+     * parameters file, the reduced database of a two-pass search, the OMSSA
+     * modification files and the MS Amanda settings files.
      *
-     * @param out the zip stream
+     * @param tempOutputFolder the folder where the raw searchgui output is
+     * stored
+     * @param parametersFile the parameters file
+     * @param omssa if true the OMSSA modification files are included
+     * @param msAmandaSpectrumFiles the spectrum files for which the MS Amanda
+     * settings files should be included
      *
-     * @throws IOException
+     * @return the files common to all zip files
      */
-    private void addDataToZip(ZipOutputStream out, long totalUncompressedSize) throws IOException {
+    private ArrayList<File> getCommonOutputFiles(File tempOutputFolder, File parametersFile, boolean omssa, ArrayList<File> msAmandaSpectrumFiles) {
 
-        // create the data folder in the zip file
-        ZipUtils.addFolderToZip(defaultDataFolder, out);
+        ArrayList<File> files = new ArrayList<File>();
+
+        // add input file
+        files.add(getInputFile(tempOutputFolder));
+
+        // add search parameters files
+        files.add(parametersFile);
 
-        File dbFile = searchParameters.getFastaFile();
-        ZipUtils.addFileToZip(defaultDataFolder, dbFile, out, waitingHandler, totalUncompressedSize);
+        // add the reduced database
+        if (reducedFastaFile != null) {
+            files.add(reducedFastaFile);
+        }
+
+        if (omssa) {
+            // add OMSSA modification files
+            files.add(new File(tempOutputFolder, "omssa_mods.xml"));
+            files.add(new File(tempOutputFolder, "omssa_usermods.xml"));
+        }
 
-        for (File spectrumFile : getMgfFiles()) {
-            ZipUtils.addFileToZip(defaultDataFolder, spectrumFile, out, waitingHandler, totalUncompressedSize);
+        // add MS Amanda settings file
+        for (File spectrumFile : msAmandaSpectrumFiles) {
+            String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
+            File settingsFile = new File(tempOutputFolder, newName);
+            if (settingsFile.exists()) {
+                files.add(settingsFile);
+            }
         }
+
+        return files;
     }
 
     /**
-     * Get the total uncompressed size of the files to compress.
+     * Writes the given zip files. The zip files are written concurrently and
+     * the entries are compressed in parallel using the number of threads of
+     * the search handler. Existing zip files will be overwritten.
      *
-     * @param outputFolder the output folder
-     * @param parametersFile the parameters file
-     * @param identificationFiles the identification files
+     * @param archives the files to add to every zip file
+     * @param zipPackager the packager to use
      *
-     * @return the total uncompressed size
+     * @throws IOException thrown if there is a problem with the files
      */
-    private long getTotalUncompressedSize(File outputFolder, File parametersFile, HashMap<String, HashMap<Integer, File>> identificationFiles) {
-
-        long totalUncompressedSize = 0;
-
-        totalUncompressedSize += getInputFile(outputFolder).length(); // input file
-        totalUncompressedSize += parametersFile.length(); // parameters file
+    private void writeZipFiles(LinkedHashMap<File, ArrayList<File>> archives, ZipPackager zipPackager) throws IOException {
 
-        if (enableOmssa) {
-            // OMSSA modification files
-            File modificationsFile = new File(outputFolder, "omssa_mods.xml");
-            totalUncompressedSize += modificationsFile.length();
-            File userModificationsFile = new File(outputFolder, "omssa_usermods.xml");
-            totalUncompressedSize += userModificationsFile.length();
-        }
-
-        if (enableMsAmanda) { // MS Amanda settings file
-            for (File spectrumFile : mgfFiles) {
-                String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
-                File settingsFile = new File(outputFolder, newName);
-                if (settingsFile.exists()) {
-                    totalUncompressedSize += settingsFile.length();
-                }
+        for (File zipFile : archives.keySet()) {
+            for (File file : archives.get(zipFile)) {
+                zipPackager.addFile(zipFile, null, file, outputCompression.getCompressionLevel(file, false));
             }
-        }
-
-        for (HashMap<Integer, File> fileMap : identificationFiles.values()) { // identification files
-            for (File identificationFile : fileMap.values()) {
-                totalUncompressedSize += identificationFile.length();
+            if (outputData) {
+                addDataToZip(zipPackager, zipFile);
             }
         }
 
-        // output data
-        if (outputData) {
-            totalUncompressedSize += getTotalUncompressedSizeOfData();
-        }
+        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+        waitingHandler.setSecondaryProgressCounter(0);
+        waitingHandler.setMaxSecondaryProgressCounter(100);
 
-        return totalUncompressedSize;
+        zipPackager.finish();
     }
 
     /**
-     * Get the total uncompressed size of the files to compress when grouping
-     * per algorithm.
+     * Returns the zip file where the given identification file should be
+     * stored according to the output option of the search handler.
      *
-     * @param inputFile the input file
      * @param outputFolder the output folder
-     * @param algorithm the algorithm of interest
-     * @param parametersFile the parameters file
-     * @param identificationFiles the identification files
+     * @param spectrumFileName the name of the spectrum file searched
+     * @param algorithm the index of the search engine
+     * @param includeDate if true the date will be included in the output file
+     * name
      *
-     * @return the total uncompressed size per algorithm
+     * @return the zip file, null if the output is not zipped
      */
-    private long getTotalUncompressedSizeAlgorithm(File inputFile, File outputFolder, Integer algorithm, File parametersFile, ArrayList<File> identificationFiles) {
-
-        long totalUncompressedSize = 0;
-
-        totalUncompressedSize += inputFile.length();
-        totalUncompressedSize += parametersFile.length();
-
-        if (algorithm == Advocate.omssa.getIndex()) {
-            // OMSSA modification files
-            File modificationsFile = new File(outputFolder, "omssa_mods.xml");
-            totalUncompressedSize += modificationsFile.length();
-            File userModificationsFile = new File(outputFolder, "omssa_usermods.xml");
-            totalUncompressedSize += userModificationsFile.length();
-        }
-
-        if (algorithm == Advocate.msAmanda.getIndex()) {
-            for (File spectrumFile : mgfFiles) {
-                String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
-                File settingsFile = new File(outputFolder, newName);
-                if (settingsFile.exists()) {
-                    totalUncompressedSize += settingsFile.length();
-                }
-            }
-        }
-
-        for (File identificationFile : identificationFiles) {
-            totalUncompressedSize += identificationFile.length();
-        }
-
-        // output data
-        if (outputData) {
-            totalUncompressedSize += getTotalUncompressedSizeOfData();
+    public File getOutputZipFile(File outputFolder, String spectrumFileName, int algorithm, boolean includeDate) {
+        switch (outputOption) {
+            case grouped:
+                return getDefaultOutputFile(outputFolder, includeDate);
+            case algorithm:
+                return getDefaultOutputFile(outputFolder, Advocate.getAdvocate(algorithm).getName(), includeDate);
+            case run:
+                return getDefaultOutputFile(outputFolder, Util.removeExtension(spectrumFileName), includeDate);
+            default:
+                return null;
         }
-
-        return totalUncompressedSize;
     }
 
     /**
-     * Get the total uncompressed size of the files to compress for the given
-     * run.
+     * Adds the mgf and FASTA files to the zip file.
      *
-     * @param inputFile the input file
-     * @param outputFolder the output folder
-     * @param runName the name of the run of interest
-     * @param run the mgf file of interest
-     * @param parametersFile the parameters file
-     * @param identificationFiles the identification files
+     * @param zipPackager the zip packager
+     * @param zipFile the zip file
      *
-     * @return the total uncompressed size of the files for the given run
+     * @throws IOException thrown if there is a problem with the files
      */
-    private long getTotalUncompressedSizeRun(File inputFile, File outputFolder, String runName, String run, File parametersFile, HashMap<String, HashMap<Integer, File>> identificationFiles) {
+    private void addDataToZip(ZipPackager zipPackager, File zipFile) throws IOException {
 
-        long totalUncompressedSize = 0;
+        // create the data folder in the zip file
+        zipPackager.addFolder(zipFile, defaultDataFolder);
 
-        totalUncompressedSize += inputFile.length();
-        totalUncompressedSize += parametersFile.length();
-        if (enableOmssa) {
-            // OMSSA modification files
-            File modificationsFile = new File(outputFolder, "omssa_mods.xml");
-            totalUncompressedSize += modificationsFile.length();
-            File userModificationsFile = new File(outputFolder, "omssa_usermods.xml");
-            totalUncompressedSize += userModificationsFile.length();
-        }
-        if (enableMsAmanda) {
-            String newName = runName + "_settings.xml";
-            File settingsFile = new File(outputFolder, newName);
-            if (settingsFile.exists()) {
-                totalUncompressedSize += settingsFile.length();
-            }
-        }
+        File dbFile = getDataFastaFile();
+        zipPackager.addFile(zipFile, defaultDataFolder, dbFile, outputCompression.getCompressionLevel(dbFile, true));
 
-        HashMap<Integer, File> fileMap = identificationFiles.get(run);
-        for (File identificationFile : fileMap.values()) {
-            totalUncompressedSize += identificationFile.length();
+        for (File spectrumFile : getDataMgfFiles()) {
+            zipPackager.addFile(zipFile, defaultDataFolder, spectrumFile, outputCompression.getCompressionLevel(spectrumFile, true));
         }
+    }
 
-        // output data
-        if (outputData) {
-            totalUncompressedSize += getTotalUncompressedSizeOfData();
+    /**
+     * Returns the database provided for the search, i.e. the database of the
+     * search parameters unless it was replaced by the decompressed or reduced
+     * database for the search.
+     *
+     * @return the database provided for the search
+     */
+    private File getDataFastaFile() {
+        if (originalFastaFile != null) {
+            return originalFastaFile;
         }
-
-        return totalUncompressedSize;
+        return searchParameters.getFastaFile();
     }
 
     /**
-     * Get the total uncompressed size of the FASTA and spectrum files.
+     * Returns the spectrum files provided for the search, i.e. the spectrum
+     * files unless they were replaced by decompressed or recalibrated files
+     * for the search.
      *
-     * @return the total uncompressed size of the FASTA and spectrum files
+     * @return the spectrum files provided for the search
      */
-    private long getTotalUncompressedSizeOfData() {
-
-        long totalUncompressedSize = searchParameters.getFastaFile().length();
-        for (File spectrumFile : getMgfFiles()) {
-            totalUncompressedSize += spectrumFile.length();
+    private ArrayList<File> getDataMgfFiles() {
+        if (originalMgfFiles != null) {
+            return originalMgfFiles;
         }
-
-        return totalUncompressedSize;
+        return getMgfFiles();
     }
 
     /**
@@ -3331,4 +4781,24 @@ public class SearchHandler {
     public static void setTempFolderPath(String aTempFolderPath) {
         tempFolderPath = aTempFolderPath;
     }
+
+    /**
+     * Returns the fast local folder where the search files are staged, null
+     * if not used.
+     *
+     * @return the folder where the search files are staged
+     */
+    public static String getScratchFolderPath() {
+        return scratchFolderPath;
+    }
+
+    /**
+     * Sets the fast local folder where the search files are staged, null to
+     * work directly in the output folder.
+     *
+     * @param aScratchFolderPath the folder where the search files are staged
+     */
+    public static void setScratchFolderPath(String aScratchFolderPath) {
+        scratchFolderPath = aScratchFolderPath;
+    }
 }
@@ -11,8 +11,10 @@ import com.compomics.util.gui.filehandling.TempFilesManager;
 import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
 import eu.isas.searchgui.SearchHandler;
+import eu.isas.searchgui.preferences.OutputCompression;
 import eu.isas.searchgui.preferences.OutputOption;
 import eu.isas.searchgui.preferences.SearchGUIPathPreferences;
+import eu.isas.searchgui.utilities.GzipUtils;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -119,6 +121,18 @@ public class SearchCLI implements Callable {
             // @TODO: not sure if this is the best place to perform the mgf validation and splitting??
             WaitingHandlerCLIImpl waitingHandlerCLIImpl = new WaitingHandlerCLIImpl();
 
+            // a dry run only inspects the input files, they are not decompressed, validated or split
+            if (searchCLIInputBean.isDryRun()) {
+                SearchHandler searchHandler = createSearchHandler(searchCLIInputBean.getSpectrumFiles());
+                waitingHandlerCLIImpl.appendReport("Dry run, the searches are estimated and not started.", true, true);
+                System.out.println(System.getProperty("line.separator") + searchHandler.getSearchPlan());
+                return null;
+            }
+
+            // decompress the gzipped input files, if any
+            File decompressionFolder = GzipUtils.getDecompressionFolder(SearchHandler.getTempFolderPath(getJarFilePath()));
+            searchCLIInputBean.decompressInputFiles(decompressionFolder, waitingHandlerCLIImpl);
+
             // @TODO: merge with code from the gui (and make it gui independent!)
             // validate that all the spectra has unique spectrum titles
             for (File tempMgfFile : searchCLIInputBean.getSpectrumFiles()) {
@@ -212,37 +226,7 @@ public class SearchCLI implements Callable {
             }
 
             // @TODO: validate the mgf files: see SearchGUI.validateMgfFile
-            SearchHandler searchHandler = new SearchHandler(searchCLIInputBean.getSearchParameters(),
-                    searchCLIInputBean.getOutputFile(), spectrumFiles, new ArrayList<File>(),
-                    searchCLIInputBean.isOmssaEnabled(), searchCLIInputBean.isXTandemEnabled(),
-                    searchCLIInputBean.isMsgfEnabled(), searchCLIInputBean.isMsAmandaEnabled(),
-                    searchCLIInputBean.isMyriMatchEnabled(), searchCLIInputBean.isCometEnabled(),
-                    searchCLIInputBean.isTideEnabled(), searchCLIInputBean.isAndromedaEnabled(),
-                    searchCLIInputBean.getOmssaLocation(), searchCLIInputBean.getXtandemLocation(),
-                    searchCLIInputBean.getMsgfLocation(), searchCLIInputBean.getMsAmandaLocation(),
-                    searchCLIInputBean.getMyriMatchLocation(), searchCLIInputBean.getCometLocation(),
-                    searchCLIInputBean.getTideLocation(), searchCLIInputBean.getAndromedaLocation(),
-                    searchCLIInputBean.getMakeblastdbLocation(),
-                    searchCLIInputBean.getNThreads(),
-                    searchCLIInputBean.isGenerateProteinTree());
-
-            OutputOption outputOption = searchCLIInputBean.getOutputOption();
-            if (outputOption != null) {
-                searchHandler.setOutputOption(outputOption);
-            }
-            Boolean includeData = searchCLIInputBean.isOutputData();
-            if (includeData != null) {
-                searchHandler.setOutputData(includeData);
-            }
-            Boolean includeDate = searchCLIInputBean.isOutputDate();
-            if (includeDate != null) {
-                searchHandler.setIncludeDateInOutputName(includeDate);
-            }
-
-            if (searchCLIInputBean.getSpecies() != null && searchCLIInputBean.getSpeciesType() != null) {
-                searchHandler.getGenePreferences().setCurrentSpecies(searchCLIInputBean.getSpecies());
-                searchHandler.getGenePreferences().setCurrentSpeciesType(searchCLIInputBean.getSpeciesType());
-            }
+            SearchHandler searchHandler = createSearchHandler(spectrumFiles);
             searchHandler.startSearch(waitingHandlerCLIImpl);
         } catch (Exception e) {
             e.printStackTrace();
@@ -257,6 +241,65 @@ public class SearchCLI implements Callable {
         return null;
     }
 
+    /**
+     * Creates the search handler configured according to the command line.
+     *
+     * @param spectrumFiles the spectrum files to search
+     *
+     * @return the search handler
+     */
+    private SearchHandler createSearchHandler(ArrayList<File> spectrumFiles) {
+
+        SearchHandler searchHandler = new SearchHandler(searchCLIInputBean.getSearchParameters(),
+                searchCLIInputBean.getOutputFile(), spectrumFiles, new ArrayList<File>(),
+                searchCLIInputBean.isOmssaEnabled(), searchCLIInputBean.isXTandemEnabled(),
+                searchCLIInputBean.isMsgfEnabled(), searchCLIInputBean.isMsAmandaEnabled(),
+                searchCLIInputBean.isMyriMatchEnabled(), searchCLIInputBean.isCometEnabled(),
+                searchCLIInputBean.isTideEnabled(), searchCLIInputBean.isAndromedaEnabled(),
+                searchCLIInputBean.getOmssaLocation(), searchCLIInputBean.getXtandemLocation(),
+                searchCLIInputBean.getMsgfLocation(), searchCLIInputBean.getMsAmandaLocation(),
+                searchCLIInputBean.getMyriMatchLocation(), searchCLIInputBean.getCometLocation(),
+                searchCLIInputBean.getTideLocation(), searchCLIInputBean.getAndromedaLocation(),
+                searchCLIInputBean.getMakeblastdbLocation(),
+                searchCLIInputBean.getNThreads(),
+                searchCLIInputBean.isGenerateProteinTree());
+
+        OutputOption outputOption = searchCLIInputBean.getOutputOption();
+        if (outputOption != null) {
+            searchHandler.setOutputOption(outputOption);
+        }
+        OutputCompression outputCompression = searchCLIInputBean.getOutputCompression();
+        if (outputCompression != null) {
+            searchHandler.setOutputCompression(outputCompression);
+        }
+        Boolean includeData = searchCLIInputBean.isOutputData();
+        if (includeData != null) {
+            searchHandler.setOutputData(includeData);
+        }
+        Boolean msgfInProcess = searchCLIInputBean.isMsgfInProcess();
+        if (msgfInProcess != null) {
+            searchHandler.setMsgfInProcess(msgfInProcess);
+        }
+        Boolean includeDate = searchCLIInputBean.isOutputDate();
+        if (includeDate != null) {
+            searchHandler.setIncludeDateInOutputName(includeDate);
+        }
+
+        searchHandler.setSpectrumPreprocessingSettings(searchCLIInputBean.getSpectrumPreprocessingSettings());
+        searchHandler.setProcessWatchdogSettings(searchCLIInputBean.getProcessWatchdogSettings());
+        searchHandler.setEngineResourceSettings(searchCLIInputBean.getEngineResourceSettings());
+        searchHandler.setCascadeSearchSettings(searchCLIInputBean.getCascadeSearchSettings());
+        searchHandler.setCalibrationSettings(searchCLIInputBean.getCalibrationSettings());
+        searchHandler.setTwoPassSearchSettings(searchCLIInputBean.getTwoPassSearchSettings());
+
+        if (searchCLIInputBean.getSpecies() != null && searchCLIInputBean.getSpeciesType() != null) {
+            searchHandler.getGenePreferences().setCurrentSpecies(searchCLIInputBean.getSpecies());
+            searchHandler.getGenePreferences().setCurrentSpeciesType(searchCLIInputBean.getSpeciesType());
+        }
+
+        return searchHandler;
+    }
+
     /**
      * Sets the path configuration.
      */
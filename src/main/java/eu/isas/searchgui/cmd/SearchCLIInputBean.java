@@ -3,7 +3,16 @@ package eu.isas.searchgui.cmd;
 import com.compomics.software.CommandLineUtils;
 import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
 import com.compomics.util.experiment.identification.protein_sequences.SequenceFactory;
+import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.preferences.CalibrationSettings;
+import eu.isas.searchgui.preferences.CascadeSearchSettings;
+import eu.isas.searchgui.preferences.OutputCompression;
 import eu.isas.searchgui.preferences.OutputOption;
+import eu.isas.searchgui.preferences.EngineResourceSettings;
+import eu.isas.searchgui.preferences.ProcessWatchdogSettings;
+import eu.isas.searchgui.preferences.SpectrumPreprocessingSettings;
+import eu.isas.searchgui.preferences.TwoPassSearchSettings;
+import eu.isas.searchgui.utilities.GzipUtils;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -150,15 +159,52 @@ public class SearchCLIInputBean {
      * The way the output should be organized.
      */
     private OutputOption outputOption = null;
+    /**
+     * The compression policy of the zipped output.
+     */
+    private OutputCompression outputCompression = null;
     /**
      * Indicates whether the mgf and FASTA files should be included in the
      * output.
      */
     private Boolean outputData = null;
+    /**
+     * Indicates whether MS-GF+ should be run inside the SearchGUI Java
+     * process.
+     */
+    private Boolean msgfInProcess = null;
     /**
      * Indicates whether the date should be included in the output file name.
      */
     private Boolean outputDate = null;
+    /**
+     * The spectrum pre-processing settings.
+     */
+    private SpectrumPreprocessingSettings spectrumPreprocessingSettings = new SpectrumPreprocessingSettings();
+    /**
+     * The settings of the watchdog of the search engine processes.
+     */
+    private ProcessWatchdogSettings processWatchdogSettings = new ProcessWatchdogSettings();
+    /**
+     * The settings of the resources given to the search engines.
+     */
+    private EngineResourceSettings engineResourceSettings = new EngineResourceSettings();
+    /**
+     * The settings of the cascade search.
+     */
+    private CascadeSearchSettings cascadeSearchSettings = new CascadeSearchSettings();
+    /**
+     * The settings of the mass calibration.
+     */
+    private CalibrationSettings calibrationSettings = new CalibrationSettings();
+    /**
+     * The settings of the two-pass search.
+     */
+    private TwoPassSearchSettings twoPassSearchSettings = new TwoPassSearchSettings();
+    /**
+     * If true, the searches are only estimated and not run.
+     */
+    private boolean dryRun = false;
 
     /**
      * Takes all the arguments from a command line.
@@ -192,8 +238,15 @@ public class SearchCLIInputBean {
             searchParameters.setFastaFile(fastaFile);
         }
 
-        // load the fasta file
-        sequenceFactory.loadFastaFile(searchParameters.getFastaFile(), null);
+        // a dry run does not index the fasta file
+        if (aLine.hasOption(SearchCLIParams.DRY_RUN.id)) {
+            dryRun = aLine.getOptionValue(SearchCLIParams.DRY_RUN.id).trim().equals("1");
+        }
+
+        // load the fasta file, compressed files are loaded by the search handler once decompressed
+        if (!dryRun && !GzipUtils.isGzipped(searchParameters.getFastaFile())) {
+            sequenceFactory.loadFastaFile(searchParameters.getFastaFile(), null);
+        }
 
         // get the mgf splitting limits
         if (aLine.hasOption(SearchCLIParams.MGF_SPLITTING_LIMIT.id)) {
@@ -349,15 +402,88 @@ public class SearchCLIInputBean {
             int option = new Integer(aLine.getOptionValue(SearchCLIParams.OUTPUT_OPTION.id));
             outputOption = OutputOption.getOutputOption(option);
         }
+        if (aLine.hasOption(SearchCLIParams.OUTPUT_COMPRESSION.id)) {
+            int option = new Integer(aLine.getOptionValue(SearchCLIParams.OUTPUT_COMPRESSION.id));
+            outputCompression = OutputCompression.getOutputCompression(option);
+        }
         if (aLine.hasOption(SearchCLIParams.OUTPUT_DATA.id)) {
             int input = new Integer(aLine.getOptionValue(SearchCLIParams.OUTPUT_DATA.id));
             outputData = input == 1;
         }
+        if (aLine.hasOption(SearchCLIParams.MSGF_IN_PROCESS.id)) {
+            int input = new Integer(aLine.getOptionValue(SearchCLIParams.MSGF_IN_PROCESS.id));
+            msgfInProcess = input == 1;
+        }
         if (aLine.hasOption(SearchCLIParams.OUTPUT_DATE.id)) {
             int input = new Integer(aLine.getOptionValue(SearchCLIParams.OUTPUT_DATE.id));
             outputDate = input == 1;
         }
 
+        // spectrum pre-processing
+        if (aLine.hasOption(SearchCLIParams.QUALITY_THRESHOLD.id)) {
+            spectrumPreprocessingSettings.setQualityThreshold(new Double(aLine.getOptionValue(SearchCLIParams.QUALITY_THRESHOLD.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.SPECTRUM_CLUSTERING.id)) {
+            spectrumPreprocessingSettings.setClusteringSimilarity(new Double(aLine.getOptionValue(SearchCLIParams.SPECTRUM_CLUSTERING.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.SORT_SPECTRA.id)) {
+            spectrumPreprocessingSettings.setSortByPrecursorMass(aLine.getOptionValue(SearchCLIParams.SORT_SPECTRA.id).trim().equals("1"));
+        }
+        if (aLine.hasOption(SearchCLIParams.INFER_CHARGES.id)) {
+            spectrumPreprocessingSettings.setInferCharges(aLine.getOptionValue(SearchCLIParams.INFER_CHARGES.id).trim().equals("1"));
+        }
+        if (aLine.hasOption(SearchCLIParams.PEAKS_PER_WINDOW.id)) {
+            spectrumPreprocessingSettings.setPeaksPerWindow(new Integer(aLine.getOptionValue(SearchCLIParams.PEAKS_PER_WINDOW.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.PEAK_WINDOW_WIDTH.id)) {
+            spectrumPreprocessingSettings.setWindowWidth(new Double(aLine.getOptionValue(SearchCLIParams.PEAK_WINDOW_WIDTH.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.PEAK_INTENSITY_THRESHOLD.id)) {
+            spectrumPreprocessingSettings.setIntensityThreshold(new Double(aLine.getOptionValue(SearchCLIParams.PEAK_INTENSITY_THRESHOLD.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.DEISOTOPING.id)) {
+            int option = new Integer(aLine.getOptionValue(SearchCLIParams.DEISOTOPING.id));
+            spectrumPreprocessingSettings.setDeisotope(option > 0);
+            spectrumPreprocessingSettings.setDeconvolute(option == 2);
+        }
+        if (aLine.hasOption(SearchCLIParams.PRECURSOR_REMOVAL.id)) {
+            spectrumPreprocessingSettings.setPrecursorRemovalWindow(new Double(aLine.getOptionValue(SearchCLIParams.PRECURSOR_REMOVAL.id)));
+        }
+
+        // search engine process watchdog
+        if (aLine.hasOption(SearchCLIParams.PROCESS_IDLE_TIMEOUT.id)) {
+            processWatchdogSettings.setMaxIdleTime(new Integer(aLine.getOptionValue(SearchCLIParams.PROCESS_IDLE_TIMEOUT.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.PROCESS_TIME_PER_SPECTRUM.id)) {
+            processWatchdogSettings.setMaxTimePerSpectrum(new Integer(aLine.getOptionValue(SearchCLIParams.PROCESS_TIME_PER_SPECTRUM.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.PROCESS_RETRIES.id)) {
+            processWatchdogSettings.setnRetries(new Integer(aLine.getOptionValue(SearchCLIParams.PROCESS_RETRIES.id)));
+        }
+
+        // search engine resources
+        if (aLine.hasOption(SearchCLIParams.ENGINE_AUTO_RESOURCES.id)) {
+            engineResourceSettings.setAutoTune(aLine.getOptionValue(SearchCLIParams.ENGINE_AUTO_RESOURCES.id).trim().equals("1"));
+        }
+        if (aLine.hasOption(SearchCLIParams.ENGINE_RESOURCES.id)) {
+            engineResourceSettings.setOverrides(aLine.getOptionValue(SearchCLIParams.ENGINE_RESOURCES.id));
+        }
+        if (aLine.hasOption(SearchCLIParams.CASCADE_FDR.id)) {
+            cascadeSearchSettings.setFdr(new Double(aLine.getOptionValue(SearchCLIParams.CASCADE_FDR.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.CALIBRATION.id)) {
+            calibrationSettings.setEnabled(aLine.getOptionValue(SearchCLIParams.CALIBRATION.id).trim().equals("1"));
+        }
+        if (aLine.hasOption(SearchCLIParams.CALIBRATION_SPECTRA.id)) {
+            calibrationSettings.setnSpectra(new Integer(aLine.getOptionValue(SearchCLIParams.CALIBRATION_SPECTRA.id)));
+        }
+        if (aLine.hasOption(SearchCLIParams.RECALIBRATE.id)) {
+            calibrationSettings.setRecalibrate(aLine.getOptionValue(SearchCLIParams.RECALIBRATE.id).trim().equals("1"));
+        }
+        if (aLine.hasOption(SearchCLIParams.TWO_PASS_FDR.id)) {
+            twoPassSearchSettings.setFdr(new Double(aLine.getOptionValue(SearchCLIParams.TWO_PASS_FDR.id)));
+        }
+
         pathSettingsCLIInputBean = new PathSettingsCLIInputBean(aLine);
     }
 
@@ -400,9 +526,32 @@ public class SearchCLIInputBean {
     public static ArrayList<File> getSpectrumFiles(String optionInput) throws FileNotFoundException {
         ArrayList<String> extentions = new ArrayList<String>();
         extentions.add(".mgf");
+        extentions.add(".mgf" + GzipUtils.EXTENSION);
         return CommandLineUtils.getFiles(optionInput, extentions);
     }
 
+    /**
+     * Decompresses the gzipped spectrum files, if any, in the given folder and
+     * replaces them by their decompressed copy so that they can be validated.
+     * The search parameters keep the FASTA file as provided, a gzipped FASTA
+     * file is decompressed by the search handler for the time of the search.
+     *
+     * @param destinationFolder the folder where to decompress the files
+     * @param waitingHandler the waiting handler
+     *
+     * @throws IOException thrown if an error occurred while decompressing the
+     * files
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    public void decompressInputFiles(File destinationFolder, WaitingHandler waitingHandler) throws IOException, InterruptedException {
+
+        ArrayList<File> uncompressedSpectrumFiles = GzipUtils.getUncompressedFiles(spectrumFiles, destinationFolder, nThreads, waitingHandler);
+        if (uncompressedSpectrumFiles == null) {
+            throw new IOException("Decompression of the spectrum files canceled.");
+        }
+        spectrumFiles = uncompressedSpectrumFiles;
+    }
+
     /**
      * Returns true if OMSSA is to be used.
      *
@@ -722,6 +871,36 @@ public class SearchCLIInputBean {
             }
         }
 
+        // check the output compression option
+        if (aLine.hasOption(SearchCLIParams.OUTPUT_COMPRESSION.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.OUTPUT_COMPRESSION.id);
+            try {
+                int option = new Integer(input);
+                if (OutputCompression.getOutputCompression(option) == null) {
+                    System.out.println(System.getProperty("line.separator") + "Output compression option \'" + option + "\' not recognized." + System.getProperty("line.separator"));
+                    return false;
+                }
+            } catch (Exception e) {
+                System.out.println(System.getProperty("line.separator") + "Output compression option \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+
+        // check the MS-GF+ in process option
+        if (aLine.hasOption(SearchCLIParams.MSGF_IN_PROCESS.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.MSGF_IN_PROCESS.id);
+            try {
+                int option = new Integer(input);
+                if (option != 0 && option != 1) {
+                    System.out.println(System.getProperty("line.separator") + "MS-GF+ in process argument should be 0 or 1. \'" + option + "\' not recognized." + System.getProperty("line.separator"));
+                    return false;
+                }
+            } catch (Exception e) {
+                System.out.println(System.getProperty("line.separator") + "MS-GF+ in process argument should be 0 or 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+
         // check the output data option
         if (aLine.hasOption(SearchCLIParams.OUTPUT_DATA.id)) {
             String input = aLine.getOptionValue(SearchCLIParams.OUTPUT_DATA.id);
@@ -752,6 +931,179 @@ public class SearchCLIInputBean {
             }
         }
 
+        // check the spectrum pre-processing options
+        if (!isFraction(aLine, SearchCLIParams.QUALITY_THRESHOLD) || !isFraction(aLine, SearchCLIParams.SPECTRUM_CLUSTERING)) {
+            return false;
+        }
+        if (!isPositiveNumber(aLine, SearchCLIParams.PEAKS_PER_WINDOW, true)
+                || !isPositiveNumber(aLine, SearchCLIParams.PEAK_INTENSITY_THRESHOLD, false)
+                || !isPositiveNumber(aLine, SearchCLIParams.PRECURSOR_REMOVAL, false)) {
+            return false;
+        }
+        if (aLine.hasOption(SearchCLIParams.PEAK_WINDOW_WIDTH.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.PEAK_WINDOW_WIDTH.id);
+            try {
+                double width = new Double(input);
+                if (width <= 0) {
+                    System.out.println(System.getProperty("line.separator") + "Peak window width argument should be strictly positive. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                    return false;
+                }
+            } catch (Exception e) {
+                System.out.println(System.getProperty("line.separator") + "Peak window width argument should be strictly positive. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+
+        // check the search engine process watchdog options
+        if (!isPositiveNumber(aLine, SearchCLIParams.PROCESS_IDLE_TIMEOUT, true)
+                || !isPositiveNumber(aLine, SearchCLIParams.PROCESS_TIME_PER_SPECTRUM, true)
+                || !isPositiveNumber(aLine, SearchCLIParams.PROCESS_RETRIES, true)) {
+            return false;
+        }
+
+        // check the calibration options
+        if (aLine.hasOption(SearchCLIParams.CALIBRATION.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.CALIBRATION.id);
+            if (!input.trim().equals("0") && !input.trim().equals("1")) {
+                System.out.println(System.getProperty("line.separator") + "Calibration argument should be 0 or 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.RECALIBRATE.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.RECALIBRATE.id);
+            if (!input.trim().equals("0") && !input.trim().equals("1")) {
+                System.out.println(System.getProperty("line.separator") + "Recalibrate argument should be 0 or 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (!isPositiveNumber(aLine, SearchCLIParams.CALIBRATION_SPECTRA, true)) {
+            return false;
+        }
+
+        // check the cascade and two-pass search options
+        if (!isPositiveNumber(aLine, SearchCLIParams.CASCADE_FDR, false)
+                || !isPositiveNumber(aLine, SearchCLIParams.TWO_PASS_FDR, false)) {
+            return false;
+        }
+        if (aLine.hasOption(SearchCLIParams.CASCADE_FDR.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.CASCADE_FDR.id);
+            if (new Double(input) >= 100) {
+                System.out.println(System.getProperty("line.separator") + "Cascade FDR argument should be a percentage lower than 100. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.TWO_PASS_FDR.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.TWO_PASS_FDR.id);
+            if (new Double(input) >= 100) {
+                System.out.println(System.getProperty("line.separator") + "Two-pass FDR argument should be a percentage lower than 100. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+
+        // check the search engine resources options
+        if (aLine.hasOption(SearchCLIParams.ENGINE_AUTO_RESOURCES.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.ENGINE_AUTO_RESOURCES.id);
+            if (!input.trim().equals("0") && !input.trim().equals("1")) {
+                System.out.println(System.getProperty("line.separator") + "Engine auto resources argument should be 0 or 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.ENGINE_RESOURCES.id)) {
+            try {
+                new EngineResourceSettings().setOverrides(aLine.getOptionValue(SearchCLIParams.ENGINE_RESOURCES.id));
+            } catch (IllegalArgumentException e) {
+                System.out.println(System.getProperty("line.separator") + e.getMessage() + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.DRY_RUN.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.DRY_RUN.id);
+            if (!input.trim().equals("0") && !input.trim().equals("1")) {
+                System.out.println(System.getProperty("line.separator") + "Dry run argument should be 0 or 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.SORT_SPECTRA.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.SORT_SPECTRA.id);
+            if (!input.trim().equals("0") && !input.trim().equals("1")) {
+                System.out.println(System.getProperty("line.separator") + "Sort spectra argument should be 0 or 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.INFER_CHARGES.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.INFER_CHARGES.id);
+            if (!input.trim().equals("0") && !input.trim().equals("1")) {
+                System.out.println(System.getProperty("line.separator") + "Infer charges argument should be 0 or 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.DEISOTOPING.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.DEISOTOPING.id);
+            try {
+                int option = new Integer(input);
+                if (option < 0 || option > 2) {
+                    System.out.println(System.getProperty("line.separator") + "Deisotoping argument should be 0, 1 or 2. \'" + option + "\' not recognized." + System.getProperty("line.separator"));
+                    return false;
+                }
+            } catch (Exception e) {
+                System.out.println(System.getProperty("line.separator") + "Deisotoping argument should be 0, 1 or 2. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Verifies that the value of the given option, if set, is a number between
+     * 0 and 1.
+     *
+     * @param aLine the command line
+     * @param option the option to verify
+     *
+     * @return true if the option is not set or its value is valid
+     */
+    private static boolean isFraction(CommandLine aLine, SearchCLIParams option) {
+        if (aLine.hasOption(option.id)) {
+            String input = aLine.getOptionValue(option.id);
+            try {
+                double value = new Double(input);
+                if (value < 0 || value > 1) {
+                    System.out.println(System.getProperty("line.separator") + option.id + " argument should be between 0 and 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                    return false;
+                }
+            } catch (Exception e) {
+                System.out.println(System.getProperty("line.separator") + option.id + " argument should be between 0 and 1. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verifies that the value of the given option, if set, is a positive
+     * number.
+     *
+     * @param aLine the command line
+     * @param option the option to verify
+     * @param integer indicates whether the value should be an integer
+     *
+     * @return true if the option is not set or its value is valid
+     */
+    private static boolean isPositiveNumber(CommandLine aLine, SearchCLIParams option, boolean integer) {
+        if (aLine.hasOption(option.id)) {
+            String input = aLine.getOptionValue(option.id);
+            try {
+                double value = integer ? new Integer(input) : new Double(input);
+                if (value < 0) {
+                    System.out.println(System.getProperty("line.separator") + option.id + " argument should be a positive number. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                    return false;
+                }
+            } catch (Exception e) {
+                System.out.println(System.getProperty("line.separator") + option.id + " argument should be a positive number. \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
         return true;
     }
 
@@ -791,6 +1143,16 @@ public class SearchCLIInputBean {
         return outputOption;
     }
 
+    /**
+     * Returns the compression policy of the zipped output chosen by the user.
+     * Null if not set.
+     *
+     * @return the compression policy of the zipped output chosen by the user
+     */
+    public OutputCompression getOutputCompression() {
+        return outputCompression;
+    }
+
     /**
      * Indicates whether input data should be included in the output.
      *
@@ -800,6 +1162,16 @@ public class SearchCLIInputBean {
         return outputData;
     }
 
+    /**
+     * Indicates whether MS-GF+ should be run inside the SearchGUI Java
+     * process, null if not set.
+     *
+     * @return whether MS-GF+ should be run inside the SearchGUI Java process
+     */
+    public Boolean isMsgfInProcess() {
+        return msgfInProcess;
+    }
+
     /**
      * Indicates whether the date should be included in the output name.
      *
@@ -808,4 +1180,67 @@ public class SearchCLIInputBean {
     public Boolean isOutputDate() {
         return outputDate;
     }
+
+    /**
+     * Returns the spectrum pre-processing settings.
+     *
+     * @return the spectrum pre-processing settings
+     */
+    public SpectrumPreprocessingSettings getSpectrumPreprocessingSettings() {
+        return spectrumPreprocessingSettings;
+    }
+
+    /**
+     * Returns the settings of the watchdog of the search engine processes.
+     *
+     * @return the settings of the watchdog of the search engine processes
+     */
+    public ProcessWatchdogSettings getProcessWatchdogSettings() {
+        return processWatchdogSettings;
+    }
+
+    /**
+     * Returns the settings of the resources given to the search engines.
+     *
+     * @return the settings of the resources given to the search engines
+     */
+    public EngineResourceSettings getEngineResourceSettings() {
+        return engineResourceSettings;
+    }
+
+    /**
+     * Returns the settings of the cascade search.
+     *
+     * @return the settings of the cascade search
+     */
+    public CascadeSearchSettings getCascadeSearchSettings() {
+        return cascadeSearchSettings;
+    }
+
+    /**
+     * Returns the settings of the mass calibration.
+     *
+     * @return the settings of the mass calibration
+     */
+    public CalibrationSettings getCalibrationSettings() {
+        return calibrationSettings;
+    }
+
+    /**
+     * Returns the settings of the two-pass search.
+     *
+     * @return the settings of the two-pass search
+     */
+    public TwoPassSearchSettings getTwoPassSearchSettings() {
+        return twoPassSearchSettings;
+    }
+
+    /**
+     * Indicates whether the searches are only estimated and not run.
+     *
+     * @return a boolean indicating whether the searches are only estimated
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
 }
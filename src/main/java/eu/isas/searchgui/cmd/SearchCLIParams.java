@@ -1,5 +1,6 @@
 package eu.isas.searchgui.cmd;
 
+import eu.isas.searchgui.preferences.OutputCompression;
 import eu.isas.searchgui.preferences.OutputOption;
 import org.apache.commons.cli.Options;
 
@@ -15,7 +16,7 @@ public enum SearchCLIParams {
     // IMPORTANT: Any change here must be reported in the wiki: 
     // https://github.com/compomics/searchgui/wiki/SearchCLI.
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    SPECTRUM_FILES("spectrum_files", "Spectrum files (mgf format), comma separated list or an entire folder.", true),
+    SPECTRUM_FILES("spectrum_files", "Spectrum files (mgf or gzipped mgf format), comma separated list or an entire folder.", true),
     OUTPUT_FOLDER("output_folder", "The output folder.", true),
     IDENTIFICATION_PARAMETERS("id_params", "The search parameters file. Generated from the GUI or using IdentificationParametersCLI.", true),
     THREADS("threads", "Number of threads to use for the processing, default: the number of cores.", false),
@@ -42,11 +43,33 @@ public enum SearchCLIParams {
     SPECIES("species", "The species to use for the gene annotation. Supported species are listed in the GUI.", false),
     SPECIES_TYPE("species_type", "The species type to use for the gene annotation. Supported species types are listed in the GUI.", false),
     OUTPUT_OPTION("output_option", "Optional result file compression (" + OutputOption.getCommandLineOptions() + "), default is '0'.", false),
+    OUTPUT_COMPRESSION("output_compression", "Optional result file compression level (" + OutputCompression.getCommandLineOptions() + "), default is '0'.", false),
+    MSGF_IN_PROCESS("msgf_in_process", "Run MS-GF+ inside the SearchGUI Java process instead of starting a new one for every spectrum file. In process runs cannot be stopped by the watchdog or when canceling (0: no, 1: yes, default is '0').", false),
+    PROCESS_IDLE_TIMEOUT("process_idle_timeout", "Stop a search engine which produces no output for the given number of minutes, 0 for no limit. Default is '0'.", false),
+    PROCESS_TIME_PER_SPECTRUM("process_time_per_spectrum", "Stop a search engine which runs longer than the given number of milliseconds per spectrum, never less than 30 minutes, 0 for no limit. Default is '0'.", false),
+    PROCESS_RETRIES("process_retries", "The number of times a search engine stopped for running too long is started again. Default is '1'.", false),
+    ENGINE_AUTO_RESOURCES("engine_auto_resources", "Set the search engine threads, batch sizes and memory modes from the cores, memory, database and spectra (0: no, 1: yes, default is '1').", false),
+    ENGINE_RESOURCES("engine_resources", "Comma separated search engine resources overriding the automatic values, e.g. comet_batch_size=5000,xtandem_threads=8. Supported: xtandem_batch_size, comet_batch_size (0 for all spectra), myrimatch_batches, ms_amanda_low_memory (0 or 1), [engine]_threads for xtandem, myrimatch, msgf, omssa, comet and andromeda, memory_budget, the memory in MB in which the engines and protein tree are started one after the other, 0 for no limit, by default the memory available, cpu_pinning (0 or 1), pinning every engine to its own CPUs within a NUMA node on Linux using numactl or taskset, and thread_exploration (0 or 1), running the engines with fewer threads in turn to learn the number of threads to use.", false),
+    CASCADE_FDR("cascade_fdr", "Cascade search: the FDR in percent at which the spectra identified by Comet and Tide are not searched by the other search engines, 0 to search all spectra with all engines. Default is '0'.", false),
+    CALIBRATION("calibration", "Estimate the mass errors by searching a subset of the spectra with Comet and tighten the tolerances accordingly (0: no, 1: yes, default is '0').", false),
+    CALIBRATION_SPECTRA("calibration_spectra", "The number of spectra of every file searched for the calibration. Default is '2000'.", false),
+    RECALIBRATE("recalibrate", "Correct the systematic mass error of the spectra when calibrating (0: no, 1: yes, default is '1').", false),
+    TWO_PASS_FDR("two_pass_fdr", "Two-pass search: the FDR in percent at which the proteins found by Comet against the full database are kept in the reduced database searched by all engines, 0 to search the full database. Note that the FDR estimated on the reduced database is biased. Default is '0'.", false),
+    DRY_RUN("dry_run", "Print the estimated time and memory of every search engine on every spectrum file and the planned order without searching (0: no, 1: yes, default is '0').", false),
     OUTPUT_DATA("output_data", "Include mgf and FASTA file in zipped output (0: no, 1: yes, default is '0').", false),
     OUTPUT_DATE("output_date", "Include date in output name (0: no, 1: yes, default is '0').", false),
     MAKEBLASTDB_LOCATION("makeblastdb_folder", "The folder where makeblastdb is installed, defaults to the provided version for the given OS.", false),
     PROTEIN_INDEX("protein_index", "Turn the FASTA file indexing on/off. (1: on, 0: off, default is '0').", false),
-    FASTA_FILE("fasta", "Optional path to the database to search. The value in the search parameters will be overridden.", false);
+    FASTA_FILE("fasta", "Optional path to the database to search, can be gzipped. The value in the search parameters will be overridden.", false),
+    QUALITY_THRESHOLD("quality_threshold", "Pre-processing: minimal spectrum quality score between 0 and 1, spectra scoring lower are not searched, 0 to search all spectra. Default is '0'.", false),
+    SPECTRUM_CLUSTERING("spectrum_clustering", "Pre-processing: minimal cosine similarity between 0 and 1 to group near-identical spectra with the same charge and precursor m/z, only one spectrum per group is searched, 0 for no clustering. Default is '0'.", false),
+    SORT_SPECTRA("sort_spectra", "Pre-processing: sort the spectra by precursor mass before the search (0: no, 1: yes, default is '0').", false),
+    INFER_CHARGES("infer_charges", "Pre-processing: infer the precursor charge of the spectra without charge from complementary and isotopic fragment ions (0: no, 1: yes, default is '0').", false),
+    PEAKS_PER_WINDOW("peaks_per_window", "Pre-processing: number of most intense peaks to keep per m/z window, 0 to keep all peaks. Default is '0'.", false),
+    PEAK_WINDOW_WIDTH("peak_window_width", "Pre-processing: width of the m/z windows in Th. Default is '100'.", false),
+    PEAK_INTENSITY_THRESHOLD("peak_intensity_threshold", "Pre-processing: minimal peak intensity in percent of the most intense peak, 0 to keep all peaks. Default is '0'.", false),
+    DEISOTOPING("deisotoping", "Pre-processing: remove isotopic peaks (0: no, 1: deisotoping, 2: deisotoping and deconvolution to charge 1, default is '0').", false),
+    PRECURSOR_REMOVAL("precursor_removal", "Pre-processing: width in Th of the window around the precursor m/z where peaks are removed, 0 for no removal. Default is '0'.", false);
 
     /**
      * Short Id for the CLI parameter.
@@ -133,11 +156,35 @@ public enum SearchCLIParams {
         output += "-" + String.format(formatter, MISSING_TITLE_HANDLING.id) + MISSING_TITLE_HANDLING.description + "\n";
         output += "-" + String.format(formatter, THREADS.id) + THREADS.description + "\n";
         output += "-" + String.format(formatter, OUTPUT_OPTION.id) + OUTPUT_OPTION.description + "\n";
+        output += "-" + String.format(formatter, OUTPUT_COMPRESSION.id) + OUTPUT_COMPRESSION.description + "\n";
         output += "-" + String.format(formatter, OUTPUT_DATA.id) + OUTPUT_DATA.description + "\n";
         output += "-" + String.format(formatter, OUTPUT_DATE.id) + OUTPUT_DATE.description + "\n";
         output += "-" + String.format(formatter, PROTEIN_INDEX.id) + PROTEIN_INDEX.description + "\n";
+        output += "-" + String.format(formatter, MSGF_IN_PROCESS.id) + MSGF_IN_PROCESS.description + "\n";
+        output += "-" + String.format(formatter, PROCESS_IDLE_TIMEOUT.id) + PROCESS_IDLE_TIMEOUT.description + "\n";
+        output += "-" + String.format(formatter, PROCESS_TIME_PER_SPECTRUM.id) + PROCESS_TIME_PER_SPECTRUM.description + "\n";
+        output += "-" + String.format(formatter, PROCESS_RETRIES.id) + PROCESS_RETRIES.description + "\n";
+        output += "-" + String.format(formatter, ENGINE_AUTO_RESOURCES.id) + ENGINE_AUTO_RESOURCES.description + "\n";
+        output += "-" + String.format(formatter, ENGINE_RESOURCES.id) + ENGINE_RESOURCES.description + "\n";
+        output += "-" + String.format(formatter, CASCADE_FDR.id) + CASCADE_FDR.description + "\n";
+        output += "-" + String.format(formatter, CALIBRATION.id) + CALIBRATION.description + "\n";
+        output += "-" + String.format(formatter, CALIBRATION_SPECTRA.id) + CALIBRATION_SPECTRA.description + "\n";
+        output += "-" + String.format(formatter, RECALIBRATE.id) + RECALIBRATE.description + "\n";
+        output += "-" + String.format(formatter, TWO_PASS_FDR.id) + TWO_PASS_FDR.description + "\n";
+        output += "-" + String.format(formatter, DRY_RUN.id) + DRY_RUN.description + "\n";
         output += "-" + String.format(formatter, FASTA_FILE.id) + FASTA_FILE.description + "\n";
 
+        output += "\n\nOptional spectrum pre-processing parameters:\n\n";
+        output += "-" + String.format(formatter, QUALITY_THRESHOLD.id) + QUALITY_THRESHOLD.description + "\n";
+        output += "-" + String.format(formatter, SPECTRUM_CLUSTERING.id) + SPECTRUM_CLUSTERING.description + "\n";
+        output += "-" + String.format(formatter, SORT_SPECTRA.id) + SORT_SPECTRA.description + "\n";
+        output += "-" + String.format(formatter, INFER_CHARGES.id) + INFER_CHARGES.description + "\n";
+        output += "-" + String.format(formatter, PEAKS_PER_WINDOW.id) + PEAKS_PER_WINDOW.description + "\n";
+        output += "-" + String.format(formatter, PEAK_WINDOW_WIDTH.id) + PEAK_WINDOW_WIDTH.description + "\n";
+        output += "-" + String.format(formatter, PEAK_INTENSITY_THRESHOLD.id) + PEAK_INTENSITY_THRESHOLD.description + "\n";
+        output += "-" + String.format(formatter, DEISOTOPING.id) + DEISOTOPING.description + "\n";
+        output += "-" + String.format(formatter, PRECURSOR_REMOVAL.id) + PRECURSOR_REMOVAL.description + "\n";
+
         output += "\n\nOptional temporary folder:\n\n";
         output += "-" + String.format(formatter, PathSettingsCLIParams.ALL.id) + PathSettingsCLIParams.ALL.description + "\n";
 
@@ -3,10 +3,16 @@ package eu.isas.searchgui.gui;
 import com.compomics.util.experiment.identification.protein_sequences.SequenceFactory;
 import com.compomics.util.gui.error_handlers.HelpDialog;
 import eu.isas.searchgui.SearchHandler;
+import eu.isas.searchgui.preferences.EngineResourceSettings;
+import eu.isas.searchgui.preferences.OutputCompression;
 import eu.isas.searchgui.preferences.OutputOption;
+import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Toolkit;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.SwingConstants;
 
 /**
@@ -59,17 +65,25 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
             proteinTreeComboBox.setSelectedIndex(1);
         }
         groupResultFilesCmb.setSelectedIndex(currentSearchHandler.getOutputOption().id);
+        compressionCmb.setSelectedIndex(currentSearchHandler.getOutputCompression().id);
         if (!currentSearchHandler.outputData()) {
             includeDataCmb.setSelectedIndex(1);
         }
         if (!currentSearchHandler.isIncludeDateInOutputName()) {
             includeDateCmb.setSelectedIndex(1);
         }
+        EngineResourceSettings engineResourceSettings = currentSearchHandler.getEngineResourceSettings();
+        if (!engineResourceSettings.isAutoTune()) {
+            engineResourcesCmb.setSelectedIndex(1);
+        }
+        engineOverridesTxt.setText(engineResourceSettings.getOverrides());
 
         renameCmb.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
         groupResultFilesCmb.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
+        compressionCmb.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
         includeDataCmb.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
         includeDateCmb.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
+        engineResourcesCmb.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
         peakPickingComboBox.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
         duplicateTitlesComboBox.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
         proteinTreeComboBox.setRenderer(new com.compomics.util.gui.renderers.AlignedListCellRenderer(SwingConstants.CENTER));
@@ -105,6 +119,12 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
         parallelProcessingPanel = new javax.swing.JPanel();
         numberOfThreadsLabel = new javax.swing.JLabel();
         numberOfThreadsSpinner = new javax.swing.JSpinner();
+        engineResourcesLabel = new javax.swing.JLabel();
+        engineResourcesCmb = new javax.swing.JComboBox();
+        engineOverridesLabel = new javax.swing.JLabel();
+        engineOverridesTxt = new javax.swing.JTextField();
+        engineScalingLabel = new javax.swing.JLabel();
+        engineScalingButton = new javax.swing.JButton();
         openDialogHelpJButton = new javax.swing.JButton();
         closeButton = new javax.swing.JButton();
         okButton = new javax.swing.JButton();
@@ -115,6 +135,8 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
         includeDataCmb = new javax.swing.JComboBox();
         includeDateLbl = new javax.swing.JLabel();
         includeDateCmb = new javax.swing.JComboBox();
+        compressionLbl = new javax.swing.JLabel();
+        compressionCmb = new javax.swing.JComboBox();
         proteinTreePanel = new javax.swing.JPanel();
         proteinTreeLabel = new javax.swing.JLabel();
         proteinTreeComboBox = new javax.swing.JComboBox();
@@ -269,15 +291,43 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
 
         numberOfThreadsSpinner.setModel(new javax.swing.SpinnerNumberModel(Integer.valueOf(1), Integer.valueOf(1), null, Integer.valueOf(1)));
 
+        engineResourcesLabel.setText("Engine Resources");
+
+        engineResourcesCmb.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Automatic", "From Parameters" }));
+        engineResourcesCmb.setToolTipText("Set the engine threads, batch sizes and memory modes from the cores, memory, database and spectra");
+
+        engineOverridesLabel.setText("Engine Overrides");
+
+        engineOverridesTxt.setHorizontalAlignment(javax.swing.JTextField.CENTER);
+        engineOverridesTxt.setToolTipText("<html>Comma separated key=value pairs, e.g. comet_batch_size=5000,xtandem_threads=8<br>Supported: xtandem_batch_size, comet_batch_size, myrimatch_batches, ms_amanda_low_memory, [engine]_threads, memory_budget (MB), cpu_pinning and thread_exploration</html>");
+
+        engineScalingLabel.setText("Engine Scaling");
+
+        engineScalingButton.setText("Show Past Runs");
+        engineScalingButton.setToolTipText("Throughput of the search engines versus number of threads measured in past runs");
+        engineScalingButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                engineScalingButtonActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout parallelProcessingPanelLayout = new javax.swing.GroupLayout(parallelProcessingPanel);
         parallelProcessingPanel.setLayout(parallelProcessingPanelLayout);
         parallelProcessingPanelLayout.setHorizontalGroup(
             parallelProcessingPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(parallelProcessingPanelLayout.createSequentialGroup()
                 .addContainerGap()
-                .addComponent(numberOfThreadsLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 230, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addGroup(parallelProcessingPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(numberOfThreadsLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 230, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(engineResourcesLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 230, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(engineOverridesLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 230, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(engineScalingLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 230, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                .addComponent(numberOfThreadsSpinner)
+                .addGroup(parallelProcessingPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(numberOfThreadsSpinner)
+                    .addComponent(engineResourcesCmb, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                    .addComponent(engineOverridesTxt)
+                    .addComponent(engineScalingButton, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
                 .addContainerGap())
         );
         parallelProcessingPanelLayout.setVerticalGroup(
@@ -287,6 +337,18 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
                 .addGroup(parallelProcessingPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(numberOfThreadsLabel)
                     .addComponent(numberOfThreadsSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(parallelProcessingPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(engineResourcesLabel)
+                    .addComponent(engineResourcesCmb, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(parallelProcessingPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(engineOverridesLabel)
+                    .addComponent(engineOverridesTxt, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(parallelProcessingPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(engineScalingLabel)
+                    .addComponent(engineScalingButton))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
@@ -343,6 +405,11 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
         includeDateCmb.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Yes", "No" }));
         includeDateCmb.setSelectedIndex(1);
 
+        compressionLbl.setText("Compression");
+
+        compressionCmb.setModel(new DefaultComboBoxModel(OutputCompression.getOutputCompressionNames()));
+        compressionCmb.setToolTipText("Compression of the zipped output");
+
         javax.swing.GroupLayout outputPanelLayout = new javax.swing.GroupLayout(outputPanel);
         outputPanel.setLayout(outputPanelLayout);
         outputPanelLayout.setHorizontalGroup(
@@ -353,9 +420,11 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
                     .addGroup(outputPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING, false)
                         .addComponent(includeDataTxt, javax.swing.GroupLayout.DEFAULT_SIZE, 230, Short.MAX_VALUE)
                         .addComponent(groupResultFilesTxt, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
-                    .addComponent(includeDateLbl))
+                    .addComponent(includeDateLbl)
+                    .addComponent(compressionLbl))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(outputPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(compressionCmb, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addComponent(includeDateCmb, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addComponent(includeDataCmb, 0, 180, Short.MAX_VALUE)
                     .addComponent(groupResultFilesCmb, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
@@ -376,6 +445,10 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
                 .addGroup(outputPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(includeDateLbl)
                     .addComponent(includeDateCmb, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(outputPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(compressionLbl)
+                    .addComponent(compressionCmb, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
@@ -482,12 +555,32 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
             currentSearchHandler.setGenerateProteinTree(proteinTreeComboBox.getSelectedIndex() == 0);
             OutputOption outputOption = OutputOption.getOutputOption(groupResultFilesCmb.getSelectedIndex());
             currentSearchHandler.setOutputOption(outputOption);
+            currentSearchHandler.setOutputCompression(OutputCompression.getOutputCompression(compressionCmb.getSelectedIndex()));
             currentSearchHandler.setOutputData(includeDataCmb.getSelectedIndex() == 0);
             currentSearchHandler.setIncludeDateInOutputName(includeDateCmb.getSelectedIndex() == 0);
+            EngineResourceSettings engineResourceSettings = new EngineResourceSettings();
+            engineResourceSettings.setAutoTune(engineResourcesCmb.getSelectedIndex() == 0);
+            engineResourceSettings.setOverrides(engineOverridesTxt.getText());
+            currentSearchHandler.setEngineResourceSettings(engineResourceSettings);
             dispose();
         }
     }//GEN-LAST:event_okButtonActionPerformed
 
+    /**
+     * Show the throughput of the search engines measured in past runs.
+     *
+     * @param evt
+     */
+    private void engineScalingButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_engineScalingButtonActionPerformed
+        SearchHandler currentSearchHandler = searchGUI.getSearchHandler();
+        JTextArea reportArea = new JTextArea(currentSearchHandler.getEngineScalingHistory().getReport((Integer) numberOfThreadsSpinner.getValue()));
+        reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        reportArea.setEditable(false);
+        JScrollPane scrollPane = new JScrollPane(reportArea);
+        scrollPane.setPreferredSize(new Dimension(600, 300));
+        JOptionPane.showMessageDialog(this, scrollPane, "Engine Scaling", JOptionPane.INFORMATION_MESSAGE);
+    }//GEN-LAST:event_engineScalingButtonActionPerformed
+
     /**
      * Close the dialog without saving.
      *
@@ -598,8 +691,16 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JPanel advancedParamatersPanel;
     private javax.swing.JButton closeButton;
+    private javax.swing.JComboBox compressionCmb;
+    private javax.swing.JLabel compressionLbl;
     private javax.swing.JComboBox duplicateTitlesComboBox;
     private javax.swing.JLabel duplicateTitlesLabel;
+    private javax.swing.JLabel engineOverridesLabel;
+    private javax.swing.JTextField engineOverridesTxt;
+    private javax.swing.JComboBox engineResourcesCmb;
+    private javax.swing.JLabel engineResourcesLabel;
+    private javax.swing.JButton engineScalingButton;
+    private javax.swing.JLabel engineScalingLabel;
     private javax.swing.JLabel fastaFileSuffixLabel;
     private javax.swing.JTextField fastaSuffixTxt;
     private javax.swing.JPanel fileProcessingPanel;
@@ -639,7 +740,16 @@ public class AdvancedSettingsDialog extends javax.swing.JDialog {
 
         boolean valid = true;
 
-        //@TODO: do something here?
+        try {
+            new EngineResourceSettings().setOverrides(engineOverridesTxt.getText());
+        } catch (IllegalArgumentException e) {
+            if (showMessage) {
+                JOptionPane.showMessageDialog(this, e.getMessage(),
+                        "Engine Overrides Error", JOptionPane.WARNING_MESSAGE);
+            }
+            valid = false;
+        }
+
         return valid;
     }
 }
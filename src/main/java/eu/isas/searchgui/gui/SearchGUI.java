@@ -79,6 +79,7 @@ import eu.isas.searchgui.processbuilders.MyriMatchProcessBuilder;
 import eu.isas.searchgui.processbuilders.OmssaclProcessBuilder;
 import eu.isas.searchgui.processbuilders.TandemProcessBuilder;
 import eu.isas.searchgui.processbuilders.TideSearchProcessBuilder;
+import eu.isas.searchgui.utilities.GzipUtils;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.UnknownHostException;
@@ -170,6 +171,11 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
      * The search parameters.
      */
     private SearchParameters searchParameters;
+    /**
+     * The decompressed copy of the gzipped database of the search parameters,
+     * null if the database is not gzipped.
+     */
+    private File uncompressedFastaFile = null;
     /**
      * The msconvert parameters.
      */
@@ -557,6 +563,8 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
         msconvertSupportButton = new javax.swing.JButton();
         menuBar = new javax.swing.JMenuBar();
         fileMenu = new javax.swing.JMenu();
+        estimateMenuItem = new javax.swing.JMenuItem();
+        jSeparator3 = new javax.swing.JPopupMenu.Separator();
         exitMenuItem = new javax.swing.JMenuItem();
         editMenu = new javax.swing.JMenu();
         settingsMenuItem = new javax.swing.JMenuItem();
@@ -1747,6 +1755,17 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
 
         fileMenu.setText("File");
 
+        estimateMenuItem.setMnemonic('E');
+        estimateMenuItem.setText("Estimate Search");
+        estimateMenuItem.setToolTipText("Estimate the time and memory of the searches");
+        estimateMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                estimateMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.add(estimateMenuItem);
+        fileMenu.add(jSeparator3);
+
         exitMenuItem.setMnemonic('x');
         exitMenuItem.setText("Exit");
         exitMenuItem.addActionListener(new java.awt.event.ActionListener() {
@@ -1918,6 +1937,9 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
                         return true;
                     }
                 }
+                if (lowercaseName.endsWith(MsFormat.mgf.fileNameEnding + GzipUtils.EXTENSION)) {
+                    return true;
+                }
                 return myFile.isDirectory();
             }
 
@@ -1930,7 +1952,7 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
                     }
                     description += tempFormat.fileNameEnding;
                 }
-                description += ")";
+                description += ", " + MsFormat.mgf.fileNameEnding + GzipUtils.EXTENSION + ")";
                 return description;
             }
         };
@@ -1975,7 +1997,8 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
                             File[] tempFiles = newFile.listFiles();
                             for (File file : tempFiles) {
                                 String lowercaseName = file.getName().toLowerCase();
-                                if (lowercaseName.endsWith(MsFormat.mgf.fileNameEnding)) {
+                                if (lowercaseName.endsWith(MsFormat.mgf.fileNameEnding)
+                                        || lowercaseName.endsWith(MsFormat.mgf.fileNameEnding + GzipUtils.EXTENSION)) {
                                     tempMgfFiles.add(file);
                                 } else {
                                     for (MsFormat tempFormat : MsFormat.values()) {
@@ -1988,7 +2011,8 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
                             lastSelectedFolder.setLastSelectedFolder(newFile.getAbsolutePath());
                         } else {
                             String lowercaseName = newFile.getName().toLowerCase();
-                            if (lowercaseName.endsWith(MsFormat.mgf.fileNameEnding)) {
+                            if (lowercaseName.endsWith(MsFormat.mgf.fileNameEnding)
+                                    || lowercaseName.endsWith(MsFormat.mgf.fileNameEnding + GzipUtils.EXTENSION)) {
                                 tempMgfFiles.add(newFile);
                             } else {
                                 for (MsFormat tempFormat : MsFormat.values()) {
@@ -2003,6 +2027,27 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
 
                     rawFiles.addAll(tempRawFiles);
 
+                    // decompress the gzipped mgf files
+                    try {
+                        progressDialog.setTitle("Decompressing Spectrum Files. Please Wait...");
+                        File decompressionFolder = GzipUtils.getDecompressionFolder(SearchHandler.getTempFolderPath(getJarFilePath()));
+                        ArrayList<File> uncompressedMgfFiles = GzipUtils.getUncompressedFiles(tempMgfFiles, decompressionFolder, searchHandler.getNThreads(), progressDialog);
+                        if (uncompressedMgfFiles != null) {
+                            tempMgfFiles = uncompressedMgfFiles;
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        progressDialog.setRunFinished();
+                        JOptionPane.showMessageDialog(finalRef, "An error occurred while decompressing the spectrum files: " + e.getMessage(),
+                                "Decompression Error", JOptionPane.WARNING_MESSAGE);
+                        return;
+                    }
+
+                    if (progressDialog.isRunCanceled()) {
+                        progressDialog.setRunFinished();
+                        return;
+                    }
+
                     // iterate the mgf files and validate them
                     int fileCounter = 0;
                     for (File mgfFile : tempMgfFiles) {
@@ -2263,7 +2308,8 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
         // check if the database can be parsed by Andromdeda
         if (enableAndromedaJCheckBox.isSelected()) {
             try {
-                FastaIndex fastaIndex = SequenceFactory.getFastaIndex(searchParameters.getFastaFile(), false, null);
+                File fastaFile = uncompressedFastaFile != null ? uncompressedFastaFile : searchParameters.getFastaFile();
+                FastaIndex fastaIndex = SequenceFactory.getFastaIndex(fastaFile, false, null);
                 AndromedaProcessBuilder.getDatabaseTypeAndromedaAccessionParsingRule(fastaIndex.getMainDatabaseType());
             } catch (Exception e) {
                 JOptionPane.showMessageDialog(this,
@@ -2591,6 +2637,38 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
         System.exit(0);
     }//GEN-LAST:event_exitMenuItemActionPerformed
 
+    /**
+     * Shows the estimated time and memory of the searches with the current
+     * settings and the order in which the spectrum files will be searched.
+     *
+     * @param evt the action event
+     */
+    private void estimateMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_estimateMenuItemActionPerformed
+
+        if (mgfFiles.isEmpty() && rawFiles.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please select the spectrum files to search.", "Input Files Missing", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        if (searchParameters == null || searchParameters.getFastaFile() == null) {
+            JOptionPane.showMessageDialog(this, "Please select the search settings and the database.", "Search Settings Missing", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
+        searchHandler.setSearchParameters(searchParameters);
+        searchHandler.setMgfFiles(mgfFiles);
+        searchHandler.setRawFiles(rawFiles);
+        String plan = searchHandler.getSearchPlan();
+        this.setCursor(new java.awt.Cursor(java.awt.Cursor.DEFAULT_CURSOR));
+
+        JTextArea planTextArea = new JTextArea(plan);
+        planTextArea.setEditable(false);
+        planTextArea.setFont(new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 12));
+        JScrollPane scrollPane = new JScrollPane(planTextArea);
+        scrollPane.setPreferredSize(new java.awt.Dimension(900, 300));
+        JOptionPane.showMessageDialog(this, scrollPane, "Search Estimate", JOptionPane.INFORMATION_MESSAGE);
+    }//GEN-LAST:event_estimateMenuItemActionPerformed
+
     /**
      * Open the advanced settings dialog.
      *
@@ -4073,6 +4151,7 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
     private javax.swing.JCheckBox enableOmssaJCheckBox;
     private javax.swing.JCheckBox enableTideJCheckBox;
     private javax.swing.JCheckBox enableXTandemJCheckBox;
+    private javax.swing.JMenuItem estimateMenuItem;
     private javax.swing.JMenuItem exitMenuItem;
     private javax.swing.JMenu fileMenu;
     private javax.swing.JMenu helpMenu;
@@ -4082,6 +4161,7 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
     private javax.swing.JPopupMenu.Separator jSeparator16;
     private javax.swing.JPopupMenu.Separator jSeparator17;
     private javax.swing.JPopupMenu.Separator jSeparator2;
+    private javax.swing.JPopupMenu.Separator jSeparator3;
     private javax.swing.JMenuItem javaSettingsJMenuItem;
     private javax.swing.JButton loadConfigurationsButton;
     private javax.swing.JMenuItem logReportMenu;
@@ -4890,6 +4970,7 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
                 try {
                     ArrayList<String> extensions = new ArrayList<String>();
                     extensions.add(".mgf");
+                    extensions.add(".mgf" + GzipUtils.EXTENSION);
                     spectrumFiles = CommandLineUtils.getFiles(arg, extensions);
                 } catch (Exception e) {
                     JOptionPane.showMessageDialog(null,
@@ -5308,7 +5389,57 @@ public class SearchGUI extends javax.swing.JFrame implements JavaHomeOrMemoryDia
         } else {
             configurationFileTxtSearchTab_parameters.setText(userSettingsTxt);
         }
-        validateInput(false);
+        uncompressedFastaFile = null;
+        File fastaFile = searchParameters.getFastaFile();
+        if (fastaFile != null && GzipUtils.isGzipped(fastaFile)) {
+            decompressFastaFile(fastaFile);
+        } else {
+            validateInput(false);
+        }
+    }
+
+    /**
+     * Decompresses a gzipped FASTA file in the temporary folder so that the
+     * database can be inspected. The search parameters keep the gzipped file.
+     *
+     * @param fastaFile the gzipped FASTA file
+     */
+    private void decompressFastaFile(final File fastaFile) {
+
+        progressDialog = new ProgressDialogX(this,
+                Toolkit.getDefaultToolkit().getImage(getClass().getResource("/icons/searchgui.gif")),
+                Toolkit.getDefaultToolkit().getImage(getClass().getResource("/icons/searchgui-orange.gif")),
+                true);
+        progressDialog.setPrimaryProgressCounterIndeterminate(true);
+        progressDialog.setTitle("Decompressing Database. Please Wait...");
+
+        final SearchGUI finalRef = this;
+
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    progressDialog.setVisible(true);
+                } catch (IndexOutOfBoundsException e) {
+                    // ignore
+                }
+            }
+        }, "ProgressDialog").start();
+
+        new Thread("DecompressFastaThread") {
+            @Override
+            public void run() {
+                try {
+                    File decompressionFolder = GzipUtils.getDecompressionFolder(SearchHandler.getTempFolderPath(getJarFilePath()));
+                    uncompressedFastaFile = GzipUtils.getUncompressedFile(fastaFile, decompressionFolder, progressDialog);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(finalRef, "An error occurred while decompressing the database: " + e.getMessage(),
+                            "Decompression Error", JOptionPane.WARNING_MESSAGE);
+                }
+                progressDialog.setRunFinished();
+                validateInput(false);
+            }
+        }.start();
     }
 
     /**
@@ -0,0 +1,101 @@
+package eu.isas.searchgui.preferences;
+
+/**
+ * Settings of the mass calibration: before the search, Comet searches a random
+ * subset of the spectra of every file, the systematic mass error and the
+ * spread of the precursors and fragment ions are estimated from the confident
+ * hits, and the tolerances of the search are tightened accordingly. The
+ * spectra can be recalibrated to correct the systematic error.
+ *
+ * @author Marc Vaudel
+ */
+public class CalibrationSettings {
+
+    /**
+     * The false discovery rate at which the hits of the subset are used to
+     * estimate the mass errors.
+     */
+    public static final double FDR = 0.01;
+    /**
+     * The minimal number of confident hits needed to calibrate a file.
+     */
+    public static final int MIN_PSMS = 50;
+    /**
+     * Indicates whether the calibration is enabled.
+     */
+    private boolean enabled = false;
+    /**
+     * The number of spectra of every file searched for the calibration.
+     */
+    private int nSpectra = 2000;
+    /**
+     * Indicates whether the spectra are recalibrated.
+     */
+    private boolean recalibrate = true;
+
+    /**
+     * Constructor.
+     */
+    public CalibrationSettings() {
+    }
+
+    /**
+     * Indicates whether the calibration is enabled.
+     *
+     * @return a boolean indicating whether the calibration is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether the calibration is enabled.
+     *
+     * @param enabled a boolean indicating whether the calibration is enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the number of spectra of every file searched for the
+     * calibration.
+     *
+     * @return the number of spectra of every file searched for the
+     * calibration
+     */
+    public int getnSpectra() {
+        return nSpectra;
+    }
+
+    /**
+     * Sets the number of spectra of every file searched for the calibration.
+     *
+     * @param nSpectra the number of spectra of every file searched for the
+     * calibration
+     */
+    public void setnSpectra(int nSpectra) {
+        this.nSpectra = nSpectra;
+    }
+
+    /**
+     * Indicates whether the spectra are recalibrated. If not, the
+     * tolerances include the systematic error.
+     *
+     * @return a boolean indicating whether the spectra are recalibrated
+     */
+    public boolean isRecalibrate() {
+        return recalibrate;
+    }
+
+    /**
+     * Sets whether the spectra are recalibrated. If not, the tolerances
+     * include the systematic error.
+     *
+     * @param recalibrate a boolean indicating whether the spectra are
+     * recalibrated
+     */
+    public void setRecalibrate(boolean recalibrate) {
+        this.recalibrate = recalibrate;
+    }
+}
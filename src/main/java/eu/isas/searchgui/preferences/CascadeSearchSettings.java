@@ -0,0 +1,55 @@
+package eu.isas.searchgui.preferences;
+
+/**
+ * Settings of the cascade search: the fast search engines, Comet and Tide,
+ * search all the spectra and only the spectra they do not identify at the
+ * given false discovery rate are searched by the other engines.
+ *
+ * @author Marc Vaudel
+ */
+public class CascadeSearchSettings {
+
+    /**
+     * The false discovery rate in percent at which the spectra identified by
+     * the fast engines are not searched by the other engines, 0 to search all
+     * spectra with all engines.
+     */
+    private double fdr = 0;
+
+    /**
+     * Constructor.
+     */
+    public CascadeSearchSettings() {
+    }
+
+    /**
+     * Indicates whether the cascade search is enabled.
+     *
+     * @return a boolean indicating whether the cascade search is enabled
+     */
+    public boolean isEnabled() {
+        return fdr > 0;
+    }
+
+    /**
+     * Returns the false discovery rate in percent at which the spectra
+     * identified by the fast engines are not searched by the other engines, 0
+     * to search all spectra with all engines.
+     *
+     * @return the false discovery rate in percent
+     */
+    public double getFdr() {
+        return fdr;
+    }
+
+    /**
+     * Sets the false discovery rate in percent at which the spectra
+     * identified by the fast engines are not searched by the other engines, 0
+     * to search all spectra with all engines.
+     *
+     * @param fdr the false discovery rate in percent
+     */
+    public void setFdr(double fdr) {
+        this.fdr = fdr;
+    }
+}
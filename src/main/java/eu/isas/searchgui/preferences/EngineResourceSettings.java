@@ -0,0 +1,236 @@
+package eu.isas.searchgui.preferences;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Settings of the resources given to the search engines: whether the thread
+ * counts, batch sizes and memory modes are tuned automatically for the
+ * machine and the data, and the values set by the user for given engines.
+ * The values are set as a comma separated list of key=value pairs, e.g.
+ * "comet_batch_size=5000,xtandem_threads=8".
+ *
+ * @author Marc Vaudel
+ */
+public class EngineResourceSettings {
+
+    /**
+     * Key of the X!Tandem spectrum, sequence batch size.
+     */
+    public static final String XTANDEM_BATCH_SIZE = "xtandem_batch_size";
+    /**
+     * Key of the Comet spectrum batch size.
+     */
+    public static final String COMET_BATCH_SIZE = "comet_batch_size";
+    /**
+     * Key of the MyriMatch number of batches.
+     */
+    public static final String MYRIMATCH_BATCHES = "myrimatch_batches";
+    /**
+     * Key of the MS Amanda low memory mode, 0 or 1.
+     */
+    public static final String MS_AMANDA_LOW_MEMORY = "ms_amanda_low_memory";
+    /**
+     * Key of the memory budget of the engines and protein tree in MB, 0 for
+     * no limit. By default the memory available when the search starts.
+     */
+    public static final String MEMORY_BUDGET = "memory_budget";
+    /**
+     * Key of the pinning of the engine processes to their own CPUs on Linux,
+     * 0 or 1.
+     */
+    public static final String CPU_PINNING = "cpu_pinning";
+    /**
+     * Key of the exploration of smaller numbers of threads to measure the
+     * scaling of the engines, 0 or 1.
+     */
+    public static final String THREAD_EXPLORATION = "thread_exploration";
+    /**
+     * The suffix of the keys of the number of threads, preceded by the
+     * engine, e.g. xtandem_threads.
+     */
+    public static final String THREADS_SUFFIX = "_threads";
+    /**
+     * The engines whose number of threads can be set.
+     */
+    public static final String[] THREADED_ENGINES = {"xtandem", "myrimatch", "msgf", "omssa", "comet", "andromeda"};
+    /**
+     * If true the resources are tuned automatically, otherwise the values of
+     * the search parameters are used.
+     */
+    private boolean autoTune = true;
+    /**
+     * The values set by the user indexed by key.
+     */
+    private final LinkedHashMap<String, Integer> overrides = new LinkedHashMap<String, Integer>();
+
+    /**
+     * Constructor.
+     */
+    public EngineResourceSettings() {
+    }
+
+    /**
+     * Indicates whether the resources are tuned automatically.
+     *
+     * @return a boolean indicating whether the resources are tuned
+     * automatically
+     */
+    public boolean isAutoTune() {
+        return autoTune;
+    }
+
+    /**
+     * Sets whether the resources are tuned automatically.
+     *
+     * @param autoTune a boolean indicating whether the resources are tuned
+     * automatically
+     */
+    public void setAutoTune(boolean autoTune) {
+        this.autoTune = autoTune;
+    }
+
+    /**
+     * Returns the value set by the user for the given key, null if not set.
+     *
+     * @param key the key
+     *
+     * @return the value set by the user
+     */
+    public Integer getOverride(String key) {
+        return overrides.get(key);
+    }
+
+    /**
+     * Indicates whether the engine processes are pinned to their own CPUs.
+     *
+     * @return a boolean indicating whether the engine processes are pinned to
+     * their own CPUs
+     */
+    public boolean isCpuPinning() {
+        Integer cpuPinning = overrides.get(CPU_PINNING);
+        return cpuPinning != null && cpuPinning == 1;
+    }
+
+    /**
+     * Indicates whether the engines are run with smaller numbers of threads
+     * in turn to measure their scaling.
+     *
+     * @return a boolean indicating whether the engines are run with smaller
+     * numbers of threads in turn to measure their scaling
+     */
+    public boolean isThreadExploration() {
+        Integer threadExploration = overrides.get(THREAD_EXPLORATION);
+        return threadExploration != null && threadExploration == 1;
+    }
+
+    /**
+     * Returns the key of the number of threads of the given engine.
+     *
+     * @param engine the engine, e.g. xtandem
+     *
+     * @return the key of the number of threads
+     */
+    public static String getThreadsKey(String engine) {
+        return engine + THREADS_SUFFIX;
+    }
+
+    /**
+     * Indicates whether the number of threads of the given engine can be set.
+     *
+     * @param engine the engine, e.g. xtandem
+     *
+     * @return a boolean indicating whether the number of threads of the
+     * engine can be set
+     */
+    public static boolean isThreaded(String engine) {
+        for (String threadedEngine : THREADED_ENGINES) {
+            if (threadedEngine.equals(engine)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates whether the given key is supported.
+     *
+     * @param key the key
+     *
+     * @return a boolean indicating whether the key is supported
+     */
+    public static boolean isSupportedKey(String key) {
+        if (key.equals(XTANDEM_BATCH_SIZE) || key.equals(COMET_BATCH_SIZE)
+                || key.equals(MYRIMATCH_BATCHES) || key.equals(MS_AMANDA_LOW_MEMORY)
+                || key.equals(MEMORY_BUDGET) || key.equals(CPU_PINNING)
+                || key.equals(THREAD_EXPLORATION)) {
+            return true;
+        }
+        for (String engine : THREADED_ENGINES) {
+            if (key.equals(getThreadsKey(engine))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the values set by the user from a comma separated list of
+     * key=value pairs. The previous values are cleared.
+     *
+     * @param text the list of key=value pairs, can be empty
+     *
+     * @throws IllegalArgumentException thrown if a key is not supported or a
+     * value is not a positive integer
+     */
+    public void setOverrides(String text) throws IllegalArgumentException {
+
+        LinkedHashMap<String, Integer> newOverrides = new LinkedHashMap<String, Integer>();
+
+        for (String pair : text.split(",")) {
+            pair = pair.trim();
+            if (pair.length() == 0) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            if (separator == -1) {
+                throw new IllegalArgumentException("Expected key=value, found '" + pair + "'.");
+            }
+            String key = pair.substring(0, separator).trim().toLowerCase();
+            if (!isSupportedKey(key)) {
+                throw new IllegalArgumentException("Engine resource '" + key + "' not recognized.");
+            }
+            String value = pair.substring(separator + 1).trim();
+            int intValue;
+            try {
+                intValue = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("The value of " + key + " should be an integer, found '" + value + "'.");
+            }
+            if (intValue < 0 || intValue == 0 && key.endsWith(THREADS_SUFFIX)
+                    || (key.equals(MS_AMANDA_LOW_MEMORY) || key.equals(CPU_PINNING) || key.equals(THREAD_EXPLORATION)) && intValue > 1) {
+                throw new IllegalArgumentException("Invalid value for " + key + ": " + value + ".");
+            }
+            newOverrides.put(key, intValue);
+        }
+
+        overrides.clear();
+        overrides.putAll(newOverrides);
+    }
+
+    /**
+     * Returns the values set by the user as a comma separated list of
+     * key=value pairs.
+     *
+     * @return the values set by the user
+     */
+    public String getOverrides() {
+        StringBuilder result = new StringBuilder();
+        for (String key : overrides.keySet()) {
+            if (result.length() > 0) {
+                result.append(",");
+            }
+            result.append(key).append("=").append(overrides.get(key));
+        }
+        return result.toString();
+    }
+}
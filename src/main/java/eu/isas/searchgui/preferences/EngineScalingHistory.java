@@ -0,0 +1,303 @@
+package eu.isas.searchgui.preferences;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The throughput of the search engines measured in past runs as a function of
+ * the number of threads, stored in a local file. The throughput is the number
+ * of spectra times the size of the database in MB searched per second. The
+ * history is used to give every engine the smallest number of threads
+ * reaching most of its best throughput, leaving the other cores to the
+ * processing running concurrently. Smaller numbers of threads are only tried
+ * when the exploration is enabled in the engine resource settings.
+ *
+ * @author Marc Vaudel
+ */
+public class EngineScalingHistory {
+
+    /**
+     * The name of the history file in the configuration folder.
+     */
+    public static final String HISTORY_FILE_NAME = "engine_scaling_history.txt";
+    /**
+     * The separator used in the history file.
+     */
+    public static final String SEPARATOR = "\t";
+    /**
+     * The share of the best throughput an engine must reach with the
+     * recommended number of threads.
+     */
+    public static final double KNEE_SHARE = 0.9;
+    /**
+     * The minimal run time in milliseconds for a run to be recorded, shorter
+     * runs are dominated by the start of the engine.
+     */
+    public static final long MIN_RUN_TIME = 5000;
+    /**
+     * The history file.
+     */
+    private final File historyFile;
+    /**
+     * The sum of the throughputs measured indexed by engine and number of
+     * threads.
+     */
+    private final HashMap<String, TreeMap<Integer, Double>> throughputSums = new HashMap<String, TreeMap<Integer, Double>>();
+    /**
+     * The number of runs measured indexed by engine and number of threads.
+     */
+    private final HashMap<String, TreeMap<Integer, Integer>> runCounts = new HashMap<String, TreeMap<Integer, Integer>>();
+
+    /**
+     * Constructor. The runs already recorded in the history file are loaded.
+     *
+     * @param historyFile the history file
+     */
+    public EngineScalingHistory(File historyFile) {
+        this.historyFile = historyFile;
+        load();
+    }
+
+    /**
+     * Returns the history stored in the configuration folder of SearchGUI.
+     *
+     * @param jarFilePath the path to the SearchGUI jar file
+     *
+     * @return the history
+     */
+    public static EngineScalingHistory getHistory(String jarFilePath) {
+        File folder = new File(jarFilePath + File.separator + "resources" + File.separator + "conf");
+        return new EngineScalingHistory(new File(folder, HISTORY_FILE_NAME));
+    }
+
+    /**
+     * Loads the runs recorded in the history file.
+     */
+    private void load() {
+
+        if (!historyFile.exists()) {
+            return;
+        }
+
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(historyFile));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith("#") || line.trim().length() == 0) {
+                        continue;
+                    }
+                    String[] split = line.split(SEPARATOR);
+                    try {
+                        addMeasure(split[0], Integer.parseInt(split[1]), Long.parseLong(split[2]), Long.parseLong(split[3]), Long.parseLong(split[4]));
+                    } catch (RuntimeException e) {
+                        // skip lines which cannot be parsed
+                    }
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records a run of an engine. Runs shorter than the minimal run time are
+     * ignored.
+     *
+     * @param engine the engine as named in the engine resource settings
+     * @param nThreads the number of threads used
+     * @param nSpectra the number of spectra searched
+     * @param databaseSize the size of the database in bytes
+     * @param wallTime the duration of the run in milliseconds
+     */
+    public synchronized void addRun(String engine, int nThreads, long nSpectra, long databaseSize, long wallTime) {
+
+        if (wallTime < MIN_RUN_TIME || nSpectra <= 0) {
+            return;
+        }
+
+        addMeasure(engine, nThreads, nSpectra, databaseSize, wallTime);
+
+        try {
+            boolean newFile = !historyFile.exists();
+            File folder = historyFile.getParentFile();
+            if (folder != null && !folder.exists()) {
+                folder.mkdirs();
+            }
+            BufferedWriter bw = new BufferedWriter(new FileWriter(historyFile, true));
+            try {
+                if (newFile) {
+                    bw.write("# Engine" + SEPARATOR + "Threads" + SEPARATOR + "Spectra" + SEPARATOR + "Database size (bytes)" + SEPARATOR + "Wall time (ms)");
+                    bw.newLine();
+                }
+                bw.write(engine + SEPARATOR + nThreads + SEPARATOR + nSpectra + SEPARATOR + databaseSize + SEPARATOR + wallTime);
+                bw.newLine();
+            } finally {
+                bw.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds the throughput of a run to the history in memory.
+     *
+     * @param engine the engine
+     * @param nThreads the number of threads used
+     * @param nSpectra the number of spectra searched
+     * @param databaseSize the size of the database in bytes
+     * @param wallTime the duration of the run in milliseconds
+     */
+    private void addMeasure(String engine, int nThreads, long nSpectra, long databaseSize, long wallTime) {
+
+        double databaseMb = Math.max(1.0, databaseSize / 1048576.0);
+        double throughput = nSpectra * databaseMb / Math.max(1, wallTime) * 1000;
+
+        TreeMap<Integer, Double> engineSums = throughputSums.get(engine);
+        TreeMap<Integer, Integer> engineCounts = runCounts.get(engine);
+        if (engineSums == null) {
+            engineSums = new TreeMap<Integer, Double>();
+            throughputSums.put(engine, engineSums);
+            engineCounts = new TreeMap<Integer, Integer>();
+            runCounts.put(engine, engineCounts);
+        }
+        Double sum = engineSums.get(nThreads);
+        Integer count = engineCounts.get(nThreads);
+        engineSums.put(nThreads, sum == null ? throughput : sum + throughput);
+        engineCounts.put(nThreads, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Returns the mean throughput of an engine indexed by number of threads.
+     *
+     * @param engine the engine
+     *
+     * @return the mean throughput indexed by number of threads, empty if
+     * never measured
+     */
+    public synchronized TreeMap<Integer, Double> getScalingCurve(String engine) {
+        TreeMap<Integer, Double> curve = new TreeMap<Integer, Double>();
+        TreeMap<Integer, Double> engineSums = throughputSums.get(engine);
+        if (engineSums != null) {
+            TreeMap<Integer, Integer> engineCounts = runCounts.get(engine);
+            for (Integer nThreads : engineSums.keySet()) {
+                curve.put(nThreads, engineSums.get(nThreads) / engineCounts.get(nThreads));
+            }
+        }
+        return curve;
+    }
+
+    /**
+     * Returns the expected throughput of an engine with the given number of
+     * threads. The mean throughput measured with the closest number of threads
+     * is used, scaled linearly when measured with more threads.
+     *
+     * @param engine the engine
+     * @param nThreads the number of threads
+     *
+     * @return the expected throughput, null if never measured
+     */
+    public synchronized Double getThroughput(String engine, int nThreads) {
+        TreeMap<Integer, Double> curve = getScalingCurve(engine);
+        if (curve.isEmpty()) {
+            return null;
+        }
+        Integer below = curve.floorKey(nThreads);
+        Integer above = curve.ceilingKey(nThreads);
+        if (below != null && (above == null || nThreads - below <= above - nThreads)) {
+            return curve.get(below);
+        }
+        return curve.get(above) * nThreads / above;
+    }
+
+    /**
+     * Returns the number of threads to give to an engine, the smallest number
+     * of threads measured reaching the knee share of the best throughput. When
+     * exploring, the thread counts of the ladder maxThreads, maxThreads/2,
+     * maxThreads/4 and so on not measured yet are returned in turn as long as
+     * the throughput stays within the knee share of the best throughput.
+     *
+     * @param engine the engine
+     * @param maxThreads the maximal number of threads
+     * @param explore if true the thread counts not measured yet are tried
+     *
+     * @return the number of threads to use
+     */
+    public synchronized int getRecommendedThreads(String engine, int maxThreads, boolean explore) {
+
+        TreeMap<Integer, Double> curve = new TreeMap<Integer, Double>(getScalingCurve(engine).headMap(maxThreads, true));
+
+        double best = 0;
+        for (Double throughput : curve.values()) {
+            best = Math.max(best, throughput);
+        }
+
+        for (int nThreads = maxThreads; explore && nThreads >= 1; nThreads /= 2) {
+            Double throughput = curve.get(nThreads);
+            if (throughput == null) {
+                return nThreads;
+            }
+            if (throughput < KNEE_SHARE * best) {
+                break;
+            }
+        }
+
+        for (Integer nThreads : curve.keySet()) {
+            if (curve.get(nThreads) >= KNEE_SHARE * best) {
+                return nThreads;
+            }
+        }
+
+        return maxThreads;
+    }
+
+    /**
+     * Returns the engines measured.
+     *
+     * @return the engines measured
+     */
+    public synchronized ArrayList<String> getEngines() {
+        return new ArrayList<String>(new TreeSet<String>(throughputSums.keySet()));
+    }
+
+    /**
+     * Returns a table of the scaling curves and of the recommended number of
+     * threads of every engine.
+     *
+     * @param maxThreads the maximal number of threads
+     *
+     * @return a table of the scaling curves
+     */
+    public synchronized String getReport(int maxThreads) {
+
+        StringBuilder report = new StringBuilder();
+        String lineSeparator = System.getProperty("line.separator");
+
+        if (throughputSums.isEmpty()) {
+            return "No search recorded yet.";
+        }
+
+        report.append(String.format(Locale.US, "%-12s%10s%28s%8s", "Engine", "Threads", "Spectra x MB per second", "Runs")).append(lineSeparator);
+        for (String engine : getEngines()) {
+            TreeMap<Integer, Double> curve = getScalingCurve(engine);
+            for (Integer nThreads : curve.keySet()) {
+                report.append(String.format(Locale.US, "%-12s%10d%28.1f%8d", engine, nThreads, curve.get(nThreads), runCounts.get(engine).get(nThreads))).append(lineSeparator);
+            }
+            report.append(String.format(Locale.US, "%-12s%10d%28s", engine, getRecommendedThreads(engine, maxThreads, false), "recommended")).append(lineSeparator);
+        }
+
+        return report.toString();
+    }
+}
@@ -0,0 +1,150 @@
+package eu.isas.searchgui.preferences;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.zip.Deflater;
+
+/**
+ * This enum lists the possible compression policies of the zipped output. The
+ * policies set the compression level per type of entry: the data files, i.e.
+ * the spectrum and FASTA files, and the result files. Files which are already
+ * compressed are always stored.
+ *
+ * @author Marc Vaudel
+ */
+public enum OutputCompression {
+
+    /**
+     * Default compression of all files.
+     */
+    standard(0, "Standard", "Default compression of all files", Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_COMPRESSION),
+    /**
+     * Data files stored and fast compression of the result files.
+     */
+    fast(1, "Fast", "Data files stored and fast compression of the result files", Deflater.NO_COMPRESSION, Deflater.BEST_SPEED),
+    /**
+     * All files stored without compression.
+     */
+    none(2, "No compression", "All files stored without compression", Deflater.NO_COMPRESSION, Deflater.NO_COMPRESSION),
+    /**
+     * Maximal compression of all files for long-term storage.
+     */
+    archive(3, "Maximal compression", "Maximal compression of all files for long-term storage", Deflater.BEST_COMPRESSION, Deflater.BEST_COMPRESSION);
+
+    /**
+     * The extensions of the files which are already compressed.
+     */
+    private static final String[] COMPRESSED_EXTENSIONS = new String[]{".gz", ".zip", ".bz2", ".xz", ".zst", ".7z"};
+    /**
+     * The index of the option.
+     */
+    public final int id;
+    /**
+     * Name of the option.
+     */
+    public final String name;
+    /**
+     * The description of the option.
+     */
+    public final String description;
+    /**
+     * The deflate compression level of the data files.
+     */
+    public final int dataLevel;
+    /**
+     * The deflate compression level of the result files.
+     */
+    public final int resultLevel;
+
+    /**
+     * Constructor.
+     *
+     * @param id the index of the option
+     * @param name the name of the option
+     * @param description the description of the option
+     * @param dataLevel the deflate compression level of the data files
+     * @param resultLevel the deflate compression level of the result files
+     */
+    private OutputCompression(int id, String name, String description, int dataLevel, int resultLevel) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.dataLevel = dataLevel;
+        this.resultLevel = resultLevel;
+    }
+
+    /**
+     * Returns the deflate compression level to use for the given file.
+     *
+     * @param file the file to compress
+     * @param dataFile indicates whether the file is a data file, i.e. a
+     * spectrum or FASTA file
+     *
+     * @return the deflate compression level to use
+     */
+    public int getCompressionLevel(File file, boolean dataFile) {
+        String fileName = file.getName().toLowerCase();
+        for (String extension : COMPRESSED_EXTENSIONS) {
+            if (fileName.endsWith(extension)) {
+                return Deflater.NO_COMPRESSION;
+            }
+        }
+        return dataFile ? dataLevel : resultLevel;
+    }
+
+    /**
+     * Returns an array of the names of the different options.
+     *
+     * @return an array of the names of the different options
+     */
+    public static String[] getOutputCompressionNames() {
+        OutputCompression[] options = values();
+        String[] result = new String[options.length];
+        int i = 0;
+        for (OutputCompression outputCompression : options) {
+            result[i] = outputCompression.name;
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the compression option of the given index.
+     *
+     * @param id the index of the compression option of interest
+     *
+     * @return the compression option of interest
+     */
+    public static OutputCompression getOutputCompression(int id) {
+        for (OutputCompression outputCompression : values()) {
+            if (outputCompression.id == id) {
+                return outputCompression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convenience method returning all possibilities in a command line option
+     * description format.
+     *
+     * @return all possibilities in a command line option description format
+     */
+    public static String getCommandLineOptions() {
+        OutputCompression[] values = values();
+        ArrayList<Integer> options = new ArrayList<Integer>(values.length);
+        for (OutputCompression option : values) {
+            options.add(option.id);
+        }
+        Collections.sort(options);
+        StringBuilder commandLine = new StringBuilder();
+        for (int option : options) {
+            if (commandLine.length() > 0) {
+                commandLine.append(", ");
+            }
+            commandLine.append(option).append(": ").append(getOutputCompression(option).description);
+        }
+        return commandLine.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package eu.isas.searchgui.preferences;
+
+/**
+ * Settings of the watchdog stopping the search engine processes which do not
+ * progress: the maximal time without output, the maximal run time and the
+ * number of times a stopped process is started again.
+ *
+ * @author Marc Vaudel
+ */
+public class ProcessWatchdogSettings {
+
+    /**
+     * The minimal run time allowed to a process in milliseconds when the run
+     * time is limited.
+     */
+    public static final long MIN_RUN_TIME = 30 * 60 * 1000;
+    /**
+     * The maximal time without output in minutes, 0 for no limit.
+     */
+    private int maxIdleTime = 0;
+    /**
+     * The maximal run time per spectrum searched in milliseconds, 0 for no
+     * limit.
+     */
+    private int maxTimePerSpectrum = 0;
+    /**
+     * The number of times a process stopped by the watchdog is started
+     * again.
+     */
+    private int nRetries = 1;
+
+    /**
+     * Constructor.
+     */
+    public ProcessWatchdogSettings() {
+    }
+
+    /**
+     * Indicates whether the watchdog is enabled.
+     *
+     * @return a boolean indicating whether the watchdog is enabled
+     */
+    public boolean isEnabled() {
+        return maxIdleTime > 0 || maxTimePerSpectrum > 0;
+    }
+
+    /**
+     * Returns the maximal time without output in minutes, 0 for no limit.
+     *
+     * @return the maximal time without output in minutes
+     */
+    public int getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * Sets the maximal time without output in minutes, 0 for no limit.
+     *
+     * @param maxIdleTime the maximal time without output in minutes
+     */
+    public void setMaxIdleTime(int maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Returns the maximal run time per spectrum searched in milliseconds, 0
+     * for no limit.
+     *
+     * @return the maximal run time per spectrum searched in milliseconds
+     */
+    public int getMaxTimePerSpectrum() {
+        return maxTimePerSpectrum;
+    }
+
+    /**
+     * Sets the maximal run time per spectrum searched in milliseconds, 0 for
+     * no limit.
+     *
+     * @param maxTimePerSpectrum the maximal run time per spectrum searched in
+     * milliseconds
+     */
+    public void setMaxTimePerSpectrum(int maxTimePerSpectrum) {
+        this.maxTimePerSpectrum = maxTimePerSpectrum;
+    }
+
+    /**
+     * Returns the number of times a process stopped by the watchdog is started
+     * again.
+     *
+     * @return the number of retries
+     */
+    public int getnRetries() {
+        return nRetries;
+    }
+
+    /**
+     * Sets the number of times a process stopped by the watchdog is started
+     * again.
+     *
+     * @param nRetries the number of retries
+     */
+    public void setnRetries(int nRetries) {
+        this.nRetries = nRetries;
+    }
+
+    /**
+     * Returns the maximal time without output in milliseconds, 0 for no
+     * limit.
+     *
+     * @return the maximal time without output in milliseconds
+     */
+    public long getMaxIdleTimeMillis() {
+        return maxIdleTime * 60L * 1000L;
+    }
+
+    /**
+     * Returns the maximal run time in milliseconds for a process searching the
+     * given number of spectra, 0 for no limit. The run time is never limited
+     * to less than MIN_RUN_TIME.
+     *
+     * @param nSpectra the number of spectra searched
+     *
+     * @return the maximal run time in milliseconds
+     */
+    public long getMaxRunTime(long nSpectra) {
+        if (maxTimePerSpectrum == 0) {
+            return 0;
+        }
+        return Math.max(MIN_RUN_TIME, maxTimePerSpectrum * nSpectra);
+    }
+}
@@ -38,7 +38,12 @@ public class SearchGUIPathPreferences {
         /**
          * Directory where Andromeda temporary files should be stored.
          */
-        andromedaDirectory("andromeda_temp", "Folder where Andromeda temporary files are stored.", "", true);
+        andromedaDirectory("andromeda_temp", "Folder where Andromeda temporary files are stored.", "", true),
+        /**
+         * Fast local directory where the search files are staged, not used if
+         * not set. Not set when redirecting all paths to a folder.
+         */
+        scratchDirectory("searchgui_scratch", "Fast local folder where the search files are staged before writing the results to the output folder.", "scratch", true);
         /**
          * The key used to refer to this path.
          */
@@ -170,6 +175,9 @@ public class SearchGUIPathPreferences {
             case andromedaDirectory:
                 AndromedaProcessBuilder.setTempFolderPath(path);
                 break;
+            case scratchDirectory:
+                SearchHandler.setScratchFolderPath(path);
+                break;
             default:
                 throw new UnsupportedOperationException("Path " + searchGUIPathKey.id + " not implemented.");
         }
@@ -208,6 +216,8 @@ public class SearchGUIPathPreferences {
                 return CometProcessBuilder.getTempFolder();
             case andromedaDirectory:
                 return AndromedaProcessBuilder.getTempFolderPath();
+            case scratchDirectory:
+                return SearchHandler.getScratchFolderPath();
             default:
                 throw new UnsupportedOperationException("Path " + searchGUIPathKey.id + " not implemented.");
         }
@@ -223,6 +233,10 @@ public class SearchGUIPathPreferences {
      */
     public static void setAllPathsIn(String path) throws FileNotFoundException {
         for (SearchGUIPathKey searchGUIPathKey : SearchGUIPathKey.values()) {
+            if (searchGUIPathKey == SearchGUIPathKey.scratchDirectory) {
+                // staging on a scratch folder has to be enabled explicitly
+                continue;
+            }
             String subDirectory = searchGUIPathKey.defaultSubDirectory;
             File newFile = new File(path, subDirectory);
             if (!newFile.exists()) {
@@ -301,6 +315,13 @@ public class SearchGUIPathPreferences {
                 }
                 bw.write(toWrite);
                 break;
+            case scratchDirectory:
+                toWrite = SearchHandler.getScratchFolderPath();
+                if (toWrite == null) {
+                    toWrite = UtilitiesPathPreferences.defaultPath;
+                }
+                bw.write(toWrite);
+                break;
             default:
                 throw new UnsupportedOperationException("Path " + pathKey.id + " not implemented.");
         }
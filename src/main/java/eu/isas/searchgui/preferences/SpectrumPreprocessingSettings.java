@@ -0,0 +1,440 @@
+package eu.isas.searchgui.preferences;
+
+/**
+ * Settings for the pre-processing of the spectra before the search: quality
+ * filtering, peak list reduction, inference of the missing precursor charges,
+ * clustering of near-identical spectra and sorting by precursor mass.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumPreprocessingSettings {
+
+    /**
+     * The number of most intense peaks to keep per m/z window, 0 to keep all
+     * peaks.
+     */
+    private int peaksPerWindow = 0;
+    /**
+     * The width of the m/z windows in Th.
+     */
+    private double windowWidth = 100;
+    /**
+     * The minimal peak intensity relative to the most intense peak in percent,
+     * 0 to keep all peaks.
+     */
+    private double intensityThreshold = 0;
+    /**
+     * Indicates whether isotopic peaks should be removed.
+     */
+    private boolean deisotope = false;
+    /**
+     * Indicates whether the multiply charged fragments should be converted to
+     * charge one. Only used when deisotoping.
+     */
+    private boolean deconvolute = false;
+    /**
+     * The width in Th of the window around the precursor m/z where peaks are
+     * removed, 0 for no removal.
+     */
+    private double precursorRemovalWindow = 0;
+    /**
+     * The minimal spectrum quality score between 0 and 1, 0 to keep all
+     * spectra.
+     */
+    private double qualityThreshold = 0;
+    /**
+     * The minimal cosine similarity for two spectra to be clustered, 0 for no
+     * clustering.
+     */
+    private double clusteringSimilarity = 0;
+    /**
+     * Indicates whether the spectra should be sorted by precursor mass.
+     */
+    private boolean sortByPrecursorMass = false;
+    /**
+     * Indicates whether the charge of the precursors without charge should be
+     * inferred from the fragment ions.
+     */
+    private boolean inferCharges = false;
+    /**
+     * The precursor m/z tolerance used to cluster spectra.
+     */
+    private double precursorTolerance = 10;
+    /**
+     * Indicates whether the precursor m/z tolerance is in ppm.
+     */
+    private boolean precursorTolerancePpm = true;
+    /**
+     * The fragment ion tolerance used to match isotopic peaks.
+     */
+    private double fragmentTolerance = 0.02;
+    /**
+     * Indicates whether the fragment ion tolerance is in ppm.
+     */
+    private boolean fragmentTolerancePpm = false;
+
+    /**
+     * Constructor.
+     */
+    public SpectrumPreprocessingSettings() {
+    }
+
+    /**
+     * Indicates whether any pre-processing step is enabled.
+     *
+     * @return a boolean indicating whether any pre-processing step is enabled
+     */
+    public boolean isEnabled() {
+        return isPeakFilteringEnabled() || qualityThreshold > 0 || isClusteringEnabled() || sortByPrecursorMass || inferCharges;
+    }
+
+    /**
+     * Indicates whether near-identical spectra should be clustered.
+     *
+     * @return a boolean indicating whether near-identical spectra should be
+     * clustered
+     */
+    public boolean isClusteringEnabled() {
+        return clusteringSimilarity > 0;
+    }
+
+    /**
+     * Indicates whether any step modifying the peak lists is enabled.
+     *
+     * @return a boolean indicating whether any step modifying the peak lists
+     * is enabled
+     */
+    public boolean isPeakFilteringEnabled() {
+        return peaksPerWindow > 0 || intensityThreshold > 0 || deisotope || precursorRemovalWindow > 0;
+    }
+
+    /**
+     * Returns the number of most intense peaks to keep per m/z window, 0 to
+     * keep all peaks.
+     *
+     * @return the number of most intense peaks to keep per m/z window
+     */
+    public int getPeaksPerWindow() {
+        return peaksPerWindow;
+    }
+
+    /**
+     * Sets the number of most intense peaks to keep per m/z window, 0 to keep
+     * all peaks.
+     *
+     * @param peaksPerWindow the number of most intense peaks to keep per m/z
+     * window
+     */
+    public void setPeaksPerWindow(int peaksPerWindow) {
+        this.peaksPerWindow = peaksPerWindow;
+    }
+
+    /**
+     * Returns the width of the m/z windows in Th.
+     *
+     * @return the width of the m/z windows
+     */
+    public double getWindowWidth() {
+        return windowWidth;
+    }
+
+    /**
+     * Sets the width of the m/z windows in Th.
+     *
+     * @param windowWidth the width of the m/z windows
+     */
+    public void setWindowWidth(double windowWidth) {
+        this.windowWidth = windowWidth;
+    }
+
+    /**
+     * Returns the minimal peak intensity relative to the most intense peak in
+     * percent.
+     *
+     * @return the minimal peak intensity relative to the most intense peak
+     */
+    public double getIntensityThreshold() {
+        return intensityThreshold;
+    }
+
+    /**
+     * Sets the minimal peak intensity relative to the most intense peak in
+     * percent.
+     *
+     * @param intensityThreshold the minimal peak intensity relative to the
+     * most intense peak
+     */
+    public void setIntensityThreshold(double intensityThreshold) {
+        this.intensityThreshold = intensityThreshold;
+    }
+
+    /**
+     * Indicates whether isotopic peaks should be removed.
+     *
+     * @return a boolean indicating whether isotopic peaks should be removed
+     */
+    public boolean isDeisotope() {
+        return deisotope;
+    }
+
+    /**
+     * Sets whether isotopic peaks should be removed.
+     *
+     * @param deisotope a boolean indicating whether isotopic peaks should be
+     * removed
+     */
+    public void setDeisotope(boolean deisotope) {
+        this.deisotope = deisotope;
+    }
+
+    /**
+     * Indicates whether the multiply charged fragments should be converted to
+     * charge one.
+     *
+     * @return a boolean indicating whether the multiply charged fragments
+     * should be converted to charge one
+     */
+    public boolean isDeconvolute() {
+        return deconvolute;
+    }
+
+    /**
+     * Sets whether the multiply charged fragments should be converted to
+     * charge one.
+     *
+     * @param deconvolute a boolean indicating whether the multiply charged
+     * fragments should be converted to charge one
+     */
+    public void setDeconvolute(boolean deconvolute) {
+        this.deconvolute = deconvolute;
+    }
+
+    /**
+     * Returns the width in Th of the window around the precursor m/z where
+     * peaks are removed.
+     *
+     * @return the width of the precursor removal window
+     */
+    public double getPrecursorRemovalWindow() {
+        return precursorRemovalWindow;
+    }
+
+    /**
+     * Sets the width in Th of the window around the precursor m/z where peaks
+     * are removed.
+     *
+     * @param precursorRemovalWindow the width of the precursor removal window
+     */
+    public void setPrecursorRemovalWindow(double precursorRemovalWindow) {
+        this.precursorRemovalWindow = precursorRemovalWindow;
+    }
+
+    /**
+     * Returns the minimal spectrum quality score between 0 and 1.
+     *
+     * @return the minimal spectrum quality score
+     */
+    public double getQualityThreshold() {
+        return qualityThreshold;
+    }
+
+    /**
+     * Sets the minimal spectrum quality score between 0 and 1, 0 to keep all
+     * spectra.
+     *
+     * @param qualityThreshold the minimal spectrum quality score
+     */
+    public void setQualityThreshold(double qualityThreshold) {
+        this.qualityThreshold = qualityThreshold;
+    }
+
+    /**
+     * Returns the minimal cosine similarity for two spectra to be clustered.
+     *
+     * @return the minimal cosine similarity for two spectra to be clustered
+     */
+    public double getClusteringSimilarity() {
+        return clusteringSimilarity;
+    }
+
+    /**
+     * Sets the minimal cosine similarity for two spectra to be clustered, 0
+     * for no clustering.
+     *
+     * @param clusteringSimilarity the minimal cosine similarity for two
+     * spectra to be clustered
+     */
+    public void setClusteringSimilarity(double clusteringSimilarity) {
+        this.clusteringSimilarity = clusteringSimilarity;
+    }
+
+    /**
+     * Indicates whether the spectra should be sorted by precursor mass.
+     *
+     * @return a boolean indicating whether the spectra should be sorted by
+     * precursor mass
+     */
+    public boolean isSortByPrecursorMass() {
+        return sortByPrecursorMass;
+    }
+
+    /**
+     * Sets whether the spectra should be sorted by precursor mass.
+     *
+     * @param sortByPrecursorMass a boolean indicating whether the spectra
+     * should be sorted by precursor mass
+     */
+    public void setSortByPrecursorMass(boolean sortByPrecursorMass) {
+        this.sortByPrecursorMass = sortByPrecursorMass;
+    }
+
+    /**
+     * Indicates whether the charge of the precursors without charge should be
+     * inferred from the fragment ions.
+     *
+     * @return a boolean indicating whether the missing precursor charges
+     * should be inferred
+     */
+    public boolean isInferCharges() {
+        return inferCharges;
+    }
+
+    /**
+     * Sets whether the charge of the precursors without charge should be
+     * inferred from the fragment ions.
+     *
+     * @param inferCharges a boolean indicating whether the missing precursor
+     * charges should be inferred
+     */
+    public void setInferCharges(boolean inferCharges) {
+        this.inferCharges = inferCharges;
+    }
+
+    /**
+     * Returns the precursor m/z tolerance used to cluster spectra.
+     *
+     * @return the precursor m/z tolerance
+     */
+    public double getPrecursorTolerance() {
+        return precursorTolerance;
+    }
+
+    /**
+     * Indicates whether the precursor m/z tolerance is in ppm.
+     *
+     * @return a boolean indicating whether the precursor m/z tolerance is in
+     * ppm
+     */
+    public boolean isPrecursorTolerancePpm() {
+        return precursorTolerancePpm;
+    }
+
+    /**
+     * Sets the precursor m/z tolerance used to cluster spectra.
+     *
+     * @param precursorTolerance the precursor m/z tolerance
+     * @param ppm a boolean indicating whether the precursor m/z tolerance is
+     * in ppm
+     */
+    public void setPrecursorTolerance(double precursorTolerance, boolean ppm) {
+        this.precursorTolerance = precursorTolerance;
+        this.precursorTolerancePpm = ppm;
+    }
+
+    /**
+     * Returns the fragment ion tolerance in Da at the given m/z.
+     *
+     * @param mz the m/z of interest
+     *
+     * @return the fragment ion tolerance in Da
+     */
+    public double getFragmentToleranceDa(double mz) {
+        return fragmentTolerancePpm ? mz * fragmentTolerance / 1000000 : fragmentTolerance;
+    }
+
+    /**
+     * Returns the fragment ion tolerance used to match isotopic peaks.
+     *
+     * @return the fragment ion tolerance
+     */
+    public double getFragmentTolerance() {
+        return fragmentTolerance;
+    }
+
+    /**
+     * Indicates whether the fragment ion tolerance is in ppm.
+     *
+     * @return a boolean indicating whether the fragment ion tolerance is in
+     * ppm
+     */
+    public boolean isFragmentTolerancePpm() {
+        return fragmentTolerancePpm;
+    }
+
+    /**
+     * Sets the fragment ion tolerance used to match isotopic peaks.
+     *
+     * @param fragmentTolerance the fragment ion tolerance
+     * @param ppm a boolean indicating whether the fragment ion tolerance is in
+     * ppm
+     */
+    public void setFragmentTolerance(double fragmentTolerance, boolean ppm) {
+        this.fragmentTolerance = fragmentTolerance;
+        this.fragmentTolerancePpm = ppm;
+    }
+
+    /**
+     * Returns a short description of the enabled pre-processing steps.
+     *
+     * @return a short description of the enabled pre-processing steps
+     */
+    public String getDescription() {
+        StringBuilder description = new StringBuilder();
+        if (qualityThreshold > 0) {
+            description.append("quality filter (").append(qualityThreshold).append(")");
+        }
+        if (precursorRemovalWindow > 0) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append("precursor removal (").append(precursorRemovalWindow).append(" Th)");
+        }
+        if (deisotope) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(deconvolute ? "deisotoping and deconvolution" : "deisotoping");
+        }
+        if (intensityThreshold > 0) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append("intensity threshold (").append(intensityThreshold).append("%)");
+        }
+        if (peaksPerWindow > 0) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append("top ").append(peaksPerWindow).append(" peaks per ").append(windowWidth).append(" Th");
+        }
+        if (isClusteringEnabled()) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append("clustering (similarity ").append(clusteringSimilarity).append(")");
+        }
+        if (sortByPrecursorMass) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append("sorting by precursor mass");
+        }
+        if (inferCharges) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append("charge inference");
+        }
+        return description.toString();
+    }
+}
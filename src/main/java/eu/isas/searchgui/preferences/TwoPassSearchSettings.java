@@ -0,0 +1,61 @@
+package eu.isas.searchgui.preferences;
+
+/**
+ * Settings of the two-pass search: a first pass with Comet against the full
+ * database selects the proteins with a hit at the given false discovery rate,
+ * and all enabled search engines then search a reduced database made of these
+ * proteins and of their decoys.
+ *
+ * Note that the false discovery rate estimated on the results of the second
+ * pass is not comparable to the one of a search of the full database: the
+ * reduced database is enriched in proteins present in the sample, so that the
+ * target-decoy approach underestimates the rate of false identifications.
+ *
+ * @author Marc Vaudel
+ */
+public class TwoPassSearchSettings {
+
+    /**
+     * The false discovery rate in percent at which the proteins of the first
+     * pass hits are kept in the reduced database, 0 to search the full
+     * database in a single pass.
+     */
+    private double fdr = 0;
+
+    /**
+     * Constructor.
+     */
+    public TwoPassSearchSettings() {
+    }
+
+    /**
+     * Indicates whether the two-pass search is enabled.
+     *
+     * @return a boolean indicating whether the two-pass search is enabled
+     */
+    public boolean isEnabled() {
+        return fdr > 0;
+    }
+
+    /**
+     * Returns the false discovery rate in percent at which the proteins of the
+     * first pass hits are kept in the reduced database, 0 to search the full
+     * database in a single pass.
+     *
+     * @return the false discovery rate in percent
+     */
+    public double getFdr() {
+        return fdr;
+    }
+
+    /**
+     * Sets the false discovery rate in percent at which the proteins of the
+     * first pass hits are kept in the reduced database, 0 to search the full
+     * database in a single pass.
+     *
+     * @param fdr the false discovery rate in percent
+     */
+    public void setFdr(double fdr) {
+        this.fdr = fdr;
+    }
+}
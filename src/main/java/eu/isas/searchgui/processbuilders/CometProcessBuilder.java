@@ -59,9 +59,9 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
      */
     private CometParameters cometParameters;
     /**
-     * The number of threads to use.
+     * The resources to use.
      */
-    private int nThreads;
+    private EngineResourceProfile resourceProfile;
     /**
      * The compomics PTM factory.
      */
@@ -74,19 +74,19 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
      * @param searchParameters the search parameters
      * @param spectrumFile the spectrum file
      * @param waitingHandler the waiting handler
-     * @param nThreads the number of threads
+     * @param resourceProfile the resources to use
      *
      * @throws IOException thrown if there are problems creating the Comet
      * parameter file
      */
-    public CometProcessBuilder(File cometFolder, SearchParameters searchParameters, File spectrumFile, WaitingHandler waitingHandler, int nThreads) throws IOException {
+    public CometProcessBuilder(File cometFolder, SearchParameters searchParameters, File spectrumFile, WaitingHandler waitingHandler, EngineResourceProfile resourceProfile) throws IOException {
 
         this.waitingHandler = waitingHandler;
         this.cometFolder = cometFolder;
         this.searchParameters = searchParameters;
         cometParameters = (CometParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.comet.getIndex());
         this.spectrumFile = spectrumFile;
-        this.nThreads = nThreads;
+        this.resourceProfile = resourceProfile;
 
         createParametersFile();
 
@@ -189,7 +189,7 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
                     /////////////////////////
                     // number of threads
                     /////////////////////////
-                    + "num_threads = " + nThreads + " # 0=poll CPU to set num threads; else specify num threads directly (max 64)" + System.getProperty("line.separator")
+                    + "num_threads = " + resourceProfile.getnThreads() + " # 0=poll CPU to set num threads; else specify num threads directly (max 64)" + System.getProperty("line.separator")
                     + System.getProperty("line.separator")
                     /////////////////////////
                     // precursor details
@@ -277,7 +277,7 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
                     + "max_precursor_charge = " + searchParameters.getMaxChargeSearched() + " # set maximum precursor charge state to analyze (allowed max 9)" + System.getProperty("line.separator")
                     + "nucleotide_reading_frame = 0           # 0=proteinDB, 1-6, 7=forward three, 8=reverse three, 9=all six" + System.getProperty("line.separator")
                     + "clip_nterm_methionine = " + clip_nterm_methionine + " # 0=leave sequences as-is; 1=also consider sequence w/o N-term methionine" + System.getProperty("line.separator")
-                    + "spectrum_batch_size = " + cometParameters.getBatchSize() + " # max. # of spectra to search at a time; 0 to search the entire scan range in one loop" + System.getProperty("line.separator")
+                    + "spectrum_batch_size = " + (resourceProfile.getBatchSize() != null ? resourceProfile.getBatchSize() : cometParameters.getBatchSize()) + " # max. # of spectra to search at a time; 0 to search the entire scan range in one loop" + System.getProperty("line.separator")
                     + "decoy_prefix = DECOY_                  # decoy entries are denoted by this string which is pre-pended to each protein accession" + System.getProperty("line.separator")
                     + "output_suffix = .comet                 # add a suffix to output base names i.e. suffix \"-C\" generates base-C.pep.xml from base.mzXML input" + System.getProperty("line.separator")
                     + "mass_offsets =                         # one or more mass offsets to search (values substracted from deconvoluted precursor mass)" + System.getProperty("line.separator") // @TODO: implement?
@@ -735,6 +735,18 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
         return "Comet Process";
     }
 
+    @Override
+    protected ProgressParser getProgressParser() {
+        // e.g. " - Search progress: 45%"
+        return ProgressParser.getPercentageParser("");
+    }
+
+    @Override
+    protected String getOutputDelimiter() {
+        // the progress is written on a single line using backspaces
+        return "\n|\b ";
+    }
+
     @Override
     public String getCurrentlyProcessedFileName() {
         return spectrumFile.getName();
@@ -0,0 +1,368 @@
+package eu.isas.searchgui.processbuilders;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.TreeMap;
+
+/**
+ * The CPUs a search engine process is pinned to on Linux. The CPUs are
+ * allocated so that the processes running at the same time get disjoint sets,
+ * within a single NUMA node where possible. The process is started through
+ * numactl, binding its memory preferably to the node, or taskset if numactl is
+ * not installed. Only the CPUs SearchGUI is allowed to run on, e.g. restricted
+ * by a cgroup cpuset or a SLURM allocation, are used.
+ *
+ * @author Marc Vaudel
+ */
+public class CpuPlacement {
+
+    /**
+     * The folder listing the NUMA nodes.
+     */
+    public static final File NODE_FOLDER = new File("/sys/devices/system/node");
+    /**
+     * The file listing the online CPUs, used when the NUMA nodes are not
+     * available.
+     */
+    public static final File ONLINE_CPUS_FILE = new File("/sys/devices/system/cpu/online");
+    /**
+     * The status file of the current process, listing the CPUs it is allowed
+     * to run on.
+     */
+    public static final File STATUS_FILE = new File("/proc/self/status");
+    /**
+     * The key of the allowed CPUs in the status file.
+     */
+    public static final String CPUS_ALLOWED_KEY = "Cpus_allowed_list:";
+    /**
+     * The CPUs of every NUMA node indexed by node, null until read.
+     */
+    private static TreeMap<Integer, ArrayList<Integer>> nodes = null;
+    /**
+     * The CPUs currently allocated.
+     */
+    private static final HashSet<Integer> allocatedCpus = new HashSet<Integer>();
+    /**
+     * The NUMA node of the placement, -1 if spanning several nodes.
+     */
+    private final int node;
+    /**
+     * The CPUs of the placement.
+     */
+    private final ArrayList<Integer> cpus;
+    /**
+     * Indicates whether the placement was released.
+     */
+    private boolean released = false;
+
+    /**
+     * Constructor.
+     *
+     * @param node the NUMA node of the placement, -1 if spanning several
+     * nodes
+     * @param cpus the CPUs of the placement
+     */
+    private CpuPlacement(int node, ArrayList<Integer> cpus) {
+        this.node = node;
+        this.cpus = cpus;
+    }
+
+    /**
+     * Indicates whether processes can be pinned on this system, i.e. on Linux
+     * with numactl or taskset installed.
+     *
+     * @return a boolean indicating whether processes can be pinned
+     */
+    public static boolean isSupported() {
+        return System.getProperty("os.name").toLowerCase().contains("linux")
+                && (isInstalled("numactl") || isInstalled("taskset"));
+    }
+
+    /**
+     * Allocates CPUs for a process. The node with the fewest free CPUs still
+     * fitting all the threads is used, otherwise the free CPUs of the nodes
+     * with the most free CPUs are combined. If fewer CPUs than threads are
+     * free, all of them are used.
+     *
+     * @param nThreads the number of threads of the process
+     *
+     * @return the placement, null if no CPU is free or allowed
+     */
+    public static synchronized CpuPlacement allocate(int nThreads) {
+
+        final TreeMap<Integer, ArrayList<Integer>> freeCpus = new TreeMap<Integer, ArrayList<Integer>>();
+        for (Integer nodeIndex : getNodes().keySet()) {
+            ArrayList<Integer> nodeFreeCpus = new ArrayList<Integer>();
+            for (Integer cpu : getNodes().get(nodeIndex)) {
+                if (!allocatedCpus.contains(cpu)) {
+                    nodeFreeCpus.add(cpu);
+                }
+            }
+            freeCpus.put(nodeIndex, nodeFreeCpus);
+        }
+
+        // best fit in a single node
+        Integer bestNode = null;
+        for (Integer nodeIndex : freeCpus.keySet()) {
+            int nFree = freeCpus.get(nodeIndex).size();
+            if (nFree >= nThreads && (bestNode == null || nFree < freeCpus.get(bestNode).size())) {
+                bestNode = nodeIndex;
+            }
+        }
+
+        CpuPlacement placement;
+
+        if (bestNode != null) {
+            placement = new CpuPlacement(bestNode, new ArrayList<Integer>(freeCpus.get(bestNode).subList(0, nThreads)));
+        } else {
+            ArrayList<Integer> nodeOrder = new ArrayList<Integer>(freeCpus.keySet());
+            Collections.sort(nodeOrder, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return freeCpus.get(o2).size() - freeCpus.get(o1).size();
+                }
+            });
+            ArrayList<Integer> cpus = new ArrayList<Integer>(nThreads);
+            HashSet<Integer> usedNodes = new HashSet<Integer>();
+            for (Integer nodeIndex : nodeOrder) {
+                for (Integer cpu : freeCpus.get(nodeIndex)) {
+                    if (cpus.size() < nThreads) {
+                        cpus.add(cpu);
+                        usedNodes.add(nodeIndex);
+                    }
+                }
+            }
+            if (cpus.isEmpty()) {
+                return null;
+            }
+            Collections.sort(cpus);
+            placement = new CpuPlacement(usedNodes.size() == 1 ? usedNodes.iterator().next() : -1, cpus);
+        }
+
+        allocatedCpus.addAll(placement.cpus);
+        return placement;
+    }
+
+    /**
+     * Releases the CPUs of the placement.
+     */
+    public void release() {
+        synchronized (CpuPlacement.class) {
+            if (!released) {
+                allocatedCpus.removeAll(cpus);
+                released = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the command to prepend to the command of the process.
+     *
+     * @return the command to prepend
+     */
+    public ArrayList<String> getCommandPrefix() {
+        ArrayList<String> prefix = new ArrayList<String>();
+        if (isInstalled("numactl")) {
+            prefix.add("numactl");
+            prefix.add("--physcpubind=" + getCpuList());
+            if (node != -1) {
+                prefix.add("--preferred=" + node);
+            }
+        } else {
+            prefix.add("taskset");
+            prefix.add("-c");
+            prefix.add(getCpuList());
+        }
+        return prefix;
+    }
+
+    /**
+     * Returns the NUMA node of the placement, -1 if spanning several nodes.
+     *
+     * @return the NUMA node of the placement
+     */
+    public int getNode() {
+        return node;
+    }
+
+    /**
+     * Returns the CPUs as a list of ranges, e.g. 0-3,8.
+     *
+     * @return the CPUs as a list of ranges
+     */
+    public String getCpuList() {
+        StringBuilder cpuList = new StringBuilder();
+        for (int i = 0; i < cpus.size(); i++) {
+            int start = cpus.get(i);
+            int end = start;
+            while (i + 1 < cpus.size() && cpus.get(i + 1) == end + 1) {
+                end = cpus.get(++i);
+            }
+            if (cpuList.length() > 0) {
+                cpuList.append(",");
+            }
+            cpuList.append(start);
+            if (end > start) {
+                cpuList.append("-").append(end);
+            }
+        }
+        return cpuList.toString();
+    }
+
+    @Override
+    public String toString() {
+        return (node == -1 ? "nodes" : "node " + node) + " CPUs " + getCpuList();
+    }
+
+    /**
+     * Returns the CPUs of every NUMA node the process is allowed to run on.
+     * When the nodes are not available all the online CPUs are considered as
+     * one node. Nodes without allowed CPU are not returned.
+     *
+     * @return the CPUs of every NUMA node indexed by node
+     */
+    private static synchronized TreeMap<Integer, ArrayList<Integer>> getNodes() {
+
+        if (nodes == null) {
+
+            nodes = new TreeMap<Integer, ArrayList<Integer>>();
+
+            File[] nodeFolders = NODE_FOLDER.listFiles();
+            if (nodeFolders != null) {
+                for (File nodeFolder : nodeFolders) {
+                    String name = nodeFolder.getName();
+                    if (name.startsWith("node") && name.length() > 4 && Character.isDigit(name.charAt(4))) {
+                        ArrayList<Integer> nodeCpus = parseCpuList(readFirstLine(new File(nodeFolder, "cpulist")));
+                        if (!nodeCpus.isEmpty()) {
+                            nodes.put(Integer.parseInt(name.substring(4)), nodeCpus);
+                        }
+                    }
+                }
+            }
+
+            if (nodes.isEmpty()) {
+                ArrayList<Integer> cpus = parseCpuList(readFirstLine(ONLINE_CPUS_FILE));
+                if (cpus.isEmpty()) {
+                    for (int cpu = 0; cpu < Runtime.getRuntime().availableProcessors(); cpu++) {
+                        cpus.add(cpu);
+                    }
+                }
+                nodes.put(0, cpus);
+            }
+
+            HashSet<Integer> allowedCpus = getAllowedCpus();
+            if (allowedCpus != null) {
+                for (Integer nodeIndex : new ArrayList<Integer>(nodes.keySet())) {
+                    ArrayList<Integer> nodeCpus = nodes.get(nodeIndex);
+                    nodeCpus.retainAll(allowedCpus);
+                    if (nodeCpus.isEmpty()) {
+                        nodes.remove(nodeIndex);
+                    }
+                }
+            }
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Returns the CPUs the process is allowed to run on as listed in its
+     * status file. The list reflects the affinity inherited from the parent
+     * process and the cgroup cpuset, including the ones set by SLURM.
+     *
+     * @return the CPUs the process is allowed to run on, null if not known
+     */
+    private static HashSet<Integer> getAllowedCpus() {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(STATUS_FILE));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith(CPUS_ALLOWED_KEY)) {
+                        ArrayList<Integer> cpus = parseCpuList(line.substring(CPUS_ALLOWED_KEY.length()));
+                        return cpus.isEmpty() ? null : new HashSet<Integer>(cpus);
+                    }
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            // not available
+        }
+        return null;
+    }
+
+    /**
+     * Parses a list of CPU ranges as found in sysfs, e.g. 0-7,16-23.
+     *
+     * @param cpuList the list of CPU ranges, can be null
+     *
+     * @return the CPUs
+     */
+    private static ArrayList<Integer> parseCpuList(String cpuList) {
+        ArrayList<Integer> cpus = new ArrayList<Integer>();
+        if (cpuList != null) {
+            try {
+                for (String range : cpuList.trim().split(",")) {
+                    if (range.length() > 0) {
+                        int separator = range.indexOf('-');
+                        int start = Integer.parseInt(separator == -1 ? range : range.substring(0, separator));
+                        int end = separator == -1 ? start : Integer.parseInt(range.substring(separator + 1));
+                        for (int cpu = start; cpu <= end; cpu++) {
+                            cpus.add(cpu);
+                        }
+                    }
+                }
+            } catch (NumberFormatException e) {
+                cpus.clear();
+            }
+        }
+        return cpus;
+    }
+
+    /**
+     * Returns the first line of a file.
+     *
+     * @param file the file
+     *
+     * @return the first line of the file, null if it cannot be read
+     */
+    private static String readFirstLine(File file) {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try {
+                return br.readLine();
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Indicates whether an executable is found in the path.
+     *
+     * @param executable the name of the executable
+     *
+     * @return a boolean indicating whether the executable is found
+     */
+    private static boolean isInstalled(String executable) {
+        String path = System.getenv("PATH");
+        if (path != null) {
+            for (String folder : path.split(File.pathSeparator)) {
+                File file = new File(folder, executable);
+                if (file.isFile() && file.canExecute()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,365 @@
+package eu.isas.searchgui.processbuilders;
+
+import eu.isas.searchgui.preferences.EngineResourceSettings;
+import eu.isas.searchgui.preferences.EngineScalingHistory;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * The resources given to a search engine for a spectrum file: number of
+ * threads, batch sizes and memory mode, and the memory the engine is expected
+ * to use. The values are derived from the cores and memory available, the
+ * size of the database and the number of spectra, unless set by the user.
+ * Values left null are taken from the search parameters.
+ *
+ * @author Marc Vaudel
+ */
+public class EngineResourceProfile {
+
+    /**
+     * The share of the available memory the engines are expected to use.
+     */
+    public static final double MEMORY_SHARE = 0.5;
+    /**
+     * The default X!Tandem spectrum, sequence batch size.
+     */
+    public static final int XTANDEM_MIN_BATCH_SIZE = 1000;
+    /**
+     * The largest X!Tandem spectrum, sequence batch size used.
+     */
+    public static final int XTANDEM_MAX_BATCH_SIZE = 10000;
+    /**
+     * The X!Tandem batch size per thread.
+     */
+    public static final int XTANDEM_BATCH_SIZE_PER_THREAD = 250;
+    /**
+     * The estimated memory used by Comet per spectrum of a batch in bytes.
+     */
+    public static final long COMET_BYTES_PER_SPECTRUM = 256 * 1024;
+    /**
+     * The smallest Comet spectrum batch size used.
+     */
+    public static final int COMET_MIN_BATCH_SIZE = 1000;
+    /**
+     * The estimated memory used by MyriMatch per byte of database and thread.
+     */
+    public static final int MYRIMATCH_BYTES_PER_DATABASE_BYTE = 20;
+    /**
+     * The smallest number of MyriMatch batches used.
+     */
+    public static final int MYRIMATCH_MIN_BATCHES = 10;
+    /**
+     * The largest number of MyriMatch batches used.
+     */
+    public static final int MYRIMATCH_MAX_BATCHES = 500;
+    /**
+     * The estimated memory used by MS Amanda per byte of database.
+     */
+    public static final int MS_AMANDA_BYTES_PER_DATABASE_BYTE = 40;
+    /**
+     * The estimated memory used by MS Amanda per spectrum in bytes.
+     */
+    public static final long MS_AMANDA_BYTES_PER_SPECTRUM = 50 * 1024;
+    /**
+     * The share of the memory used by MS Amanda in low memory mode.
+     */
+    public static final double MS_AMANDA_LOW_MEMORY_SHARE = 0.25;
+    /**
+     * The estimated memory used by any engine process regardless of the data
+     * in bytes.
+     */
+    public static final long BASE_MEMORY = 256 * 1024 * 1024;
+    /**
+     * The estimated memory used by an engine per thread in bytes.
+     */
+    public static final long BYTES_PER_THREAD = 32 * 1024 * 1024;
+    /**
+     * The estimated memory used by an engine per byte of database when not
+     * modeled specifically.
+     */
+    public static final int BYTES_PER_DATABASE_BYTE = 10;
+    /**
+     * The estimated memory used by an engine per spectrum when not modeled
+     * specifically in bytes.
+     */
+    public static final long BYTES_PER_SPECTRUM = 20 * 1024;
+    /**
+     * The engine as named in the engine resource settings, null if not set.
+     */
+    private String engine = null;
+    /**
+     * The number of threads.
+     */
+    private int nThreads;
+    /**
+     * The batch size of X!Tandem or Comet, null to use the search parameters.
+     */
+    private Integer batchSize = null;
+    /**
+     * The number of batches of MyriMatch, null to use the search parameters.
+     */
+    private Integer nBatches = null;
+    /**
+     * The low memory mode of MS Amanda, null to use the search parameters.
+     */
+    private Boolean lowMemory = null;
+    /**
+     * The estimated memory used by the engine in bytes.
+     */
+    private long estimatedMemory;
+    /**
+     * Description of the values chosen.
+     */
+    private String description;
+
+    /**
+     * Constructor for a profile using the given number of threads and the
+     * values of the search parameters.
+     *
+     * @param nThreads the number of threads
+     */
+    public EngineResourceProfile(int nThreads) {
+        this.nThreads = nThreads;
+        this.description = nThreads + " threads";
+        this.estimatedMemory = BASE_MEMORY + nThreads * BYTES_PER_THREAD;
+    }
+
+    /**
+     * Returns the resources to use for a search engine on a spectrum file.
+     *
+     * @param engine the engine as named in the engine resource settings, e.g.
+     * xtandem
+     * @param settings the engine resource settings
+     * @param history the throughput of the engines in past runs, can be null
+     * @param nThreads the number of threads requested for the search
+     * @param nSpectra the number of spectra in the file
+     * @param databaseSize the size of the database in bytes
+     *
+     * @return the resources to use
+     */
+    public static EngineResourceProfile getProfile(String engine, EngineResourceSettings settings, EngineScalingHistory history, int nThreads, long nSpectra, long databaseSize) {
+
+        boolean autoTune = settings == null || settings.isAutoTune();
+        long availableMemory = autoTune ? getAvailableMemory() : -1;
+        long usableMemory = (long) (MEMORY_SHARE * availableMemory);
+
+        int threads = Math.max(1, Math.min(nThreads, Runtime.getRuntime().availableProcessors()));
+        Integer threadsOverride = settings == null ? null : settings.getOverride(EngineResourceSettings.getThreadsKey(engine));
+        boolean learned = false;
+        if (threadsOverride != null) {
+            threads = threadsOverride;
+        } else if (autoTune && history != null && EngineResourceSettings.isThreaded(engine)) {
+            int recommendedThreads = history.getRecommendedThreads(engine, threads, settings != null && settings.isThreadExploration());
+            learned = recommendedThreads != threads;
+            threads = recommendedThreads;
+        }
+
+        EngineResourceProfile profile = new EngineResourceProfile(threads);
+        profile.engine = engine;
+        StringBuilder description = new StringBuilder();
+        description.append(threads).append(" threads");
+        if (learned) {
+            description.append(" (from past runs)");
+        }
+
+        if (engine.equals("xtandem")) {
+            Integer override = settings == null ? null : settings.getOverride(EngineResourceSettings.XTANDEM_BATCH_SIZE);
+            if (override != null) {
+                profile.batchSize = override;
+            } else if (autoTune) {
+                profile.batchSize = Math.min(XTANDEM_MAX_BATCH_SIZE, Math.max(XTANDEM_MIN_BATCH_SIZE, XTANDEM_BATCH_SIZE_PER_THREAD * threads));
+            }
+            if (profile.batchSize != null) {
+                description.append(", batch size ").append(profile.batchSize);
+            }
+        } else if (engine.equals("comet")) {
+            Integer override = settings == null ? null : settings.getOverride(EngineResourceSettings.COMET_BATCH_SIZE);
+            if (override != null) {
+                profile.batchSize = override;
+            } else if (autoTune && availableMemory > 0) {
+                long fittingSpectra = usableMemory / COMET_BYTES_PER_SPECTRUM;
+                profile.batchSize = fittingSpectra >= nSpectra ? 0 : (int) Math.max(COMET_MIN_BATCH_SIZE, fittingSpectra);
+            }
+            if (profile.batchSize != null) {
+                description.append(", spectrum batch size ").append(profile.batchSize == 0 ? "all" : profile.batchSize);
+            }
+        } else if (engine.equals("myrimatch")) {
+            Integer override = settings == null ? null : settings.getOverride(EngineResourceSettings.MYRIMATCH_BATCHES);
+            if (override != null) {
+                profile.nBatches = override;
+            } else if (autoTune && availableMemory > 0) {
+                long needed = databaseSize * MYRIMATCH_BYTES_PER_DATABASE_BYTE * threads;
+                long batches = (needed + usableMemory - 1) / Math.max(1, usableMemory);
+                profile.nBatches = (int) Math.min(MYRIMATCH_MAX_BATCHES, Math.max(MYRIMATCH_MIN_BATCHES, batches));
+            }
+            if (profile.nBatches != null) {
+                description.append(", ").append(profile.nBatches).append(" batches");
+            }
+        } else if (engine.equals("ms_amanda")) {
+            Integer override = settings == null ? null : settings.getOverride(EngineResourceSettings.MS_AMANDA_LOW_MEMORY);
+            if (override != null) {
+                profile.lowMemory = override == 1;
+            } else if (autoTune && availableMemory > 0) {
+                long needed = databaseSize * MS_AMANDA_BYTES_PER_DATABASE_BYTE + nSpectra * MS_AMANDA_BYTES_PER_SPECTRUM;
+                profile.lowMemory = needed > usableMemory;
+            }
+            if (profile.lowMemory != null) {
+                description.append(", low memory mode ").append(profile.lowMemory ? "on" : "off");
+            }
+        }
+
+        profile.estimatedMemory = estimateMemory(engine, profile, nSpectra, databaseSize);
+        description.append(", about ").append(profile.estimatedMemory / (1024 * 1024)).append(" MB");
+
+        if (availableMemory > 0) {
+            description.append(" (").append(availableMemory / (1024 * 1024)).append(" MB available)");
+        }
+        profile.description = description.toString();
+
+        return profile;
+    }
+
+    /**
+     * Estimates the memory used by an engine using the given resources.
+     *
+     * @param engine the engine as named in the engine resource settings
+     * @param profile the resources of the engine
+     * @param nSpectra the number of spectra in the file
+     * @param databaseSize the size of the database in bytes
+     *
+     * @return the estimated memory in bytes
+     */
+    private static long estimateMemory(String engine, EngineResourceProfile profile, long nSpectra, long databaseSize) {
+
+        long memory = BASE_MEMORY + profile.nThreads * BYTES_PER_THREAD;
+
+        if (engine.equals("comet")) {
+            long batchSpectra = profile.batchSize == null || profile.batchSize == 0 ? nSpectra : Math.min(nSpectra, profile.batchSize);
+            memory += batchSpectra * COMET_BYTES_PER_SPECTRUM;
+        } else if (engine.equals("myrimatch")) {
+            int batches = profile.nBatches != null ? Math.max(1, profile.nBatches) : MYRIMATCH_MIN_BATCHES;
+            memory += databaseSize * MYRIMATCH_BYTES_PER_DATABASE_BYTE * profile.nThreads / batches + nSpectra * BYTES_PER_SPECTRUM;
+        } else if (engine.equals("ms_amanda")) {
+            long amandaMemory = databaseSize * MS_AMANDA_BYTES_PER_DATABASE_BYTE + nSpectra * MS_AMANDA_BYTES_PER_SPECTRUM;
+            if (profile.lowMemory != null && profile.lowMemory) {
+                amandaMemory = (long) (MS_AMANDA_LOW_MEMORY_SHARE * amandaMemory);
+            }
+            memory += amandaMemory;
+        } else {
+            memory += databaseSize * BYTES_PER_DATABASE_BYTE + nSpectra * BYTES_PER_SPECTRUM;
+        }
+
+        return memory;
+    }
+
+    /**
+     * Returns the physical memory available in bytes. On Linux the
+     * MemAvailable entry of /proc/meminfo is used, elsewhere the free
+     * physical memory reported by the virtual machine.
+     *
+     * @return the memory available in bytes, -1 if not available
+     */
+    public static long getAvailableMemory() {
+
+        File memInfo = new File(ProcessTree.PROC_FOLDER, "meminfo");
+        if (memInfo.exists()) {
+            try {
+                BufferedReader br = new BufferedReader(new FileReader(memInfo));
+                try {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        if (line.startsWith("MemAvailable:")) {
+                            return 1024 * Long.parseLong(line.substring("MemAvailable:".length()).replace("kB", "").trim());
+                        }
+                    }
+                } finally {
+                    br.close();
+                }
+            } catch (IOException e) {
+                // use the virtual machine
+            } catch (NumberFormatException e) {
+                // use the virtual machine
+            }
+        }
+
+        try {
+            OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+            Method method = Class.forName("com.sun.management.OperatingSystemMXBean").getMethod("getFreePhysicalMemorySize");
+            return (Long) method.invoke(bean);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the engine as named in the engine resource settings, null if
+     * not set.
+     *
+     * @return the engine
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the number of threads.
+     *
+     * @return the number of threads
+     */
+    public int getnThreads() {
+        return nThreads;
+    }
+
+    /**
+     * Returns the batch size of X!Tandem or Comet, null to use the search
+     * parameters.
+     *
+     * @return the batch size
+     */
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the number of batches of MyriMatch, null to use the search
+     * parameters.
+     *
+     * @return the number of batches
+     */
+    public Integer getnBatches() {
+        return nBatches;
+    }
+
+    /**
+     * Returns the low memory mode of MS Amanda, null to use the search
+     * parameters.
+     *
+     * @return the low memory mode
+     */
+    public Boolean isLowMemory() {
+        return lowMemory;
+    }
+
+    /**
+     * Returns the estimated memory used by the engine in bytes.
+     *
+     * @return the estimated memory used by the engine
+     */
+    public long getEstimatedMemory() {
+        return estimatedMemory;
+    }
+
+    /**
+     * Returns a description of the values chosen.
+     *
+     * @return a description of the values chosen
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,353 @@
+package eu.isas.searchgui.processbuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs a Java tool inside the SearchGUI virtual machine as if it was an
+ * external process. The tool is loaded in its own class loader, kept for the
+ * following runs so that the loaded and compiled code is reused, and run in
+ * its own thread group. The standard and error outputs of the threads of the
+ * group are redirected to the input stream of the process. The tool cannot
+ * be killed, it only stops early if it handles thread interruptions.
+ *
+ * @author Marc Vaudel
+ */
+public class InProcessJavaProcess extends Process {
+
+    /**
+     * The class loaders indexed by jar file.
+     */
+    private static final HashMap<File, URLClassLoader> classLoaders = new HashMap<File, URLClassLoader>();
+    /**
+     * The outputs of the thread groups running in process.
+     */
+    private static final HashMap<ThreadGroup, OutputStream> groupOutputs = new HashMap<ThreadGroup, OutputStream>();
+    /**
+     * The original standard output, null until the outputs are redirected.
+     */
+    private static PrintStream originalOut = null;
+    /**
+     * The original error output, null until the outputs are redirected.
+     */
+    private static PrintStream originalErr = null;
+    /**
+     * The thread group of the run.
+     */
+    private final ThreadGroup threadGroup;
+    /**
+     * The thread running the tool.
+     */
+    private final Thread thread;
+    /**
+     * The output of the run.
+     */
+    private final QueueInputStream output = new QueueInputStream();
+    /**
+     * The exit value, null while running.
+     */
+    private volatile Integer exitValue = null;
+
+    /**
+     * Constructor. Starts the given task in a new thread group.
+     *
+     * @param name the name of the tool
+     * @param classLoader the class loader of the tool
+     * @param task the task running the tool and returning its exit value
+     */
+    public InProcessJavaProcess(String name, ClassLoader classLoader, final Callable<Integer> task) {
+
+        threadGroup = new ThreadGroup(name);
+        redirectOutputs();
+        synchronized (groupOutputs) {
+            groupOutputs.put(threadGroup, output.getOutputStream());
+        }
+
+        thread = new Thread(threadGroup, new Runnable() {
+            @Override
+            public void run() {
+                int result = 1;
+                try {
+                    result = task.call();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                } finally {
+                    synchronized (groupOutputs) {
+                        groupOutputs.remove(threadGroup);
+                    }
+                    exitValue = result;
+                    output.close();
+                }
+            }
+        }, name);
+        thread.setContextClassLoader(classLoader);
+        thread.start();
+    }
+
+    /**
+     * Returns the class loader of the given jar file, created at the first
+     * call. The class loader does not delegate to the SearchGUI classes so
+     * that the libraries of the tool do not conflict with SearchGUI's.
+     *
+     * @param jarFile the jar file
+     *
+     * @return the class loader of the jar file
+     *
+     * @throws MalformedURLException thrown if the jar file path is invalid
+     */
+    public static synchronized URLClassLoader getClassLoader(File jarFile) throws MalformedURLException {
+        URLClassLoader classLoader = classLoaders.get(jarFile);
+        if (classLoader == null) {
+            classLoader = new URLClassLoader(new URL[]{jarFile.toURI().toURL()}, ClassLoader.getSystemClassLoader().getParent());
+            classLoaders.put(jarFile, classLoader);
+        }
+        return classLoader;
+    }
+
+    /**
+     * Replaces the standard and error outputs by streams sending the output of
+     * the threads running in process to their process and the rest to the
+     * original outputs.
+     */
+    private static synchronized void redirectOutputs() {
+        if (originalOut == null) {
+            originalOut = System.out;
+            originalErr = System.err;
+            System.setOut(new PrintStream(new GroupOutputStream(originalOut), true));
+            System.setErr(new PrintStream(new GroupOutputStream(originalErr), true));
+        }
+    }
+
+    /**
+     * Returns the output of the group of the current thread, null if the
+     * thread does not run in process.
+     *
+     * @return the output of the group of the current thread
+     */
+    private static OutputStream getGroupOutput() {
+        synchronized (groupOutputs) {
+            if (groupOutputs.isEmpty()) {
+                return null;
+            }
+            for (ThreadGroup group = Thread.currentThread().getThreadGroup(); group != null; group = group.getParent()) {
+                OutputStream groupOutput = groupOutputs.get(group);
+                if (groupOutput != null) {
+                    return groupOutput;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                // the tool does not read any input
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return output;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        thread.join();
+        return exitValue;
+    }
+
+    @Override
+    public int exitValue() {
+        Integer result = exitValue;
+        if (result == null) {
+            throw new IllegalThreadStateException("The process has not exited.");
+        }
+        return result;
+    }
+
+    /**
+     * Interrupts the threads of the tool. Tools which do not handle
+     * interruptions, like MS-GF+, cannot be stopped and run until completion.
+     */
+    @Override
+    public void destroy() {
+        threadGroup.interrupt();
+    }
+
+    /**
+     * Indicates whether a tool of the given name is running in process.
+     *
+     * @param name the name of the tool
+     *
+     * @return true if a tool of the given name is running in process
+     */
+    public static boolean isRunning(String name) {
+        synchronized (groupOutputs) {
+            for (ThreadGroup group : groupOutputs.keySet()) {
+                if (group.getName().equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Output stream sending the output of the threads running in process to
+     * their process and the rest to the original output.
+     */
+    private static class GroupOutputStream extends OutputStream {
+
+        /**
+         * The original output.
+         */
+        private final OutputStream original;
+
+        /**
+         * Constructor.
+         *
+         * @param original the original output
+         */
+        public GroupOutputStream(OutputStream original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            OutputStream groupOutput = getGroupOutput();
+            (groupOutput != null ? groupOutput : original).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            OutputStream groupOutput = getGroupOutput();
+            (groupOutput != null ? groupOutput : original).write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            original.flush();
+        }
+    }
+
+    /**
+     * Input stream reading the bytes written by other threads. Unlike piped
+     * streams it can be written by any number of threads, including threads
+     * which end before the data is read.
+     */
+    private static class QueueInputStream extends InputStream {
+
+        /**
+         * Marks the end of the stream.
+         */
+        private static final byte[] END_OF_STREAM = new byte[0];
+        /**
+         * The chunks of bytes written.
+         */
+        private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<byte[]>();
+        /**
+         * The chunk being read.
+         */
+        private byte[] current = null;
+        /**
+         * The position in the chunk being read.
+         */
+        private int position = 0;
+        /**
+         * Indicates whether the end of the stream was reached.
+         */
+        private boolean ended = false;
+
+        /**
+         * Returns the output stream writing to this input stream.
+         *
+         * @return the output stream writing to this input stream
+         */
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    queue.add(new byte[]{(byte) b});
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    if (len > 0) {
+                        queue.add(Arrays.copyOfRange(b, off, off + len));
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            queue.add(END_OF_STREAM);
+        }
+
+        /**
+         * Makes the next bytes available for reading.
+         *
+         * @return false if the end of the stream was reached
+         *
+         * @throws IOException thrown if the thread is interrupted while
+         * waiting for data
+         */
+        private boolean fill() throws IOException {
+            while (!ended && (current == null || position >= current.length)) {
+                try {
+                    current = queue.take();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while reading the output.");
+                }
+                position = 0;
+                if (current == END_OF_STREAM) {
+                    ended = true;
+                }
+            }
+            return !ended;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return current[position++] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
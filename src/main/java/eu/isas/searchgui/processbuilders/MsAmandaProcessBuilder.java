@@ -140,12 +140,13 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
      * @param outputPath path where to output the results
      * @param searchParameters the search parameters
      * @param waitingHandler the waiting handler
-     * @param nThreads the number of threads to use (note: cannot be used)
+     * @param resourceProfile the resources to use (note: the number of
+     * threads cannot be used)
      * @throws IllegalArgumentException thrown if more than one fixed PTM has
      * the same target
      */
     public MsAmandaProcessBuilder(File msAmandaDirectory, String mgfPath, String outputPath,
-            SearchParameters searchParameters, WaitingHandler waitingHandler, int nThreads) throws IllegalArgumentException {
+            SearchParameters searchParameters, WaitingHandler waitingHandler, EngineResourceProfile resourceProfile) throws IllegalArgumentException {
 
         try {
             this.waitingHandler = waitingHandler;
@@ -159,7 +160,7 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
 
             maxRank = msAmandaParameters.getMaxRank();
             generateDecoys = msAmandaParameters.generateDecoy();
-            lowMemoryMode = msAmandaParameters.isLowMemoryMode();
+            lowMemoryMode = resourceProfile.isLowMemory() != null ? resourceProfile.isLowMemory() : msAmandaParameters.isLowMemoryMode();
             monoisotopic = msAmandaParameters.isMonoIsotopic();
 
             // set the mass accuracies
@@ -131,6 +131,12 @@ public class MsConvertProcessBuilder extends SearchGUIProcessBuilder {
         return "msConvert Process";
     }
 
+    @Override
+    protected ProgressParser getProgressParser() {
+        // e.g. "12/345" when writing the output file
+        return new ProgressParser("^\\s*(\\d+)\\s*/\\s*(\\d+)\\s*$");
+    }
+
     @Override
     public String getCurrentlyProcessedFileName() {
         return rawFile.getName();
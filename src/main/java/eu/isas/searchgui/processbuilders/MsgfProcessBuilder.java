@@ -17,8 +17,11 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * This class will set up and start a process to perform an MS-GF+ search.
@@ -43,6 +46,18 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
      * The name of the MS-GF+ executable.
      */
     public final static String EXECUTABLE_FILE_NAME = "MSGFPlus.jar";
+    /**
+     * The main class of MS-GF+.
+     */
+    public final static String MAIN_CLASS = "edu.ucsd.msjava.ui.MSGFPlus";
+    /**
+     * The class of MS-GF+ parsing the command line parameters.
+     */
+    public final static String PARAM_MANAGER_CLASS = "edu.ucsd.msjava.params.ParamManager";
+    /**
+     * The name of MS-GF+ when running inside the SearchGUI virtual machine.
+     */
+    private final static String IN_PROCESS_NAME = "MS-GF+";
     /**
      * The spectrum file to search.
      */
@@ -55,6 +70,18 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
      * The search parameters.
      */
     private SearchParameters searchParameters;
+    /**
+     * The MS-GF+ jar file.
+     */
+    private File msgfJarFile;
+    /**
+     * The index of the first MS-GF+ argument in the process name array.
+     */
+    private int firstArgumentIndex;
+    /**
+     * If true MS-GF+ is run inside the SearchGUI virtual machine.
+     */
+    private boolean inProcess = false;
 
     /**
      * Constructor.
@@ -108,8 +135,10 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
             }
 
             // add the MSGFPlus.jar
+            msgfJarFile = new File(msgfDirectory, EXECUTABLE_FILE_NAME);
             process_name_array.add("-jar");
-            process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(msgfDirectory, EXECUTABLE_FILE_NAME)));
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(msgfJarFile));
+            firstArgumentIndex = process_name_array.size();
 
             // add the spectrum file
             process_name_array.add("-s");
@@ -229,6 +258,93 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
         }
     }
 
+    /**
+     * Sets whether MS-GF+ should be run inside the SearchGUI virtual machine
+     * instead of a new Java process. The heap and the compiled code of
+     * SearchGUI are then shared with MS-GF+ and kept from one spectrum file
+     * to the next. If MS-GF+ cannot be loaded, a new Java process is used.
+     * MS-GF+ does not handle thread interruptions, a run inside SearchGUI can
+     * therefore not be stopped: the watchdog does not apply to it and a
+     * canceled run completes in the background. While such a run completes,
+     * MS-GF+ is started in a new Java process.
+     *
+     * @param inProcess if true MS-GF+ is run inside the SearchGUI virtual
+     * machine
+     */
+    public void setInProcess(boolean inProcess) {
+        this.inProcess = inProcess;
+    }
+
+    @Override
+    protected Process createProcess() throws IOException {
+        if (inProcess && InProcessJavaProcess.isRunning(IN_PROCESS_NAME)) {
+            waitingHandler.appendReport("A previous MS-GF+ run is still completing in SearchGUI, using a separate Java process.", true, true);
+        } else if (inProcess) {
+            try {
+                return startInProcess();
+            } catch (Exception e) {
+                e.printStackTrace();
+                waitingHandler.appendReport("MS-GF+ could not be loaded in SearchGUI (" + e + "), using a separate Java process.", true, true);
+            }
+        }
+        return super.createProcess();
+    }
+
+    @Override
+    protected boolean isStoppable() {
+        return !(p instanceof InProcessJavaProcess);
+    }
+
+    /**
+     * Starts MS-GF+ inside the SearchGUI virtual machine. The MS-GF+ classes
+     * are loaded in their own class loader, reused for the following spectrum
+     * files. The entry points are all verified before starting so that
+     * incompatible versions of MS-GF+ fall back to a separate process.
+     *
+     * @return the process running MS-GF+
+     *
+     * @throws Exception thrown if the MS-GF+ entry points cannot be found
+     */
+    private Process startInProcess() throws Exception {
+
+        ClassLoader classLoader = InProcessJavaProcess.getClassLoader(msgfJarFile);
+        Class<?> msgfClass = Class.forName(MAIN_CLASS, true, classLoader);
+        Class<?> paramManagerClass = Class.forName(PARAM_MANAGER_CLASS, true, classLoader);
+        final Constructor<?> paramManagerConstructor = paramManagerClass.getConstructor(String.class, String.class, String.class, String.class);
+        final Method addParameters = paramManagerClass.getMethod("addMSGFPlusParams");
+        final Method parseParameters = paramManagerClass.getMethod("parseParams", String[].class);
+        final Method runMsgf = msgfClass.getMethod("runMSGFPlus", paramManagerClass);
+        final String version = (String) msgfClass.getField("VERSION").get(null);
+        final String releaseDate = (String) msgfClass.getField("RELEASE_DATE").get(null);
+
+        // the arguments without the quotes needed on the command line
+        String quote = CommandLineUtils.getQuoteType();
+        final String[] arguments = new String[process_name_array.size() - firstArgumentIndex];
+        for (int i = 0; i < arguments.length; i++) {
+            String argument = process_name_array.get(firstArgumentIndex + i).toString();
+            arguments[i] = quote.length() > 0 ? argument.replace(quote, "") : argument;
+        }
+
+        return new InProcessJavaProcess(IN_PROCESS_NAME, classLoader, new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                System.out.println("MS-GF+ " + version + " (" + releaseDate + ") running in SearchGUI.");
+                Object paramManager = paramManagerConstructor.newInstance("MS-GF+", version, releaseDate, "");
+                addParameters.invoke(paramManager);
+                String error = (String) parseParameters.invoke(paramManager, (Object) arguments);
+                if (error == null) {
+                    error = (String) runMsgf.invoke(null, paramManager);
+                }
+                if (error != null) {
+                    System.out.println("[Error] " + error);
+                    return 1;
+                }
+                System.out.println("MS-GF+ complete.");
+                return 0;
+            }
+        });
+    }
+
     /**
      * Creates the MS-GF+ modifications file.
      *
@@ -338,6 +454,16 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
         return "MS-GF+ Process";
     }
 
+    /**
+     * Returns the parser reading the progress from the MS-GF+ output, e.g.
+     * "Search progress: 3 / 16 tasks, 18.75%".
+     *
+     * @return the progress parser
+     */
+    protected ProgressParser getProgressParser() {
+        return ProgressParser.getPercentageParser("Search progress: .*, ");
+    }
+
     /**
      * Returns the file name of the currently processed file.
      *
@@ -52,12 +52,15 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
      * @param outputFolder folder where to output the results
      * @param searchParameters the search parameters
      * @param waitingHandler the waiting handler
-     * @param nThreads the number of threads to use
+     * @param resourceProfile the resources to use
+     * @param useChargeStateFromMS if true the charges of the spectrum file
+     * are used, all charges up to the maximal charge are tried otherwise
      * @throws IllegalArgumentException thrown if more than one fixed PTM has
      * the same target
      */
     public MyriMatchProcessBuilder(File myriMatchDirectory, String mgfFile, File outputFolder,
-            SearchParameters searchParameters, WaitingHandler waitingHandler, int nThreads) throws IllegalArgumentException {
+            SearchParameters searchParameters, WaitingHandler waitingHandler, EngineResourceProfile resourceProfile,
+            boolean useChargeStateFromMS) throws IllegalArgumentException {
 
         try {
             this.searchParameters = searchParameters;
@@ -75,7 +78,7 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
 
             // set the number of threads to use
             process_name_array.add("-cpus");
-            process_name_array.add(Integer.toString(nThreads));
+            process_name_array.add(Integer.toString(resourceProfile.getnThreads()));
 
             // add the database
             process_name_array.add("-ProteinDatabase");
@@ -162,6 +165,10 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
             // set the maximum number of charges
             process_name_array.add("-NumChargeStates");
             process_name_array.add("" + searchParameters.getMaxChargeSearched()); // note that it is not possible to set the min charge
+            if (useChargeStateFromMS) {
+                process_name_array.add("-UseChargeStateFromMS");
+                process_name_array.add("true");
+            }
 
             // set the TicCutoffPercentage
             process_name_array.add("-TicCutoffPercentage");
@@ -193,7 +200,7 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
 
             // set the nubmer of batches per node
             process_name_array.add("-NumBatches");
-            process_name_array.add("" + myriMatchParameters.getNumberOfBatches());
+            process_name_array.add("" + (resourceProfile.getnBatches() != null ? resourceProfile.getnBatches() : myriMatchParameters.getNumberOfBatches()));
 
             // set the max peak count
             process_name_array.add("-MaxPeakCount");
@@ -391,6 +398,17 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
         return "MyriMatch Process";
     }
 
+    /**
+     * Returns the parser reading the progress from the MyriMatch output, e.g.
+     * "Searched 1234 of 5678 spectra; 123 per second, 0:00:10 elapsed,
+     * 0:00:35 remaining."
+     *
+     * @return the progress parser
+     */
+    protected ProgressParser getProgressParser() {
+        return new ProgressParser("Searched (\\d+) of (\\d+) spectra");
+    }
+
     /**
      * Returns the file name of the currently processed file.
      *
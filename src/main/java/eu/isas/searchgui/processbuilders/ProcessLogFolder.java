@@ -0,0 +1,55 @@
+package eu.isas.searchgui.processbuilders;
+
+import java.io.File;
+
+/**
+ * The folder where the complete output of the processes of a search is
+ * logged. The log files are numbered in the order the processes are started.
+ *
+ * @author Marc Vaudel
+ */
+public class ProcessLogFolder {
+
+    /**
+     * The folder where the log files are written.
+     */
+    private final File folder;
+    /**
+     * The number of processes logged, used to name the log files.
+     */
+    private int logCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param folder the folder where the log files are written, created when
+     * the first log file is created
+     */
+    public ProcessLogFolder(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Returns the folder where the log files are written.
+     *
+     * @return the folder where the log files are written
+     */
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * Returns a new log file for a process.
+     *
+     * @param type the type of process, e.g. X!Tandem
+     *
+     * @return the new log file
+     */
+    public synchronized File getNewLogFile(String type) {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        String fileName = String.format("%03d", ++logCount) + " " + type.replaceAll("[^A-Za-z0-9_\\- ]", "_") + ".log";
+        return new File(folder, fileName);
+    }
+}
@@ -0,0 +1,232 @@
+package eu.isas.searchgui.processbuilders;
+
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Handles the output of a process. The complete output is written to a log
+ * file by a background thread while only a limited number of lines is sent to
+ * the report of the waiting handler. The last lines which were not reported
+ * are kept and shown when the process is done.
+ *
+ * @author Marc Vaudel
+ */
+public class ProcessOutputLog {
+
+    /**
+     * The maximal number of lines reported per second.
+     */
+    public static final int MAX_LINES_PER_SECOND = 20;
+    /**
+     * The maximal number of lines reported per process.
+     */
+    public static final int MAX_REPORTED_LINES = 2000;
+    /**
+     * The number of last lines not reported which are kept.
+     */
+    public static final int TAIL_SIZE = 20;
+    /**
+     * The maximal number of pieces of output waiting to be written. The
+     * reading of the output is paused when the writing is behind.
+     */
+    private static final int QUEUE_SIZE = 10000;
+    /**
+     * Marks the end of the lines to write.
+     */
+    private static final String END_OF_OUTPUT = new String();
+    /**
+     * The waiting handler.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The log file, null if not written.
+     */
+    private final File logFile;
+    /**
+     * The lines waiting to be written to the log file.
+     */
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<String>(QUEUE_SIZE);
+    /**
+     * The thread writing the log file, null if not written.
+     */
+    private Thread writerThread = null;
+    /**
+     * The exception encountered while writing the log file, if any.
+     */
+    private volatile IOException writeException = null;
+    /**
+     * The last lines which were not reported.
+     */
+    private final ArrayDeque<String> tail = new ArrayDeque<String>(TAIL_SIZE);
+    /**
+     * The start of the current second in milliseconds.
+     */
+    private long secondStart = 0;
+    /**
+     * The number of lines reported during the current second.
+     */
+    private int secondCount = 0;
+    /**
+     * The number of lines reported.
+     */
+    private int nReported = 0;
+    /**
+     * The number of lines not reported.
+     */
+    private int nOmitted = 0;
+
+    /**
+     * Constructor for a process whose output is not written to a file.
+     *
+     * @param waitingHandler the waiting handler
+     */
+    public ProcessOutputLog(WaitingHandler waitingHandler) {
+        this.waitingHandler = waitingHandler;
+        this.logFile = null;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param logFile the file where to write the complete output
+     * @param waitingHandler the waiting handler
+     *
+     * @throws IOException thrown if the log file cannot be created
+     */
+    public ProcessOutputLog(File logFile, WaitingHandler waitingHandler) throws IOException {
+
+        this.waitingHandler = waitingHandler;
+        this.logFile = logFile;
+
+        final BufferedWriter bw = new BufferedWriter(new FileWriter(logFile));
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    try {
+                        String text;
+                        while ((text = queue.take()) != END_OF_OUTPUT) {
+                            bw.write(text);
+                        }
+                    } finally {
+                        bw.close();
+                    }
+                } catch (IOException e) {
+                    writeException = e;
+                    queue.clear(); // release a pending write
+                } catch (InterruptedException e) {
+                    // stop writing
+                }
+            }
+        }, "Log " + logFile.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Returns the log file, null if not written.
+     *
+     * @return the log file
+     */
+    public File getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * Writes output of the process to the log file without reporting it.
+     *
+     * @param text the text to write
+     */
+    public void write(String text) {
+        if (writerThread != null && writeException == null) {
+            try {
+                queue.put(text);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes output of the process to the log file and sends it to the
+     * report unless too many lines were reported already.
+     *
+     * @param text the text to report
+     * @param includeDate if true the date and time will be added
+     * @param addNewLine if true a new line will be added
+     */
+    public void report(String text, boolean includeDate, boolean addNewLine) {
+
+        write(addNewLine ? text + System.getProperty("line.separator") : text);
+
+        long now = System.currentTimeMillis();
+        if (now - secondStart >= 1000) {
+            secondStart = now;
+            secondCount = 0;
+        }
+
+        if (nReported < MAX_REPORTED_LINES && secondCount < MAX_LINES_PER_SECOND) {
+            secondCount++;
+            nReported++;
+            waitingHandler.appendReport(text, includeDate, addNewLine);
+        } else {
+            nOmitted++;
+            if (tail.size() == TAIL_SIZE) {
+                tail.removeFirst();
+            }
+            tail.addLast(text.trim());
+        }
+    }
+
+    /**
+     * Writes an error of the process to the log file and sends it to the
+     * report regardless of the number of lines reported.
+     *
+     * @param text the error
+     */
+    public void reportError(String text) {
+        write(text + System.getProperty("line.separator"));
+        waitingHandler.appendReport(text, true, true);
+    }
+
+    /**
+     * Completes the log file and reports the last lines which were not
+     * reported, if any.
+     */
+    public void close() {
+
+        if (writerThread != null) {
+            try {
+                if (writeException == null) {
+                    queue.put(END_OF_OUTPUT);
+                }
+                writerThread.join();
+            } catch (InterruptedException e) {
+                writerThread.interrupt();
+            }
+        }
+
+        if (nOmitted > 0) {
+            waitingHandler.appendReportEndLine();
+            String message = nOmitted + " lines of output not shown";
+            if (logFile != null && writeException == null) {
+                message += ", see " + logFile.getAbsolutePath();
+            }
+            waitingHandler.appendReport(message + ". Last lines:", true, true);
+            for (String line : tail) {
+                waitingHandler.appendReport(line, false, true);
+            }
+            tail.clear();
+        }
+
+        if (writeException != null) {
+            waitingHandler.appendReport("Failed to write the log file " + logFile.getAbsolutePath() + ": " + writeException.getMessage(), true, true);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package eu.isas.searchgui.processbuilders;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * Samples the resources used by a process and its descendants from the /proc
+ * file system: CPU time, resident memory, disk reads and writes, and number
+ * of threads. The values are approximations: the disk usage of the
+ * processes ending between two samples is only counted until the last
+ * sample.
+ *
+ * @author Marc Vaudel
+ */
+public class ProcessResourceMonitor {
+
+    /**
+     * The interval between two samples in milliseconds.
+     */
+    public static final long SAMPLING_INTERVAL = 1000;
+    /**
+     * The number of clock ticks per second used by /proc/[pid]/stat.
+     */
+    public static final double CLOCK_TICKS_PER_SECOND = 100.0;
+    /**
+     * The separator used in the metrics files.
+     */
+    public static final String SEPARATOR = "\t";
+    /**
+     * The id of the monitored process.
+     */
+    private final int pid;
+    /**
+     * The time when the monitoring started.
+     */
+    private final long startTime;
+    /**
+     * The time when the monitoring ended, -1 while running.
+     */
+    private long endTime = -1;
+    /**
+     * The CPU time used by the processes in clock ticks.
+     */
+    private long cpuTicks = 0;
+    /**
+     * The peak resident memory of the processes in bytes.
+     */
+    private long peakRss = 0;
+    /**
+     * The resident memory at the last sample in bytes.
+     */
+    private long currentRss = 0;
+    /**
+     * The peak number of threads of the processes.
+     */
+    private int peakThreads = 0;
+    /**
+     * The bytes read from disk by every process.
+     */
+    private final HashMap<Integer, Long> readBytes = new HashMap<Integer, Long>();
+    /**
+     * The bytes written to disk by every process.
+     */
+    private final HashMap<Integer, Long> writtenBytes = new HashMap<Integer, Long>();
+    /**
+     * The ids of the processes seen.
+     */
+    private final HashSet<Integer> processesSeen = new HashSet<Integer>();
+
+    /**
+     * Constructor.
+     *
+     * @param pid the id of the process to monitor
+     */
+    public ProcessResourceMonitor(int pid) {
+        this.pid = pid;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Reads the current resource usage of the process and its descendants.
+     */
+    public synchronized void sample() {
+
+        if (endTime != -1) {
+            return;
+        }
+
+        ArrayList<Integer> pids = ProcessTree.getDescendants(pid);
+        pids.add(0, pid);
+
+        long sampleTicks = 0;
+        long sampleRss = 0;
+        int sampleThreads = 0;
+
+        for (Integer processId : pids) {
+
+            String[] stat = ProcessTree.readStat(processId);
+            if (stat == null) {
+                continue;
+            }
+            processesSeen.add(processId);
+
+            // the time of the terminated children is added to their parent
+            try {
+                sampleTicks += Long.parseLong(stat[ProcessTree.StatField.utime.index])
+                        + Long.parseLong(stat[ProcessTree.StatField.stime.index])
+                        + Long.parseLong(stat[ProcessTree.StatField.cutime.index])
+                        + Long.parseLong(stat[ProcessTree.StatField.cstime.index]);
+                sampleThreads += Integer.parseInt(stat[ProcessTree.StatField.threads.index]);
+            } catch (RuntimeException e) {
+                // unexpected format
+            }
+
+            HashMap<String, String> status = ProcessTree.readKeyValues(processId, "status");
+            sampleRss += parseKiloBytes(status.get("VmRSS"));
+
+            HashMap<String, String> io = ProcessTree.readKeyValues(processId, "io");
+            updateCounter(readBytes, processId, io.get("read_bytes"));
+            updateCounter(writtenBytes, processId, io.get("write_bytes"));
+        }
+
+        cpuTicks = Math.max(cpuTicks, sampleTicks);
+        peakRss = Math.max(peakRss, sampleRss);
+        currentRss = sampleRss;
+        peakThreads = Math.max(peakThreads, sampleThreads);
+    }
+
+    /**
+     * Stops the monitoring.
+     */
+    public synchronized void stop() {
+        if (endTime == -1) {
+            endTime = System.currentTimeMillis();
+        }
+        currentRss = 0;
+    }
+
+    /**
+     * Updates the counter of a process with a value read from /proc.
+     *
+     * @param counters the counters
+     * @param processId the process id
+     * @param value the value read, can be null
+     */
+    private static void updateCounter(HashMap<Integer, Long> counters, Integer processId, String value) {
+        if (value != null) {
+            try {
+                long newValue = Long.parseLong(value);
+                Long oldValue = counters.get(processId);
+                if (oldValue == null || newValue > oldValue) {
+                    counters.put(processId, newValue);
+                }
+            } catch (NumberFormatException e) {
+                // unexpected format
+            }
+        }
+    }
+
+    /**
+     * Parses a memory value of /proc/[pid]/status, e.g. "1024 kB".
+     *
+     * @param value the value, can be null
+     *
+     * @return the value in bytes, 0 if not available
+     */
+    private static long parseKiloBytes(String value) {
+        if (value != null) {
+            try {
+                return 1024 * Long.parseLong(value.replace("kB", "").trim());
+            } catch (NumberFormatException e) {
+                // unexpected format
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the sum of the counters.
+     *
+     * @param counters the counters
+     *
+     * @return the sum of the counters
+     */
+    private static long sum(HashMap<Integer, Long> counters) {
+        long sum = 0;
+        for (Long value : counters.values()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the wall time of the process in milliseconds.
+     *
+     * @return the wall time of the process in milliseconds
+     */
+    public synchronized long getWallTime() {
+        return (endTime == -1 ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    /**
+     * Returns the CPU time used by the process and its descendants in
+     * milliseconds.
+     *
+     * @return the CPU time in milliseconds
+     */
+    public synchronized long getCpuTime() {
+        return (long) (1000 * cpuTicks / CLOCK_TICKS_PER_SECOND);
+    }
+
+    /**
+     * Returns the peak resident memory of the process and its descendants in
+     * bytes.
+     *
+     * @return the peak resident memory in bytes
+     */
+    public synchronized long getPeakRss() {
+        return peakRss;
+    }
+
+    /**
+     * Returns the resident memory of the process and its descendants at the
+     * last sample in bytes, 0 once the monitoring is stopped.
+     *
+     * @return the current resident memory in bytes
+     */
+    public synchronized long getCurrentRss() {
+        return currentRss;
+    }
+
+    /**
+     * Returns the peak number of threads of the process and its descendants.
+     *
+     * @return the peak number of threads
+     */
+    public synchronized int getPeakThreads() {
+        return peakThreads;
+    }
+
+    /**
+     * Returns the number of bytes read from disk by the process and its
+     * descendants.
+     *
+     * @return the number of bytes read
+     */
+    public synchronized long getReadBytes() {
+        return sum(readBytes);
+    }
+
+    /**
+     * Returns the number of bytes written to disk by the process and its
+     * descendants.
+     *
+     * @return the number of bytes written
+     */
+    public synchronized long getWrittenBytes() {
+        return sum(writtenBytes);
+    }
+
+    /**
+     * Returns the number of processes seen.
+     *
+     * @return the number of processes seen
+     */
+    public synchronized int getnProcesses() {
+        return processesSeen.size();
+    }
+
+    /**
+     * Formats a decimal value for the metrics files.
+     *
+     * @param value the value
+     *
+     * @return the formatted value
+     */
+    private static String format(double value) {
+        return String.format(Locale.US, "%.1f", value);
+    }
+
+    /**
+     * Returns the header of the metrics files.
+     *
+     * @return the header of the metrics files
+     */
+    public static String getHeader() {
+        return "Search engine" + SEPARATOR + "Spectrum file" + SEPARATOR + "Threads requested"
+                + SEPARATOR + "Wall time (s)" + SEPARATOR + "CPU time (s)" + SEPARATOR + "Peak RSS (MB)"
+                + SEPARATOR + "Read (MB)" + SEPARATOR + "Written (MB)" + SEPARATOR + "Peak threads"
+                + SEPARATOR + "Processes" + SEPARATOR + "CPU placement";
+    }
+
+    /**
+     * Returns a line of the metrics file for the monitored process.
+     *
+     * @param type the type of process
+     * @param spectrumFileName the name of the spectrum file searched
+     * @param nThreads the number of threads requested
+     * @param cpuPlacement the CPUs the process was pinned to, null if not
+     * pinned
+     *
+     * @return a line of the metrics file
+     */
+    public synchronized String getMetricsLine(String type, String spectrumFileName, int nThreads, CpuPlacement cpuPlacement) {
+        return type + SEPARATOR + spectrumFileName + SEPARATOR + nThreads
+                + SEPARATOR + format(getWallTime() / 1000.0)
+                + SEPARATOR + format(getCpuTime() / 1000.0)
+                + SEPARATOR + format(peakRss / 1048576.0)
+                + SEPARATOR + format(getReadBytes() / 1048576.0)
+                + SEPARATOR + format(getWrittenBytes() / 1048576.0)
+                + SEPARATOR + peakThreads
+                + SEPARATOR + getnProcesses()
+                + SEPARATOR + (cpuPlacement == null ? "-" : cpuPlacement.toString());
+    }
+}
@@ -0,0 +1,350 @@
+package eu.isas.searchgui.processbuilders;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives access to the processes started by SearchGUI and their descendants
+ * through the /proc file system, and terminates them together with all their
+ * descendants. The process tree is only available on Linux.
+ *
+ * @author Marc Vaudel
+ */
+public class ProcessTree {
+
+    /**
+     * The proc file system.
+     */
+    public static final File PROC_FOLDER = new File("/proc");
+    /**
+     * The time given to the processes to terminate before they are killed in
+     * milliseconds.
+     */
+    public static final long GRACE_PERIOD = 3000;
+    /**
+     * The thread killing the processes which did not terminate in time.
+     */
+    private static final ScheduledExecutorService killTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SearchGUI process killer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Empty default constructor.
+     */
+    private ProcessTree() {
+    }
+
+    /**
+     * Indicates whether the /proc file system is available.
+     *
+     * @return a boolean indicating whether the /proc file system is available
+     */
+    public static boolean isSupported() {
+        return new File(PROC_FOLDER, "self/stat").exists();
+    }
+
+    /**
+     * Returns the process id of the given process.
+     *
+     * @param process the process
+     *
+     * @return the process id, -1 if not available
+     */
+    public static int getPid(Process process) {
+
+        // Java 9 and newer
+        try {
+            Method method = Process.class.getMethod("pid");
+            return ((Long) method.invoke(process)).intValue();
+        } catch (Exception e) {
+            // not available
+        }
+
+        // UNIXProcess of older versions of Java
+        try {
+            Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getInt(process);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the ids of the running descendants of the given process, the
+     * children before their own children.
+     *
+     * @param pid the process id
+     *
+     * @return the ids of the descendants
+     */
+    public static ArrayList<Integer> getDescendants(int pid) {
+
+        ArrayList<Integer> descendants = new ArrayList<Integer>();
+        String[] folderNames = PROC_FOLDER.list();
+
+        if (folderNames != null) {
+
+            HashMap<Integer, ArrayList<Integer>> children = new HashMap<Integer, ArrayList<Integer>>();
+
+            for (String folderName : folderNames) {
+                if (isNumber(folderName)) {
+                    int childPid = Integer.parseInt(folderName);
+                    String[] stat = readStat(childPid);
+                    if (stat != null) {
+                        int parentPid = Integer.parseInt(stat[StatField.ppid.index]);
+                        ArrayList<Integer> parentChildren = children.get(parentPid);
+                        if (parentChildren == null) {
+                            parentChildren = new ArrayList<Integer>();
+                            children.put(parentPid, parentChildren);
+                        }
+                        parentChildren.add(childPid);
+                    }
+                }
+            }
+
+            ArrayList<Integer> toVisit = new ArrayList<Integer>();
+            toVisit.add(pid);
+            for (int i = 0; i < toVisit.size(); i++) {
+                ArrayList<Integer> visitedChildren = children.get(toVisit.get(i));
+                if (visitedChildren != null) {
+                    for (Integer child : visitedChildren) {
+                        if (!toVisit.contains(child)) {
+                            toVisit.add(child);
+                            descendants.add(child);
+                        }
+                    }
+                }
+            }
+        }
+
+        return descendants;
+    }
+
+    /**
+     * Terminates a process and all its descendants. The processes are asked
+     * to terminate and the ones still running after the grace period are
+     * killed in the background. The descendants are listed before the
+     * process is terminated, they would not be found once reattached to the
+     * init process. Where the process tree is not available only the process
+     * itself is destroyed, except on Windows where taskkill ends the tree.
+     *
+     * @param process the process to terminate
+     */
+    public static void destroy(Process process) {
+
+        int pid = getPid(process);
+
+        if (pid != -1 && isSupported()) {
+
+            ArrayList<Integer> pids = getDescendants(pid);
+            pids.add(0, pid);
+
+            // the start times distinguish the processes from new processes reusing their ids
+            final HashMap<Integer, String> startTimes = new HashMap<Integer, String>();
+            for (Integer processId : pids) {
+                String[] stat = readStat(processId);
+                if (stat != null) {
+                    startTimes.put(processId, stat[StatField.starttime.index]);
+                }
+            }
+
+            signal("TERM", startTimes.keySet());
+            process.destroy();
+
+            killTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ArrayList<Integer> remaining = new ArrayList<Integer>();
+                    for (Integer processId : startTimes.keySet()) {
+                        String[] stat = readStat(processId);
+                        if (stat != null && stat[StatField.starttime.index].equals(startTimes.get(processId))
+                                && !stat[StatField.state.index].equals("Z")) {
+                            remaining.add(processId);
+                        }
+                    }
+                    signal("KILL", remaining);
+                }
+            }, GRACE_PERIOD, TimeUnit.MILLISECONDS);
+
+        } else if (pid != -1 && System.getProperty("os.name").toLowerCase().contains("windows")) {
+            execute(Arrays.asList("taskkill", "/PID", Integer.toString(pid), "/T", "/F"));
+            process.destroy();
+        } else {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Sends a signal to the given processes using kill.
+     *
+     * @param signal the signal, e.g. TERM
+     * @param pids the ids of the processes
+     */
+    private static void signal(String signal, Collection<Integer> pids) {
+        if (!pids.isEmpty()) {
+            ArrayList<String> command = new ArrayList<String>(pids.size() + 2);
+            command.add("kill");
+            command.add("-" + signal);
+            for (Integer processId : pids) {
+                command.add(processId.toString());
+            }
+            execute(command);
+        }
+    }
+
+    /**
+     * Executes a command and waits for it to complete, ignoring its output.
+     *
+     * @param command the command
+     */
+    private static void execute(List<String> command) {
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectErrorStream(true);
+            Process process = processBuilder.start();
+            InputStream inputStream = process.getInputStream();
+            byte[] buffer = new byte[1024];
+            while (inputStream.read(buffer) != -1) {
+                // the output is not needed
+            }
+            inputStream.close();
+            process.waitFor();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The fields of /proc/[pid]/stat used by SearchGUI, indexed after the
+     * command name.
+     */
+    public enum StatField {
+
+        state(0), ppid(1), utime(11), stime(12), cutime(13), cstime(14), threads(17), starttime(19);
+        /**
+         * The index of the field after the command name.
+         */
+        public final int index;
+
+        /**
+         * Constructor.
+         *
+         * @param index the index of the field after the command name
+         */
+        private StatField(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Reads /proc/[pid]/stat. The fields following the command name are
+     * returned, the command name being skipped as it can contain spaces.
+     *
+     * @param pid the process id
+     *
+     * @return the fields of the stat file, null if the process is not running
+     */
+    public static String[] readStat(int pid) {
+        String line = readFirstLine(new File(new File(PROC_FOLDER, Integer.toString(pid)), "stat"));
+        if (line == null) {
+            return null;
+        }
+        int commandEnd = line.lastIndexOf(')');
+        if (commandEnd == -1 || commandEnd + 2 > line.length()) {
+            return null;
+        }
+        return line.substring(commandEnd + 2).split(" ");
+    }
+
+    /**
+     * Reads a file of the form "key: value" in the folder of a process, like
+     * /proc/[pid]/status or /proc/[pid]/io.
+     *
+     * @param pid the process id
+     * @param fileName the name of the file
+     *
+     * @return the values indexed by key, empty if the file cannot be read
+     */
+    public static HashMap<String, String> readKeyValues(int pid, String fileName) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        File file = new File(new File(PROC_FOLDER, Integer.toString(pid)), fileName);
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    int separator = line.indexOf(':');
+                    if (separator > 0) {
+                        result.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+                    }
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            // the process ended or the file is not readable
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first line of a file.
+     *
+     * @param file the file
+     *
+     * @return the first line of the file, null if it cannot be read
+     */
+    private static String readFirstLine(File file) {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try {
+                return br.readLine();
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Indicates whether a string is made of digits only.
+     *
+     * @param text the string
+     *
+     * @return a boolean indicating whether the string is made of digits only
+     */
+    private static boolean isNumber(String text) {
+        if (text.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package eu.isas.searchgui.processbuilders;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the progress of a process from its output. The progress is read
+ * using a regular expression where the first group is the amount of work done
+ * and the second group, if any, the total amount of work. Without second
+ * group the progress is read as a percentage.
+ *
+ * @author Marc Vaudel
+ */
+public class ProgressParser {
+
+    /**
+     * The pattern matching the progress.
+     */
+    private final Pattern pattern;
+
+    /**
+     * Constructor.
+     *
+     * @param regex the regular expression matching the progress
+     */
+    public ProgressParser(String regex) {
+        this.pattern = Pattern.compile(regex);
+    }
+
+    /**
+     * Returns a parser reading the last percentage, e.g. 45%, preceded by the
+     * given text.
+     *
+     * @param prefix regular expression matching the text preceding the
+     * percentage, can be empty
+     *
+     * @return a parser reading percentages
+     */
+    public static ProgressParser getPercentageParser(String prefix) {
+        return new ProgressParser(prefix + "(\\d+(?:\\.\\d+)?)\\s*%");
+    }
+
+    /**
+     * Returns the progress found in the given output as a fraction between
+     * zero and one.
+     *
+     * @param output a piece of output of the process
+     *
+     * @return the progress, -1 if the output contains no progress
+     */
+    public double getProgress(String output) {
+
+        Matcher matcher = pattern.matcher(output);
+        double progress = -1;
+
+        while (matcher.find()) {
+            try {
+                double done = Double.parseDouble(matcher.group(1));
+                double total = matcher.groupCount() > 1 ? Double.parseDouble(matcher.group(2)) : 100;
+                if (total > 0) {
+                    progress = Math.max(0, Math.min(1, done / total));
+                }
+            } catch (NumberFormatException e) {
+                // not a progress
+            }
+        }
+
+        return progress;
+    }
+}
@@ -7,7 +7,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A simple ancestor class to reduce code duplication in formatdb, omssacl and
@@ -28,13 +34,65 @@ public abstract class SearchGUIProcessBuilder {
      */
     ProcessBuilder pb;
     /**
-     * The process.
+     * The process, ended from other threads when the run is canceled.
      */
-    Process p;
+    volatile Process p;
     /**
      * The waiting handler to display the feedback.
      */
     protected WaitingHandler waitingHandler;
+    /**
+     * The folder where the output of the process is logged, null if not
+     * logged.
+     */
+    private ProcessLogFolder logFolder = null;
+    /**
+     * The listener notified of the progress of the process, can be null.
+     */
+    private ProgressListener progressListener = null;
+    /**
+     * The interval between two verifications of the watchdog in
+     * milliseconds.
+     */
+    public static final long WATCHDOG_INTERVAL = 5000;
+    /**
+     * The thread running the watchdogs and resource monitors of all
+     * processes.
+     */
+    private static final ScheduledExecutorService watchdogTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SearchGUI process monitor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /**
+     * The maximal time without output in milliseconds, 0 for no limit.
+     */
+    private long maxIdleTime = 0;
+    /**
+     * The maximal run time in milliseconds, 0 for no limit.
+     */
+    private long maxRunTime = 0;
+    /**
+     * The time of the last output of the process.
+     */
+    private volatile long lastOutputTime;
+    /**
+     * The reason why the process was stopped by the watchdog, null if not
+     * stopped by the watchdog.
+     */
+    private volatile String watchdogReason = null;
+    /**
+     * The monitor of the resources used by the last run of the process, null
+     * if not monitored.
+     */
+    private ProcessResourceMonitor resourceMonitor = null;
+    /**
+     * The CPUs the process is pinned to, null if not pinned.
+     */
+    private CpuPlacement cpuPlacement = null;
 
     /**
      * Trivial constructor.
@@ -42,10 +100,49 @@ public abstract class SearchGUIProcessBuilder {
     public SearchGUIProcessBuilder() {
     }
 
+    /**
+     * Returns the folder where the output of the process is logged, null if
+     * not logged.
+     *
+     * @return the folder where the output of the process is logged
+     */
+    public ProcessLogFolder getLogFolder() {
+        return logFolder;
+    }
+
+    /**
+     * Sets the folder where the output of the process is logged, null to not
+     * log the output.
+     *
+     * @param logFolder the folder where the output of the process is logged
+     */
+    public void setLogFolder(ProcessLogFolder logFolder) {
+        this.logFolder = logFolder;
+    }
+
+    /**
+     * Creates the log of the output of the process. The complete output is
+     * written to a new file in the log folder, if any.
+     *
+     * @return the log of the output of the process
+     */
+    private ProcessOutputLog createOutputLog() {
+        if (logFolder != null) {
+            try {
+                return new ProcessOutputLog(logFolder.getNewLogFile(getType()), waitingHandler);
+            } catch (IOException e) {
+                e.printStackTrace();
+                waitingHandler.appendReport("Failed to create the log file: " + e.getMessage(), true, true);
+            }
+        }
+        return new ProcessOutputLog(waitingHandler);
+    }
+
     /**
      * Starts the process of a process builder, gets the input stream from the
-     * process and shows it in a JEditorPane supporting HTML. Does not close
-     * until the process is completed.
+     * process and shows it in a JEditorPane supporting HTML. The complete
+     * output is written to the log folder, if set, and the amount of output
+     * reported is limited. Does not close until the process is completed.
      */
     public void startProcess() {
         
@@ -54,7 +151,7 @@ public abstract class SearchGUIProcessBuilder {
         
         p = null;
         try {
-            p = pb.start();
+            p = createProcess();
         } catch (IOException ioe) {
             System.out.println(ioe.getMessage());
             ioe.printStackTrace();
@@ -62,71 +159,53 @@ public abstract class SearchGUIProcessBuilder {
 
         // get inputstream from process
         InputStream inputStream = p.getInputStream();
+        ProcessOutputLog outputLog = createOutputLog();
+        ScheduledFuture<?> watchdog = startWatchdog();
+        ScheduledFuture<?> monitor = startResourceMonitor();
+
+        ProgressParser progressParser = getProgressParser();
+        processStarted(progressParser != null);
 
         try {
             BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+            String outputDelimiter = getOutputDelimiter();
 
-            if (getType().equalsIgnoreCase("Comet Process")) {
+            if (outputDelimiter != null) {
 
                 Scanner scan = new Scanner(inputStream);
-                scan.useDelimiter("\n|\b ");
+                scan.useDelimiter(outputDelimiter);
                 String lastString = "";
 
                 // get input from scanner, send to std out and text box
                 while (scan.hasNext() && !waitingHandler.isRunCanceled()) {
                     String temp = scan.next();
-                    if (!lastString.contains(temp)) {
-                        waitingHandler.appendReport(temp + " ", false, temp.lastIndexOf("%") == -1 || temp.lastIndexOf("100%") != -1);
+                    lastOutputTime = System.currentTimeMillis();
+                    if (!updateProgress(progressParser, temp, outputLog) && !lastString.contains(temp)) {
+                        outputLog.report(temp + " ", false, true);
                     }
                     lastString = temp;
                 }
-            } else if (getType().equalsIgnoreCase("msConvert Process")) {
-
-                boolean progressOutputStarted = false;
-
+            } else {
                 String line;
 
-                // get input from stream
-                while ((line = bufferedReader.readLine()) != null) {
-
-                    if (progressOutputStarted && line.lastIndexOf("/") != -1) {
-
-                        String[] progress = line.split("/");
-
-                        if (waitingHandler.getMaxSecondaryProgressCounter() != Integer.parseInt(progress[1].trim())) {
-                            waitingHandler.setMaxSecondaryProgressCounter(Integer.parseInt(progress[1].trim()));
-                        }
-
-                        waitingHandler.setSecondaryProgressCounter(Integer.parseInt(progress[0].trim()));
+                // get input from stream and check for errors
+                while ((line = bufferedReader.readLine()) != null && !waitingHandler.isRunCanceled()) {
 
-                    } else {
-                        waitingHandler.appendReport(line, false, true);
-                    }
+                    lastOutputTime = System.currentTimeMillis();
 
-                    if (line.startsWith("writing output file:")) {
-                        progressOutputStarted = true;
-                        waitingHandler.resetSecondaryProgressCounter();
-                        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+                    if (updateProgress(progressParser, line, outputLog)) {
+                        continue;
                     }
-                }
-
-                waitingHandler.setSecondaryProgressCounterIndeterminate(true);
-
-            } else {
-                String line;
-
-                // get input from stream and check for errors
-                while ((line = bufferedReader.readLine()) != null) {
 
                     line += System.getProperty("line.separator");
 
                     if (line.lastIndexOf("<CompomicsError>") != -1) {
                         waitingHandler.appendReportEndLine();
                         line = line.substring("<CompomicsError>".length(), line.length() - ("</CompomicsError>".length() + 2));
-                        waitingHandler.appendReport(line, true, true);
+                        outputLog.reportError(line);
                         waitingHandler.setRunCanceled();
                     } else {
-                        waitingHandler.appendReport(line, false, false);
+                        outputLog.report(line, false, false);
                     }
                 }
             }
@@ -135,12 +214,29 @@ public abstract class SearchGUIProcessBuilder {
             bufferedReader.close();
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (monitor != null) {
+                monitor.cancel(false);
+                resourceMonitor.stop();
+            }
+            outputLog.close();
+            processEnded(progressParser != null);
         }
 
         // check if the user has cancelled the process or not
         if (waitingHandler.isRunCanceled()) {
-            if (p != null) {
-                p.destroy();
+            endProcess();
+        } else if (watchdogReason != null) {
+            waitingHandler.appendReportEndLine();
+            waitingHandler.appendReport(getType() + " stopped: " + watchdogReason + ".", true, true);
+            waitingHandler.appendReportEndLine();
+            try {
+                p.waitFor();
+            } catch (InterruptedException e) {
+                // the process was destroyed already
             }
         } else {
             
@@ -154,19 +250,279 @@ public abstract class SearchGUIProcessBuilder {
             try {
                 p.waitFor();
             } catch (InterruptedException e) {
-                if (p != null) {
-                    p.destroy();
+                endProcess();
+            }
+        }
+    }
+
+    /**
+     * Creates and starts the process. By default the command of the process
+     * builder is executed, pinned to the CPUs of the placement if any.
+     *
+     * @return the process started
+     *
+     * @throws IOException thrown if the process cannot be started
+     */
+    protected Process createProcess() throws IOException {
+        if (cpuPlacement == null) {
+            return pb.start();
+        }
+        List<String> command = pb.command();
+        ArrayList<String> pinnedCommand = cpuPlacement.getCommandPrefix();
+        pinnedCommand.addAll(command);
+        pb.command(pinnedCommand);
+        try {
+            return pb.start();
+        } finally {
+            pb.command(command);
+        }
+    }
+
+    /**
+     * Returns the exit value of the last run of the process.
+     *
+     * @return the exit value, null if the process did not run or did not
+     * terminate
+     */
+    public Integer getExitValue() {
+        Process process = p;
+        if (process == null) {
+            return null;
+        }
+        try {
+            return process.exitValue();
+        } catch (IllegalThreadStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the CPUs the process is pinned to, null if not pinned.
+     *
+     * @return the CPUs the process is pinned to
+     */
+    public CpuPlacement getCpuPlacement() {
+        return cpuPlacement;
+    }
+
+    /**
+     * Sets the CPUs the process is pinned to, null to not pin the process.
+     *
+     * @param cpuPlacement the CPUs the process is pinned to
+     */
+    public void setCpuPlacement(CpuPlacement cpuPlacement) {
+        this.cpuPlacement = cpuPlacement;
+    }
+
+    /**
+     * Reads the progress from a piece of output of the process, if any, and
+     * notifies the waiting handler and the progress listener. The output is
+     * written to the log.
+     *
+     * @param progressParser the progress parser, null if none
+     * @param output the piece of output
+     * @param outputLog the log of the output
+     *
+     * @return true if the output contained progress
+     */
+    private boolean updateProgress(ProgressParser progressParser, String output, ProcessOutputLog outputLog) {
+        if (progressParser == null) {
+            return false;
+        }
+        double progress = progressParser.getProgress(output);
+        if (progress < 0) {
+            return false;
+        }
+        outputLog.write(output + System.getProperty("line.separator"));
+        waitingHandler.setSecondaryProgressCounter((int) (100 * progress));
+        if (progressListener != null) {
+            progressListener.progress(this, progress);
+        }
+        return true;
+    }
+
+    /**
+     * Prepares the progress display for a new process and notifies the
+     * progress listener.
+     *
+     * @param progressAvailable true if the progress of the process can be
+     * read from its output
+     */
+    private void processStarted(boolean progressAvailable) {
+        if (progressAvailable) {
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(100);
+            waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+        }
+        if (progressListener != null) {
+            progressListener.processStarted(this);
+        }
+    }
+
+    /**
+     * Resets the progress display at the end of a process and notifies the
+     * progress listener.
+     *
+     * @param progressAvailable true if the progress of the process could be
+     * read from its output
+     */
+    private void processEnded(boolean progressAvailable) {
+        if (progressAvailable) {
+            waitingHandler.setSecondaryProgressCounterIndeterminate(true);
+        }
+        if (progressListener != null && watchdogReason == null) {
+            progressListener.processEnded(this);
+        }
+    }
+
+    /**
+     * Returns the parser extracting the progress of the process from its
+     * output. Null if the output contains no progress.
+     *
+     * @return the progress parser
+     */
+    protected ProgressParser getProgressParser() {
+        return null;
+    }
+
+    /**
+     * Returns the delimiter used to split the output of the process, in case
+     * it is not written line by line, null otherwise.
+     *
+     * @return the delimiter used to split the output of the process
+     */
+    protected String getOutputDelimiter() {
+        return null;
+    }
+
+    /**
+     * Indicates whether the process started can be stopped before it
+     * completes. Processes which cannot be stopped are not watched.
+     *
+     * @return true if the process can be stopped
+     */
+    protected boolean isStoppable() {
+        return true;
+    }
+
+    /**
+     * Starts the watchdog stopping the process if it does not produce output
+     * for longer than the maximal idle time or runs longer than the maximal
+     * run time.
+     *
+     * @return the watchdog task, null if the watchdog is not enabled
+     */
+    private ScheduledFuture<?> startWatchdog() {
+
+        watchdogReason = null;
+        final long startTime = System.currentTimeMillis();
+        lastOutputTime = startTime;
+
+        if (maxIdleTime <= 0 && maxRunTime <= 0) {
+            return null;
+        }
+        if (!isStoppable()) {
+            waitingHandler.appendReport(getType() + " cannot be stopped, the watchdog is disabled for this run.", true, true);
+            return null;
+        }
+
+        return watchdogTimer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (watchdogReason != null) {
+                    return; // already stopped
+                }
+                long now = System.currentTimeMillis();
+                if (maxIdleTime > 0 && now - lastOutputTime > maxIdleTime) {
+                    watchdogReason = "no output for " + (maxIdleTime / 60000) + " minutes";
+                } else if (maxRunTime > 0 && now - startTime > maxRunTime) {
+                    watchdogReason = "maximal run time of " + (maxRunTime / 60000) + " minutes exceeded";
+                }
+                if (watchdogReason != null) {
+                    endProcess();
                 }
             }
+        }, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts sampling the resources used by the process and its descendants
+     * if the /proc file system is available.
+     *
+     * @return the sampling task, null if the resources are not monitored
+     */
+    private ScheduledFuture<?> startResourceMonitor() {
+
+        resourceMonitor = null;
+
+        if (p == null || !ProcessTree.isSupported()) {
+            return null;
+        }
+        int pid = ProcessTree.getPid(p);
+        if (pid == -1) {
+            return null;
         }
+
+        final ProcessResourceMonitor monitor = new ProcessResourceMonitor(pid);
+        resourceMonitor = monitor;
+
+        return watchdogTimer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                monitor.sample();
+            }
+        }, 0, ProcessResourceMonitor.SAMPLING_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Ends the process.
+     * Returns the monitor of the resources used by the last run of the
+     * process, null if not monitored.
+     *
+     * @return the monitor of the resources used by the process
+     */
+    public ProcessResourceMonitor getResourceMonitor() {
+        return resourceMonitor;
+    }
+
+    /**
+     * Sets the limits of the watchdog stopping the process when it does not
+     * progress. Zero values disable the corresponding limit.
+     *
+     * @param maxIdleTime the maximal time without output in milliseconds
+     * @param maxRunTime the maximal run time in milliseconds
+     */
+    public void setWatchdog(long maxIdleTime, long maxRunTime) {
+        this.maxIdleTime = maxIdleTime;
+        this.maxRunTime = maxRunTime;
+    }
+
+    /**
+     * Indicates whether the last run of the process was stopped by the
+     * watchdog.
+     *
+     * @return true if the last run of the process was stopped by the watchdog
+     */
+    public boolean isStoppedByWatchdog() {
+        return watchdogReason != null;
+    }
+
+    /**
+     * Sets the listener notified of the progress of the process.
+     *
+     * @param progressListener the progress listener, null for none
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Ends the process together with the processes it started, the latter
+     * being killed if they do not terminate within the grace period.
      */
     public void endProcess() {
-        if (p != null) {
-            p.destroy();
+        Process process = p;
+        if (process != null) {
+            ProcessTree.destroy(process);
         }
     }
 
@@ -183,4 +539,32 @@ public abstract class SearchGUIProcessBuilder {
      * @return the file name of the currently processed file
      */
     public abstract String getCurrentlyProcessedFileName();
+
+    /**
+     * Interface for the listeners notified of the progress of a process.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called when the process is started.
+         *
+         * @param process the process
+         */
+        public void processStarted(SearchGUIProcessBuilder process);
+
+        /**
+         * Called when progress is read from the output of the process.
+         *
+         * @param process the process
+         * @param progress the progress as a fraction between zero and one
+         */
+        public void progress(SearchGUIProcessBuilder process, double progress);
+
+        /**
+         * Called when the output of the process is completed.
+         *
+         * @param process the process
+         */
+        public void processEnded(SearchGUIProcessBuilder process);
+    }
 }
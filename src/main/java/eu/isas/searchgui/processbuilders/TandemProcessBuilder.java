@@ -44,6 +44,10 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
      * The number of processors available.
      */
     private int nProcessors;
+    /**
+     * The spectrum, sequence batch size.
+     */
+    private int batchSize = 1000;
     /**
      * The xTandem file.
      */
@@ -165,19 +169,22 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
      * @param outputPath path where to output the results
      * @param searchParameters the search parameters
      * @param waitingHandler the waiting handler
-     * @param nThreads the number of threads to use
+     * @param resourceProfile the resources to use
      * @throws IllegalArgumentException thrown if more than one fixed PTM has
      * the same target
      */
     public TandemProcessBuilder(File xTandem_directory, String mgfFile, String outputPath,
-            SearchParameters searchParameters, WaitingHandler waitingHandler, int nThreads) throws IllegalArgumentException {
+            SearchParameters searchParameters, WaitingHandler waitingHandler, EngineResourceProfile resourceProfile) throws IllegalArgumentException {
 
         try {
             xtandemParameters = (XtandemParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.xtandem.getIndex());
 
             this.waitingHandler = waitingHandler;
             xTandemFile = xTandem_directory;
-            nProcessors = nThreads;
+            nProcessors = resourceProfile.getnThreads();
+            if (resourceProfile.getBatchSize() != null) {
+                batchSize = resourceProfile.getBatchSize();
+            }
             spectrumFile = mgfFile;
             dataBase = searchParameters.getFastaFile().getAbsoluteFile();
             this.outputPath = outputPath;
@@ -450,7 +457,7 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
                     + "\t<note type=\"input\" label=\"spectrum, minimum fragment mz\">" + xtandemParameters.getMinFragmentMz() + "</note>" + System.getProperty("line.separator")
                     + "\t<note type=\"input\" label=\"spectrum, minimum peaks\">" + xtandemParameters.getMinPeaksPerSpectrum() + "</note> " + System.getProperty("line.separator")
                     + "\t<note type=\"input\" label=\"spectrum, threads\">" + nProcessors + "</note>" + System.getProperty("line.separator")
-                    + "\t<note type=\"input\" label=\"spectrum, sequence batch size\">1000</note>" + System.getProperty("line.separator")
+                    + "\t<note type=\"input\" label=\"spectrum, sequence batch size\">" + batchSize + "</note>" + System.getProperty("line.separator")
                     + "\t" + System.getProperty("line.separator")
                     + "<note>residue modification parameters</note>" + System.getProperty("line.separator")
                     + modDescription
@@ -247,6 +247,12 @@ public class TideSearchProcessBuilder extends SearchGUIProcessBuilder {
         return "Tide Searching Process";
     }
 
+    @Override
+    protected ProgressParser getProgressParser() {
+        // e.g. "INFO: 5000 spectrum-charge combinations searched, 45% complete"
+        return new ProgressParser("searched, (\\d+(?:\\.\\d+)?)% complete");
+    }
+
     @Override
     public String getCurrentlyProcessedFileName() {
         return spectrumFile.getName();
@@ -0,0 +1,434 @@
+package eu.isas.searchgui.spectra;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Selects the spectra left to the slow search engines in a cascade search.
+ * The results of the fast engines, Comet and Tide, are scored with a
+ * target-decoy estimate of the false discovery rate and the spectra whose best
+ * hit is a target passing the given false discovery rate are considered
+ * identified. The other spectra are written to a reduced mgf file. Comet and
+ * Tide number the spectra by their 1-based index in the mgf file. The target
+ * proteins of the spectra identified are kept as evidence for the reduced
+ * database of a two-pass search.
+ *
+ * @author Marc Vaudel
+ */
+public class CascadeFilter {
+
+    /**
+     * The prefix of the decoy proteins generated by the search engines.
+     */
+    public static final String ENGINE_DECOY_PREFIX = "decoy_";
+    /**
+     * The size of the buffers used to read and write the files.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    /**
+     * The position of the peptide appended by Tide to the protein accessions.
+     */
+    private static final Pattern TIDE_PEPTIDE_POSITION = Pattern.compile("\\(\\d+\\)$");
+    /**
+     * The false discovery rate at which spectra are considered identified,
+     * between 0 and 1.
+     */
+    private final double fdr;
+    /**
+     * The tag of the decoy accessions in the database, null if none.
+     */
+    private final String decoyTag;
+    /**
+     * The 1-based indexes of the spectra identified.
+     */
+    private final HashSet<Integer> identifiedSpectra = new HashSet<Integer>();
+    /**
+     * The accessions of the target proteins of the spectra identified as
+     * reported by the search engines.
+     */
+    private final HashSet<String> identifiedProteins = new HashSet<String>();
+    /**
+     * The number of decoy hits found in the results scored.
+     */
+    private int nDecoys = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param fdr the false discovery rate at which spectra are considered
+     * identified, between 0 and 1
+     * @param decoyTag the tag of the decoy accessions in the database, null if
+     * none
+     */
+    public CascadeFilter(double fdr, String decoyTag) {
+        this.fdr = fdr;
+        this.decoyTag = decoyTag;
+    }
+
+    /**
+     * Scores the best hits of a Comet pepXML file using the expectation value.
+     *
+     * @param pepXmlFile the Comet pepXML file
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    public void addCometResults(File pepXmlFile) throws IOException {
+
+        TreeMap<Integer, Hit> hits = new TreeMap<Integer, Hit>();
+        InputStream inputStream = new FileInputStream(pepXmlFile);
+
+        try {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+            try {
+                Integer scan = null;
+                boolean bestHit = false;
+                boolean decoy = true;
+                Double expect = null;
+                ArrayList<String> proteins = new ArrayList<String>(1);
+
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("spectrum_query")) {
+                            scan = Integer.valueOf(reader.getAttributeValue(null, "start_scan"));
+                            bestHit = false;
+                            decoy = true;
+                            expect = null;
+                            proteins = new ArrayList<String>(1);
+                        } else if (name.equals("search_hit")) {
+                            bestHit = "1".equals(reader.getAttributeValue(null, "hit_rank"));
+                            if (bestHit) {
+                                String protein = reader.getAttributeValue(null, "protein");
+                                decoy = isDecoy(protein);
+                                addProtein(proteins, protein);
+                            }
+                        } else if (bestHit && name.equals("alternative_protein")) {
+                            String protein = reader.getAttributeValue(null, "protein");
+                            decoy = decoy && isDecoy(protein);
+                            addProtein(proteins, protein);
+                        } else if (bestHit && name.equals("search_score") && "expect".equals(reader.getAttributeValue(null, "name"))) {
+                            expect = Double.valueOf(reader.getAttributeValue(null, "value"));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("search_hit")) {
+                            bestHit = false;
+                        } else if (name.equals("spectrum_query") && scan != null && expect != null) {
+                            addHit(hits, scan, -Math.log10(Math.max(expect, Double.MIN_VALUE)), decoy, proteins);
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("An error occurred while parsing " + pepXmlFile.getName() + ".", e);
+        } catch (NumberFormatException e) {
+            throw new IOException("An error occurred while parsing " + pepXmlFile.getName() + ".", e);
+        } finally {
+            inputStream.close();
+        }
+
+        score(hits);
+    }
+
+    /**
+     * Scores the best hits of a Tide text file using the XCorr.
+     *
+     * @param tideFile the Tide text file
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    public void addTideResults(File tideFile) throws IOException {
+
+        TreeMap<Integer, Hit> hits = new TreeMap<Integer, Hit>();
+        BufferedReader br = new BufferedReader(new FileReader(tideFile), BUFFER_SIZE);
+
+        try {
+            String line = br.readLine();
+            if (line == null) {
+                return;
+            }
+            ArrayList<String> header = new ArrayList<String>();
+            Collections.addAll(header, line.split("\t"));
+            int scanIndex = header.indexOf("scan");
+            int scoreIndex = header.indexOf("xcorr score");
+            int rankIndex = header.indexOf("xcorr rank");
+            int proteinIndex = header.indexOf("protein id");
+            if (scanIndex == -1 || scoreIndex == -1 || proteinIndex == -1) {
+                throw new IOException("Columns not found in " + tideFile.getName() + ".");
+            }
+
+            while ((line = br.readLine()) != null) {
+                String[] split = line.split("\t");
+                if (rankIndex != -1 && !split[rankIndex].trim().equals("1")) {
+                    continue;
+                }
+                boolean decoy = true;
+                ArrayList<String> proteins = new ArrayList<String>(1);
+                for (String protein : split[proteinIndex].split(",")) {
+                    protein = TIDE_PEPTIDE_POSITION.matcher(protein.trim()).replaceFirst("");
+                    decoy = decoy && isDecoy(protein);
+                    addProtein(proteins, protein);
+                }
+                addHit(hits, Integer.valueOf(split[scanIndex].trim()), Double.parseDouble(split[scoreIndex]), decoy, proteins);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("An error occurred while parsing " + tideFile.getName() + ".", e);
+        } finally {
+            br.close();
+        }
+
+        score(hits);
+    }
+
+    /**
+     * Keeps the best hit of a spectrum.
+     *
+     * @param hits the best hit of every spectrum indexed by spectrum index
+     * @param scan the index of the spectrum
+     * @param score the score of the hit, higher is better
+     * @param decoy indicates whether the hit is a decoy
+     * @param proteins the proteins of the hit
+     */
+    private static void addHit(TreeMap<Integer, Hit> hits, int scan, double score, boolean decoy, ArrayList<String> proteins) {
+        Hit hit = hits.get(scan);
+        if (hit == null || score > hit.score) {
+            hits.put(scan, new Hit(scan, score, decoy, proteins));
+        }
+    }
+
+    /**
+     * Adds a protein to the proteins of a hit.
+     *
+     * @param proteins the proteins of the hit
+     * @param protein the protein accession as reported by the search engine,
+     * can be null
+     */
+    private static void addProtein(ArrayList<String> proteins, String protein) {
+        if (protein != null && protein.trim().length() > 0) {
+            proteins.add(protein.trim());
+        }
+    }
+
+    /**
+     * Sorts the hits by decreasing score and marks as identified the spectra
+     * and target proteins of the target hits above the lowest score where the
+     * ratio of decoy to target hits is within the false discovery rate.
+     *
+     * @param hits the best hit of every spectrum indexed by spectrum index
+     */
+    private void score(TreeMap<Integer, Hit> hits) {
+
+        ArrayList<Hit> sortedHits = new ArrayList<Hit>(hits.values());
+        Collections.sort(sortedHits, new Comparator<Hit>() {
+            @Override
+            public int compare(Hit o1, Hit o2) {
+                return Double.compare(o2.score, o1.score);
+            }
+        });
+
+        int nTarget = 0;
+        int nDecoy = 0;
+        int lastAccepted = -1;
+        for (int i = 0; i < sortedHits.size(); i++) {
+            if (sortedHits.get(i).decoy) {
+                nDecoy++;
+            } else {
+                nTarget++;
+            }
+            if (nTarget > 0 && nDecoy <= fdr * nTarget) {
+                lastAccepted = i;
+            }
+        }
+        nDecoys += nDecoy;
+
+        // without decoy hits the false discovery rate cannot be estimated
+        if (nDecoy == 0) {
+            return;
+        }
+
+        for (int i = 0; i <= lastAccepted; i++) {
+            Hit hit = sortedHits.get(i);
+            if (!hit.decoy) {
+                identifiedSpectra.add(hit.scan);
+                for (String protein : hit.proteins) {
+                    if (!isDecoy(protein)) {
+                        identifiedProteins.add(protein);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a protein is a decoy.
+     *
+     * @param protein the protein accession or description
+     *
+     * @return a boolean indicating whether the protein is a decoy
+     */
+    private boolean isDecoy(String protein) {
+        if (protein == null) {
+            return false;
+        }
+        String accession = protein.trim();
+        return decoyTag != null && accession.contains(decoyTag)
+                || accession.toLowerCase().startsWith(ENGINE_DECOY_PREFIX);
+    }
+
+    /**
+     * Writes the spectra not identified to a new mgf file, the spectra are
+     * copied as they are. Lines found outside spectra are copied as well.
+     *
+     * @param inputFile the mgf file searched by the fast engines
+     * @param outputFile the file where to write the spectra not identified
+     * @param indexMapping the mapping of the spectra of the input file to the
+     * scan numbers searched by the fast engines, null if the scan numbers are
+     * the index of the spectra in the input file
+     *
+     * @return the titles of the spectra identified indexed by scan number
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * a file
+     */
+    public TreeMap<Integer, String> writeUnidentifiedSpectra(File inputFile, File outputFile, SpectrumIndexMapping indexMapping) throws IOException {
+
+        TreeMap<Integer, String> identifiedTitles = new TreeMap<Integer, String>();
+        BufferedReader br = new BufferedReader(new FileReader(inputFile), BUFFER_SIZE);
+
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile), BUFFER_SIZE);
+
+            try {
+                int spectrumIndex = 0;
+                int scan = 0;
+                boolean inSpectrum = false;
+                boolean skip = false;
+                String line;
+
+                while ((line = br.readLine()) != null) {
+                    String trimmedLine = line.trim();
+                    if (trimmedLine.equals("BEGIN IONS")) {
+                        spectrumIndex++;
+                        scan = indexMapping == null ? spectrumIndex : indexMapping.getOriginalIndex(spectrumIndex);
+                        inSpectrum = true;
+                        skip = identifiedSpectra.contains(scan);
+                        if (skip) {
+                            identifiedTitles.put(scan, "");
+                        }
+                    } else if (inSpectrum && skip && trimmedLine.startsWith("TITLE=")) {
+                        identifiedTitles.put(scan, trimmedLine.substring(6));
+                    }
+                    if (!inSpectrum || !skip) {
+                        bw.write(line);
+                        bw.newLine();
+                    }
+                    if (trimmedLine.equals("END IONS")) {
+                        inSpectrum = false;
+                        skip = false;
+                    }
+                }
+            } finally {
+                bw.close();
+            }
+        } finally {
+            br.close();
+        }
+
+        return identifiedTitles;
+    }
+
+    /**
+     * Returns the number of spectra identified.
+     *
+     * @return the number of spectra identified
+     */
+    public int getnIdentified() {
+        return identifiedSpectra.size();
+    }
+
+    /**
+     * Returns the 1-based indexes of the spectra identified.
+     *
+     * @return the 1-based indexes of the spectra identified
+     */
+    public HashSet<Integer> getIdentifiedSpectra() {
+        return identifiedSpectra;
+    }
+
+    /**
+     * Returns the accessions of the target proteins of the spectra identified
+     * as reported by the search engines.
+     *
+     * @return the accessions of the target proteins of the spectra identified
+     */
+    public HashSet<String> getIdentifiedProteins() {
+        return identifiedProteins;
+    }
+
+    /**
+     * Returns the number of decoy hits found in the results scored. Without
+     * decoy hits no spectrum is considered identified.
+     *
+     * @return the number of decoy hits
+     */
+    public int getnDecoys() {
+        return nDecoys;
+    }
+
+    /**
+     * The best hit of a spectrum.
+     */
+    private static class Hit {
+
+        /**
+         * The 1-based index of the spectrum.
+         */
+        private final int scan;
+        /**
+         * The score of the hit, higher is better.
+         */
+        private final double score;
+        /**
+         * Indicates whether the hit is a decoy.
+         */
+        private final boolean decoy;
+        /**
+         * The proteins of the hit.
+         */
+        private final ArrayList<String> proteins;
+
+        /**
+         * Constructor.
+         *
+         * @param scan the 1-based index of the spectrum
+         * @param score the score of the hit, higher is better
+         * @param decoy indicates whether the hit is a decoy
+         * @param proteins the proteins of the hit
+         */
+        private Hit(int scan, double score, boolean decoy, ArrayList<String> proteins) {
+            this.scan = scan;
+            this.score = score;
+            this.decoy = decoy;
+            this.proteins = proteins;
+        }
+    }
+}
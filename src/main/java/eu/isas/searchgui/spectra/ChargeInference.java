@@ -0,0 +1,302 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Infers the charge of the precursors of the spectra without charge so that
+ * the search engines only search the plausible charges instead of the whole
+ * range. A spectrum is considered singly charged when nearly no fragment
+ * intensity is found above the precursor m/z. Otherwise, every charge of the
+ * range is scored by the number of complementary fragment pairs, i.e. pairs
+ * of peaks whose m/z sum to the mass of the precursor plus two protons for
+ * this charge. Fragment isotope envelopes spaced by half a neutron indicate
+ * doubly charged fragments, hence a precursor charge of three or more. The
+ * best charge is kept, together with the second best when it scores close
+ * to the best. Spectra without evidence are left unchanged.
+ *
+ * @author Marc Vaudel
+ */
+public class ChargeInference implements SpectrumProcessor {
+
+    /**
+     * The mass difference between two isotopes.
+     */
+    public static final double ISOTOPE_SPACING = 1.003355;
+    /**
+     * The maximal share of the fragment intensity above the precursor m/z
+     * for a spectrum to be considered singly charged.
+     */
+    public static final double SINGLY_CHARGED_SHARE = 0.05;
+    /**
+     * The width in Th of the window above the precursor m/z ignored when
+     * computing the intensity share, to account for the precursor isotopes.
+     */
+    public static final double PRECURSOR_WINDOW = 2;
+    /**
+     * The number of most intense peaks used to find complementary pairs and
+     * isotopes.
+     */
+    public static final int TOP_PEAKS = 100;
+    /**
+     * The minimal number of complementary pairs supporting a charge.
+     */
+    public static final int MIN_PAIRS = 2;
+    /**
+     * The minimal number of doubly charged isotope pairs supporting a
+     * precursor charge of three or more.
+     */
+    public static final int MIN_ISOTOPE_PAIRS = 3;
+    /**
+     * The score of the second best charge relative to the best for it to be
+     * kept.
+     */
+    public static final double SECOND_CHARGE_SHARE = 0.5;
+    /**
+     * The tolerance in ppm of the precursor m/z.
+     */
+    public static final double PRECURSOR_TOLERANCE_PPM = 20;
+    /**
+     * The smallest charge searched.
+     */
+    private final int minCharge;
+    /**
+     * The largest charge searched.
+     */
+    private final int maxCharge;
+    /**
+     * The tolerance in Da used to match fragment peaks.
+     */
+    private final double fragmentTolerance;
+    /**
+     * The number of spectra without charge.
+     */
+    private final AtomicInteger nWithoutCharge = new AtomicInteger();
+    /**
+     * The number of spectra for which a charge was inferred.
+     */
+    private final AtomicInteger nInferred = new AtomicInteger();
+    /**
+     * The number of charges written for the spectra inferred.
+     */
+    private final AtomicInteger nChargesInferred = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param minCharge the smallest charge searched
+     * @param maxCharge the largest charge searched
+     * @param fragmentTolerance the tolerance in Da used to match fragment
+     * peaks
+     */
+    public ChargeInference(int minCharge, int maxCharge, double fragmentTolerance) {
+        this.minCharge = minCharge;
+        this.maxCharge = maxCharge;
+        this.fragmentTolerance = fragmentTolerance;
+    }
+
+    @Override
+    public MSnSpectrum process(MSnSpectrum spectrum, int index) {
+
+        if (SpectrumUtils.getCharges(spectrum).length > 0) {
+            return spectrum;
+        }
+        nWithoutCharge.incrementAndGet();
+
+        double precursorMz = spectrum.getPrecursor().getMz();
+        if (precursorMz <= 0 || spectrum.getPeakMap().isEmpty()) {
+            return spectrum;
+        }
+
+        int[] charges = inferCharges(spectrum, precursorMz);
+        if (charges != null) {
+            ArrayList<Charge> possibleCharges = new ArrayList<Charge>(charges.length);
+            for (int charge : charges) {
+                possibleCharges.add(new Charge(Charge.PLUS, charge));
+            }
+            SpectrumUtils.setPrecursor(spectrum, precursorMz, possibleCharges);
+            nInferred.incrementAndGet();
+            nChargesInferred.addAndGet(charges.length);
+        }
+
+        return spectrum;
+    }
+
+    /**
+     * Returns the plausible charges of the precursor of a spectrum.
+     *
+     * @param spectrum the spectrum
+     * @param precursorMz the precursor m/z
+     *
+     * @return the plausible charges in ascending order, null if no charge
+     * could be inferred
+     */
+    private int[] inferCharges(MSnSpectrum spectrum, double precursorMz) {
+
+        // singly charged precursors produce no fragment above their m/z
+        double[] mz = SpectrumUtils.getMz(spectrum);
+        double[] intensity = SpectrumUtils.getIntensity(spectrum, mz);
+        double totalIntensity = 0;
+        double intensityAbove = 0;
+        for (int i = 0; i < mz.length; i++) {
+            totalIntensity += intensity[i];
+            if (mz[i] > precursorMz + PRECURSOR_WINDOW) {
+                intensityAbove += intensity[i];
+            }
+        }
+        if (totalIntensity > 0 && intensityAbove / totalIntensity < SINGLY_CHARGED_SHARE) {
+            return minCharge <= 1 ? new int[]{1} : null;
+        }
+
+        double[] peaks = getMostIntensePeaks(mz, intensity);
+
+        // doubly charged fragments indicate a precursor charge of at least three
+        int lowestCharge = Math.max(2, minCharge);
+        if (countPairs(peaks, ISOTOPE_SPACING / 2, fragmentTolerance) >= MIN_ISOTOPE_PAIRS) {
+            lowestCharge = Math.max(3, lowestCharge);
+        }
+
+        int bestCharge = -1;
+        int bestScore = 0;
+        int secondCharge = -1;
+        int secondScore = 0;
+        for (int charge = lowestCharge; charge <= maxCharge; charge++) {
+            double pairMz = precursorMz * charge - (charge - 2) * SpectrumUtils.PROTON_MASS;
+            double tolerance = 2 * fragmentTolerance + pairMz * PRECURSOR_TOLERANCE_PPM / 1000000;
+            int score = countComplementaryPairs(peaks, pairMz, tolerance);
+            if (score > bestScore) {
+                secondCharge = bestCharge;
+                secondScore = bestScore;
+                bestCharge = charge;
+                bestScore = score;
+            } else if (score > secondScore) {
+                secondCharge = charge;
+                secondScore = score;
+            }
+        }
+
+        if (bestScore < MIN_PAIRS) {
+            return null;
+        }
+        if (secondCharge != -1 && secondScore >= MIN_PAIRS && secondScore >= SECOND_CHARGE_SHARE * bestScore) {
+            return new int[]{Math.min(bestCharge, secondCharge), Math.max(bestCharge, secondCharge)};
+        }
+        return new int[]{bestCharge};
+    }
+
+    /**
+     * Counts the pairs of peaks whose m/z sum to the given value.
+     *
+     * @param peaks the m/z of the peaks sorted in ascending order
+     * @param pairMz the sum of the m/z of complementary peaks
+     * @param tolerance the tolerance in Da on the sum
+     *
+     * @return the number of complementary pairs
+     */
+    private static int countComplementaryPairs(double[] peaks, double pairMz, double tolerance) {
+        int count = 0;
+        for (int i = 0; i < peaks.length && peaks[i] < pairMz / 2; i++) {
+            if (contains(peaks, pairMz - peaks[i], tolerance)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the peaks followed by another peak at the given distance.
+     *
+     * @param peaks the m/z of the peaks sorted in ascending order
+     * @param distance the distance between the peaks in Th
+     * @param tolerance the tolerance in Da on the distance
+     *
+     * @return the number of pairs
+     */
+    private static int countPairs(double[] peaks, double distance, double tolerance) {
+        int count = 0;
+        for (double peak : peaks) {
+            if (contains(peaks, peak + distance, tolerance)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Indicates whether a peak is found at the given m/z.
+     *
+     * @param peaks the m/z of the peaks sorted in ascending order
+     * @param mz the m/z of interest
+     * @param tolerance the tolerance in Da
+     *
+     * @return a boolean indicating whether a peak is found at the given m/z
+     */
+    private static boolean contains(double[] peaks, double mz, double tolerance) {
+        int index = Arrays.binarySearch(peaks, mz - tolerance);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < peaks.length && peaks[index] <= mz + tolerance;
+    }
+
+    /**
+     * Returns the m/z of the most intense peaks sorted in ascending order.
+     *
+     * @param mz the m/z of the peaks sorted in ascending order
+     * @param intensity the intensity of the peaks
+     *
+     * @return the m/z of the most intense peaks
+     */
+    private static double[] getMostIntensePeaks(double[] mz, double[] intensity) {
+
+        if (mz.length <= TOP_PEAKS) {
+            return mz;
+        }
+
+        double[] sortedIntensities = intensity.clone();
+        Arrays.sort(sortedIntensities);
+        double threshold = sortedIntensities[sortedIntensities.length - TOP_PEAKS];
+
+        ArrayList<Double> result = new ArrayList<Double>(TOP_PEAKS);
+        for (int i = 0; i < mz.length && result.size() < TOP_PEAKS; i++) {
+            if (intensity[i] >= threshold) {
+                result.add(mz[i]);
+            }
+        }
+        double[] peaks = new double[result.size()];
+        for (int i = 0; i < peaks.length; i++) {
+            peaks[i] = result.get(i);
+        }
+        return peaks;
+    }
+
+    /**
+     * Returns the number of spectra found without charge.
+     *
+     * @return the number of spectra found without charge
+     */
+    public int getnWithoutCharge() {
+        return nWithoutCharge.get();
+    }
+
+    /**
+     * Returns the number of spectra for which a charge was inferred.
+     *
+     * @return the number of spectra for which a charge was inferred
+     */
+    public int getnInferred() {
+        return nInferred.get();
+    }
+
+    /**
+     * Returns the number of charges written for the spectra inferred.
+     *
+     * @return the number of charges written for the spectra inferred
+     */
+    public int getnChargesInferred() {
+        return nChargesInferred.get();
+    }
+}
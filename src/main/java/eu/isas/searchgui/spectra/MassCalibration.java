@@ -0,0 +1,508 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.io.massspectrometry.MgfIndex;
+import com.compomics.util.experiment.io.massspectrometry.MgfReader;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import uk.ac.ebi.pride.tools.braf.BufferedRandomAccessFile;
+
+/**
+ * Estimates the systematic mass error and the spread of the precursor and
+ * fragment ion masses from confident peptide-spectrum matches. The precursor
+ * errors are the differences between the measured and theoretical peptide
+ * masses, corrected for isotope errors. The fragment errors are the distances
+ * between the b and y ions of the peptides and the closest of the most
+ * intense peaks within the fragment tolerance. The errors are kept in ppm,
+ * the systematic error is their median and the spread their median absolute
+ * deviation scaled to a standard deviation.
+ *
+ * @author Marc Vaudel
+ */
+public class MassCalibration {
+
+    /**
+     * The mass difference between two isotopes of a peptide.
+     */
+    public static final double ISOTOPE_SPACING = 1.003355;
+    /**
+     * The mass of a hydrogen atom.
+     */
+    public static final double HYDROGEN_MASS = 1.007825;
+    /**
+     * The mass of a hydroxyl group.
+     */
+    public static final double HYDROXYL_MASS = 17.002740;
+    /**
+     * The mass of a water molecule.
+     */
+    public static final double WATER_MASS = 18.010565;
+    /**
+     * The number of standard deviations of the errors covered by the
+     * tolerances.
+     */
+    public static final double TOLERANCE_FACTOR = 4;
+    /**
+     * The factor converting a median absolute deviation to a standard
+     * deviation for normally distributed errors.
+     */
+    public static final double MAD_FACTOR = 1.4826;
+    /**
+     * The number of most intense peaks of a spectrum matched to the fragment
+     * ions.
+     */
+    public static final int FRAGMENT_PEAKS = 100;
+    /**
+     * The monoisotopic masses of the amino acid residues.
+     */
+    private static final HashMap<Character, Double> RESIDUE_MASSES = new HashMap<Character, Double>();
+
+    static {
+        RESIDUE_MASSES.put('G', 57.02146);
+        RESIDUE_MASSES.put('A', 71.03711);
+        RESIDUE_MASSES.put('S', 87.03203);
+        RESIDUE_MASSES.put('P', 97.05276);
+        RESIDUE_MASSES.put('V', 99.06841);
+        RESIDUE_MASSES.put('T', 101.04768);
+        RESIDUE_MASSES.put('C', 103.00919);
+        RESIDUE_MASSES.put('L', 113.08406);
+        RESIDUE_MASSES.put('I', 113.08406);
+        RESIDUE_MASSES.put('N', 114.04293);
+        RESIDUE_MASSES.put('D', 115.02694);
+        RESIDUE_MASSES.put('Q', 128.05858);
+        RESIDUE_MASSES.put('K', 128.09496);
+        RESIDUE_MASSES.put('E', 129.04259);
+        RESIDUE_MASSES.put('M', 131.04049);
+        RESIDUE_MASSES.put('H', 137.05891);
+        RESIDUE_MASSES.put('F', 147.06841);
+        RESIDUE_MASSES.put('U', 150.95364);
+        RESIDUE_MASSES.put('R', 156.10111);
+        RESIDUE_MASSES.put('Y', 163.06333);
+        RESIDUE_MASSES.put('W', 186.07931);
+        RESIDUE_MASSES.put('O', 237.14773);
+    }
+    /**
+     * The tolerance used to match the fragment ions.
+     */
+    private final double fragmentTolerance;
+    /**
+     * Indicates whether the fragment tolerance is in ppm, in Da otherwise.
+     */
+    private final boolean fragmentPpm;
+    /**
+     * The precursor errors in ppm.
+     */
+    private final ArrayList<Double> precursorErrors = new ArrayList<Double>();
+    /**
+     * The theoretical masses of the precursors.
+     */
+    private final ArrayList<Double> precursorMasses = new ArrayList<Double>();
+    /**
+     * The fragment errors in ppm.
+     */
+    private final ArrayList<Double> fragmentErrors = new ArrayList<Double>();
+    /**
+     * The theoretical m/z of the fragments.
+     */
+    private final ArrayList<Double> fragmentMzs = new ArrayList<Double>();
+
+    /**
+     * Constructor.
+     *
+     * @param fragmentTolerance the tolerance used to match the fragment ions
+     * @param fragmentPpm indicates whether the fragment tolerance is in ppm,
+     * in Da otherwise
+     */
+    public MassCalibration(double fragmentTolerance, boolean fragmentPpm) {
+        this.fragmentTolerance = fragmentTolerance;
+        this.fragmentPpm = fragmentPpm;
+    }
+
+    /**
+     * Adds the errors of the best hits of the given spectra in a Comet pepXML
+     * file. The spectra are numbered by their 1-based index in the mgf file.
+     *
+     * @param pepXmlFile the Comet pepXML file
+     * @param scans the indexes of the spectra confidently identified
+     * @param mgfFile the mgf file searched
+     *
+     * @throws IOException thrown if an error occurred while reading a file
+     */
+    public void addCometResults(File pepXmlFile, Set<Integer> scans, File mgfFile) throws IOException {
+
+        HashMap<Integer, Psm> psms = new HashMap<Integer, Psm>(scans.size());
+        InputStream inputStream = new FileInputStream(pepXmlFile);
+
+        try {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+            try {
+                Psm psm = null;
+                boolean bestHit = false;
+
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("spectrum_query")) {
+                            Integer scan = Integer.valueOf(reader.getAttributeValue(null, "start_scan"));
+                            psm = null;
+                            if (scans.contains(scan)) {
+                                psm = new Psm();
+                                psm.scan = scan;
+                                psm.charge = Integer.parseInt(reader.getAttributeValue(null, "assumed_charge"));
+                                psm.measuredMass = Double.parseDouble(reader.getAttributeValue(null, "precursor_neutral_mass"));
+                            }
+                        } else if (psm != null && name.equals("search_hit")) {
+                            bestHit = "1".equals(reader.getAttributeValue(null, "hit_rank"));
+                            if (bestHit) {
+                                psm.residueMasses = getResidueMasses(reader.getAttributeValue(null, "peptide"));
+                                psm.theoreticalMass = Double.parseDouble(reader.getAttributeValue(null, "calc_neutral_pep_mass"));
+                            }
+                        } else if (psm != null && bestHit && name.equals("modification_info")) {
+                            String nTermMass = reader.getAttributeValue(null, "mod_nterm_mass");
+                            if (nTermMass != null) {
+                                psm.nTermDelta = Double.parseDouble(nTermMass) - HYDROGEN_MASS;
+                            }
+                            String cTermMass = reader.getAttributeValue(null, "mod_cterm_mass");
+                            if (cTermMass != null) {
+                                psm.cTermDelta = Double.parseDouble(cTermMass) - HYDROXYL_MASS;
+                            }
+                        } else if (psm != null && bestHit && name.equals("mod_aminoacid_mass") && psm.residueMasses != null) {
+                            int position = Integer.parseInt(reader.getAttributeValue(null, "position"));
+                            if (position >= 1 && position <= psm.residueMasses.length) {
+                                psm.residueMasses[position - 1] = Double.parseDouble(reader.getAttributeValue(null, "mass"));
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("search_hit")) {
+                            bestHit = false;
+                        } else if (name.equals("spectrum_query") && psm != null) {
+                            if (psm.residueMasses != null && psm.theoreticalMass > 0) {
+                                psms.put(psm.scan, psm);
+                            }
+                            psm = null;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("An error occurred while parsing " + pepXmlFile.getName() + ".", e);
+        } catch (NumberFormatException e) {
+            throw new IOException("An error occurred while parsing " + pepXmlFile.getName() + ".", e);
+        } finally {
+            inputStream.close();
+        }
+
+        for (Psm psm : psms.values()) {
+            double difference = psm.measuredMass - psm.theoreticalMass;
+            double isotopeError = Math.round(difference / ISOTOPE_SPACING) * ISOTOPE_SPACING;
+            precursorErrors.add((difference - isotopeError) / psm.theoreticalMass * 1000000);
+            precursorMasses.add(psm.theoreticalMass);
+        }
+
+        addFragmentErrors(mgfFile, psms);
+    }
+
+    /**
+     * Adds the fragment errors of the given matches.
+     *
+     * @param mgfFile the mgf file searched
+     * @param psms the matches indexed by 1-based spectrum index
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    private void addFragmentErrors(File mgfFile, HashMap<Integer, Psm> psms) throws IOException {
+
+        MgfIndex mgfIndex = SpectrumUtils.getIndex(mgfFile);
+        ArrayList<String> spectrumTitles = mgfIndex.getSpectrumTitles();
+        BufferedRandomAccessFile raf = new BufferedRandomAccessFile(mgfFile, "r", MgfFileProcessor.BUFFER_SIZE);
+
+        try {
+            for (int spectrumIndex = 1; spectrumIndex <= spectrumTitles.size(); spectrumIndex++) {
+                Psm psm = psms.get(spectrumIndex);
+                if (psm != null) {
+                    MSnSpectrum spectrum = MgfReader.getSpectrum(raf, mgfIndex.getIndex(spectrumTitles.get(spectrumIndex - 1)), mgfFile.getName());
+                    addFragmentErrors(spectrum, psm);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Matches the b and y ions of a peptide to the most intense peaks of its
+     * spectrum and adds the errors of the matches.
+     *
+     * @param spectrum the spectrum
+     * @param psm the match
+     */
+    private void addFragmentErrors(MSnSpectrum spectrum, Psm psm) {
+
+        double[] peaks = getMostIntensePeaks(spectrum);
+        if (peaks.length == 0) {
+            return;
+        }
+
+        double[] residueMasses = psm.residueMasses;
+        int maxCharge = Math.max(1, psm.charge - 1);
+        double prefixMass = psm.nTermDelta;
+        double totalMass = psm.nTermDelta + psm.cTermDelta + WATER_MASS;
+        for (double residueMass : residueMasses) {
+            totalMass += residueMass;
+        }
+
+        for (int i = 0; i < residueMasses.length - 1; i++) {
+            prefixMass += residueMasses[i];
+            double suffixMass = totalMass - prefixMass;
+            for (int charge = 1; charge <= maxCharge; charge++) {
+                addFragmentError(peaks, (prefixMass + charge * SpectrumUtils.PROTON_MASS) / charge);
+                addFragmentError(peaks, (suffixMass + charge * SpectrumUtils.PROTON_MASS) / charge);
+            }
+        }
+    }
+
+    /**
+     * Adds the error of the peak closest to a fragment ion if within the
+     * fragment tolerance.
+     *
+     * @param peaks the m/z of the peaks sorted in ascending order
+     * @param fragmentMz the theoretical m/z of the fragment ion
+     */
+    private void addFragmentError(double[] peaks, double fragmentMz) {
+
+        int index = Arrays.binarySearch(peaks, fragmentMz);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        double closest = Double.NaN;
+        if (index < peaks.length) {
+            closest = peaks[index];
+        }
+        if (index > 0 && (Double.isNaN(closest) || fragmentMz - peaks[index - 1] < closest - fragmentMz)) {
+            closest = peaks[index - 1];
+        }
+
+        double tolerance = fragmentPpm ? fragmentTolerance * fragmentMz / 1000000 : fragmentTolerance;
+        if (Math.abs(closest - fragmentMz) <= tolerance) {
+            fragmentErrors.add((closest - fragmentMz) / fragmentMz * 1000000);
+            fragmentMzs.add(fragmentMz);
+        }
+    }
+
+    /**
+     * Returns the m/z of the most intense peaks of a spectrum sorted in
+     * ascending order.
+     *
+     * @param spectrum the spectrum
+     *
+     * @return the m/z of the most intense peaks
+     */
+    private static double[] getMostIntensePeaks(MSnSpectrum spectrum) {
+
+        double[] mz = SpectrumUtils.getMz(spectrum);
+        double[] intensity = SpectrumUtils.getIntensity(spectrum, mz);
+        if (mz.length <= FRAGMENT_PEAKS) {
+            return mz;
+        }
+
+        double[] sortedIntensities = intensity.clone();
+        Arrays.sort(sortedIntensities);
+        double threshold = sortedIntensities[sortedIntensities.length - FRAGMENT_PEAKS];
+
+        double[] result = new double[FRAGMENT_PEAKS];
+        int nPeaks = 0;
+        for (int i = 0; i < mz.length && nPeaks < FRAGMENT_PEAKS; i++) {
+            if (intensity[i] >= threshold) {
+                result[nPeaks++] = mz[i];
+            }
+        }
+        return Arrays.copyOf(result, nPeaks);
+    }
+
+    /**
+     * Returns the masses of the residues of a peptide, null if a residue is
+     * unknown.
+     *
+     * @param sequence the sequence of the peptide
+     *
+     * @return the masses of the residues
+     */
+    private static double[] getResidueMasses(String sequence) {
+        if (sequence == null || sequence.length() == 0) {
+            return null;
+        }
+        double[] masses = new double[sequence.length()];
+        for (int i = 0; i < sequence.length(); i++) {
+            Double mass = RESIDUE_MASSES.get(sequence.charAt(i));
+            if (mass == null) {
+                return null;
+            }
+            masses[i] = mass;
+        }
+        return masses;
+    }
+
+    /**
+     * Returns the number of precursor errors measured.
+     *
+     * @return the number of precursor errors measured
+     */
+    public int getnPrecursorErrors() {
+        return precursorErrors.size();
+    }
+
+    /**
+     * Returns the number of fragment errors measured.
+     *
+     * @return the number of fragment errors measured
+     */
+    public int getnFragmentErrors() {
+        return fragmentErrors.size();
+    }
+
+    /**
+     * Returns the systematic error of the precursor masses in ppm.
+     *
+     * @return the systematic error of the precursor masses in ppm
+     */
+    public double getPrecursorShift() {
+        return median(precursorErrors);
+    }
+
+    /**
+     * Returns the systematic error of the fragment masses in ppm.
+     *
+     * @return the systematic error of the fragment masses in ppm
+     */
+    public double getFragmentShift() {
+        return median(fragmentErrors);
+    }
+
+    /**
+     * Returns the precursor tolerance covering the errors measured: the
+     * systematic error left plus the tolerance factor times the spread.
+     *
+     * @param ppm if true the tolerance is returned in ppm, in Da otherwise
+     * @param recalibrated if true the systematic error is considered
+     * corrected
+     *
+     * @return the precursor tolerance
+     */
+    public double getPrecursorTolerance(boolean ppm, boolean recalibrated) {
+        return getTolerance(precursorErrors, precursorMasses, recalibrated ? getPrecursorShift() : 0, ppm);
+    }
+
+    /**
+     * Returns the fragment tolerance covering the errors measured: the
+     * systematic error left plus the tolerance factor times the spread.
+     *
+     * @param ppm if true the tolerance is returned in ppm, in Da otherwise
+     * @param recalibrated if true the systematic error is considered
+     * corrected
+     *
+     * @return the fragment tolerance
+     */
+    public double getFragmentTolerance(boolean ppm, boolean recalibrated) {
+        return getTolerance(fragmentErrors, fragmentMzs, recalibrated ? getFragmentShift() : 0, ppm);
+    }
+
+    /**
+     * Returns the tolerance covering the given errors.
+     *
+     * @param errors the errors in ppm
+     * @param masses the theoretical masses or m/z
+     * @param shift the systematic error corrected in ppm
+     * @param ppm if true the tolerance is returned in ppm, in Da otherwise
+     *
+     * @return the tolerance
+     */
+    private static double getTolerance(ArrayList<Double> errors, ArrayList<Double> masses, double shift, boolean ppm) {
+
+        if (errors.isEmpty()) {
+            return Double.NaN;
+        }
+
+        ArrayList<Double> residuals = new ArrayList<Double>(errors.size());
+        for (int i = 0; i < errors.size(); i++) {
+            double residual = errors.get(i) - shift;
+            residuals.add(ppm ? residual : residual * masses.get(i) / 1000000);
+        }
+
+        double median = median(residuals);
+        ArrayList<Double> deviations = new ArrayList<Double>(residuals.size());
+        for (double residual : residuals) {
+            deviations.add(Math.abs(residual - median));
+        }
+
+        return Math.abs(median) + TOLERANCE_FACTOR * MAD_FACTOR * median(deviations);
+    }
+
+    /**
+     * Returns the median of the given values, NaN if empty.
+     *
+     * @param values the values
+     *
+     * @return the median
+     */
+    private static double median(ArrayList<Double> values) {
+        if (values.isEmpty()) {
+            return Double.NaN;
+        }
+        double[] sorted = new double[values.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = values.get(i);
+        }
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    /**
+     * The best hit of a spectrum.
+     */
+    private static class Psm {
+
+        /**
+         * The 1-based index of the spectrum.
+         */
+        private int scan;
+        /**
+         * The charge of the precursor.
+         */
+        private int charge;
+        /**
+         * The measured neutral mass of the precursor.
+         */
+        private double measuredMass;
+        /**
+         * The theoretical neutral mass of the peptide.
+         */
+        private double theoreticalMass;
+        /**
+         * The masses of the residues including their modifications.
+         */
+        private double[] residueMasses;
+        /**
+         * The mass of the N-terminal modification.
+         */
+        private double nTermDelta = 0;
+        /**
+         * The mass of the C-terminal modification.
+         */
+        private double cTermDelta = 0;
+    }
+}
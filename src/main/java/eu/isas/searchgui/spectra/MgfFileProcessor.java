@@ -0,0 +1,191 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.io.massspectrometry.MgfIndex;
+import com.compomics.util.experiment.io.massspectrometry.MgfReader;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import uk.ac.ebi.pride.tools.braf.BufferedRandomAccessFile;
+
+/**
+ * Streams an mgf file through a spectrum processor. The file is indexed and
+ * the spectra are read in batches using the mgf reader of compomics
+ * utilities, the batches are read and processed in parallel while the
+ * previous ones are written, and the order of the spectra is preserved.
+ *
+ * @author Marc Vaudel
+ */
+public class MgfFileProcessor {
+
+    /**
+     * The number of spectra per batch.
+     */
+    public static final int BATCH_SIZE = 1000;
+    /**
+     * The size of the buffers used to read and write the files.
+     */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    /**
+     * The number of threads to use.
+     */
+    private final int nThreads;
+    /**
+     * The waiting handler, can be null.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The number of spectra read in the last processed file.
+     */
+    private int nSpectraRead = 0;
+    /**
+     * The number of spectra written in the last processed file.
+     */
+    private int nSpectraWritten = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param nThreads the number of threads to use
+     * @param waitingHandler the waiting handler, can be null
+     */
+    public MgfFileProcessor(int nThreads, WaitingHandler waitingHandler) {
+        this.nThreads = Math.max(1, nThreads);
+        this.waitingHandler = waitingHandler;
+    }
+
+    /**
+     * Processes the spectra of the input file and writes the result to the
+     * output file. If no output file is given the spectra are only processed.
+     *
+     * @param inputFile the mgf file to process
+     * @param outputFile the file where to write the processed spectra, can be
+     * null
+     * @param processor the processor to use
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * a file
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    public void process(final File inputFile, File outputFile, final SpectrumProcessor processor) throws IOException, InterruptedException {
+
+        nSpectraRead = 0;
+        nSpectraWritten = 0;
+
+        final MgfIndex mgfIndex = SpectrumUtils.getIndex(inputFile);
+        ArrayList<String> spectrumTitles = mgfIndex.getSpectrumTitles();
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+
+        try {
+            BufferedWriter bw = outputFile == null ? null : new BufferedWriter(new FileWriter(outputFile), BUFFER_SIZE);
+
+            try {
+                LinkedList<Future<ArrayList<MSnSpectrum>>> pendingBatches = new LinkedList<Future<ArrayList<MSnSpectrum>>>();
+
+                for (int batchStart = 0; batchStart < spectrumTitles.size(); batchStart += BATCH_SIZE) {
+
+                    final int firstIndex = batchStart + 1;
+                    final List<String> batchTitles = spectrumTitles.subList(batchStart, Math.min(batchStart + BATCH_SIZE, spectrumTitles.size()));
+
+                    // bound the memory used by limiting the number of batches in flight
+                    if (pendingBatches.size() > nThreads) {
+                        write(pendingBatches.removeFirst(), bw);
+                        if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                            return;
+                        }
+                    }
+
+                    pendingBatches.add(pool.submit(new Callable<ArrayList<MSnSpectrum>>() {
+                        @Override
+                        public ArrayList<MSnSpectrum> call() throws Exception {
+                            ArrayList<MSnSpectrum> result = new ArrayList<MSnSpectrum>(batchTitles.size());
+                            BufferedRandomAccessFile raf = new BufferedRandomAccessFile(inputFile, "r", BUFFER_SIZE);
+                            try {
+                                for (int i = 0; i < batchTitles.size(); i++) {
+                                    MSnSpectrum spectrum = MgfReader.getSpectrum(raf, mgfIndex.getIndex(batchTitles.get(i)), inputFile.getName());
+                                    result.add(processor.process(spectrum, firstIndex + i));
+                                }
+                            } finally {
+                                raf.close();
+                            }
+                            return result;
+                        }
+                    }));
+                    nSpectraRead += batchTitles.size();
+                }
+
+                while (!pendingBatches.isEmpty()) {
+                    write(pendingBatches.removeFirst(), bw);
+                }
+
+            } finally {
+                if (bw != null) {
+                    bw.close();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Waits for the spectra of the given batch and writes them.
+     *
+     * @param batch the batch of spectra
+     * @param bw the writer to use, can be null
+     *
+     * @throws IOException thrown if an error occurred while processing or
+     * writing a spectrum
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    private void write(Future<ArrayList<MSnSpectrum>> batch, BufferedWriter bw) throws IOException, InterruptedException {
+        ArrayList<MSnSpectrum> spectra;
+        try {
+            spectra = batch.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("An error occurred while processing a spectrum.", e.getCause());
+        }
+        for (MSnSpectrum spectrum : spectra) {
+            if (spectrum != null) {
+                if (bw != null) {
+                    SpectrumUtils.write(spectrum, bw);
+                }
+                nSpectraWritten++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of spectra read in the last processed file.
+     *
+     * @return the number of spectra read in the last processed file
+     */
+    public int getnSpectraRead() {
+        return nSpectraRead;
+    }
+
+    /**
+     * Returns the number of spectra written in the last processed file.
+     *
+     * @return the number of spectra written in the last processed file
+     */
+    public int getnSpectraWritten() {
+        return nSpectraWritten;
+    }
+}
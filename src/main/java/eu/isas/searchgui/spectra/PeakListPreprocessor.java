@@ -0,0 +1,243 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import eu.isas.searchgui.preferences.SpectrumPreprocessingSettings;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reduces the peak lists according to the pre-processing settings. The steps
+ * are applied in the following order: precursor removal, deisotoping and
+ * charge deconvolution, intensity threshold, and selection of the most intense
+ * peaks per m/z window.
+ *
+ * @author Marc Vaudel
+ */
+public class PeakListPreprocessor implements SpectrumProcessor {
+
+    /**
+     * The mass difference between two isotopes.
+     */
+    public static final double ISOTOPE_SPACING = 1.00335;
+    /**
+     * The maximal fragment charge considered when deisotoping.
+     */
+    public static final int MAX_FRAGMENT_CHARGE = 4;
+    /**
+     * The pre-processing settings.
+     */
+    private final SpectrumPreprocessingSettings settings;
+
+    /**
+     * Constructor.
+     *
+     * @param settings the pre-processing settings
+     *
+     * @throws IllegalArgumentException thrown if peaks are selected per
+     * window and the window width is not strictly positive
+     */
+    public PeakListPreprocessor(SpectrumPreprocessingSettings settings) throws IllegalArgumentException {
+        if (settings.getPeaksPerWindow() > 0 && settings.getWindowWidth() <= 0) {
+            throw new IllegalArgumentException("The width of the peak selection windows should be strictly positive, found " + settings.getWindowWidth() + ".");
+        }
+        this.settings = settings;
+    }
+
+    @Override
+    public MSnSpectrum process(MSnSpectrum spectrum, int index) {
+
+        double[] mz = SpectrumUtils.getMz(spectrum);
+        double[] intensity = SpectrumUtils.getIntensity(spectrum, mz);
+        boolean[] keep = new boolean[mz.length];
+        Arrays.fill(keep, true);
+        int[] charges = null;
+
+        if (settings.getPrecursorRemovalWindow() > 0) {
+            double precursorMz = spectrum.getPrecursor().getMz();
+            double halfWindow = settings.getPrecursorRemovalWindow() / 2;
+            for (int i = 0; i < mz.length; i++) {
+                if (Math.abs(mz[i] - precursorMz) <= halfWindow) {
+                    keep[i] = false;
+                }
+            }
+        }
+
+        if (settings.isDeisotope()) {
+            int maxCharge = 1;
+            int[] precursorCharges = SpectrumUtils.getCharges(spectrum);
+            for (int charge : precursorCharges) {
+                maxCharge = Math.max(maxCharge, charge - 1);
+            }
+            if (precursorCharges.length == 0) {
+                maxCharge = 2;
+            }
+            maxCharge = Math.min(maxCharge, MAX_FRAGMENT_CHARGE);
+            charges = deisotope(mz, intensity, keep, maxCharge);
+        }
+
+        if (settings.getIntensityThreshold() > 0) {
+            double maxIntensity = 0;
+            for (int i = 0; i < mz.length; i++) {
+                if (keep[i]) {
+                    maxIntensity = Math.max(maxIntensity, intensity[i]);
+                }
+            }
+            double threshold = maxIntensity * settings.getIntensityThreshold() / 100;
+            for (int i = 0; i < mz.length; i++) {
+                if (intensity[i] < threshold) {
+                    keep[i] = false;
+                }
+            }
+        }
+
+        if (settings.getPeaksPerWindow() > 0) {
+            selectTopPeaks(mz, intensity, keep, settings.getPeaksPerWindow(), settings.getWindowWidth());
+        }
+
+        int nKept = 0;
+        for (boolean kept : keep) {
+            if (kept) {
+                nKept++;
+            }
+        }
+        double[] newMz = new double[nKept];
+        double[] newIntensity = new double[nKept];
+        int peakIndex = 0;
+        for (int i = 0; i < mz.length; i++) {
+            if (keep[i]) {
+                if (settings.isDeconvolute() && charges != null && charges[i] > 1) {
+                    newMz[peakIndex] = mz[i] * charges[i] - (charges[i] - 1) * SpectrumUtils.PROTON_MASS;
+                } else {
+                    newMz[peakIndex] = mz[i];
+                }
+                newIntensity[peakIndex] = intensity[i];
+                peakIndex++;
+            }
+        }
+        SpectrumUtils.setPeaks(spectrum, newMz, newIntensity);
+
+        return spectrum;
+    }
+
+    /**
+     * Removes the isotopic peaks. A peak is considered isotopic if a more
+     * intense peak is found one isotope spacing below for a given charge. The
+     * intensity of the isotopic peaks is added to the monoisotopic peak.
+     *
+     * @param mz the m/z of the peaks sorted in ascending order
+     * @param intensity the intensity of the peaks, modified in place
+     * @param keep the peaks to keep, modified in place
+     * @param maxCharge the maximal fragment charge to consider
+     *
+     * @return the charge inferred for every peak, 0 if no isotope was found
+     */
+    private int[] deisotope(double[] mz, double[] intensity, boolean[] keep, int maxCharge) {
+
+        int[] charges = new int[mz.length];
+        // keep track of the monoisotopic peak of every isotopic peak
+        int[] monoisotopic = new int[mz.length];
+        Arrays.fill(monoisotopic, -1);
+
+        for (int i = 0; i < mz.length; i++) {
+            if (!keep[i] || monoisotopic[i] >= 0) {
+                continue;
+            }
+            for (int charge = maxCharge; charge >= 1; charge--) {
+                int previous = i;
+                int isotopeIndex = findPeak(mz, keep, mz[previous] + ISOTOPE_SPACING / charge, previous + 1);
+                if (isotopeIndex < 0 || intensity[isotopeIndex] > intensity[i]) {
+                    continue;
+                }
+                charges[i] = charge;
+                while (isotopeIndex >= 0 && intensity[isotopeIndex] <= intensity[previous] && monoisotopic[isotopeIndex] < 0) {
+                    monoisotopic[isotopeIndex] = i;
+                    previous = isotopeIndex;
+                    isotopeIndex = findPeak(mz, keep, mz[previous] + ISOTOPE_SPACING / charge, previous + 1);
+                }
+                break;
+            }
+        }
+
+        for (int i = 0; i < mz.length; i++) {
+            if (monoisotopic[i] >= 0) {
+                intensity[monoisotopic[i]] += intensity[i];
+                keep[i] = false;
+            }
+        }
+
+        return charges;
+    }
+
+    /**
+     * Returns the index of the peak closest to the given m/z within
+     * the fragment ion tolerance, -1 if none.
+     *
+     * @param mz the m/z of the peaks sorted in ascending order
+     * @param keep the peaks to consider
+     * @param targetMz the m/z of interest
+     * @param startIndex the index where to start the search
+     *
+     * @return the index of the peak found at the given m/z
+     */
+    private int findPeak(double[] mz, boolean[] keep, double targetMz, int startIndex) {
+        double tolerance = settings.getFragmentToleranceDa(targetMz);
+        int result = -1;
+        for (int i = startIndex; i < mz.length && mz[i] <= targetMz + tolerance; i++) {
+            if (keep[i] && mz[i] >= targetMz - tolerance && (result == -1 || Math.abs(mz[i] - targetMz) < Math.abs(mz[result] - targetMz))) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps only the most intense peaks in every m/z window.
+     *
+     * @param mz the m/z of the peaks sorted in ascending order
+     * @param intensity the intensity of the peaks
+     * @param keep the peaks to keep, modified in place
+     * @param peaksPerWindow the number of peaks to keep per window
+     * @param windowWidth the width of the windows
+     */
+    private static void selectTopPeaks(double[] mz, final double[] intensity, boolean[] keep, int peaksPerWindow, double windowWidth) {
+
+        int windowStart = 0;
+
+        while (windowStart < mz.length) {
+
+            long window = (long) (mz[windowStart] / windowWidth);
+            int windowEnd = windowStart;
+            while (windowEnd < mz.length && (long) (mz[windowEnd] / windowWidth) == window) {
+                windowEnd++;
+            }
+
+            int nKept = 0;
+            for (int i = windowStart; i < windowEnd; i++) {
+                if (keep[i]) {
+                    nKept++;
+                }
+            }
+
+            if (nKept > peaksPerWindow) {
+                Integer[] indexes = new Integer[nKept];
+                int index = 0;
+                for (int i = windowStart; i < windowEnd; i++) {
+                    if (keep[i]) {
+                        indexes[index++] = i;
+                    }
+                }
+                Arrays.sort(indexes, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer o1, Integer o2) {
+                        return Double.compare(intensity[o2], intensity[o1]);
+                    }
+                });
+                for (int i = peaksPerWindow; i < indexes.length; i++) {
+                    keep[indexes[i]] = false;
+                }
+            }
+
+            windowStart = windowEnd;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups near-identical spectra of an mgf file. Spectra are bucketed by charge
+ * and precursor m/z, and compared within buckets using the cosine similarity
+ * of their binned peaks. Every cluster is represented by its most intense
+ * spectrum, only the representatives are searched.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumClusterer {
+
+    /**
+     * The number of most intense peaks used to compare spectra.
+     */
+    public static final int N_PEAKS = 50;
+    /**
+     * The width of the bins used to compare spectra.
+     */
+    public static final double BIN_WIDTH = 1.0005;
+    /**
+     * The minimal cosine similarity between a spectrum and the representative
+     * of its cluster.
+     */
+    private final double similarityThreshold;
+    /**
+     * The precursor m/z tolerance.
+     */
+    private final double precursorTolerance;
+    /**
+     * Indicates whether the precursor tolerance is in ppm.
+     */
+    private final boolean precursorTolerancePpm;
+    /**
+     * The number of threads to use.
+     */
+    private final int nThreads;
+    /**
+     * The waiting handler, can be null.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The members of every cluster indexed by the title of the
+     * representative, in the order of the spectrum file.
+     */
+    private final LinkedHashMap<String, ArrayList<String>> clusters = new LinkedHashMap<String, ArrayList<String>>();
+
+    /**
+     * Constructor.
+     *
+     * @param similarityThreshold the minimal cosine similarity between a
+     * spectrum and the representative of its cluster
+     * @param precursorTolerance the precursor m/z tolerance
+     * @param precursorTolerancePpm indicates whether the precursor tolerance
+     * is in ppm
+     * @param nThreads the number of threads to use
+     * @param waitingHandler the waiting handler, can be null
+     */
+    public SpectrumClusterer(double similarityThreshold, double precursorTolerance, boolean precursorTolerancePpm, int nThreads, WaitingHandler waitingHandler) {
+        this.similarityThreshold = similarityThreshold;
+        this.precursorTolerance = precursorTolerance;
+        this.precursorTolerancePpm = precursorTolerancePpm;
+        this.nThreads = Math.max(1, nThreads);
+        this.waitingHandler = waitingHandler;
+    }
+
+    /**
+     * Clusters the spectra of the given file and writes the cluster
+     * representatives to the output file.
+     *
+     * @param inputFile the mgf file to cluster
+     * @param outputFile the file where to write the representatives
+     *
+     * @return the number of clusters
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * a file
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    public int cluster(File inputFile, File outputFile) throws IOException, InterruptedException {
+
+        // collect the spectrum features in parallel
+        final List<SpectrumFeatures> features = Collections.synchronizedList(new ArrayList<SpectrumFeatures>());
+        MgfFileProcessor mgfFileProcessor = new MgfFileProcessor(nThreads, waitingHandler);
+        mgfFileProcessor.process(inputFile, null, new SpectrumProcessor() {
+            @Override
+            public MSnSpectrum process(MSnSpectrum spectrum, int index) {
+                features.add(new SpectrumFeatures(spectrum, index));
+                return spectrum;
+            }
+        });
+
+        if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+            return 0;
+        }
+
+        // sort by charge and precursor m/z and split into independent blocks
+        ArrayList<SpectrumFeatures> sortedFeatures = new ArrayList<SpectrumFeatures>(features);
+        Collections.sort(sortedFeatures, new Comparator<SpectrumFeatures>() {
+            @Override
+            public int compare(SpectrumFeatures o1, SpectrumFeatures o2) {
+                if (o1.charge != o2.charge) {
+                    return o1.charge - o2.charge;
+                }
+                if (o1.precursorMz != o2.precursorMz) {
+                    return Double.compare(o1.precursorMz, o2.precursorMz);
+                }
+                return o1.index - o2.index;
+            }
+        });
+
+        ArrayList<List<SpectrumFeatures>> blocks = new ArrayList<List<SpectrumFeatures>>();
+        int blockStart = 0;
+        for (int i = 1; i <= sortedFeatures.size(); i++) {
+            if (i == sortedFeatures.size()
+                    || sortedFeatures.get(i).charge != sortedFeatures.get(i - 1).charge
+                    || sortedFeatures.get(i).precursorMz - sortedFeatures.get(i - 1).precursorMz > getTolerance(sortedFeatures.get(i).precursorMz)) {
+                blocks.add(sortedFeatures.subList(blockStart, i));
+                blockStart = i;
+            }
+        }
+
+        // cluster the blocks in parallel
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        ArrayList<Future<TreeMap<Integer, ArrayList<SpectrumFeatures>>>> futures = new ArrayList<Future<TreeMap<Integer, ArrayList<SpectrumFeatures>>>>(blocks.size());
+        TreeMap<Integer, ArrayList<SpectrumFeatures>> sortedClusters = new TreeMap<Integer, ArrayList<SpectrumFeatures>>();
+        try {
+            for (final List<SpectrumFeatures> block : blocks) {
+                futures.add(pool.submit(new Callable<TreeMap<Integer, ArrayList<SpectrumFeatures>>>() {
+                    @Override
+                    public TreeMap<Integer, ArrayList<SpectrumFeatures>> call() throws Exception {
+                        return clusterBlock(block);
+                    }
+                }));
+            }
+            for (Future<TreeMap<Integer, ArrayList<SpectrumFeatures>>> future : futures) {
+                try {
+                    sortedClusters.putAll(future.get());
+                } catch (ExecutionException e) {
+                    throw new IOException("An error occurred while clustering the spectra.", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        // index the clusters by representative title in the order of the file
+        clusters.clear();
+        for (ArrayList<SpectrumFeatures> members : sortedClusters.values()) {
+            String representative = members.get(0).title;
+            Collections.sort(members, new Comparator<SpectrumFeatures>() {
+                @Override
+                public int compare(SpectrumFeatures o1, SpectrumFeatures o2) {
+                    return o1.index - o2.index;
+                }
+            });
+            ArrayList<String> memberTitles = new ArrayList<String>(members.size());
+            for (SpectrumFeatures member : members) {
+                memberTitles.add(member.title);
+            }
+            clusters.put(representative, memberTitles);
+        }
+
+        // write the representatives
+        final HashSet<String> representatives = new HashSet<String>(clusters.keySet());
+        mgfFileProcessor.process(inputFile, outputFile, new SpectrumProcessor() {
+            @Override
+            public MSnSpectrum process(MSnSpectrum spectrum, int index) {
+                return representatives.contains(spectrum.getSpectrumTitle()) ? spectrum : null;
+            }
+        });
+
+        return clusters.size();
+    }
+
+    /**
+     * Clusters the spectra of a block. The spectra are processed by decreasing
+     * total intensity, every spectrum not yet clustered becomes the
+     * representative of a new cluster and recruits the similar spectra within
+     * the precursor tolerance.
+     *
+     * @param block the spectra of the block sorted by precursor m/z
+     *
+     * @return the members of every cluster, representative first, indexed by
+     * the index of the representative
+     */
+    private TreeMap<Integer, ArrayList<SpectrumFeatures>> clusterBlock(final List<SpectrumFeatures> block) {
+
+        TreeMap<Integer, ArrayList<SpectrumFeatures>> result = new TreeMap<Integer, ArrayList<SpectrumFeatures>>();
+
+        Integer[] order = new Integer[block.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                SpectrumFeatures spectrum1 = block.get(o1), spectrum2 = block.get(o2);
+                if (spectrum1.totalIntensity != spectrum2.totalIntensity) {
+                    return Double.compare(spectrum2.totalIntensity, spectrum1.totalIntensity);
+                }
+                return spectrum1.index - spectrum2.index;
+            }
+        });
+
+        boolean[] clustered = new boolean[block.size()];
+
+        for (int index : order) {
+
+            if (clustered[index]) {
+                continue;
+            }
+            if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                break;
+            }
+
+            SpectrumFeatures representative = block.get(index);
+            clustered[index] = true;
+            ArrayList<SpectrumFeatures> members = new ArrayList<SpectrumFeatures>(1);
+            members.add(representative);
+            double tolerance = getTolerance(representative.precursorMz);
+
+            for (int i = index - 1; i >= 0 && representative.precursorMz - block.get(i).precursorMz <= tolerance; i--) {
+                if (!clustered[i] && representative.getSimilarity(block.get(i)) >= similarityThreshold) {
+                    clustered[i] = true;
+                    members.add(block.get(i));
+                }
+            }
+            for (int i = index + 1; i < block.size() && block.get(i).precursorMz - representative.precursorMz <= tolerance; i++) {
+                if (!clustered[i] && representative.getSimilarity(block.get(i)) >= similarityThreshold) {
+                    clustered[i] = true;
+                    members.add(block.get(i));
+                }
+            }
+
+            result.put(representative.index, members);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the precursor tolerance in Th at the given m/z.
+     *
+     * @param mz the m/z of interest
+     *
+     * @return the precursor tolerance in Th
+     */
+    private double getTolerance(double mz) {
+        return precursorTolerancePpm ? mz * precursorTolerance / 1000000 : precursorTolerance;
+    }
+
+    /**
+     * Returns the members of every cluster, including the representative,
+     * indexed by the title of the representative. Clusters and members are in
+     * the order of the spectrum file.
+     *
+     * @return the members of every cluster
+     */
+    public HashMap<String, ArrayList<String>> getClusters() {
+        return clusters;
+    }
+
+    /**
+     * Writes the mapping between the cluster representatives and their
+     * members as tab separated text, in the order of the spectrum file.
+     *
+     * @param mappingFile the file where to write the mapping
+     *
+     * @throws IOException thrown if an error occurred while writing the file
+     */
+    public void writeMapping(File mappingFile) throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(mappingFile));
+        try {
+            bw.write("Representative\tMember");
+            bw.newLine();
+            for (String representative : clusters.keySet()) {
+                for (String member : clusters.get(representative)) {
+                    bw.write(representative + "\t" + member);
+                    bw.newLine();
+                }
+            }
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * The features of a spectrum used for the clustering.
+     */
+    private static class SpectrumFeatures {
+
+        /**
+         * The 1-based index of the spectrum in its file.
+         */
+        private final int index;
+        /**
+         * The spectrum title.
+         */
+        private final String title;
+        /**
+         * The precursor m/z.
+         */
+        private final double precursorMz;
+        /**
+         * The first precursor charge, 0 if unknown.
+         */
+        private final int charge;
+        /**
+         * The total intensity.
+         */
+        private final double totalIntensity;
+        /**
+         * The bins of the most intense peaks sorted in ascending order.
+         */
+        private final int[] bins;
+        /**
+         * The normalized weight of every bin.
+         */
+        private final float[] weights;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrum the spectrum
+         * @param index the 1-based index of the spectrum in its file
+         */
+        public SpectrumFeatures(MSnSpectrum spectrum, int index) {
+
+            this.index = index;
+            title = spectrum.getSpectrumTitle();
+            precursorMz = spectrum.getPrecursor().getMz();
+            int[] charges = SpectrumUtils.getCharges(spectrum);
+            charge = charges.length > 0 ? charges[0] : 0;
+
+            final double[] mz = SpectrumUtils.getMz(spectrum);
+            final double[] intensity = SpectrumUtils.getIntensity(spectrum, mz);
+            double spectrumIntensity = 0;
+            for (double peakIntensity : intensity) {
+                spectrumIntensity += peakIntensity;
+            }
+            totalIntensity = spectrumIntensity;
+            Integer[] order = new Integer[mz.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Double.compare(intensity[o2], intensity[o1]);
+                }
+            });
+
+            // sum the square root of the intensities per bin
+            HashMap<Integer, Double> binIntensities = new HashMap<Integer, Double>();
+            for (int i = 0; i < Math.min(N_PEAKS, order.length); i++) {
+                int bin = (int) (mz[order[i]] / BIN_WIDTH);
+                Double binIntensity = binIntensities.get(bin);
+                binIntensities.put(bin, (binIntensity == null ? 0 : binIntensity) + Math.sqrt(intensity[order[i]]));
+            }
+
+            bins = new int[binIntensities.size()];
+            int binIndex = 0;
+            for (int bin : binIntensities.keySet()) {
+                bins[binIndex++] = bin;
+            }
+            Arrays.sort(bins);
+
+            weights = new float[bins.length];
+            double norm = 0;
+            for (double value : binIntensities.values()) {
+                norm += value * value;
+            }
+            norm = Math.sqrt(norm);
+            for (int i = 0; i < bins.length; i++) {
+                weights[i] = norm > 0 ? (float) (binIntensities.get(bins[i]) / norm) : 0;
+            }
+        }
+
+        /**
+         * Returns the cosine similarity with another spectrum.
+         *
+         * @param other the other spectrum
+         *
+         * @return the cosine similarity
+         */
+        public double getSimilarity(SpectrumFeatures other) {
+            double result = 0;
+            int i = 0, j = 0;
+            while (i < bins.length && j < other.bins.length) {
+                if (bins[i] == other.bins[j]) {
+                    result += weights[i] * other.weights[j];
+                    i++;
+                    j++;
+                } else if (bins[i] < other.bins[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+}
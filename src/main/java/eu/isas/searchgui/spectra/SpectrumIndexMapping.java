@@ -0,0 +1,184 @@
+package eu.isas.searchgui.spectra;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Maps the spectra of a pre-processed spectrum file to their index in the
+ * original file using the spectrum titles. Comet and Tide report their hits
+ * by the scan number of the ms2 file searched, which is the index of the
+ * spectrum in the file converted. When spectra are excluded, clustered or
+ * sorted, the scan numbers of the ms2 file are therefore set to the 1-based
+ * index of the spectra in the original file so that the results can be
+ * mapped to the original file.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumIndexMapping {
+
+    /**
+     * The size of the buffers used to read and write the files.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    /**
+     * The 1-based index in the original file of every spectrum of the
+     * pre-processed file.
+     */
+    private final int[] originalIndexes;
+
+    /**
+     * Constructor.
+     *
+     * @param originalFile the original mgf file
+     * @param processedFile the pre-processed mgf file
+     *
+     * @throws IOException thrown if an error occurred while reading the
+     * files, or if a spectrum of the pre-processed file cannot be found in
+     * the original file
+     */
+    public SpectrumIndexMapping(File originalFile, File processedFile) throws IOException {
+
+        ArrayList<String> originalTitles = readTitles(originalFile);
+        HashMap<String, Integer> titleToIndex = new HashMap<String, Integer>(originalTitles.size());
+        for (int i = 0; i < originalTitles.size(); i++) {
+            titleToIndex.put(originalTitles.get(i), i + 1);
+        }
+
+        ArrayList<String> processedTitles = readTitles(processedFile);
+        originalIndexes = new int[processedTitles.size()];
+        for (int i = 0; i < processedTitles.size(); i++) {
+            String title = processedTitles.get(i);
+            Integer originalIndex = title == null ? null : titleToIndex.get(title);
+            if (originalIndex == null) {
+                throw new IOException("Spectrum " + (i + 1) + " of " + processedFile.getName() + " not found in the original file, spectrum titles are mandatory.");
+            }
+            originalIndexes[i] = originalIndex;
+        }
+    }
+
+    /**
+     * Returns the titles of the spectra of an mgf file in the order of the
+     * file, null for spectra without title.
+     *
+     * @param mgfFile the mgf file
+     *
+     * @return the titles of the spectra
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    private static ArrayList<String> readTitles(File mgfFile) throws IOException {
+
+        ArrayList<String> titles = new ArrayList<String>();
+        BufferedReader br = new BufferedReader(new FileReader(mgfFile), BUFFER_SIZE);
+        try {
+            boolean inSpectrum = false;
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.equals("BEGIN IONS")) {
+                    inSpectrum = true;
+                    titles.add(null);
+                } else if (line.equals("END IONS")) {
+                    inSpectrum = false;
+                } else if (inSpectrum && line.startsWith("TITLE=")) {
+                    titles.set(titles.size() - 1, line.substring(6));
+                }
+            }
+        } finally {
+            br.close();
+        }
+        return titles;
+    }
+
+    /**
+     * Indicates whether the spectra of the pre-processed file are at the
+     * same index as in the original file.
+     *
+     * @return a boolean indicating whether the spectra kept their index
+     */
+    public boolean isIdentity() {
+        for (int i = 0; i < originalIndexes.length; i++) {
+            if (originalIndexes[i] != i + 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the 1-based index in the original file of the spectrum at the
+     * given 1-based index in the pre-processed file.
+     *
+     * @param index the 1-based index of the spectrum in the pre-processed
+     * file
+     *
+     * @return the 1-based index of the spectrum in the original file
+     */
+    public int getOriginalIndex(int index) {
+        return originalIndexes[index - 1];
+    }
+
+    /**
+     * Sets the scan numbers of an ms2 file converted from the pre-processed
+     * file to the index of the spectra in the original file.
+     *
+     * @param ms2File the ms2 file
+     *
+     * @throws IOException thrown if an error occurred while reading or
+     * writing the file, or if the file does not contain the spectra of the
+     * pre-processed file
+     */
+    public void renumberMs2Scans(File ms2File) throws IOException {
+
+        File tempFile = new File(ms2File.getParentFile(), ms2File.getName() + ".tmp");
+        BufferedReader br = new BufferedReader(new FileReader(ms2File), BUFFER_SIZE);
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(tempFile), BUFFER_SIZE);
+            try {
+                int spectrumIndex = 0;
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith("S\t")) {
+                        if (spectrumIndex == originalIndexes.length) {
+                            throw new IOException("More spectra than expected in " + ms2File.getName() + ".");
+                        }
+                        String[] split = line.split("\t");
+                        if (split.length < 3) {
+                            throw new IOException("Unexpected scan line in " + ms2File.getName() + ": " + line);
+                        }
+                        String scan = Integer.toString(originalIndexes[spectrumIndex++]);
+                        split[1] = scan;
+                        split[2] = scan;
+                        StringBuilder newLine = new StringBuilder(line.length());
+                        for (int i = 0; i < split.length; i++) {
+                            if (i > 0) {
+                                newLine.append('\t');
+                            }
+                            newLine.append(split[i]);
+                        }
+                        line = newLine.toString();
+                    }
+                    bw.write(line);
+                    bw.newLine();
+                }
+                if (spectrumIndex != originalIndexes.length) {
+                    throw new IOException(spectrumIndex + " spectra found in " + ms2File.getName() + " where " + originalIndexes.length + " were expected.");
+                }
+            } finally {
+                bw.close();
+            }
+        } finally {
+            br.close();
+        }
+
+        if (!ms2File.delete() || !tempFile.renameTo(ms2File)) {
+            throw new IOException("Impossible to replace " + ms2File.getAbsolutePath() + " by the renumbered spectra.");
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+
+/**
+ * Interface for the processing of the spectra of an mgf file. Implementations
+ * are called from multiple threads and must be thread safe.
+ *
+ * @author Marc Vaudel
+ */
+public interface SpectrumProcessor {
+
+    /**
+     * Processes the given spectrum.
+     *
+     * @param spectrum the spectrum to process
+     * @param index the 1-based index of the spectrum in its file
+     *
+     * @return the processed spectrum, null if the spectrum should be discarded
+     */
+    public MSnSpectrum process(MSnSpectrum spectrum, int index);
+}
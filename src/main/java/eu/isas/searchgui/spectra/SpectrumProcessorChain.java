@@ -0,0 +1,54 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import java.util.ArrayList;
+
+/**
+ * Applies a list of spectrum processors in sequence. The chain stops as soon
+ * as a processor discards the spectrum.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumProcessorChain implements SpectrumProcessor {
+
+    /**
+     * The processors to apply in order.
+     */
+    private final ArrayList<SpectrumProcessor> processors = new ArrayList<SpectrumProcessor>();
+
+    /**
+     * Constructor.
+     */
+    public SpectrumProcessorChain() {
+    }
+
+    /**
+     * Adds a processor at the end of the chain.
+     *
+     * @param processor the processor to add
+     */
+    public void addProcessor(SpectrumProcessor processor) {
+        processors.add(processor);
+    }
+
+    /**
+     * Indicates whether the chain is empty.
+     *
+     * @return a boolean indicating whether the chain is empty
+     */
+    public boolean isEmpty() {
+        return processors.isEmpty();
+    }
+
+    @Override
+    public MSnSpectrum process(MSnSpectrum spectrum, int index) {
+        MSnSpectrum result = spectrum;
+        for (SpectrumProcessor processor : processors) {
+            result = processor.process(result, index);
+            if (result == null) {
+                return null;
+            }
+        }
+        return result;
+    }
+}
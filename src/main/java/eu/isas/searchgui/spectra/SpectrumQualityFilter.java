@@ -0,0 +1,174 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeMap;
+
+/**
+ * Scores the quality of the spectra and discards the spectra scoring below a
+ * given threshold. The score ranges from 0 to 1 and combines the number of
+ * peaks, the total ion current, the dynamic range of the intensities, and the
+ * number of peak pairs separated by an amino acid residue mass.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumQualityFilter implements SpectrumProcessor {
+
+    /**
+     * The monoisotopic masses of the amino acid residues, I and L are
+     * represented once.
+     */
+    private static final double[] RESIDUE_MASSES = new double[]{
+        57.02146, 71.03711, 87.03203, 97.05276, 99.06841, 101.04768, 103.00919,
+        113.08406, 114.04293, 115.02694, 128.05858, 128.09496, 129.04259,
+        131.04049, 137.05891, 147.06841, 156.10111, 163.06333, 186.07931};
+    /**
+     * The number of most intense peaks used to look for amino acid ladders.
+     */
+    private static final int LADDER_PEAKS = 50;
+    /**
+     * The number of peaks at which the peak count feature saturates.
+     */
+    private static final double PEAK_COUNT_SATURATION = 50;
+    /**
+     * The number of residue mass matches at which the ladder feature
+     * saturates.
+     */
+    private static final double LADDER_SATURATION = 10;
+    /**
+     * The tolerance in Da used to match residue masses.
+     */
+    private final double tolerance;
+    /**
+     * The minimal quality score.
+     */
+    private final double threshold;
+    /**
+     * The titles and scores of the spectra excluded indexed by spectrum index.
+     */
+    private final TreeMap<Integer, String> excludedSpectra = new TreeMap<Integer, String>();
+
+    /**
+     * Constructor.
+     *
+     * @param threshold the minimal quality score
+     * @param tolerance the tolerance in Da used to match residue masses
+     */
+    public SpectrumQualityFilter(double threshold, double tolerance) {
+        this.threshold = threshold;
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    public MSnSpectrum process(MSnSpectrum spectrum, int index) {
+        double score = getQualityScore(spectrum);
+        if (score < threshold) {
+            synchronized (excludedSpectra) {
+                excludedSpectra.put(index, spectrum.getSpectrumTitle() + "\t" + score);
+            }
+            return null;
+        }
+        return spectrum;
+    }
+
+    /**
+     * Returns the quality score of the given spectrum.
+     *
+     * @param spectrum the spectrum of interest
+     *
+     * @return the quality score of the spectrum
+     */
+    public double getQualityScore(MSnSpectrum spectrum) {
+
+        final double[] mz = SpectrumUtils.getMz(spectrum);
+        final double[] intensity = SpectrumUtils.getIntensity(spectrum, mz);
+
+        double totalIntensity = 0;
+        for (double peakIntensity : intensity) {
+            totalIntensity += peakIntensity;
+        }
+        if (mz.length < 2 || totalIntensity <= 0) {
+            return 0;
+        }
+
+        // number of peaks
+        double peakCountScore = Math.min(1.0, mz.length / PEAK_COUNT_SATURATION);
+
+        // dynamic range: ratio between the most intense peaks and the median
+        double[] sortedIntensities = intensity.clone();
+        Arrays.sort(sortedIntensities);
+        double median = sortedIntensities[sortedIntensities.length / 2];
+        double topMean = 0;
+        int nTop = Math.min(10, sortedIntensities.length);
+        for (int i = sortedIntensities.length - nTop; i < sortedIntensities.length; i++) {
+            topMean += sortedIntensities[i];
+        }
+        topMean /= nTop;
+        double dynamicRangeScore = median > 0 ? Math.min(1.0, Math.max(0, Math.log10(topMean / median) / 2)) : 1.0;
+
+        // amino acid ladder among the most intense peaks
+        Integer[] order = new Integer[mz.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(intensity[o2], intensity[o1]);
+            }
+        });
+        int nLadderPeaks = Math.min(LADDER_PEAKS, mz.length);
+        double[] ladderMz = new double[nLadderPeaks];
+        for (int i = 0; i < nLadderPeaks; i++) {
+            ladderMz[i] = mz[order[i]];
+        }
+        Arrays.sort(ladderMz);
+        int nMatches = 0;
+        for (int i = 0; i < nLadderPeaks; i++) {
+            for (int j = i + 1; j < nLadderPeaks; j++) {
+                double delta = ladderMz[j] - ladderMz[i];
+                if (delta > RESIDUE_MASSES[RESIDUE_MASSES.length - 1] + tolerance) {
+                    break;
+                }
+                if (isResidueMass(delta)) {
+                    nMatches++;
+                }
+            }
+        }
+        double ladderScore = Math.min(1.0, nMatches / LADDER_SATURATION);
+
+        return 0.25 * peakCountScore + 0.25 * dynamicRangeScore + 0.5 * ladderScore;
+    }
+
+    /**
+     * Indicates whether the given mass difference matches an amino acid
+     * residue mass.
+     *
+     * @param delta the mass difference
+     *
+     * @return a boolean indicating whether the given mass difference matches
+     * an amino acid residue mass
+     */
+    private boolean isResidueMass(double delta) {
+        for (double residueMass : RESIDUE_MASSES) {
+            if (Math.abs(delta - residueMass) <= tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the titles of the spectra excluded followed by their score
+     * separated by a tab, in the order of the spectrum file.
+     *
+     * @return the titles of the spectra excluded
+     */
+    public ArrayList<String> getExcludedSpectra() {
+        synchronized (excludedSpectra) {
+            return new ArrayList<String>(excludedSpectra.values());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+
+/**
+ * Corrects the systematic mass error of the precursors and fragment ions of
+ * the spectra. The errors are relative, in ppm, as expected from the drift of
+ * the calibration of the mass analyzers.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumRecalibrator implements SpectrumProcessor {
+
+    /**
+     * The factor by which the measured precursor m/z is divided.
+     */
+    private final double precursorFactor;
+    /**
+     * The factor by which the measured fragment m/z is divided.
+     */
+    private final double fragmentFactor;
+
+    /**
+     * Constructor.
+     *
+     * @param precursorShift the systematic error of the precursor m/z in ppm
+     * @param fragmentShift the systematic error of the fragment m/z in ppm
+     */
+    public SpectrumRecalibrator(double precursorShift, double fragmentShift) {
+        this.precursorFactor = 1 + precursorShift / 1000000;
+        this.fragmentFactor = 1 + fragmentShift / 1000000;
+    }
+
+    @Override
+    public MSnSpectrum process(MSnSpectrum spectrum, int index) {
+
+        double precursorMz = spectrum.getPrecursor().getMz();
+        if (precursorMz > 0) {
+            SpectrumUtils.setPrecursor(spectrum, precursorMz / precursorFactor, spectrum.getPrecursor().getPossibleCharges());
+        }
+
+        double[] mz = SpectrumUtils.getMz(spectrum);
+        double[] intensity = SpectrumUtils.getIntensity(spectrum, mz);
+        double[] newMz = new double[mz.length];
+        for (int i = 0; i < mz.length; i++) {
+            newMz[i] = mz[i] / fragmentFactor;
+        }
+        SpectrumUtils.setPeaks(spectrum, newMz, intensity);
+
+        return spectrum;
+    }
+}
@@ -0,0 +1,54 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+
+/**
+ * Keeps a random subset of the spectra. The selection of a spectrum is drawn
+ * from its title so that the subset does not depend on the order in which the
+ * spectra are processed and is the same from one run to another.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumSampler implements SpectrumProcessor {
+
+    /**
+     * The share of the spectra to keep.
+     */
+    private final double fraction;
+
+    /**
+     * Constructor.
+     *
+     * @param nSpectra the number of spectra in the file
+     * @param sampleSize the expected number of spectra in the subset
+     */
+    public SpectrumSampler(long nSpectra, int sampleSize) {
+        this.fraction = nSpectra <= sampleSize ? 1 : (double) sampleSize / nSpectra;
+    }
+
+    @Override
+    public MSnSpectrum process(MSnSpectrum spectrum, int index) {
+        if (fraction >= 1) {
+            return spectrum;
+        }
+        String key = spectrum.getSpectrumTitle();
+        long hash = mix(key == null ? 0 : key.hashCode());
+        double draw = (hash >>> 11) * 0x1.0p-53;
+        return draw < fraction ? spectrum : null;
+    }
+
+    /**
+     * Spreads the bits of a hash code over a long so that similar titles give
+     * independent draws, using the finalizer of the SplitMix64 generator.
+     *
+     * @param hashCode the hash code
+     *
+     * @return the mixed value
+     */
+    private static long mix(long hashCode) {
+        long z = hashCode + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
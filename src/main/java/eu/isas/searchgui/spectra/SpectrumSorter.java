@@ -0,0 +1,425 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.io.massspectrometry.MgfIndex;
+import com.compomics.util.experiment.io.massspectrometry.MgfReader;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import uk.ac.ebi.pride.tools.braf.BufferedRandomAccessFile;
+
+/**
+ * Sorts the spectra of an mgf file by precursor neutral mass. The file is
+ * split in chunks which are sorted in parallel and written to temporary run
+ * files, the runs are then merged. Spectra of equal mass keep their original
+ * order.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumSorter {
+
+    /**
+     * The default number of spectra sorted in memory at once.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 50000;
+    /**
+     * The extension of the temporary run files.
+     */
+    private static final String RUN_FILE_EXTENSION = ".run";
+    /**
+     * The number of threads to use.
+     */
+    private final int nThreads;
+    /**
+     * The number of spectra sorted in memory at once.
+     */
+    private final int chunkSize;
+    /**
+     * The waiting handler, can be null.
+     */
+    private final WaitingHandler waitingHandler;
+
+    /**
+     * Constructor.
+     *
+     * @param nThreads the number of threads to use
+     * @param chunkSize the number of spectra sorted in memory at once
+     * @param waitingHandler the waiting handler, can be null
+     */
+    public SpectrumSorter(int nThreads, int chunkSize, WaitingHandler waitingHandler) {
+        this.nThreads = Math.max(1, nThreads);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.waitingHandler = waitingHandler;
+    }
+
+    /**
+     * Returns the key used to sort the spectra, i.e. the precursor neutral mass
+     * using the first charge, charge 1 if unknown.
+     *
+     * @param spectrum the spectrum
+     *
+     * @return the key used to sort the spectra
+     */
+    public static double getSortKey(MSnSpectrum spectrum) {
+        int[] charges = SpectrumUtils.getCharges(spectrum);
+        return SpectrumUtils.getPrecursorMass(spectrum, charges.length > 0 ? charges[0] : 1);
+    }
+
+    /**
+     * Sorts the spectra of the input file by precursor neutral mass and writes
+     * them to the output file. The mapping between the sorted and original
+     * 1-based spectrum indexes is written to the mapping file in the sorted
+     * order.
+     *
+     * @param inputFile the mgf file to sort
+     * @param outputFile the file where to write the sorted spectra
+     * @param mappingFile the file where to write the order mapping
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * a file
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    public void sort(File inputFile, File outputFile, File mappingFile) throws IOException, InterruptedException {
+
+        MgfIndex mgfIndex = SpectrumUtils.getIndex(inputFile);
+        ArrayList<String> spectrumTitles = mgfIndex.getSpectrumTitles();
+        ArrayList<File> runFiles = new ArrayList<File>();
+        ArrayList<SortRecord> records = new ArrayList<SortRecord>(spectrumTitles.size());
+        LinkedList<Future<ArrayList<SortRecord>>> pendingChunks = new LinkedList<Future<ArrayList<SortRecord>>>();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+
+        try {
+
+            // write the sorted runs
+            for (int chunkStart = 0; chunkStart < spectrumTitles.size(); chunkStart += chunkSize) {
+                List<String> chunk = spectrumTitles.subList(chunkStart, Math.min(chunkStart + chunkSize, spectrumTitles.size()));
+                File runFile = new File(outputFile.getParentFile(), outputFile.getName() + "_" + runFiles.size() + RUN_FILE_EXTENSION);
+                runFiles.add(runFile);
+                // bound the memory used by limiting the number of chunks in flight
+                if (pendingChunks.size() >= nThreads) {
+                    records.addAll(getResult(pendingChunks.removeFirst()));
+                }
+                pendingChunks.add(pool.submit(new ChunkSorter(inputFile, mgfIndex, chunk, chunkStart + 1, runFile)));
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                    return;
+                }
+            }
+            while (!pendingChunks.isEmpty()) {
+                records.addAll(getResult(pendingChunks.removeFirst()));
+            }
+
+            // merge the runs
+            merge(runFiles, outputFile);
+
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            for (File runFile : runFiles) {
+                runFile.delete();
+            }
+        }
+
+        // write the mapping, the sort is stable and therefore consistent with the merge
+        Collections.sort(records, new Comparator<SortRecord>() {
+            @Override
+            public int compare(SortRecord o1, SortRecord o2) {
+                int result = Double.compare(o1.key, o2.key);
+                return result != 0 ? result : o1.index - o2.index;
+            }
+        });
+        BufferedWriter bw = new BufferedWriter(new FileWriter(mappingFile));
+        try {
+            bw.write("Sorted Index\tOriginal Index\tTitle");
+            bw.newLine();
+            for (int i = 0; i < records.size(); i++) {
+                SortRecord record = records.get(i);
+                bw.write((i + 1) + "\t" + record.index + "\t" + record.title);
+                bw.newLine();
+            }
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Merges the sorted runs into the output file.
+     *
+     * @param runFiles the sorted run files
+     * @param outputFile the output file
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * a file
+     */
+    private void merge(ArrayList<File> runFiles, File outputFile) throws IOException {
+
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, runFiles.size()), new Comparator<RunReader>() {
+            @Override
+            public int compare(RunReader o1, RunReader o2) {
+                int result = Double.compare(o1.key, o2.key);
+                return result != 0 ? result : o1.runIndex - o2.runIndex;
+            }
+        });
+
+        BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile), MgfFileProcessor.BUFFER_SIZE);
+
+        try {
+            for (int i = 0; i < runFiles.size(); i++) {
+                RunReader runReader = new RunReader(runFiles.get(i), i);
+                if (runReader.next()) {
+                    queue.add(runReader);
+                } else {
+                    runReader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader runReader = queue.poll();
+                SpectrumUtils.write(runReader.spectrum, bw);
+                if (runReader.next()) {
+                    queue.add(runReader);
+                } else {
+                    runReader.close();
+                }
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                    break;
+                }
+            }
+        } finally {
+            bw.close();
+            for (RunReader runReader : queue) {
+                runReader.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the result of a chunk sorting task.
+     *
+     * @param future the future of the task
+     *
+     * @return the sort records of the chunk
+     *
+     * @throws IOException thrown if an error occurred while sorting the chunk
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    private ArrayList<SortRecord> getResult(Future<ArrayList<SortRecord>> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("An error occurred while sorting the spectra.", e.getCause());
+        }
+    }
+
+    /**
+     * The sort key, original index and title of a spectrum.
+     */
+    private static class SortRecord {
+
+        /**
+         * The sort key.
+         */
+        private final double key;
+        /**
+         * The 1-based index of the spectrum in the original file.
+         */
+        private final int index;
+        /**
+         * The spectrum title.
+         */
+        private final String title;
+
+        /**
+         * Constructor.
+         *
+         * @param key the sort key
+         * @param index the 1-based index of the spectrum in the original file
+         * @param title the spectrum title
+         */
+        public SortRecord(double key, int index, String title) {
+            this.key = key;
+            this.index = index;
+            this.title = title;
+        }
+    }
+
+    /**
+     * Sorts a chunk of spectra and writes it to a run file.
+     */
+    private static class ChunkSorter implements Callable<ArrayList<SortRecord>> {
+
+        /**
+         * The mgf file to sort.
+         */
+        private final File inputFile;
+        /**
+         * The index of the mgf file.
+         */
+        private final MgfIndex mgfIndex;
+        /**
+         * The titles of the spectra of the chunk.
+         */
+        private final List<String> chunk;
+        /**
+         * The 1-based index of the first spectrum of the chunk in the original
+         * file.
+         */
+        private final int firstIndex;
+        /**
+         * The run file where to write the sorted spectra.
+         */
+        private final File runFile;
+
+        /**
+         * Constructor.
+         *
+         * @param inputFile the mgf file to sort
+         * @param mgfIndex the index of the mgf file
+         * @param chunk the titles of the spectra of the chunk
+         * @param firstIndex the 1-based index of the first spectrum of the
+         * chunk in the original file
+         * @param runFile the run file where to write the sorted spectra
+         */
+        public ChunkSorter(File inputFile, MgfIndex mgfIndex, List<String> chunk, int firstIndex, File runFile) {
+            this.inputFile = inputFile;
+            this.mgfIndex = mgfIndex;
+            this.chunk = chunk;
+            this.firstIndex = firstIndex;
+            this.runFile = runFile;
+        }
+
+        @Override
+        public ArrayList<SortRecord> call() throws Exception {
+
+            final ArrayList<MSnSpectrum> spectra = new ArrayList<MSnSpectrum>(chunk.size());
+            final ArrayList<SortRecord> records = new ArrayList<SortRecord>(chunk.size());
+            BufferedRandomAccessFile raf = new BufferedRandomAccessFile(inputFile, "r", MgfFileProcessor.BUFFER_SIZE);
+            try {
+                for (int i = 0; i < chunk.size(); i++) {
+                    MSnSpectrum spectrum = MgfReader.getSpectrum(raf, mgfIndex.getIndex(chunk.get(i)), inputFile.getName());
+                    spectra.add(spectrum);
+                    records.add(new SortRecord(getSortKey(spectrum), firstIndex + i, spectrum.getSpectrumTitle()));
+                }
+            } finally {
+                raf.close();
+            }
+
+            ArrayList<Integer> order = new ArrayList<Integer>(spectra.size());
+            for (int i = 0; i < spectra.size(); i++) {
+                order.add(i);
+            }
+            Collections.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    int result = Double.compare(records.get(o1).key, records.get(o2).key);
+                    return result != 0 ? result : o1 - o2;
+                }
+            });
+
+            BufferedWriter bw = new BufferedWriter(new FileWriter(runFile), MgfFileProcessor.BUFFER_SIZE);
+            try {
+                for (int index : order) {
+                    SpectrumUtils.write(spectra.get(index), bw);
+                }
+            } finally {
+                bw.close();
+            }
+
+            return records;
+        }
+    }
+
+    /**
+     * Reads the spectra of a sorted run file one at a time.
+     */
+    private static class RunReader {
+
+        /**
+         * The run file.
+         */
+        private final File runFile;
+        /**
+         * The index of the run file.
+         */
+        private final MgfIndex mgfIndex;
+        /**
+         * The random access file used to read the run.
+         */
+        private final BufferedRandomAccessFile raf;
+        /**
+         * The index of the run.
+         */
+        private final int runIndex;
+        /**
+         * The index of the next spectrum in the run.
+         */
+        private int nextSpectrum = 0;
+        /**
+         * The current spectrum.
+         */
+        private MSnSpectrum spectrum;
+        /**
+         * The sort key of the current spectrum.
+         */
+        private double key;
+
+        /**
+         * Constructor.
+         *
+         * @param runFile the run file
+         * @param runIndex the index of the run
+         *
+         * @throws IOException thrown if an error occurred while indexing or
+         * opening the file
+         */
+        public RunReader(File runFile, int runIndex) throws IOException {
+            this.runFile = runFile;
+            this.mgfIndex = SpectrumUtils.getIndex(runFile);
+            this.raf = new BufferedRandomAccessFile(runFile, "r", MgfFileProcessor.BUFFER_SIZE);
+            this.runIndex = runIndex;
+        }
+
+        /**
+         * Reads the next spectrum.
+         *
+         * @return false if the end of the file was reached
+         *
+         * @throws IOException thrown if an error occurred while reading the
+         * file
+         */
+        public boolean next() throws IOException {
+            ArrayList<String> spectrumTitles = mgfIndex.getSpectrumTitles();
+            if (nextSpectrum >= spectrumTitles.size()) {
+                return false;
+            }
+            spectrum = MgfReader.getSpectrum(raf, mgfIndex.getIndex(spectrumTitles.get(nextSpectrum++)), runFile.getName());
+            key = getSortKey(spectrum);
+            return true;
+        }
+
+        /**
+         * Closes the reader.
+         *
+         * @throws IOException thrown if an error occurred while closing the
+         * file
+         */
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package eu.isas.searchgui.spectra;
+
+import com.compomics.util.experiment.biology.ions.ElementaryIon;
+import com.compomics.util.experiment.io.massspectrometry.MgfIndex;
+import com.compomics.util.experiment.io.massspectrometry.MgfReader;
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.experiment.massspectrometry.Peak;
+import com.compomics.util.experiment.massspectrometry.Precursor;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Utilities for the processing of the spectra read with the mgf reader of
+ * compomics utilities. The processors work on the peaks as m/z and intensity
+ * arrays sorted by m/z, the spectra are written with numbers in fixed-point
+ * notation as the scientific notation is not supported by all search engines.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumUtils {
+
+    /**
+     * The mass of a proton.
+     */
+    public static final double PROTON_MASS = ElementaryIon.proton.getTheoreticMass();
+
+    /**
+     * Indexes an mgf file.
+     *
+     * @param mgfFile the mgf file
+     *
+     * @return the index of the file
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     * or if spectrum titles are missing or duplicated
+     */
+    public static MgfIndex getIndex(File mgfFile) throws IOException {
+        MgfIndex mgfIndex = MgfReader.getIndexMap(mgfFile);
+        if (mgfIndex.getSpectrumTitles().size() < mgfIndex.getNSpectra()) {
+            throw new IOException("Missing or duplicated spectrum titles found in " + mgfFile.getName() + ".");
+        }
+        return mgfIndex;
+    }
+
+    /**
+     * Returns the m/z of the peaks of a spectrum sorted in ascending order.
+     *
+     * @param spectrum the spectrum
+     *
+     * @return the m/z of the peaks
+     */
+    public static double[] getMz(MSnSpectrum spectrum) {
+        HashMap<Double, Peak> peakMap = spectrum.getPeakMap();
+        double[] mz = new double[peakMap.size()];
+        int index = 0;
+        for (double peakMz : peakMap.keySet()) {
+            mz[index++] = peakMz;
+        }
+        Arrays.sort(mz);
+        return mz;
+    }
+
+    /**
+     * Returns the intensity of the peaks of a spectrum at the given m/z.
+     *
+     * @param spectrum the spectrum
+     * @param mz the m/z of the peaks as returned by getMz
+     *
+     * @return the intensity of the peaks
+     */
+    public static double[] getIntensity(MSnSpectrum spectrum, double[] mz) {
+        HashMap<Double, Peak> peakMap = spectrum.getPeakMap();
+        double[] intensity = new double[mz.length];
+        for (int i = 0; i < mz.length; i++) {
+            intensity[i] = peakMap.get(mz[i]).getIntensity();
+        }
+        return intensity;
+    }
+
+    /**
+     * Replaces the peaks of a spectrum. The intensities of peaks found at the
+     * same m/z are summed.
+     *
+     * @param spectrum the spectrum
+     * @param mz the m/z of the new peaks
+     * @param intensity the intensity of the new peaks
+     */
+    public static void setPeaks(MSnSpectrum spectrum, double[] mz, double[] intensity) {
+        HashMap<Double, Peak> peakMap = new HashMap<Double, Peak>(mz.length);
+        for (int i = 0; i < mz.length; i++) {
+            Peak peak = peakMap.get(mz[i]);
+            double peakIntensity = peak == null ? intensity[i] : peak.getIntensity() + intensity[i];
+            peakMap.put(mz[i], new Peak(mz[i], peakIntensity));
+        }
+        spectrum.setPeakList(peakMap);
+    }
+
+    /**
+     * Returns the possible precursor charges of a spectrum, an empty array if
+     * not set.
+     *
+     * @param spectrum the spectrum
+     *
+     * @return the possible precursor charges
+     */
+    public static int[] getCharges(MSnSpectrum spectrum) {
+        ArrayList<Charge> possibleCharges = spectrum.getPrecursor().getPossibleCharges();
+        if (possibleCharges == null) {
+            return new int[0];
+        }
+        int[] charges = new int[possibleCharges.size()];
+        for (int i = 0; i < charges.length; i++) {
+            charges[i] = possibleCharges.get(i).value;
+        }
+        return charges;
+    }
+
+    /**
+     * Replaces the precursor of a spectrum, the retention time and intensity
+     * of the precursor are kept.
+     *
+     * @param spectrum the spectrum
+     * @param precursorMz the new precursor m/z
+     * @param possibleCharges the new possible precursor charges
+     */
+    public static void setPrecursor(MSnSpectrum spectrum, double precursorMz, ArrayList<Charge> possibleCharges) {
+        Precursor precursor = spectrum.getPrecursor();
+        spectrum.setPrecursor(new Precursor(precursor.getRt(), precursorMz, precursor.getIntensity(), possibleCharges));
+    }
+
+    /**
+     * Returns the neutral mass of the precursor of a spectrum for the given
+     * charge.
+     *
+     * @param spectrum the spectrum
+     * @param charge the charge
+     *
+     * @return the neutral mass of the precursor
+     */
+    public static double getPrecursorMass(MSnSpectrum spectrum, int charge) {
+        return spectrum.getPrecursor().getMz() * charge - charge * PROTON_MASS;
+    }
+
+    /**
+     * Writes a spectrum in the mgf format.
+     *
+     * @param spectrum the spectrum
+     * @param bw the writer to use
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    public static void write(MSnSpectrum spectrum, BufferedWriter bw) throws IOException {
+
+        Precursor precursor = spectrum.getPrecursor();
+
+        bw.write("BEGIN IONS");
+        bw.newLine();
+        bw.write("TITLE=" + spectrum.getSpectrumTitle());
+        bw.newLine();
+        bw.write("PEPMASS=" + toPlainString(precursor.getMz()));
+        if (precursor.getIntensity() > 0) {
+            bw.write(" " + toPlainString(precursor.getIntensity()));
+        }
+        bw.newLine();
+        ArrayList<Charge> possibleCharges = precursor.getPossibleCharges();
+        if (possibleCharges != null && !possibleCharges.isEmpty()) {
+            bw.write("CHARGE=");
+            for (int i = 0; i < possibleCharges.size(); i++) {
+                if (i > 0) {
+                    bw.write(" and ");
+                }
+                Charge charge = possibleCharges.get(i);
+                bw.write(charge.value + (charge.sign == Charge.MINUS ? "-" : "+"));
+            }
+            bw.newLine();
+        }
+        if (precursor.getRt() >= 0) {
+            bw.write("RTINSECONDS=" + toPlainString(precursor.getRt()));
+            bw.newLine();
+        }
+        if (spectrum.getScanNumber() != null) {
+            bw.write("SCANS=" + spectrum.getScanNumber());
+            bw.newLine();
+        }
+
+        double[] mz = getMz(spectrum);
+        double[] intensity = getIntensity(spectrum, mz);
+        for (int i = 0; i < mz.length; i++) {
+            bw.write(toPlainString(mz[i]));
+            bw.write(' ');
+            bw.write(toPlainString(intensity[i]));
+            bw.newLine();
+        }
+
+        bw.write("END IONS");
+        bw.newLine();
+        bw.newLine();
+    }
+
+    /**
+     * Returns the shortest representation of a number without loss in
+     * fixed-point notation.
+     *
+     * @param value the number
+     *
+     * @return the number in fixed-point notation
+     */
+    private static String toPlainString(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.toString(value);
+        }
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+}
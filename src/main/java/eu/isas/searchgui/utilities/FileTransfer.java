@@ -0,0 +1,191 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+
+/**
+ * Utilities to move and link files without copying their content when
+ * possible. Files are moved by renaming them and linked using hard links when
+ * source and destination are on the same file system. Otherwise the content
+ * is copied. Existing files are only replaced once the new file is complete.
+ *
+ * @author Marc Vaudel
+ */
+public class FileTransfer {
+
+    /**
+     * The maximal number of bytes transferred at once when copying.
+     */
+    private static final long TRANSFER_SIZE = 64 * 1024 * 1024;
+    /**
+     * The method used to create hard links, null if not available.
+     */
+    private static Method createLinkMethod = null;
+    /**
+     * The method used to convert files to paths, null if not available.
+     */
+    private static Method toPathMethod = null;
+
+    static {
+        // hard links are only available from Java 7 on
+        try {
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Class<?> filesClass = Class.forName("java.nio.file.Files");
+            createLinkMethod = filesClass.getMethod("createLink", pathClass, pathClass);
+            toPathMethod = File.class.getMethod("toPath");
+        } catch (Exception e) {
+            createLinkMethod = null;
+            toPathMethod = null;
+        }
+    }
+
+    /**
+     * Empty default constructor.
+     */
+    private FileTransfer() {
+    }
+
+    /**
+     * Moves a file. The file is renamed if possible, otherwise copied to a
+     * temporary file next to the destination which is then renamed. An
+     * existing destination file is replaced once the new file is complete, it
+     * is kept if the move fails.
+     *
+     * @param source the file to move
+     * @param destination the destination file
+     *
+     * @throws IOException thrown if the file could not be moved
+     */
+    public static void move(File source, File destination) throws IOException {
+
+        if (rename(source, destination)) {
+            return;
+        }
+
+        // different file systems, copy next to the destination and swap
+        File folder = destination.getAbsoluteFile().getParentFile();
+        File tempFile = new File(folder, "." + destination.getName() + "." + System.nanoTime() + ".part");
+        try {
+            copy(source, tempFile);
+            if (!rename(tempFile, destination)) {
+                throw new IOException("Impossible to move " + source.getAbsolutePath() + " to " + destination.getAbsolutePath() + ".");
+            }
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+
+        if (!source.delete()) {
+            throw new IOException("Impossible to delete " + source.getAbsolutePath() + ".");
+        }
+    }
+
+    /**
+     * Renames a file replacing the destination file if any. Where renaming
+     * does not replace existing files, e.g. on Windows, the destination file
+     * is first renamed to a backup name, and restored if the file cannot be
+     * renamed.
+     *
+     * @param file the file to rename
+     * @param destination the destination file
+     *
+     * @return a boolean indicating whether the file was renamed
+     */
+    private static boolean rename(File file, File destination) {
+
+        if (file.renameTo(destination)) {
+            return true;
+        }
+        if (!destination.exists()) {
+            return false;
+        }
+
+        File backup = new File(destination.getAbsoluteFile().getParentFile(), "." + destination.getName() + "." + System.nanoTime() + ".old");
+        if (!destination.renameTo(backup)) {
+            return false;
+        }
+        if (file.renameTo(destination)) {
+            backup.delete();
+            return true;
+        }
+        backup.renameTo(destination);
+        return false;
+    }
+
+    /**
+     * Makes the content of a file available at the destination without
+     * modifying the source. A hard link is created if possible, otherwise the
+     * file is copied. An existing destination file is overwritten. The
+     * destination should only be read or deleted.
+     *
+     * @param source the file to link
+     * @param destination the destination file
+     *
+     * @throws IOException thrown if the file could not be linked or copied
+     */
+    public static void link(File source, File destination) throws IOException {
+
+        deleteExisting(destination);
+
+        if (createLinkMethod != null) {
+            try {
+                createLinkMethod.invoke(null, toPathMethod.invoke(destination), toPathMethod.invoke(source));
+                return;
+            } catch (Exception e) {
+                // different file systems or links not supported, copy the file
+            }
+        }
+
+        copy(source, destination);
+    }
+
+    /**
+     * Copies a file. The content is transferred by the file system where
+     * possible.
+     *
+     * @param source the file to copy
+     * @param destination the destination file
+     *
+     * @throws IOException thrown if the file could not be copied
+     */
+    public static void copy(File source, File destination) throws IOException {
+
+        FileInputStream in = new FileInputStream(source);
+
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += inChannel.transferTo(position, Math.min(TRANSFER_SIZE, size - position), outChannel);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Deletes the given file if it exists.
+     *
+     * @param file the file to delete
+     *
+     * @throws IOException thrown if the file could not be deleted
+     */
+    private static void deleteExisting(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Impossible to delete " + file.getAbsolutePath() + ".");
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Utilities for the handling of gzip compressed input files, e.g. mgf.gz and
+ * fasta.gz files. The search engines and indexes need plain files, the
+ * compressed files are therefore decompressed once in a dedicated folder and
+ * the decompressed copy is reused as long as the archive is unchanged. Every
+ * archive is decompressed in its own sub folder so that archives with the
+ * same name in different folders do not overwrite each other.
+ *
+ * @author Marc Vaudel
+ */
+public class GzipUtils {
+
+    /**
+     * The extension of gzip files.
+     */
+    public static final String EXTENSION = ".gz";
+    /**
+     * The name of the sub folder where to decompress the files.
+     */
+    public static final String DECOMPRESSION_SUB_FOLDER = "decompressed";
+    /**
+     * The extension used for files being written.
+     */
+    private static final String PARTIAL_FILE_EXTENSION = ".part";
+    /**
+     * The extension of the file describing the archive a decompressed copy
+     * was made from.
+     */
+    private static final String SOURCE_FILE_EXTENSION = ".source";
+    /**
+     * The size of the buffers used for the decompression.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Empty default constructor.
+     */
+    private GzipUtils() {
+    }
+
+    /**
+     * Indicates whether the given file is gzip compressed based on its
+     * extension.
+     *
+     * @param file the file of interest
+     *
+     * @return a boolean indicating whether the given file is gzip compressed
+     */
+    public static boolean isGzipped(File file) {
+        return file.getName().toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Returns the name of the file once decompressed, i.e. without the gz
+     * extension.
+     *
+     * @param file the compressed file
+     *
+     * @return the name of the file once decompressed
+     */
+    public static String getUncompressedFileName(File file) {
+        String fileName = file.getName();
+        if (isGzipped(file)) {
+            return fileName.substring(0, fileName.length() - EXTENSION.length());
+        }
+        return fileName;
+    }
+
+    /**
+     * Returns the size of a file once decompressed as stored at the end of the
+     * gzip file, without decompressing it. The stored size is modulo 2^32 and
+     * is therefore completed to be at least the compressed size.
+     *
+     * @param file the compressed file
+     *
+     * @return the size of the file once decompressed
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    public static long getUncompressedSize(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long compressedSize = raf.length();
+            if (compressedSize < 4) {
+                return 0;
+            }
+            raf.seek(compressedSize - 4);
+            long size = 0;
+            for (int i = 0; i < 4; i++) {
+                size |= ((long) raf.read()) << (8 * i);
+            }
+            while (size < compressedSize) {
+                size += 1L << 32;
+            }
+            return size;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the folder where compressed input files are decompressed.
+     *
+     * @param tempFolderPath the path to the temporary folder
+     *
+     * @return the folder where compressed input files are decompressed
+     */
+    public static File getDecompressionFolder(String tempFolderPath) {
+        File decompressionFolder = new File(tempFolderPath, DECOMPRESSION_SUB_FOLDER);
+        if (!decompressionFolder.exists()) {
+            decompressionFolder.mkdirs();
+        }
+        return decompressionFolder;
+    }
+
+    /**
+     * Returns a plain version of the given file. If the file is not
+     * compressed, it is returned as is. Otherwise it is decompressed in a sub
+     * folder of the given folder dedicated to this archive, unless a copy
+     * decompressed from the same archive with the same size and modification
+     * date is already present. The file name is preserved.
+     *
+     * @param file the file of interest
+     * @param destinationFolder the folder where to decompress the file
+     * @param waitingHandler the waiting handler, can be null
+     *
+     * @return a plain version of the given file, null if the decompression
+     * was canceled
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * the file
+     */
+    public static File getUncompressedFile(File file, File destinationFolder, WaitingHandler waitingHandler) throws IOException {
+
+        if (!isGzipped(file)) {
+            return file;
+        }
+
+        String source = getSourceDescription(file);
+        File archiveFolder = new File(destinationFolder, getFolderName(file));
+        if (!archiveFolder.exists() && !archiveFolder.mkdirs()) {
+            throw new IOException("Impossible to create the folder " + archiveFolder.getAbsolutePath() + ".");
+        }
+        File destinationFile = new File(archiveFolder, getUncompressedFileName(file));
+        File sourceFile = new File(archiveFolder, destinationFile.getName() + SOURCE_FILE_EXTENSION);
+
+        if (destinationFile.exists() && source.equals(readSourceDescription(sourceFile))) {
+            if (waitingHandler != null) {
+                waitingHandler.appendReport("Using decompressed copy of " + file.getName() + ".", true, true);
+            }
+            return destinationFile;
+        }
+
+        if (waitingHandler != null) {
+            waitingHandler.appendReport("Decompressing " + file.getName() + ".", true, true);
+        }
+
+        // write to a temporary file first so that interrupted decompressions are never reused
+        sourceFile.delete();
+        File partialFile = new File(archiveFolder, destinationFile.getName() + PARTIAL_FILE_EXTENSION);
+        decompress(file, partialFile, waitingHandler);
+
+        if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+            partialFile.delete();
+            return null;
+        }
+
+        if (destinationFile.exists() && !destinationFile.delete()) {
+            throw new IOException("Impossible to delete " + destinationFile.getAbsolutePath() + ".");
+        }
+        if (!partialFile.renameTo(destinationFile)) {
+            throw new IOException("Impossible to rename " + partialFile.getAbsolutePath() + " to " + destinationFile.getName() + ".");
+        }
+        writeSourceDescription(sourceFile, source);
+
+        return destinationFile;
+    }
+
+    /**
+     * Returns the name of the sub folder where an archive is decompressed,
+     * derived from the absolute path of the archive.
+     *
+     * @param file the archive
+     *
+     * @return the name of the sub folder
+     */
+    private static String getFolderName(File file) {
+        String path = file.getAbsolutePath();
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(path.getBytes("UTF-8"));
+            StringBuilder folderName = new StringBuilder(2 * digest.length);
+            for (byte b : digest) {
+                folderName.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return folderName.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(path.hashCode());
+        } catch (IOException e) {
+            return Integer.toHexString(path.hashCode());
+        }
+    }
+
+    /**
+     * Returns a description of an archive used to verify that a decompressed
+     * copy was made from it: its absolute path, size and modification date.
+     *
+     * @param file the archive
+     *
+     * @return the description of the archive
+     */
+    private static String getSourceDescription(File file) {
+        return file.getAbsolutePath() + "\t" + file.length() + "\t" + file.lastModified();
+    }
+
+    /**
+     * Reads the description of the archive a decompressed copy was made from.
+     *
+     * @param sourceFile the file containing the description
+     *
+     * @return the description of the archive, null if not found
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    private static String readSourceDescription(File sourceFile) throws IOException {
+        if (!sourceFile.exists()) {
+            return null;
+        }
+        BufferedReader br = new BufferedReader(new FileReader(sourceFile));
+        try {
+            return br.readLine();
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Writes the description of the archive a decompressed copy was made
+     * from.
+     *
+     * @param sourceFile the file where to write the description
+     * @param source the description of the archive
+     *
+     * @throws IOException thrown if an error occurred while writing the file
+     */
+    private static void writeSourceDescription(File sourceFile, String source) throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(sourceFile));
+        try {
+            bw.write(source);
+            bw.newLine();
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Returns plain versions of the given files in the same order. Compressed
+     * files are decompressed in parallel in the given folder. Since gzip
+     * streams cannot be split, the parallelism is per file.
+     *
+     * @param files the files of interest
+     * @param destinationFolder the folder where to decompress the files
+     * @param nThreads the number of threads to use
+     * @param waitingHandler the waiting handler, can be null
+     *
+     * @return plain versions of the given files, null if the decompression
+     * was canceled
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * a file
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    public static ArrayList<File> getUncompressedFiles(ArrayList<File> files, File destinationFolder, int nThreads, final WaitingHandler waitingHandler) throws IOException, InterruptedException {
+
+        ArrayList<File> result = new ArrayList<File>(files.size());
+        ArrayList<Future<File>> futures = new ArrayList<Future<File>>(files.size());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, nThreads));
+
+        try {
+            for (final File file : files) {
+                if (isGzipped(file)) {
+                    final File finalFolder = destinationFolder;
+                    futures.add(pool.submit(new Callable<File>() {
+                        @Override
+                        public File call() throws Exception {
+                            return getUncompressedFile(file, finalFolder, waitingHandler);
+                        }
+                    }));
+                } else {
+                    futures.add(null);
+                }
+            }
+            for (int i = 0; i < files.size(); i++) {
+                Future<File> future = futures.get(i);
+                if (future == null) {
+                    result.add(files.get(i));
+                } else {
+                    try {
+                        File uncompressedFile = future.get();
+                        if (uncompressedFile == null) {
+                            return null;
+                        }
+                        result.add(uncompressedFile);
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw new IOException("An error occurred while decompressing " + files.get(i).getName() + ".", e.getCause());
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        return result;
+    }
+
+    /**
+     * Streams the content of a gzip file to the given destination file.
+     *
+     * @param gzFile the compressed file
+     * @param destinationFile the destination file
+     * @param waitingHandler the waiting handler, can be null
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * the file
+     */
+    public static void decompress(File gzFile, File destinationFile, WaitingHandler waitingHandler) throws IOException {
+
+        InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(gzFile), BUFFER_SIZE), BUFFER_SIZE);
+
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(destinationFile), BUFFER_SIZE);
+
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int length;
+                while ((length = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, length);
+                    if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                        break;
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.processbuilders.ProcessResourceMonitor;
+import eu.isas.searchgui.processbuilders.SearchGUIProcessBuilder;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * Admits the memory intensive jobs of a search, the search engine processes
+ * and the protein tree, only when their expected footprint fits into a memory
+ * budget. The memory of a running job is the largest of its estimate and of
+ * the memory actually used by its processes. Jobs which do not fit are queued
+ * and admitted in the order of their request when memory is released. A job
+ * larger than the budget is admitted when no other job is running.
+ *
+ * @author Marc Vaudel
+ */
+public class MemoryAdmissionController {
+
+    /**
+     * The interval at which queued jobs check whether they fit in
+     * milliseconds.
+     */
+    public static final long POLLING_INTERVAL = 1000;
+    /**
+     * The memory budget in bytes.
+     */
+    private final long budget;
+    /**
+     * The jobs waiting for memory in the order of their request.
+     */
+    private final LinkedList<Reservation> queue = new LinkedList<Reservation>();
+    /**
+     * The jobs running.
+     */
+    private final ArrayList<Reservation> admitted = new ArrayList<Reservation>();
+
+    /**
+     * Constructor.
+     *
+     * @param budget the memory budget in bytes
+     */
+    public MemoryAdmissionController(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the memory budget in bytes.
+     *
+     * @return the memory budget in bytes
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Waits until the given job fits into the memory budget and reserves its
+     * memory. The reservation must be released when the job is completed.
+     *
+     * @param name the name of the job as displayed to the user
+     * @param estimatedMemory the estimated memory used by the job in bytes
+     * @param waitingHandler the waiting handler, the waiting is abandoned if
+     * the run is canceled
+     *
+     * @return the reservation, null if the run was canceled while waiting
+     *
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting
+     */
+    public synchronized Reservation acquire(String name, long estimatedMemory, WaitingHandler waitingHandler) throws InterruptedException {
+
+        Reservation reservation = new Reservation(name, estimatedMemory);
+        queue.add(reservation);
+
+        try {
+            boolean reported = false;
+            while (queue.getFirst() != reservation || !fits(reservation)) {
+                if (waitingHandler.isRunCanceled()) {
+                    return null;
+                }
+                if (!reported) {
+                    waitingHandler.appendReport(name + " waiting for memory: " + toMegaBytes(estimatedMemory) + " MB needed, "
+                            + toMegaBytes(Math.max(0, budget - getUsedMemory())) + " MB of the " + toMegaBytes(budget) + " MB budget free.", true, true);
+                    reported = true;
+                }
+                wait(POLLING_INTERVAL);
+            }
+            admitted.add(reservation);
+            return reservation;
+        } finally {
+            queue.remove(reservation);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Releases the memory of a job.
+     *
+     * @param reservation the reservation of the job, ignored if null
+     */
+    public synchronized void release(Reservation reservation) {
+        if (reservation != null) {
+            admitted.remove(reservation);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Indicates whether the given job fits into the memory left by the
+     * running jobs.
+     *
+     * @param reservation the reservation of the job
+     *
+     * @return a boolean indicating whether the job fits
+     */
+    private boolean fits(Reservation reservation) {
+        return admitted.isEmpty() || getUsedMemory() + reservation.getEstimatedMemory() <= budget;
+    }
+
+    /**
+     * Returns the memory used by the running jobs in bytes.
+     *
+     * @return the memory used by the running jobs
+     */
+    private long getUsedMemory() {
+        long used = 0;
+        for (Reservation reservation : admitted) {
+            used += reservation.getMemory();
+        }
+        return used;
+    }
+
+    /**
+     * Converts bytes to megabytes.
+     *
+     * @param bytes the number of bytes
+     *
+     * @return the number of megabytes
+     */
+    private static long toMegaBytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    /**
+     * The memory reserved for a job.
+     */
+    public static class Reservation {
+
+        /**
+         * The name of the job.
+         */
+        private final String name;
+        /**
+         * The estimated memory used by the job in bytes.
+         */
+        private final long estimatedMemory;
+        /**
+         * The process of the job, null if it does not run in an external
+         * process.
+         */
+        private volatile SearchGUIProcessBuilder process = null;
+
+        /**
+         * Constructor.
+         *
+         * @param name the name of the job
+         * @param estimatedMemory the estimated memory used by the job in bytes
+         */
+        private Reservation(String name, long estimatedMemory) {
+            this.name = name;
+            this.estimatedMemory = estimatedMemory;
+        }
+
+        /**
+         * Returns the name of the job.
+         *
+         * @return the name of the job
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the estimated memory used by the job in bytes.
+         *
+         * @return the estimated memory used by the job
+         */
+        public long getEstimatedMemory() {
+            return estimatedMemory;
+        }
+
+        /**
+         * Sets the process of the job, the memory it actually uses is then
+         * taken into account.
+         *
+         * @param process the process of the job
+         */
+        public void setProcess(SearchGUIProcessBuilder process) {
+            this.process = process;
+        }
+
+        /**
+         * Returns the memory of the job in bytes, the largest of the estimate
+         * and of the memory currently used by its processes.
+         *
+         * @return the memory of the job
+         */
+        public long getMemory() {
+            SearchGUIProcessBuilder currentProcess = process;
+            if (currentProcess != null) {
+                ProcessResourceMonitor resourceMonitor = currentProcess.getResourceMonitor();
+                if (resourceMonitor != null) {
+                    return Math.max(estimatedMemory, resourceMonitor.getCurrentRss());
+                }
+            }
+            return estimatedMemory;
+        }
+    }
+}
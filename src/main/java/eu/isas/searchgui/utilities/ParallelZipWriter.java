@@ -0,0 +1,761 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes zip archives where the entries are deflated in parallel. Every entry
+ * is split in blocks which are compressed independently on a shared thread
+ * pool, using the end of the previous block as dictionary, and concatenated
+ * in a single deflate stream. The blocks are ended by a sync flush, which is
+ * only available from Java 7 on, on older versions the blocks of an entry are
+ * compressed one after the other in a single deflate stream. The zip64 format
+ * is only used for the files, offsets and archives larger than 4 GB. When an entry cannot be completed the archive is left without
+ * central directory so that it is never mistaken for a valid archive.
+ *
+ * @author Marc Vaudel
+ */
+public class ParallelZipWriter implements Closeable {
+
+    /**
+     * The size of the blocks compressed independently.
+     */
+    public static final int BLOCK_SIZE = 1024 * 1024;
+    /**
+     * The size of the dictionary passed from one block to the next.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    /**
+     * The zip version needed to extract deflated entries.
+     */
+    private static final int ZIP_VERSION = 20;
+    /**
+     * The zip version needed to extract zip64 entries.
+     */
+    private static final int ZIP64_VERSION = 45;
+    /**
+     * The margin taken on the size of a file to make sure that its deflated
+     * data fits in a 32 bits entry, deflate can expand incompressible data
+     * slightly.
+     */
+    private static final long DEFLATE_MARGIN = 1024;
+    /**
+     * The general purpose flag indicating UTF-8 entry names.
+     */
+    private static final int UTF8_FLAG = 0x0800;
+    /**
+     * The maximal value of a 32 bits zip field.
+     */
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    /**
+     * The deflate method taking a flush mode, null if not available.
+     */
+    private static Method flushingDeflateMethod = null;
+    /**
+     * The sync flush mode, null if not available.
+     */
+    private static Integer syncFlush = null;
+
+    static {
+        // the flush modes are only available from Java 7 on
+        try {
+            flushingDeflateMethod = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+            syncFlush = Deflater.class.getField("SYNC_FLUSH").getInt(null);
+        } catch (Exception e) {
+            flushingDeflateMethod = null;
+            syncFlush = null;
+        }
+    }
+    /**
+     * The stream used to write the archive.
+     */
+    private final FileOutputStream fileOutputStream;
+    /**
+     * The buffered stream used to write the archive.
+     */
+    private final BufferedOutputStream out;
+    /**
+     * The channel used to update the local headers.
+     */
+    private final FileChannel channel;
+    /**
+     * The pool used to compress the blocks.
+     */
+    private final ExecutorService pool;
+    /**
+     * The number of blocks compressed ahead of the writing per entry.
+     */
+    private final int nBlocksInFlight;
+    /**
+     * The progress shared by all the archives written together.
+     */
+    private final Progress progress;
+    /**
+     * The compression level.
+     */
+    private final int compressionLevel;
+    /**
+     * The current position in the archive.
+     */
+    private long position = 0;
+    /**
+     * The entries written.
+     */
+    private final ArrayList<Entry> entries = new ArrayList<Entry>();
+    /**
+     * Indicates whether an entry could not be completed.
+     */
+    private boolean aborted = false;
+
+    /**
+     * Constructor.
+     *
+     * @param zipFile the archive to write
+     * @param pool the pool used to compress the blocks
+     * @param nThreads the number of threads of the pool
+     * @param progress the progress shared by the archives written together,
+     * can be null
+     *
+     * @throws IOException thrown if the archive cannot be created
+     */
+    public ParallelZipWriter(File zipFile, ExecutorService pool, int nThreads, Progress progress) throws IOException {
+        this(zipFile, pool, nThreads, progress, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param zipFile the archive to write
+     * @param pool the pool used to compress the blocks
+     * @param nThreads the number of threads of the pool
+     * @param progress the progress shared by the archives written together,
+     * can be null
+     * @param compressionLevel the deflate compression level
+     *
+     * @throws IOException thrown if the archive cannot be created
+     */
+    public ParallelZipWriter(File zipFile, ExecutorService pool, int nThreads, Progress progress, int compressionLevel) throws IOException {
+        this.fileOutputStream = new FileOutputStream(zipFile);
+        this.out = new BufferedOutputStream(fileOutputStream, BLOCK_SIZE);
+        this.channel = fileOutputStream.getChannel();
+        this.pool = pool;
+        this.nBlocksInFlight = 2 * Math.max(1, nThreads);
+        this.progress = progress;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Adds a folder to the archive.
+     *
+     * @param folderName the name of the folder
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    public synchronized void addFolder(String folderName) throws IOException {
+        String name = folderName.endsWith("/") ? folderName : folderName + "/";
+        Entry entry = writeLocalHeader(name, System.currentTimeMillis(), Deflater.NO_COMPRESSION, true, 0);
+        entry.method = 0;
+        updateLocalHeader(entry);
+    }
+
+    /**
+     * Adds a file at the root of the archive.
+     *
+     * @param file the file to add
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    public void addFile(File file) throws IOException, InterruptedException {
+        addFile(null, file);
+    }
+
+    /**
+     * Adds a file to the archive.
+     *
+     * @param folderName the folder where to put the file in the archive, null
+     * for the root
+     * @param file the file to add
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    public void addFile(String folderName, File file) throws IOException, InterruptedException {
+        addFile(folderName, file, compressionLevel);
+    }
+
+    /**
+     * Adds a file to the archive using the given compression level. Files
+     * added with no compression are stored.
+     *
+     * @param folderName the folder where to put the file in the archive, null
+     * for the root
+     * @param file the file to add
+     * @param level the deflate compression level
+     *
+     * @throws IOException thrown if an error occurred while reading or writing,
+     * or if the writing was canceled, the archive is then left incomplete
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    public synchronized void addFile(String folderName, File file, final int level) throws IOException, InterruptedException {
+
+        String name = folderName == null ? file.getName() : folderName + "/" + file.getName();
+        Entry entry = writeLocalHeader(name, file.lastModified(), level, false, file.length());
+        CRC32 crc = new CRC32();
+        LinkedList<Future<byte[]>> pendingBlocks = new LinkedList<Future<byte[]>>();
+        boolean parallel = level != Deflater.NO_COMPRESSION && flushingDeflateMethod != null;
+        Deflater sequentialDeflater = level != Deflater.NO_COMPRESSION && !parallel ? new Deflater(level, true) : null;
+        boolean completed = false;
+
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BLOCK_SIZE);
+
+        try {
+            byte[] dictionary = null;
+            byte[] block = readBlock(in);
+
+            while (block != null) {
+
+                if (progress != null && progress.isCanceled()) {
+                    throw new IOException("The compression of " + name + " was canceled.");
+                }
+
+                byte[] nextBlock = readBlock(in);
+                crc.update(block, 0, block.length);
+                entry.uncompressedSize += block.length;
+
+                final byte[] finalBlock = block;
+                final byte[] finalDictionary = dictionary;
+                final boolean last = nextBlock == null;
+
+                if (level == Deflater.NO_COMPRESSION) {
+                    writeBlock(finalBlock, entry);
+                } else if (!parallel) {
+                    writeBlock(deflate(sequentialDeflater, finalBlock, last), entry);
+                } else {
+                    pendingBlocks.add(pool.submit(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() throws Exception {
+                            return deflate(finalBlock, finalDictionary, last, level);
+                        }
+                    }));
+                    if (pendingBlocks.size() >= nBlocksInFlight) {
+                        writeBlock(getBlock(pendingBlocks.removeFirst()), entry);
+                    }
+                }
+
+                if (progress != null) {
+                    progress.increase(block.length);
+                }
+
+                if (block.length >= DICTIONARY_SIZE) {
+                    dictionary = new byte[DICTIONARY_SIZE];
+                    System.arraycopy(block, block.length - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+                } else {
+                    dictionary = block;
+                }
+                block = nextBlock;
+            }
+
+            while (!pendingBlocks.isEmpty()) {
+                writeBlock(getBlock(pendingBlocks.removeFirst()), entry);
+            }
+
+            if (entry.uncompressedSize == 0 && level != Deflater.NO_COMPRESSION) {
+                // empty deflate stream
+                writeBlock(deflate(new Deflater(level, true), new byte[0], true), entry);
+            }
+
+            completed = true;
+
+        } finally {
+            in.close();
+            for (Future<byte[]> future : pendingBlocks) {
+                future.cancel(true);
+            }
+            if (sequentialDeflater != null) {
+                sequentialDeflater.end();
+            }
+            if (!completed) {
+                aborted = true;
+            }
+        }
+
+        entry.crc = crc.getValue();
+        updateLocalHeader(entry);
+    }
+
+    /**
+     * Reads a block from the given stream.
+     *
+     * @param in the stream
+     *
+     * @return the block, null if the end of the stream was reached
+     *
+     * @throws IOException thrown if an error occurred while reading
+     */
+    private static byte[] readBlock(InputStream in) throws IOException {
+        byte[] buffer = new byte[BLOCK_SIZE];
+        int length = 0;
+        int read;
+        while (length < BLOCK_SIZE && (read = in.read(buffer, length, BLOCK_SIZE - length)) != -1) {
+            length += read;
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (length < BLOCK_SIZE) {
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+            return result;
+        }
+        return buffer;
+    }
+
+    /**
+     * Compresses a block as raw deflate data. Blocks other than the last are
+     * ended by a sync flush so that they can be concatenated. Requires Java 7
+     * or newer.
+     *
+     * @param block the block to compress
+     * @param dictionary the end of the previous block, null for the first
+     * block
+     * @param last indicates whether this is the last block of the entry
+     * @param level the compression level
+     *
+     * @return the compressed block
+     *
+     * @throws Exception thrown if the flushing deflate method cannot be
+     * invoked
+     */
+    private static byte[] deflate(byte[] block, byte[] dictionary, boolean last, int level) throws Exception {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            if (last) {
+                return deflate(deflater, block, true);
+            }
+            deflater.setInput(block);
+            ByteArrayOutputStream result = new ByteArrayOutputStream(block.length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            int length;
+            do {
+                length = (Integer) flushingDeflateMethod.invoke(deflater, buffer, 0, buffer.length, syncFlush);
+                result.write(buffer, 0, length);
+            } while (length == buffer.length);
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Passes a block to a deflater and returns the compressed data
+     * available. Data may be retained by the deflater until the last block
+     * is passed.
+     *
+     * @param deflater the deflater of the entry
+     * @param block the block to compress
+     * @param last indicates whether this is the last block of the entry
+     *
+     * @return the compressed data available
+     */
+    private static byte[] deflate(Deflater deflater, byte[] block, boolean last) {
+        deflater.setInput(block);
+        if (last) {
+            deflater.finish();
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream(block.length / 2 + 64);
+        byte[] buffer = new byte[64 * 1024];
+        while (last ? !deflater.finished() : !deflater.needsInput()) {
+            int length = deflater.deflate(buffer);
+            result.write(buffer, 0, length);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Returns the result of a block compression.
+     *
+     * @param future the future of the compression
+     *
+     * @return the compressed block
+     *
+     * @throws IOException thrown if an error occurred during the compression
+     * @throws InterruptedException thrown if a thread is interrupted
+     */
+    private static byte[] getBlock(Future<byte[]> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("An error occurred while compressing a zip entry.", e.getCause());
+        }
+    }
+
+    /**
+     * Writes a block of entry data.
+     *
+     * @param block the block
+     * @param entry the entry
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    private void writeBlock(byte[] block, Entry entry) throws IOException {
+        out.write(block);
+        position += block.length;
+        entry.compressedSize += block.length;
+    }
+
+    /**
+     * Writes the local header of a new entry. The sizes and checksum are
+     * filled once the entry is written. The local header uses the zip64
+     * format when the entry might not fit in 32 bits.
+     *
+     * @param name the entry name
+     * @param time the modification time
+     * @param level the compression level
+     * @param directory indicates whether the entry is a directory
+     * @param size the size of the data to write
+     *
+     * @return the entry
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    private Entry writeLocalHeader(String name, long time, int level, boolean directory, long size) throws IOException {
+
+        Entry entry = new Entry();
+        entry.name = name.getBytes("UTF-8");
+        entry.dosTime = getDosTime(time);
+        entry.method = level == Deflater.NO_COMPRESSION ? 0 : 8;
+        entry.offset = position;
+        entry.directory = directory;
+        entry.zip64 = size + size / 1000 + DEFLATE_MARGIN >= ZIP32_LIMIT;
+        entries.add(entry);
+
+        byte[] header = getLocalHeader(entry);
+        out.write(header);
+        position += header.length;
+
+        return entry;
+    }
+
+    /**
+     * Returns the local header of an entry.
+     *
+     * @param entry the entry
+     *
+     * @return the local header
+     */
+    private static byte[] getLocalHeader(Entry entry) {
+        int extraLength = entry.zip64 ? 20 : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(30 + entry.name.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x04034b50);
+        buffer.putShort((short) (entry.zip64 ? ZIP64_VERSION : ZIP_VERSION));
+        buffer.putShort((short) UTF8_FLAG);
+        buffer.putShort((short) entry.method);
+        buffer.putInt((int) entry.dosTime);
+        buffer.putInt((int) entry.crc);
+        buffer.putInt((int) (entry.zip64 ? ZIP32_LIMIT : entry.compressedSize));
+        buffer.putInt((int) (entry.zip64 ? ZIP32_LIMIT : entry.uncompressedSize));
+        buffer.putShort((short) entry.name.length);
+        buffer.putShort((short) extraLength);
+        buffer.put(entry.name);
+        if (entry.zip64) {
+            buffer.putShort((short) 0x0001);
+            buffer.putShort((short) 16);
+            buffer.putLong(entry.uncompressedSize);
+            buffer.putLong(entry.compressedSize);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Rewrites the local header of an entry once its data is written.
+     *
+     * @param entry the entry
+     *
+     * @throws IOException thrown if an error occurred while writing or if the
+     * entry does not fit in its local header
+     */
+    private void updateLocalHeader(Entry entry) throws IOException {
+        if (!entry.zip64 && (entry.uncompressedSize >= ZIP32_LIMIT || entry.compressedSize >= ZIP32_LIMIT)) {
+            aborted = true;
+            throw new IOException("The size of " + new String(entry.name, "UTF-8") + " changed while it was added to the archive.");
+        }
+        out.flush();
+        ByteBuffer header = ByteBuffer.wrap(getLocalHeader(entry));
+        long headerPosition = entry.offset;
+        while (header.hasRemaining()) {
+            headerPosition += channel.write(header, headerPosition);
+        }
+    }
+
+    /**
+     * Writes the central directory and closes the archive. If an entry could
+     * not be completed, the archive is closed without central directory.
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (aborted) {
+            out.close();
+            return;
+        }
+
+        try {
+            long centralDirectoryOffset = position;
+
+            for (Entry entry : entries) {
+
+                // the zip64 extra field only contains the values not fitting in 32 bits
+                boolean zip64Uncompressed = entry.uncompressedSize >= ZIP32_LIMIT;
+                boolean zip64Compressed = entry.compressedSize >= ZIP32_LIMIT;
+                boolean zip64Offset = entry.offset >= ZIP32_LIMIT;
+                int zip64Length = (zip64Uncompressed ? 8 : 0) + (zip64Compressed ? 8 : 0) + (zip64Offset ? 8 : 0);
+                int extraLength = zip64Length > 0 ? 4 + zip64Length : 0;
+
+                ByteBuffer buffer = ByteBuffer.allocate(46 + entry.name.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(0x02014b50);
+                buffer.putShort((short) (zip64Length > 0 || entry.zip64 ? ZIP64_VERSION : ZIP_VERSION));
+                buffer.putShort((short) (zip64Length > 0 || entry.zip64 ? ZIP64_VERSION : ZIP_VERSION));
+                buffer.putShort((short) UTF8_FLAG);
+                buffer.putShort((short) entry.method);
+                buffer.putInt((int) entry.dosTime);
+                buffer.putInt((int) entry.crc);
+                buffer.putInt((int) (zip64Compressed ? ZIP32_LIMIT : entry.compressedSize));
+                buffer.putInt((int) (zip64Uncompressed ? ZIP32_LIMIT : entry.uncompressedSize));
+                buffer.putShort((short) entry.name.length);
+                buffer.putShort((short) extraLength);
+                buffer.putShort((short) 0); // comment length
+                buffer.putShort((short) 0); // disk number
+                buffer.putShort((short) 0); // internal attributes
+                buffer.putInt(entry.directory ? 0x10 : 0); // external attributes
+                buffer.putInt((int) (zip64Offset ? ZIP32_LIMIT : entry.offset));
+                buffer.put(entry.name);
+                if (zip64Length > 0) {
+                    buffer.putShort((short) 0x0001);
+                    buffer.putShort((short) zip64Length);
+                    if (zip64Uncompressed) {
+                        buffer.putLong(entry.uncompressedSize);
+                    }
+                    if (zip64Compressed) {
+                        buffer.putLong(entry.compressedSize);
+                    }
+                    if (zip64Offset) {
+                        buffer.putLong(entry.offset);
+                    }
+                }
+                out.write(buffer.array());
+                position += buffer.capacity();
+            }
+
+            long centralDirectorySize = position - centralDirectoryOffset;
+
+            boolean zip64 = entries.size() >= 0xFFFF || centralDirectoryOffset >= ZIP32_LIMIT || centralDirectorySize >= ZIP32_LIMIT;
+
+            if (zip64) {
+                long zip64EndOffset = position;
+                ByteBuffer buffer = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(0x06064b50);
+                buffer.putLong(44);
+                buffer.putShort((short) ZIP64_VERSION);
+                buffer.putShort((short) ZIP64_VERSION);
+                buffer.putInt(0);
+                buffer.putInt(0);
+                buffer.putLong(entries.size());
+                buffer.putLong(entries.size());
+                buffer.putLong(centralDirectorySize);
+                buffer.putLong(centralDirectoryOffset);
+                buffer.putInt(0x07064b50);
+                buffer.putInt(0);
+                buffer.putLong(zip64EndOffset);
+                buffer.putInt(1);
+                out.write(buffer.array());
+                position += buffer.capacity();
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0x06054b50);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) (zip64 ? 0xFFFF : entries.size()));
+            buffer.putShort((short) (zip64 ? 0xFFFF : entries.size()));
+            buffer.putInt((int) (zip64 ? ZIP32_LIMIT : centralDirectorySize));
+            buffer.putInt((int) (zip64 ? ZIP32_LIMIT : centralDirectoryOffset));
+            buffer.putShort((short) 0);
+            out.write(buffer.array());
+            position += buffer.capacity();
+
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Converts a time in milliseconds to the MS-DOS date and time format.
+     *
+     * @param time the time in milliseconds
+     *
+     * @return the time in the MS-DOS format
+     */
+    private static long getDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25)
+                | ((long) (calendar.get(Calendar.MONTH) + 1) << 21)
+                | ((long) calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | ((long) calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | ((long) calendar.get(Calendar.MINUTE) << 5)
+                | ((long) calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    /**
+     * An entry of the archive.
+     */
+    private static class Entry {
+
+        /**
+         * The entry name encoded in UTF-8.
+         */
+        private byte[] name;
+        /**
+         * The modification time in the MS-DOS format.
+         */
+        private long dosTime;
+        /**
+         * The compression method, 0 for stored and 8 for deflated.
+         */
+        private int method;
+        /**
+         * The CRC-32 of the uncompressed data.
+         */
+        private long crc = 0;
+        /**
+         * The uncompressed size.
+         */
+        private long uncompressedSize = 0;
+        /**
+         * The compressed size.
+         */
+        private long compressedSize = 0;
+        /**
+         * The offset of the local header in the archive.
+         */
+        private long offset;
+        /**
+         * Indicates whether the entry is a directory.
+         */
+        private boolean directory;
+        /**
+         * Indicates whether the local header uses the zip64 format.
+         */
+        private boolean zip64;
+    }
+
+    /**
+     * The progress of the writing of one or more archives, displayed as a
+     * percentage on the secondary progress counter of a waiting handler.
+     */
+    public static class Progress {
+
+        /**
+         * The waiting handler, can be null.
+         */
+        private final WaitingHandler waitingHandler;
+        /**
+         * The total number of bytes to write, 0 if not known yet.
+         */
+        private long total;
+        /**
+         * The number of bytes written.
+         */
+        private long done = 0;
+        /**
+         * The last percentage displayed.
+         */
+        private int lastPercent = -1;
+
+        /**
+         * Constructor.
+         *
+         * @param waitingHandler the waiting handler, can be null
+         * @param total the total number of bytes to write, 0 if not known
+         * yet, in which case the progress is not displayed
+         */
+        public Progress(WaitingHandler waitingHandler, long total) {
+            this.waitingHandler = waitingHandler;
+            this.total = total;
+        }
+
+        /**
+         * Sets the total number of bytes to write and starts displaying the
+         * progress. The bytes already written are included.
+         *
+         * @param total the total number of bytes to write
+         */
+        public synchronized void setTotal(long total) {
+            this.total = Math.max(1, total);
+            display();
+        }
+
+        /**
+         * Increases the number of bytes written.
+         *
+         * @param bytes the number of bytes written
+         */
+        public synchronized void increase(long bytes) {
+            done += bytes;
+            display();
+        }
+
+        /**
+         * Displays the progress on the waiting handler if the total is known.
+         */
+        private void display() {
+            if (total > 0 && waitingHandler != null) {
+                int percent = (int) Math.min(100, 100 * done / total);
+                if (percent != lastPercent) {
+                    waitingHandler.setSecondaryProgressCounter(percent);
+                    lastPercent = percent;
+                }
+            }
+        }
+
+        /**
+         * Indicates whether the writing was canceled.
+         *
+         * @return a boolean indicating whether the writing was canceled
+         */
+        public boolean isCanceled() {
+            return waitingHandler != null && waitingHandler.isRunCanceled();
+        }
+    }
+}
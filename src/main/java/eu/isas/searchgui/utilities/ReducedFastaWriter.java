@@ -0,0 +1,119 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+
+/**
+ * Writes a reduced version of a FASTA file containing only the given proteins
+ * and their decoys. The proteins are identified by the first word of their
+ * header as done by the search engines, and the decoy of a protein is the
+ * entry whose first word is the one of the protein with the decoy tag.
+ *
+ * @author Marc Vaudel
+ */
+public class ReducedFastaWriter {
+
+    /**
+     * The size of the buffers used to read and write the files.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    /**
+     * The number of target proteins written.
+     */
+    private int nTargets = 0;
+    /**
+     * The number of decoy proteins written.
+     */
+    private int nDecoys = 0;
+
+    /**
+     * Writes the given proteins and their decoys to a new FASTA file. The
+     * entries are copied as they are, in the order of the original file.
+     *
+     * @param fastaFile the FASTA file
+     * @param reducedFastaFile the file where to write the reduced database
+     * @param accessions the first word of the headers of the proteins to keep
+     * @param decoyTag the tag of the decoy accessions in the database, null if
+     * none
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     * a file
+     */
+    public void write(File fastaFile, File reducedFastaFile, HashSet<String> accessions, String decoyTag) throws IOException {
+
+        nTargets = 0;
+        nDecoys = 0;
+
+        BufferedReader br = new BufferedReader(new FileReader(fastaFile), BUFFER_SIZE);
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(reducedFastaFile), BUFFER_SIZE);
+            try {
+                boolean keep = false;
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith(">")) {
+                        String accession = getFirstWord(line);
+                        if (accessions.contains(accession)) {
+                            keep = true;
+                            nTargets++;
+                        } else if (decoyTag != null && accession.contains(decoyTag)
+                                && accessions.contains(accession.replace(decoyTag, ""))) {
+                            keep = true;
+                            nDecoys++;
+                        } else {
+                            keep = false;
+                        }
+                    }
+                    if (keep) {
+                        bw.write(line);
+                        bw.newLine();
+                    }
+                }
+            } finally {
+                bw.close();
+            }
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Returns the first word of a FASTA header.
+     *
+     * @param header the header line including the leading '&gt;'
+     *
+     * @return the first word of the header
+     */
+    private static String getFirstWord(String header) {
+        String content = header.substring(1).trim();
+        for (int i = 0; i < content.length(); i++) {
+            if (Character.isWhitespace(content.charAt(i))) {
+                return content.substring(0, i);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Returns the number of target proteins written.
+     *
+     * @return the number of target proteins written
+     */
+    public int getnTargets() {
+        return nTargets;
+    }
+
+    /**
+     * Returns the number of decoy proteins written.
+     *
+     * @return the number of decoy proteins written
+     */
+    public int getnDecoys() {
+        return nDecoys;
+    }
+}
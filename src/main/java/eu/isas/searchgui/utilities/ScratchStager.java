@@ -0,0 +1,340 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.Util;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages the files of a search on a fast local scratch folder. The input
+ * files are copied to the scratch folder ahead of their use, the output files
+ * are written on the scratch folder and moved to their final destination in
+ * the background while the processing continues.
+ *
+ * @author Marc Vaudel
+ */
+public class ScratchStager {
+
+    /**
+     * The name of the sub folder where the input files are staged.
+     */
+    public static final String INPUT_SUB_FOLDER = "input";
+    /**
+     * The name of the sub folder where the output files are staged.
+     */
+    public static final String OUTPUT_SUB_FOLDER = "output";
+    /**
+     * The number of input files copied ahead of their use.
+     */
+    public static final int LOOKAHEAD = 2;
+    /**
+     * The scratch folder.
+     */
+    private final File scratchFolder;
+    /**
+     * The folder where the input files are staged.
+     */
+    private final File inputFolder;
+    /**
+     * The folder where the output files are staged.
+     */
+    private final File outputFolder;
+    /**
+     * The waiting handler, can be null.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The pool copying the input files.
+     */
+    private final ExecutorService prefetchPool = Executors.newFixedThreadPool(LOOKAHEAD);
+    /**
+     * The thread moving the output files to their destination.
+     */
+    private final ExecutorService writeBackThread = Executors.newSingleThreadExecutor();
+    /**
+     * The input files to stage in the order of their use.
+     */
+    private final ArrayList<File> inputFiles = new ArrayList<File>();
+    /**
+     * The copies of the input files indexed by the index of the file.
+     */
+    private final HashMap<Integer, Future<File>> stagedInputFiles = new HashMap<Integer, Future<File>>();
+    /**
+     * The moves of the output files to their destination.
+     */
+    private final ArrayList<Future<Object>> writeBacks = new ArrayList<Future<Object>>();
+
+    /**
+     * Constructor. The staging folders are created in the given scratch
+     * folder, which is deleted when closing.
+     *
+     * @param scratchFolder the scratch folder
+     * @param waitingHandler the waiting handler, can be null
+     *
+     * @throws IOException thrown if the staging folders cannot be created
+     */
+    public ScratchStager(File scratchFolder, WaitingHandler waitingHandler) throws IOException {
+        this.scratchFolder = scratchFolder;
+        this.inputFolder = createFolder(new File(scratchFolder, INPUT_SUB_FOLDER));
+        this.outputFolder = createFolder(new File(scratchFolder, OUTPUT_SUB_FOLDER));
+        this.waitingHandler = waitingHandler;
+    }
+
+    /**
+     * Creates an empty folder.
+     *
+     * @param folder the folder to create
+     *
+     * @return the folder
+     *
+     * @throws IOException thrown if the folder cannot be created
+     */
+    private static File createFolder(File folder) throws IOException {
+        if (folder.exists()) {
+            Util.deleteDir(folder);
+        }
+        if (!folder.mkdirs()) {
+            throw new IOException("Impossible to create the scratch folder " + folder.getAbsolutePath() + ".");
+        }
+        return folder;
+    }
+
+    /**
+     * Returns the folder where the output files should be written before
+     * being moved to their destination.
+     *
+     * @return the folder where the output files should be staged
+     */
+    public File getOutputFolder() {
+        return outputFolder;
+    }
+
+    /**
+     * Sets the input files to stage in the order of their use and starts
+     * copying the first ones.
+     *
+     * @param files the input files
+     */
+    public synchronized void prefetch(ArrayList<File> files) {
+        inputFiles.clear();
+        inputFiles.addAll(files);
+        for (int i = 0; i < Math.min(LOOKAHEAD, files.size()); i++) {
+            submitCopy(i);
+        }
+    }
+
+    /**
+     * Starts copying the input file of the given index if not done already.
+     *
+     * @param index the index of the input file
+     */
+    private void submitCopy(int index) {
+        if (index < inputFiles.size() && !stagedInputFiles.containsKey(index)) {
+            final File file = inputFiles.get(index);
+            final File stagedFile = getStagedFile(index);
+            stagedInputFiles.put(index, prefetchPool.submit(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    if (!stagedFile.getParentFile().exists() && !stagedFile.getParentFile().mkdirs()) {
+                        throw new IOException("Impossible to create the folder " + stagedFile.getParent() + ".");
+                    }
+                    FileTransfer.link(file, stagedFile);
+                    return stagedFile;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Returns the location of the staged copy of the input file of the given
+     * index. Every file is staged in its own folder in order to keep its name.
+     *
+     * @param index the index of the input file
+     *
+     * @return the location of the staged copy
+     */
+    private File getStagedFile(int index) {
+        return new File(new File(inputFolder, Integer.toString(index)), inputFiles.get(index).getName());
+    }
+
+    /**
+     * Returns the staged copy of the input file of the given index, waits
+     * for the copy to complete if needed, and starts copying the next files.
+     * The file name is preserved. If the copy failed the original file is
+     * returned.
+     *
+     * @param index the index of the input file
+     *
+     * @return the staged copy of the input file
+     *
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting for the copy
+     */
+    public File getStagedInputFile(int index) throws InterruptedException {
+
+        Future<File> copy;
+        synchronized (this) {
+            for (int i = index; i <= index + LOOKAHEAD; i++) {
+                submitCopy(i);
+            }
+            copy = stagedInputFiles.get(index);
+        }
+
+        try {
+            return copy.get();
+        } catch (ExecutionException e) {
+            File originalFile = inputFiles.get(index);
+            if (waitingHandler != null) {
+                waitingHandler.appendReport("Could not stage " + originalFile.getName() + " on the scratch folder, using the original file.", true, true);
+            }
+            return originalFile;
+        }
+    }
+
+    /**
+     * Deletes the staged copy of the input file of the given index.
+     *
+     * @param index the index of the input file
+     */
+    public void releaseInputFile(int index) {
+        File stagedFolder = getStagedFile(index).getParentFile();
+        if (stagedFolder.exists()) {
+            Util.deleteDir(stagedFolder);
+        }
+    }
+
+    /**
+     * Moves a file from the scratch folder to its destination in the
+     * background.
+     *
+     * @param stagedFile the file on the scratch folder
+     * @param destinationFile the destination file
+     */
+    public synchronized void writeBack(final File stagedFile, final File destinationFile) {
+        writeBacks.add(writeBackThread.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                if (waitingHandler != null) {
+                    waitingHandler.appendReport("Writing " + destinationFile.getName() + " to " + destinationFile.getParent() + ".", true, true);
+                }
+                FileTransfer.move(stagedFile, destinationFile);
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Moves the content of a folder from the scratch folder to its
+     * destination in the background. Sub folders are created as needed.
+     *
+     * @param stagedFolder the folder on the scratch folder
+     * @param destinationFolder the destination folder
+     *
+     * @throws IOException thrown if a destination folder cannot be created
+     */
+    public void writeBackFolder(File stagedFolder, File destinationFolder) throws IOException {
+        File[] files = stagedFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                File destinationFile = new File(destinationFolder, file.getName());
+                if (file.isDirectory()) {
+                    if (!destinationFile.exists() && !destinationFile.mkdirs()) {
+                        throw new IOException("Impossible to create the folder " + destinationFile.getAbsolutePath() + ".");
+                    }
+                    writeBackFolder(file, destinationFile);
+                } else {
+                    writeBack(file, destinationFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the destination of a file moved by writeBackFolder.
+     *
+     * @param stagedFile the file on the scratch folder
+     * @param stagedFolder the folder on the scratch folder which was written
+     * back
+     * @param destinationFolder the destination folder
+     *
+     * @return the destination of the file, the file itself if it is not in
+     * the staged folder
+     */
+    public static File getDestinationFile(File stagedFile, File stagedFolder, File destinationFolder) {
+        String stagedFolderPath = stagedFolder.getAbsolutePath() + File.separator;
+        String stagedFilePath = stagedFile.getAbsolutePath();
+        if (!stagedFilePath.startsWith(stagedFolderPath)) {
+            return stagedFile;
+        }
+        return new File(destinationFolder, stagedFilePath.substring(stagedFolderPath.length()));
+    }
+
+    /**
+     * Waits for all files to be moved to their destination.
+     *
+     * @throws IOException thrown if a file could not be moved
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting
+     */
+    public void waitForWriteBack() throws IOException, InterruptedException {
+        ArrayList<Future<Object>> currentWriteBacks;
+        synchronized (this) {
+            currentWriteBacks = new ArrayList<Future<Object>>(writeBacks);
+        }
+        for (Future<Object> writeBack : currentWriteBacks) {
+            try {
+                writeBack.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("An error occurred while writing the output files.", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Stops the staging and deletes the staged files. Files being moved to
+     * their destination are completed first.
+     *
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting for the threads to stop
+     */
+    public void close() throws InterruptedException {
+        prefetchPool.shutdownNow();
+        writeBackThread.shutdown();
+        prefetchPool.awaitTermination(1, TimeUnit.MINUTES);
+        writeBackThread.awaitTermination(1, TimeUnit.HOURS);
+        Util.deleteDir(scratchFolder);
+    }
+
+    /**
+     * Stops the staging without completing the files being moved and deletes
+     * the staged files in the background.
+     */
+    public void cancel() {
+        prefetchPool.shutdownNow();
+        writeBackThread.shutdownNow();
+        Thread cleaner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prefetchPool.awaitTermination(1, TimeUnit.MINUTES);
+                    writeBackThread.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    // delete anyway
+                }
+                Util.deleteDir(scratchFolder);
+            }
+        }, "SearchGUI scratch cleanup");
+        cleaner.start();
+    }
+}
@@ -0,0 +1,474 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.experiment.biology.Enzyme;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
+import eu.isas.searchgui.preferences.EngineResourceSettings;
+import eu.isas.searchgui.preferences.EngineScalingHistory;
+import eu.isas.searchgui.processbuilders.EngineResourceProfile;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Estimates the time and memory needed by every search engine on every
+ * spectrum file before the search, and plans the order of the files. The time
+ * is derived from the throughput measured in past runs when available,
+ * otherwise from the number of candidate peptides estimated from the database,
+ * the enzyme, the missed cleavages and the variable modifications. The memory
+ * is the estimate of the engine resource profile.
+ *
+ * @author Marc Vaudel
+ */
+public class SearchPlanner {
+
+    /**
+     * The search engines as named in the engine resource settings in the order
+     * they are run on every spectrum file.
+     */
+    public static final String[] ENGINES = {"comet", "tide", "xtandem", "myrimatch", "ms_amanda", "msgf", "omssa", "andromeda"};
+    /**
+     * The share of the database file made of residues, the rest being the
+     * headers.
+     */
+    public static final double RESIDUE_SHARE = 0.8;
+    /**
+     * The average length of the peptides obtained with a specific enzyme.
+     */
+    public static final int AVERAGE_PEPTIDE_LENGTH = 10;
+    /**
+     * The number of peptides obtained per specific peptide with a
+     * semi-specific enzyme.
+     */
+    public static final int SEMI_SPECIFIC_FACTOR = 10;
+    /**
+     * The number of peptides starting at every residue with an unspecific
+     * enzyme.
+     */
+    public static final int UNSPECIFIC_PEPTIDES_PER_RESIDUE = 25;
+    /**
+     * The number of spectra times candidate peptides scored per second and
+     * thread when the engine was never measured.
+     */
+    public static final double DEFAULT_SCORING_RATE = 3e8;
+    /**
+     * The search parameters.
+     */
+    private final SearchParameters searchParameters;
+    /**
+     * The engine resource settings.
+     */
+    private final EngineResourceSettings engineResourceSettings;
+    /**
+     * The throughput of the engines in past runs, can be null.
+     */
+    private final EngineScalingHistory engineScalingHistory;
+    /**
+     * The number of threads requested for the search.
+     */
+    private final int nThreads;
+
+    /**
+     * Constructor.
+     *
+     * @param searchParameters the search parameters
+     * @param engineResourceSettings the engine resource settings
+     * @param engineScalingHistory the throughput of the engines in past runs,
+     * can be null
+     * @param nThreads the number of threads requested for the search
+     */
+    public SearchPlanner(SearchParameters searchParameters, EngineResourceSettings engineResourceSettings, EngineScalingHistory engineScalingHistory, int nThreads) {
+        this.searchParameters = searchParameters;
+        this.engineResourceSettings = engineResourceSettings;
+        this.engineScalingHistory = engineScalingHistory;
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Returns the estimated number of candidate peptides of the database.
+     *
+     * @return the estimated number of candidate peptides
+     */
+    public long getnCandidatePeptides() {
+
+        double residues = RESIDUE_SHARE * getDatabaseSize();
+        Enzyme enzyme = searchParameters.getEnzyme();
+        Integer missedCleavages = searchParameters.getnMissedCleavages();
+
+        double peptides;
+        if (enzyme != null && enzyme.isUnspecific()) {
+            peptides = residues * UNSPECIFIC_PEPTIDES_PER_RESIDUE;
+        } else {
+            peptides = residues / AVERAGE_PEPTIDE_LENGTH * (1 + (missedCleavages == null ? 0 : missedCleavages));
+            if (enzyme != null && enzyme.isSemiSpecific()) {
+                peptides *= SEMI_SPECIFIC_FACTOR;
+            }
+        }
+
+        peptides *= 1 + searchParameters.getPtmSettings().getVariableModifications().size();
+
+        return (long) peptides;
+    }
+
+    /**
+     * Estimates every search of the given spectrum files with the given
+     * engines.
+     *
+     * @param spectrumFiles the spectrum files
+     * @param engines the engines as named in the engine resource settings
+     *
+     * @return the estimates of the searches of every file indexed by file
+     * name, in the order of the engines
+     */
+    public HashMap<String, ArrayList<Job>> getJobs(ArrayList<File> spectrumFiles, ArrayList<String> engines) {
+
+        long databaseSize = getDatabaseSize();
+        double databaseMb = Math.max(1.0, databaseSize / 1048576.0);
+        long nCandidates = getnCandidatePeptides();
+
+        HashMap<String, ArrayList<Job>> jobs = new HashMap<String, ArrayList<Job>>(spectrumFiles.size());
+
+        for (File spectrumFile : spectrumFiles) {
+
+            long nSpectra = getnSpectra(spectrumFile);
+            ArrayList<Job> fileJobs = new ArrayList<Job>(engines.size());
+
+            for (String engine : engines) {
+
+                EngineResourceProfile profile = EngineResourceProfile.getProfile(engine, engineResourceSettings, engineScalingHistory, nThreads, nSpectra, databaseSize);
+                Double throughput = engineScalingHistory == null ? null : engineScalingHistory.getThroughput(engine, profile.getnThreads());
+
+                Job job = new Job(spectrumFile.getName(), engine, nSpectra, profile);
+                if (throughput != null && throughput > 0) {
+                    job.time = (long) (1000 * nSpectra * databaseMb / throughput);
+                    job.fromHistory = true;
+                } else {
+                    job.time = (long) (1000 * nSpectra * (double) nCandidates / (DEFAULT_SCORING_RATE * profile.getnThreads()));
+                }
+                fileJobs.add(job);
+            }
+
+            jobs.put(spectrumFile.getName(), fileJobs);
+        }
+
+        return jobs;
+    }
+
+    /**
+     * Returns the spectrum files in the order they should be searched: the
+     * files expected to take longest first.
+     *
+     * @param spectrumFiles the spectrum files
+     * @param engines the engines as named in the engine resource settings
+     *
+     * @return the spectrum files in the planned order
+     */
+    public ArrayList<File> getExecutionOrder(ArrayList<File> spectrumFiles, ArrayList<String> engines) {
+        return getExecutionOrder(spectrumFiles, getJobs(spectrumFiles, engines));
+    }
+
+    /**
+     * Returns the spectrum files sorted by decreasing estimated search time.
+     *
+     * @param spectrumFiles the spectrum files
+     * @param jobs the estimates of the searches of every file indexed by file
+     * name
+     *
+     * @return the spectrum files in the planned order
+     */
+    private ArrayList<File> getExecutionOrder(ArrayList<File> spectrumFiles, final HashMap<String, ArrayList<Job>> jobs) {
+        ArrayList<File> order = new ArrayList<File>(spectrumFiles);
+        Collections.sort(order, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.valueOf(getTime(jobs.get(o2.getName()))).compareTo(getTime(jobs.get(o1.getName())));
+            }
+        });
+        return order;
+    }
+
+    /**
+     * Returns a table of the estimates of every search in the planned order,
+     * followed by the total time and the peak memory.
+     *
+     * @param spectrumFiles the spectrum files
+     * @param engines the engines as named in the engine resource settings
+     *
+     * @return a table of the estimates
+     */
+    public String getReport(ArrayList<File> spectrumFiles, ArrayList<String> engines) {
+
+        StringBuilder report = new StringBuilder();
+        String lineSeparator = System.getProperty("line.separator");
+
+        Enzyme enzyme = searchParameters.getEnzyme();
+        report.append("Database: ").append(searchParameters.getFastaFile().getName())
+                .append(String.format(Locale.US, " (%.1f MB), about %,d candidate peptides with ", getDatabaseSize() / 1048576.0, getnCandidatePeptides()))
+                .append(enzyme == null ? "no enzyme" : enzyme.getName()).append(", ")
+                .append(searchParameters.getnMissedCleavages()).append(" missed cleavages and ")
+                .append(searchParameters.getPtmSettings().getVariableModifications().size()).append(" variable modifications.").append(lineSeparator);
+
+        if (spectrumFiles.isEmpty() || engines.isEmpty()) {
+            report.append("No search to estimate.").append(lineSeparator);
+            return report.toString();
+        }
+
+        HashMap<String, ArrayList<Job>> jobs = getJobs(spectrumFiles, engines);
+        long totalTime = 0;
+        long peakMemory = 0;
+
+        report.append(lineSeparator);
+        report.append(String.format(Locale.US, "%-6s%-32s%10s  %-12s%8s%12s%12s  %s", "Order", "Spectrum file", "Spectra", "Engine", "Threads", "Time", "Memory (MB)", "Estimated from")).append(lineSeparator);
+
+        int order = 0;
+        for (File spectrumFile : getExecutionOrder(spectrumFiles, jobs)) {
+            order++;
+            for (Job job : jobs.get(spectrumFile.getName())) {
+                report.append(String.format(Locale.US, "%-6d%-32s%10d  %-12s%8d%12s%12d  %s", order, job.getSpectrumFileName(), job.getnSpectra(),
+                        getEngineName(job.getEngine()), job.getProfile().getnThreads(), formatTime(job.getTime()),
+                        job.getMemory() / (1024 * 1024), job.isFromHistory() ? "past runs" : "database digest")).append(lineSeparator);
+                totalTime += job.getTime();
+                peakMemory = Math.max(peakMemory, job.getMemory());
+            }
+        }
+
+        report.append(lineSeparator);
+        report.append("Total search time about ").append(formatTime(totalTime)).append(", peak memory about ")
+                .append(peakMemory / (1024 * 1024)).append(" MB.").append(lineSeparator);
+
+        return report.toString();
+    }
+
+    /**
+     * Returns the number of spectra of a spectrum file. Files already loaded
+     * in the spectrum factory are not read again, other files are only read,
+     * they are neither indexed nor decompressed on disk.
+     *
+     * @param spectrumFile the spectrum file
+     *
+     * @return the number of spectra, 0 if the file cannot be read
+     */
+    private static long getnSpectra(File spectrumFile) {
+        SpectrumFactory spectrumFactory = SpectrumFactory.getInstance();
+        try {
+            return spectrumFactory.getNSpectra(spectrumFile.getName());
+        } catch (Exception e) {
+            // file not loaded
+        }
+        try {
+            InputStream inputStream = new FileInputStream(spectrumFile);
+            if (GzipUtils.isGzipped(spectrumFile)) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
+            try {
+                long nSpectra = 0;
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith("BEGIN IONS")) {
+                        nSpectra++;
+                    }
+                }
+                return nSpectra;
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the size of the protein database, once decompressed for gzipped
+     * files.
+     *
+     * @return the size of the protein database in bytes
+     */
+    private long getDatabaseSize() {
+        File fastaFile = searchParameters.getFastaFile();
+        if (GzipUtils.isGzipped(fastaFile)) {
+            try {
+                return GzipUtils.getUncompressedSize(fastaFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return fastaFile.length();
+    }
+
+    /**
+     * Returns the total time of the given searches in milliseconds.
+     *
+     * @param jobs the searches
+     *
+     * @return the total time
+     */
+    private static long getTime(ArrayList<Job> jobs) {
+        long time = 0;
+        for (Job job : jobs) {
+            time += job.getTime();
+        }
+        return time;
+    }
+
+    /**
+     * Formats a duration as hours, minutes and seconds.
+     *
+     * @param time the duration in milliseconds
+     *
+     * @return the formatted duration
+     */
+    public static String formatTime(long time) {
+        long seconds = time / 1000;
+        return String.format(Locale.US, "%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    /**
+     * Returns the name of an engine as displayed to the user.
+     *
+     * @param engine the engine as named in the engine resource settings
+     *
+     * @return the name of the engine
+     */
+    public static String getEngineName(String engine) {
+        if (engine.equals("xtandem")) {
+            return Advocate.xtandem.getName();
+        } else if (engine.equals("myrimatch")) {
+            return Advocate.myriMatch.getName();
+        } else if (engine.equals("ms_amanda")) {
+            return Advocate.msAmanda.getName();
+        } else if (engine.equals("msgf")) {
+            return Advocate.msgf.getName();
+        } else if (engine.equals("omssa")) {
+            return Advocate.omssa.getName();
+        } else if (engine.equals("comet")) {
+            return Advocate.comet.getName();
+        } else if (engine.equals("tide")) {
+            return Advocate.tide.getName();
+        } else if (engine.equals("andromeda")) {
+            return Advocate.andromeda.getName();
+        }
+        return engine;
+    }
+
+    /**
+     * The estimate of the search of a spectrum file by an engine.
+     */
+    public static class Job {
+
+        /**
+         * The name of the spectrum file.
+         */
+        private final String spectrumFileName;
+        /**
+         * The engine as named in the engine resource settings.
+         */
+        private final String engine;
+        /**
+         * The number of spectra in the file.
+         */
+        private final long nSpectra;
+        /**
+         * The resources given to the engine.
+         */
+        private final EngineResourceProfile profile;
+        /**
+         * The estimated time in milliseconds.
+         */
+        private long time;
+        /**
+         * Indicates whether the time was estimated from past runs.
+         */
+        private boolean fromHistory = false;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumFileName the name of the spectrum file
+         * @param engine the engine as named in the engine resource settings
+         * @param nSpectra the number of spectra in the file
+         * @param profile the resources given to the engine
+         */
+        private Job(String spectrumFileName, String engine, long nSpectra, EngineResourceProfile profile) {
+            this.spectrumFileName = spectrumFileName;
+            this.engine = engine;
+            this.nSpectra = nSpectra;
+            this.profile = profile;
+        }
+
+        /**
+         * Returns the name of the spectrum file.
+         *
+         * @return the name of the spectrum file
+         */
+        public String getSpectrumFileName() {
+            return spectrumFileName;
+        }
+
+        /**
+         * Returns the engine as named in the engine resource settings.
+         *
+         * @return the engine
+         */
+        public String getEngine() {
+            return engine;
+        }
+
+        /**
+         * Returns the number of spectra in the file.
+         *
+         * @return the number of spectra
+         */
+        public long getnSpectra() {
+            return nSpectra;
+        }
+
+        /**
+         * Returns the resources given to the engine.
+         *
+         * @return the resources given to the engine
+         */
+        public EngineResourceProfile getProfile() {
+            return profile;
+        }
+
+        /**
+         * Returns the estimated time in milliseconds.
+         *
+         * @return the estimated time
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the estimated memory in bytes.
+         *
+         * @return the estimated memory
+         */
+        public long getMemory() {
+            return profile.getEstimatedMemory();
+        }
+
+        /**
+         * Indicates whether the time was estimated from past runs.
+         *
+         * @return a boolean indicating whether the time was estimated from
+         * past runs
+         */
+        public boolean isFromHistory() {
+            return fromHistory;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.processbuilders.SearchGUIProcessBuilder;
+
+/**
+ * Follows the progress of the searches in number of spectra searched. The
+ * progress of the search engines is aggregated into a search rate and an
+ * estimation of the remaining time which are displayed on the waiting
+ * handler.
+ *
+ * @author Marc Vaudel
+ */
+public class SearchProgress implements SearchGUIProcessBuilder.ProgressListener {
+
+    /**
+     * The minimal time between two updates of the waiting text in
+     * milliseconds.
+     */
+    public static final long DISPLAY_INTERVAL = 2000;
+    /**
+     * The minimal time between two progress reports in command line mode in
+     * milliseconds.
+     */
+    public static final long REPORT_INTERVAL = 60000;
+    /**
+     * The waiting handler.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * If true the progress is reported instead of displayed in the waiting
+     * text.
+     */
+    private final boolean commandLine;
+    /**
+     * The total number of spectra to search, counted once per search engine.
+     */
+    private long totalSpectra;
+    /**
+     * The number of spectra searched by the completed processes.
+     */
+    private long searchedSpectra = 0;
+    /**
+     * The number of spectra in the file currently searched.
+     */
+    private long currentSpectra = 0;
+    /**
+     * The progress of the current process.
+     */
+    private double currentProgress = 0;
+    /**
+     * The text describing the file currently searched.
+     */
+    private String currentText = "";
+    /**
+     * The time when the first search was started, -1 if not started.
+     */
+    private long startTime = -1;
+    /**
+     * The time of the last display.
+     */
+    private long lastDisplay = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param waitingHandler the waiting handler
+     * @param totalSpectra the total number of spectra to search, counted once
+     * per search engine
+     * @param commandLine if true the progress is reported instead of
+     * displayed in the waiting text
+     */
+    public SearchProgress(WaitingHandler waitingHandler, long totalSpectra, boolean commandLine) {
+        this.waitingHandler = waitingHandler;
+        this.totalSpectra = totalSpectra;
+        this.commandLine = commandLine;
+    }
+
+    /**
+     * Sets the file searched by the next processes.
+     *
+     * @param text the text describing the file
+     * @param nSpectra the number of spectra in the file
+     */
+    public synchronized void setCurrentFile(String text, long nSpectra) {
+        currentText = text;
+        currentSpectra = nSpectra;
+        currentProgress = 0;
+    }
+
+    /**
+     * Reduces the number of spectra of the current file searched by the
+     * remaining processes, e.g. when the spectra identified by the first
+     * engines of a cascade search are not searched by the others.
+     *
+     * @param nSpectra the number of spectra searched by the remaining
+     * processes
+     * @param nProcesses the number of remaining processes on the current file
+     */
+    public synchronized void reduceCurrentFile(long nSpectra, int nProcesses) {
+        totalSpectra -= nProcesses * (currentSpectra - nSpectra);
+        currentSpectra = nSpectra;
+    }
+
+    @Override
+    public synchronized void processStarted(SearchGUIProcessBuilder process) {
+        if (startTime == -1) {
+            startTime = System.currentTimeMillis();
+        }
+        currentProgress = 0;
+    }
+
+    @Override
+    public synchronized void progress(SearchGUIProcessBuilder process, double progress) {
+        currentProgress = progress;
+        display(false);
+    }
+
+    @Override
+    public synchronized void processEnded(SearchGUIProcessBuilder process) {
+        searchedSpectra += currentSpectra;
+        currentProgress = 0;
+        display(true);
+    }
+
+    /**
+     * Returns the number of spectra searched.
+     *
+     * @return the number of spectra searched
+     */
+    public synchronized long getSearchedSpectra() {
+        return searchedSpectra + (long) (currentProgress * currentSpectra);
+    }
+
+    /**
+     * Returns the number of spectra searched per second since the first
+     * search was started.
+     *
+     * @return the number of spectra searched per second, 0 if not started
+     */
+    public synchronized double getRate() {
+        if (startTime == -1) {
+            return 0;
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return 1000.0 * getSearchedSpectra() / elapsed;
+    }
+
+    /**
+     * Returns the estimated remaining search time in milliseconds.
+     *
+     * @return the estimated remaining search time, -1 if not available
+     */
+    public synchronized long getRemainingTime() {
+        double rate = getRate();
+        if (rate <= 0) {
+            return -1;
+        }
+        long remainingSpectra = Math.max(0, totalSpectra - getSearchedSpectra());
+        return (long) (1000 * remainingSpectra / rate);
+    }
+
+    /**
+     * Displays the rate and the remaining time.
+     *
+     * @param force if true the display is updated regardless of the time
+     * since the last update
+     */
+    private void display(boolean force) {
+
+        long now = System.currentTimeMillis();
+        long interval = commandLine ? REPORT_INTERVAL : DISPLAY_INTERVAL;
+        if (!force && now - lastDisplay < interval || waitingHandler.isRunCanceled()) {
+            return;
+        }
+        long remainingTime = getRemainingTime();
+        if (remainingTime < 0) {
+            return;
+        }
+        lastDisplay = now;
+
+        String progress = Math.round(getRate()) + " spectra/s, " + formatTime(remainingTime) + " remaining";
+
+        if (commandLine) {
+            if (!force) {
+                waitingHandler.appendReport("Searched " + getSearchedSpectra() + " of " + totalSpectra + " spectra, " + progress + ".", true, true);
+            }
+        } else {
+            waitingHandler.setWaitingText(currentText + " - " + progress);
+        }
+    }
+
+    /**
+     * Formats a time in milliseconds for display, e.g. 2h 05m.
+     *
+     * @param time the time in milliseconds
+     *
+     * @return the formatted time
+     */
+    public static String formatTime(long time) {
+        long seconds = time / 1000;
+        long hours = seconds / 3600;
+        long minutes = (seconds % 3600) / 60;
+        if (hours > 0) {
+            return hours + "h " + String.format("%02d", minutes) + "m";
+        }
+        if (minutes > 0) {
+            return minutes + "m " + String.format("%02d", seconds % 60) + "s";
+        }
+        return seconds + "s";
+    }
+}
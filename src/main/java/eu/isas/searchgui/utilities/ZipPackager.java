@@ -0,0 +1,328 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packages files into one or more zip files in the background. The files are
+ * compressed as soon as they are added, so that the packaging can overlap with
+ * the rest of the processing. The entries of every zip file are written in
+ * the order they are added by a dedicated thread, and compressed in parallel
+ * using a pool shared by all zip files. Entries already added to a zip file
+ * are skipped.
+ *
+ * @author Marc Vaudel
+ */
+public class ZipPackager {
+
+    /**
+     * The number of threads used to compress the entries.
+     */
+    private final int nThreads;
+    /**
+     * The pool used to compress the entries.
+     */
+    private final ExecutorService deflatePool;
+    /**
+     * The waiting handler.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The progress of the packaging.
+     */
+    private final ParallelZipWriter.Progress progress;
+    /**
+     * The zip files being written.
+     */
+    private final LinkedHashMap<File, Archive> archives = new LinkedHashMap<File, Archive>();
+    /**
+     * The total size of the files added.
+     */
+    private long totalSize = 0;
+    /**
+     * Listener notified when a zip file is completed, can be null.
+     */
+    private ArchiveListener archiveListener = null;
+
+    /**
+     * Constructor.
+     *
+     * @param nThreads the number of threads used to compress the entries
+     * @param waitingHandler the waiting handler
+     */
+    public ZipPackager(int nThreads, WaitingHandler waitingHandler) {
+        this.nThreads = Math.max(1, nThreads);
+        this.deflatePool = Executors.newFixedThreadPool(this.nThreads);
+        this.waitingHandler = waitingHandler;
+        this.progress = new ParallelZipWriter.Progress(waitingHandler, 0);
+    }
+
+    /**
+     * Sets a listener notified every time a zip file is completed.
+     *
+     * @param archiveListener the listener, null for none
+     */
+    public synchronized void setArchiveListener(ArchiveListener archiveListener) {
+        this.archiveListener = archiveListener;
+    }
+
+    /**
+     * Adds a folder to a zip file. The zip file is created if needed.
+     *
+     * @param zipFile the zip file
+     * @param folderName the name of the folder
+     *
+     * @throws IOException thrown if the zip file cannot be created
+     */
+    public synchronized void addFolder(File zipFile, final String folderName) throws IOException {
+        final Archive archive = getArchive(zipFile);
+        if (archive.entryNames.add(folderName + "/")) {
+            archive.tasks.add(archive.executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    archive.writer.addFolder(folderName);
+                    return null;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Adds a file to a zip file. The file is compressed in the background. The
+     * zip file is created if needed.
+     *
+     * @param zipFile the zip file
+     * @param folderName the folder where to put the file in the zip file, null
+     * for the root
+     * @param file the file to add
+     * @param level the deflate compression level, files added with no
+     * compression are stored
+     *
+     * @throws IOException thrown if the zip file cannot be created
+     */
+    public synchronized void addFile(File zipFile, final String folderName, final File file, final int level) throws IOException {
+        final Archive archive = getArchive(zipFile);
+        String entryName = folderName == null ? file.getName() : folderName + "/" + file.getName();
+        if (archive.entryNames.add(entryName)) {
+            totalSize += file.length();
+            archive.tasks.add(archive.executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    if (!waitingHandler.isRunCanceled()) {
+                        archive.writer.addFile(folderName, file, level);
+                    }
+                    return null;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Returns the archive corresponding to the given zip file, creates it if
+     * needed.
+     *
+     * @param zipFile the zip file
+     *
+     * @return the archive
+     *
+     * @throws IOException thrown if the zip file cannot be created
+     */
+    private Archive getArchive(File zipFile) throws IOException {
+        Archive archive = archives.get(zipFile);
+        if (archive == null) {
+            if (zipFile.exists()) {
+                zipFile.delete();
+            }
+            archive = new Archive(zipFile, new ParallelZipWriter(zipFile, deflatePool, nThreads, progress));
+            archives.put(zipFile, archive);
+        }
+        return archive;
+    }
+
+    /**
+     * Waits for all files to be compressed and closes the zip files. The zip
+     * files are closed in the order they were created, and the listener, if
+     * any, is notified as soon as each of them is completed. From then on the
+     * progress is displayed on the secondary progress counter of the waiting
+     * handler.
+     *
+     * @throws IOException thrown if an error occurred while writing a zip file
+     */
+    public void finish() throws IOException {
+
+        ArrayList<Archive> currentArchives;
+        ArchiveListener listener;
+        synchronized (this) {
+            progress.setTotal(totalSize);
+            currentArchives = new ArrayList<Archive>(archives.values());
+            listener = archiveListener;
+        }
+
+        try {
+            for (Archive archive : currentArchives) {
+                for (Future<Object> task : archive.tasks) {
+                    try {
+                        task.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw new IOException("An error occurred while writing " + archive.zipFile.getName() + ".", e.getCause());
+                    }
+                }
+                close(archive);
+                if (listener != null && !waitingHandler.isRunCanceled()) {
+                    listener.archiveCompleted(archive.zipFile);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while writing the zip files.", e);
+        } finally {
+            close(currentArchives);
+            synchronized (this) {
+                archives.clear();
+            }
+        }
+    }
+
+    /**
+     * Stops the packaging and deletes the zip files created. Zip files
+     * completed by finish() are kept.
+     */
+    public void cancel() {
+
+        ArrayList<File> zipFiles;
+        ArrayList<Archive> currentArchives;
+        synchronized (this) {
+            zipFiles = new ArrayList<File>(archives.keySet());
+            currentArchives = new ArrayList<Archive>(archives.values());
+            for (Archive archive : currentArchives) {
+                archive.executor.shutdownNow();
+            }
+        }
+
+        try {
+            close(currentArchives);
+        } catch (IOException e) {
+            // the zip files are deleted anyway
+        }
+
+        for (File zipFile : zipFiles) {
+            if (zipFile.exists()) {
+                zipFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Stops the threads and closes the given zip files.
+     *
+     * @param currentArchives the zip files to close
+     *
+     * @throws IOException thrown if an error occurred while closing a zip file
+     */
+    private void close(ArrayList<Archive> currentArchives) throws IOException {
+        IOException exception = null;
+        for (Archive archive : currentArchives) {
+            try {
+                close(archive);
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        deflatePool.shutdownNow();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Stops the thread and closes the given zip file. Closing a zip file
+     * twice has no effect.
+     *
+     * @param archive the zip file to close
+     *
+     * @throws IOException thrown if an error occurred while closing the zip
+     * file
+     */
+    private void close(Archive archive) throws IOException {
+        synchronized (archive) {
+            if (archive.closed) {
+                return;
+            }
+            archive.closed = true;
+        }
+        archive.executor.shutdown();
+        try {
+            archive.executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            archive.executor.shutdownNow();
+        }
+        archive.writer.close();
+    }
+
+    /**
+     * Interface for the listeners notified when a zip file is completed.
+     */
+    public interface ArchiveListener {
+
+        /**
+         * Called when a zip file is completed and can be used.
+         *
+         * @param zipFile the zip file
+         */
+        public void archiveCompleted(File zipFile);
+    }
+
+    /**
+     * A zip file being written.
+     */
+    private static class Archive {
+
+        /**
+         * The zip file.
+         */
+        private final File zipFile;
+        /**
+         * The writer.
+         */
+        private final ParallelZipWriter writer;
+        /**
+         * The thread writing the entries.
+         */
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+        /**
+         * The names of the entries added.
+         */
+        private final HashSet<String> entryNames = new HashSet<String>();
+        /**
+         * The writing tasks.
+         */
+        private final ArrayList<Future<Object>> tasks = new ArrayList<Future<Object>>();
+        /**
+         * True if the zip file was closed.
+         */
+        private boolean closed = false;
+
+        /**
+         * Constructor.
+         *
+         * @param zipFile the zip file
+         * @param writer the writer
+         */
+        public Archive(File zipFile, ParallelZipWriter writer) {
+            this.zipFile = zipFile;
+            this.writer = writer;
+        }
+    }
+}
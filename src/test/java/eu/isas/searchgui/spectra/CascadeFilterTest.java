@@ -0,0 +1,185 @@
+package eu.isas.searchgui.spectra;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeMap;
+import junit.framework.TestCase;
+
+/**
+ * Tests the false discovery rate cut-off of the CascadeFilter on a fixture of
+ * Tide results.
+ *
+ * @author Marc Vaudel
+ */
+public class CascadeFilterTest extends TestCase {
+
+    /**
+     * Tide results sorted by decreasing score: targets for the scans 1, 2, 3,
+     * 5, 6 and 8, decoys for the scans 4 and 7. The second ranked hit of scan
+     * 8 is ignored.
+     */
+    private static final String[] TIDE_RESULTS = {
+        "scan\tcharge\txcorr score\txcorr rank\tprotein id",
+        "1\t2\t5.0\t1\tP1(12)",
+        "2\t2\t4.5\t1\tP2(3),P9(40)",
+        "3\t2\t4.0\t1\tP3(7)",
+        "4\t2\t3.5\t1\tdecoy_P4(1)",
+        "5\t2\t3.0\t1\tP5(2)",
+        "6\t2\t2.5\t1\tP6(5)",
+        "7\t2\t2.0\t1\tdecoy_P7(9)",
+        "8\t2\t6.0\t2\tdecoy_P8(3)",
+        "8\t2\t1.5\t1\tP8(3)"
+    };
+    /**
+     * The temporary files written by the test.
+     */
+    private final ArrayList<File> files = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * At 25% FDR the hits are accepted down to scan 6, where 1 decoy is found
+     * for 5 targets. Scan 8 would need 2 decoys for 6 targets.
+     *
+     * @throws Exception thrown if an error occurred while reading the results
+     */
+    public void testFdrCutOff() throws Exception {
+
+        CascadeFilter cascadeFilter = new CascadeFilter(0.25, null);
+        cascadeFilter.addTideResults(writeFile(".txt", TIDE_RESULTS));
+
+        assertEquals(2, cascadeFilter.getnDecoys());
+        assertEquals(toSet(1, 2, 3, 5, 6), cascadeFilter.getIdentifiedSpectra());
+
+        HashSet<String> expectedProteins = new HashSet<String>();
+        for (String protein : new String[]{"P1", "P2", "P9", "P3", "P5", "P6"}) {
+            expectedProteins.add(protein);
+        }
+        assertEquals(expectedProteins, cascadeFilter.getIdentifiedProteins());
+    }
+
+    /**
+     * At 10% FDR the first decoy stops the acceptance.
+     *
+     * @throws Exception thrown if an error occurred while reading the results
+     */
+    public void testStrictFdrCutOff() throws Exception {
+
+        CascadeFilter cascadeFilter = new CascadeFilter(0.1, null);
+        cascadeFilter.addTideResults(writeFile(".txt", TIDE_RESULTS));
+
+        assertEquals(toSet(1, 2, 3), cascadeFilter.getIdentifiedSpectra());
+    }
+
+    /**
+     * Without decoy hit the false discovery rate cannot be estimated and no
+     * spectrum is identified.
+     *
+     * @throws Exception thrown if an error occurred while reading the results
+     */
+    public void testNoDecoy() throws Exception {
+
+        CascadeFilter cascadeFilter = new CascadeFilter(0.25, null);
+        cascadeFilter.addTideResults(writeFile(".txt", new String[]{TIDE_RESULTS[0], TIDE_RESULTS[1], TIDE_RESULTS[2]}));
+
+        assertEquals(0, cascadeFilter.getnDecoys());
+        assertTrue(cascadeFilter.getIdentifiedSpectra().isEmpty());
+    }
+
+    /**
+     * The spectra identified are removed from the peak list and reported by
+     * title.
+     *
+     * @throws Exception thrown if an error occurred while reading or writing
+     */
+    public void testWriteUnidentifiedSpectra() throws Exception {
+
+        CascadeFilter cascadeFilter = new CascadeFilter(0.25, null);
+        cascadeFilter.addTideResults(writeFile(".txt", TIDE_RESULTS));
+
+        ArrayList<String> mgfLines = new ArrayList<String>();
+        for (int i = 1; i <= 8; i++) {
+            mgfLines.add("BEGIN IONS");
+            mgfLines.add("TITLE=spectrum " + i);
+            mgfLines.add("PEPMASS=500.0");
+            mgfLines.add("100.0 10.0");
+            mgfLines.add("END IONS");
+        }
+        File mgfFile = writeFile(".mgf", mgfLines.toArray(new String[mgfLines.size()]));
+        File reducedFile = writeFile(".mgf", new String[0]);
+
+        TreeMap<Integer, String> identifiedTitles = cascadeFilter.writeUnidentifiedSpectra(mgfFile, reducedFile, null);
+
+        assertEquals(toSet(1, 2, 3, 5, 6), new HashSet<Integer>(identifiedTitles.keySet()));
+        assertEquals("spectrum 5", identifiedTitles.get(5));
+
+        ArrayList<String> titles = new ArrayList<String>();
+        BufferedReader br = new BufferedReader(new FileReader(reducedFile));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("TITLE=")) {
+                    titles.add(line.substring(6));
+                }
+            }
+        } finally {
+            br.close();
+        }
+        ArrayList<String> expectedTitles = new ArrayList<String>();
+        expectedTitles.add("spectrum 4");
+        expectedTitles.add("spectrum 7");
+        expectedTitles.add("spectrum 8");
+        assertEquals(expectedTitles, titles);
+    }
+
+    /**
+     * Returns the given spectrum indexes as a set.
+     *
+     * @param indexes the spectrum indexes
+     *
+     * @return the spectrum indexes as a set
+     */
+    private static HashSet<Integer> toSet(int... indexes) {
+        HashSet<Integer> result = new HashSet<Integer>();
+        for (int index : indexes) {
+            result.add(index);
+        }
+        return result;
+    }
+
+    /**
+     * Writes a temporary file.
+     *
+     * @param suffix the suffix of the file
+     * @param lines the lines of the file
+     *
+     * @return the file
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    private File writeFile(String suffix, String[] lines) throws IOException {
+        File file = File.createTempFile("cascade_filter", suffix);
+        files.add(file);
+        BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+        try {
+            for (String line : lines) {
+                bw.write(line);
+                bw.newLine();
+            }
+        } finally {
+            bw.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,147 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import junit.framework.TestCase;
+
+/**
+ * Tests the ParallelZipWriter by reading the archives back with the zip
+ * implementation of the JDK.
+ *
+ * @author Marc Vaudel
+ */
+public class ParallelZipWriterTest extends TestCase {
+
+    /**
+     * The folder where the test files are written.
+     */
+    private File folder;
+
+    @Override
+    protected void setUp() throws Exception {
+        folder = File.createTempFile("parallel_zip", "");
+        folder.delete();
+        folder.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    /**
+     * Writes an archive with deflated, stored, empty and multi-block entries
+     * and a folder, and checks that every entry is read back identical.
+     *
+     * @throws Exception thrown if an error occurred while writing or reading
+     */
+    public void testRoundTrip() throws Exception {
+
+        Random random = new Random(42);
+        byte[] text = new byte[3 * ParallelZipWriter.BLOCK_SIZE + 1234];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('A' + random.nextInt(4));
+        }
+        byte[] binary = new byte[ParallelZipWriter.BLOCK_SIZE / 2];
+        random.nextBytes(binary);
+
+        File textFile = writeFile("spectra.mgf", text);
+        File binaryFile = writeFile("data.bin", binary);
+        File emptyFile = writeFile("empty.txt", new byte[0]);
+        File zipFile = new File(folder, "archive.zip");
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ParallelZipWriter writer = new ParallelZipWriter(zipFile, pool, 4, null);
+            try {
+                writer.addFolder("data");
+                writer.addFile("data", textFile);
+                writer.addFile("data", binaryFile, Deflater.NO_COMPRESSION);
+                writer.addFile(emptyFile);
+            } finally {
+                writer.close();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        ZipFile archive = new ZipFile(zipFile);
+        try {
+            assertEquals(4, archive.size());
+            assertTrue(archive.getEntry("data/").isDirectory());
+            assertEntry(archive, "data/spectra.mgf", text, ZipEntry.DEFLATED);
+            assertEntry(archive, "data/data.bin", binary, ZipEntry.STORED);
+            assertEntry(archive, "empty.txt", new byte[0], ZipEntry.DEFLATED);
+        } finally {
+            archive.close();
+        }
+    }
+
+    /**
+     * Checks the content of an entry and that small entries are written
+     * without zip64 extra field.
+     *
+     * @param archive the archive
+     * @param name the name of the entry
+     * @param expected the expected content
+     * @param method the expected compression method
+     *
+     * @throws IOException thrown if an error occurred while reading
+     */
+    private static void assertEntry(ZipFile archive, String name, byte[] expected, int method) throws IOException {
+        ZipEntry entry = archive.getEntry(name);
+        assertNotNull(name, entry);
+        assertEquals(name, method, entry.getMethod());
+        assertEquals(name, expected.length, entry.getSize());
+        assertTrue(name, entry.getExtra() == null || entry.getExtra().length == 0);
+        InputStream in = archive.getInputStream(entry);
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream(expected.length);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            assertTrue(name, Arrays.equals(expected, content.toByteArray()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes a test file.
+     *
+     * @param name the name of the file
+     * @param content the content of the file
+     *
+     * @return the file
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    private File writeFile(String name, byte[] content) throws IOException {
+        File file = new File(folder, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}